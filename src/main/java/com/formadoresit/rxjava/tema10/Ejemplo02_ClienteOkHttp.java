@@ -0,0 +1,340 @@
+package com.formadoresit.rxjava.tema10;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import io.reactivex.Flowable;
+import io.reactivex.Observable;
+import io.reactivex.Single;
+import io.reactivex.SingleEmitter;
+import io.reactivex.schedulers.Schedulers;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.BufferedSource;
+
+/**
+ * TEMA 10: Programación Reactiva en la Web
+ * Ejemplo 02: Cliente HTTP reactivo sobre OkHttp
+ *
+ * Llamadas HTTP reales en lugar de Thread.sleep dentro de fromCallable:
+ * el enqueue asíncrono de OkHttp envuelto en Single/Flowable, un pool de
+ * conexiones y un dispatcher compartidos y ajustados, coalescencia de
+ * GETs idénticos en vuelo y cuerpos de respuesta como Flowable<ByteBuffer>.
+ * Se prueba contra un servidor local en loopback
+ */
+public class Ejemplo02_ClienteOkHttp {
+
+    public static void main(String[] args) throws Exception {
+        System.out.println("=== Ejemplo 02: Cliente HTTP Reactivo (OkHttp) ===\n");
+
+        try (LoopbackServer servidor = new LoopbackServer(50)) {
+            ReactiveHttpClient cliente = new ReactiveHttpClient(64, 16, 30, TimeUnit.SECONDS);
+
+            // 1. GET como Single
+            System.out.println("--- GET request ---");
+            cliente.get(servidor.url("/usuarios/1"))
+                .toFlowable().blockingSubscribe(
+                    usuario -> System.out.println("Usuario: " + usuario),
+                    error -> System.err.println("Error: " + error));
+
+            // 2. Llamadas en paralelo y encadenadas, como en el Ejemplo 01
+            System.out.println("\n--- Llamadas en paralelo y secuenciales ---");
+            Single.merge(
+                    cliente.get(servidor.url("/usuarios/1")),
+                    cliente.get(servidor.url("/usuarios/2")),
+                    cliente.get(servidor.url("/usuarios/3")))
+                .blockingSubscribe(usuario -> System.out.println("Recibido: " + usuario));
+            cliente.get(servidor.url("/usuarios/1"))
+                .flatMap(usuario -> cliente.get(servidor.url("/pedidos/1")))
+                .toFlowable().blockingSubscribe(pedidos -> System.out.println("Pedidos: " + pedidos));
+
+            // 3. Errores HTTP y cancelación
+            System.out.println("\n--- Errores y cancelación ---");
+            cliente.get(servidor.url("/no-existe"))
+                .toFlowable().blockingSubscribe(
+                    r -> System.out.println("Inesperado: " + r),
+                    error -> System.out.println("Error HTTP: " + error.getMessage()));
+            cliente.get(servidor.url("/lento"))
+                .timeout(100, TimeUnit.MILLISECONDS)
+                .toFlowable().blockingSubscribe(
+                    r -> System.out.println("Inesperado: " + r),
+                    error -> System.out.println("Timeout, llamada cancelada: " + error.getClass().getSimpleName()));
+
+            // 4. Coalescencia de GETs idénticos en vuelo
+            System.out.println("\n--- Coalescencia de GETs idénticos ---");
+            long antes = servidor.peticiones();
+            Observable.range(1, 20)
+                .flatMapSingle(i -> cliente.getCoalesced(servidor.url("/catalogo")))
+                .count()
+                .toFlowable().blockingSubscribe(n -> System.out.println("Respuestas: " + n
+                    + ", peticiones al servidor: " + (servidor.peticiones() - antes)));
+
+            // 5. Cuerpo en streaming como Flowable<ByteBuffer>
+            System.out.println("\n--- Cuerpo en streaming ---");
+            AtomicLong bytes = new AtomicLong();
+            long trozos = cliente.stream(servidor.url("/fichero"), 8192)
+                .doOnNext(trozo -> bytes.addAndGet(trozo.remaining()))
+                .count()
+                .blockingGet();
+            System.out.println("Recibidos " + bytes.get() + " bytes en " + trozos + " trozos");
+
+            // 6. Benchmark: hilos usados por 1k peticiones concurrentes
+            System.out.println("\n--- Benchmark: hilos por 1k peticiones concurrentes ---");
+            int concurrentes = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+            OkHttpClient bloqueante = cliente.okHttp().newBuilder().build();
+            benchmark("fromCallable + io()", concurrentes, () -> Observable.range(0, concurrentes)
+                .flatMap(i -> Observable.fromCallable(() -> {
+                        try (Response r = bloqueante.newCall(new Request.Builder()
+                                .url(servidor.url("/usuarios/" + i)).build()).execute()) {
+                            return r.body().string();
+                        }
+                    })
+                    .subscribeOn(Schedulers.io()), concurrentes)
+                .count()
+                .blockingGet());
+            benchmark("enqueue reactivo", concurrentes, () -> Observable.range(0, concurrentes)
+                .flatMapSingle(i -> cliente.get(servidor.url("/usuarios/" + i)))
+                .count()
+                .blockingGet());
+
+            cliente.shutdown();
+        }
+
+        System.out.println("\n=== CONCEPTOS CLAVE ===");
+        System.out.println("• enqueue(): la llamada no ocupa hilos de Rx mientras espera");
+        System.out.println("• setCancellable(): dispose()/timeout cancelan la llamada HTTP");
+        System.out.println("• Dispatcher y ConnectionPool compartidos: hilos y sockets acotados");
+        System.out.println("• Coalescencia: GETs idénticos en vuelo comparten una sola petición");
+        System.out.println("• Flowable<ByteBuffer>: el cuerpo se lee por trozos bajo demanda");
+    }
+
+    private static void benchmark(String nombre, int concurrentes, java.util.concurrent.Callable<Long> carga) throws Exception {
+        ThreadMXBean hilos = ManagementFactory.getThreadMXBean();
+        int base = hilos.getThreadCount();
+        hilos.resetPeakThreadCount();
+        long inicio = System.nanoTime();
+        long respuestas = carga.call();
+        long ms = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - inicio);
+        System.out.printf("  %-20s %d respuestas en %dms, pico de hilos: +%d%n",
+            nombre, respuestas, ms, hilos.getPeakThreadCount() - base);
+    }
+
+    // Cliente HTTP reactivo
+
+    static class HttpStatusException extends IOException {
+        final int codigo;
+
+        HttpStatusException(int codigo, String url) {
+            super("HTTP " + codigo + " en " + url);
+            this.codigo = codigo;
+        }
+    }
+
+    static class ReactiveHttpClient {
+        private final OkHttpClient client;
+        private final Map<String, Single<String>> enVuelo = new ConcurrentHashMap<>();
+
+        /**
+         * El dispatcher limita las llamadas en vuelo (y por tanto sus hilos);
+         * el pool mantiene vivas las conexiones para reutilizarlas
+         */
+        ReactiveHttpClient(int maxPeticiones, int maxConexionesOciosas, long keepAlive, TimeUnit unidad) {
+            AtomicInteger hilos = new AtomicInteger();
+            ExecutorService executor = Executors.newCachedThreadPool(r -> {
+                Thread t = new Thread(r, "OkHttp-" + hilos.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+            Dispatcher dispatcher = new Dispatcher(executor);
+            dispatcher.setMaxRequests(maxPeticiones);
+            dispatcher.setMaxRequestsPerHost(maxPeticiones);
+            this.client = new OkHttpClient.Builder()
+                .dispatcher(dispatcher)
+                .connectionPool(new ConnectionPool(maxConexionesOciosas, keepAlive, unidad))
+                .build();
+        }
+
+        OkHttpClient okHttp() {
+            return client;
+        }
+
+        public Single<String> get(String url) {
+            return execute(new Request.Builder().url(url).get().build())
+                .map(response -> {
+                    try (ResponseBody body = response.body()) {
+                        return body.string();
+                    }
+                });
+        }
+
+        /**
+         * GETs idénticos en vuelo comparten la misma llamada y resultado.
+         * share() y no cache(): cuando se van todos los interesados la
+         * llamada se cancela y no retiene la conexión
+         */
+        public Single<String> getCoalesced(String url) {
+            return Single.defer(() -> {
+                AtomicReference<Single<String>> propia = new AtomicReference<>();
+                return enVuelo.computeIfAbsent(url, u -> {
+                    propia.set(get(u)
+                        .doFinally(() -> enVuelo.remove(u, propia.get()))
+                        .toObservable()
+                        .share()
+                        .singleOrError());
+                    return propia.get();
+                });
+            });
+        }
+
+        /** Cuerpo leído por trozos a medida que se piden */
+        public Flowable<ByteBuffer> stream(String url, int tamanoTrozo) {
+            return execute(new Request.Builder().url(url).get().build())
+                .flatMapPublisher(response -> Flowable.<ByteBuffer, BufferedSource>generate(
+                    () -> response.body().source(),
+                    (source, emitter) -> {
+                        byte[] trozo = new byte[tamanoTrozo];
+                        int leidos = source.read(trozo);
+                        if (leidos < 0) {
+                            emitter.onComplete();
+                        } else {
+                            emitter.onNext(ByteBuffer.wrap(trozo, 0, leidos));
+                        }
+                    },
+                    source -> response.close())
+                    // la lectura del socket es bloqueante: nunca en computation()
+                    .subscribeOn(Schedulers.io()));
+        }
+
+        /** Respuesta con código 2xx; el cuerpo queda abierto para quien lo consuma */
+        Single<Response> execute(Request request) {
+            return Single.defer(() -> {
+                // SingleEmitter de RxJava 2 no tiene tryOnSuccess: doOnSuccess
+                // marca la respuesta sólo si llegó al suscriptor
+                AtomicBoolean entregada = new AtomicBoolean();
+                return Single.<Response>create(emitter -> enviar(request, emitter, entregada))
+                    .doOnSuccess(response -> entregada.set(true));
+            });
+        }
+
+        private void enviar(Request request, SingleEmitter<Response> emitter, AtomicBoolean entregada) {
+            Call call = client.newCall(request);
+            // tras entregar la respuesta, cerrar el cuerpo es cosa del consumidor
+            emitter.setCancellable(() -> {
+                if (!entregada.get()) {
+                    call.cancel();
+                }
+            });
+            call.enqueue(new Callback() {
+                @Override
+                public void onFailure(Call c, IOException e) {
+                    emitter.tryOnError(e);
+                }
+
+                @Override
+                public void onResponse(Call c, Response response) {
+                    if (!response.isSuccessful()) {
+                        response.close();
+                        emitter.tryOnError(new HttpStatusException(response.code(), request.url().toString()));
+                    } else {
+                        emitter.onSuccess(response);
+                        if (!entregada.get()) {
+                            response.close(); // cancelada a la vez: nadie cerraría el cuerpo
+                        }
+                    }
+                }
+            });
+        }
+
+        void shutdown() {
+            client.dispatcher().executorService().shutdown();
+            client.connectionPool().evictAll();
+        }
+    }
+
+    // Servidor local en loopback (hilos virtuales: no limita la concurrencia)
+
+    static class LoopbackServer implements AutoCloseable {
+        private final HttpServer server;
+        private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+        private final AtomicLong peticiones = new AtomicLong();
+
+        LoopbackServer(long latenciaMs) throws IOException {
+            server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 4096);
+            server.createContext("/usuarios/", ex -> responder(ex, latenciaMs,
+                "{\"id\":" + ex.getRequestURI().getPath().substring("/usuarios/".length()) + ",\"nombre\":\"Usuario\"}"));
+            server.createContext("/pedidos/", ex -> responder(ex, latenciaMs, "[{\"pedido\":1},{\"pedido\":2}]"));
+            server.createContext("/catalogo", ex -> responder(ex, 200, "[\"libro\",\"disco\"]"));
+            server.createContext("/lento", ex -> responder(ex, 2000, "tarde"));
+            server.createContext("/fichero", ex -> responder(ex, 0, "x".repeat(100_000)));
+            server.createContext("/", ex -> {
+                peticiones.incrementAndGet();
+                ex.sendResponseHeaders(404, -1);
+                ex.close();
+            });
+            server.setExecutor(executor);
+            server.start();
+        }
+
+        /** Registra una ruta adicional (p. ej. un fichero grande servido en streaming) */
+        LoopbackServer contexto(String ruta, HttpHandler handler) {
+            server.createContext(ruta, ex -> {
+                peticiones.incrementAndGet();
+                handler.handle(ex);
+            });
+            return this;
+        }
+
+        String url(String ruta) {
+            return "http://127.0.0.1:" + server.getAddress().getPort() + ruta;
+        }
+
+        long peticiones() {
+            return peticiones.get();
+        }
+
+        private void responder(HttpExchange ex, long latenciaMs, String cuerpo) throws IOException {
+            peticiones.incrementAndGet();
+            try {
+                Thread.sleep(latenciaMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            byte[] bytes = cuerpo.getBytes(StandardCharsets.UTF_8);
+            ex.getResponseHeaders().add("Content-Type", "application/json");
+            ex.sendResponseHeaders(200, bytes.length);
+            try (OutputStream out = ex.getResponseBody()) {
+                out.write(bytes);
+            } catch (IOException e) {
+                // el cliente canceló la llamada
+            }
+        }
+
+        @Override
+        public void close() {
+            server.stop(0);
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,302 @@
+package com.formadoresit.rxjava.tema10;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import io.reactivex.Flowable;
+import io.reactivex.schedulers.Schedulers;
+import io.reactivex.subscribers.TestSubscriber;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import okhttp3.Request;
+import okhttp3.ResponseBody;
+
+/**
+ * TEMA 10: Programación Reactiva en la Web
+ * Ejemplo 03: Decodificación JSON en streaming
+ *
+ * Un array JSON grande se decodifica elemento a elemento con el JsonReader
+ * de Gson y se emite como Flowable<T>: sólo se parsean los elementos que
+ * el suscriptor ha pedido, y el heap no depende del tamaño de la respuesta.
+ * Se compara con leer el cuerpo entero a String y parsearlo de golpe
+ */
+public class Ejemplo03_JsonStreaming {
+
+    private static final Gson GSON = new Gson();
+
+    public static void main(String[] args) throws Exception {
+        System.out.println("=== Ejemplo 03: JSON en Streaming ===\n");
+
+        // Tamaño del fixture en MB (por defecto 64; p. ej. 1024 para 1 GB)
+        int megas = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        Path fixture = Files.createTempFile("pedidos", ".json");
+        fixture.toFile().deleteOnExit();
+
+        try {
+            long elementos = generarFixture(fixture, megas * 1024L * 1024L);
+            System.out.printf("Fixture: %,d pedidos, %,d bytes%n%n", elementos, Files.size(fixture));
+
+            // 1. Backpressure: sólo se parsea lo pedido
+            System.out.println("--- Caso 1: Sólo se parsea lo pedido ---");
+            AtomicLong leidos = new AtomicLong();
+            TestSubscriber<Pedido> suscriptor = JsonArrays
+                .<Pedido>decode(() -> new ContadorInputStream(Files.newInputStream(fixture), leidos), GSON, Pedido.class)
+                .test(0);
+            Thread.sleep(100); // la suscripción abre el fichero en io()
+            System.out.println("  Sin demanda:   bytes leídos = " + leidos.get());
+            suscriptor.request(3);
+            suscriptor.awaitCount(3);
+            System.out.println("  request(3):    " + suscriptor.valueCount() + " pedidos, bytes leídos = " + leidos.get());
+            suscriptor.request(1000);
+            suscriptor.awaitCount(1003);
+            System.out.println("  request(1000): " + suscriptor.valueCount() + " pedidos, bytes leídos = " + leidos.get());
+            suscriptor.cancel();
+            System.out.println("  Primer pedido: " + suscriptor.values().get(0));
+
+            // 2. Errores de formato llegan como onError
+            System.out.println("\n--- Caso 2: JSON truncado ---");
+            byte[] truncado = "[{\"id\":1,\"cliente\":\"ana\"},{\"id\":2,\"cli".getBytes(StandardCharsets.UTF_8);
+            JsonArrays.<Pedido>decode(() -> new ByteArrayInputStream(truncado), GSON, Pedido.class)
+                .blockingSubscribe(
+                    pedido -> System.out.println("  Recibido: " + pedido),
+                    error -> System.out.println("  Error: " + error.getClass().getSimpleName()));
+
+            // 3. Respuesta HTTP decodificada en streaming
+            try (Ejemplo02_ClienteOkHttp.LoopbackServer servidor = new Ejemplo02_ClienteOkHttp.LoopbackServer(0)) {
+                servidor.contexto("/pedidos.json", ex -> {
+                    ex.getResponseHeaders().add("Content-Type", "application/json");
+                    ex.sendResponseHeaders(200, Files.size(fixture));
+                    try (OutputStream out = ex.getResponseBody()) {
+                        Files.copy(fixture, out);
+                    } catch (IOException e) {
+                        // el cliente canceló la descarga
+                    }
+                });
+                Ejemplo02_ClienteOkHttp.ReactiveHttpClient cliente =
+                    new Ejemplo02_ClienteOkHttp.ReactiveHttpClient(8, 4, 30, TimeUnit.SECONDS);
+                String url = servidor.url("/pedidos.json");
+
+                System.out.println("\n--- Caso 3: take(5) sobre una respuesta HTTP ---");
+                getJsonArray(cliente, url, Pedido.class)
+                    .take(5)
+                    .blockingSubscribe(pedido -> System.out.println("  " + pedido));
+
+                // 4. Benchmark: pico de heap y elementos/s
+                System.out.println("\n--- Caso 4: Pico de heap y elementos/s ---");
+                medir("streaming (HTTP)", () -> getJsonArray(cliente, url, Pedido.class)
+                    .filter(pedido -> pedido.importe > 500)
+                    .count()
+                    .blockingGet(), elementos);
+                if (megas <= 256) {
+                    Type lista = new TypeToken<List<Pedido>>() { }.getType();
+                    medir("String + fromJson", () -> cliente.get(url)
+                        .map(cuerpo -> GSON.<List<Pedido>>fromJson(cuerpo, lista))
+                        .flattenAsFlowable(pedidos -> pedidos)
+                        .filter(pedido -> pedido.importe > 500)
+                        .count()
+                        .blockingGet(), elementos);
+                } else {
+                    System.out.println("  String + fromJson   omitido: necesitaría varias veces " + megas + " MB de heap");
+                }
+                cliente.shutdown();
+            }
+        } finally {
+            Files.deleteIfExists(fixture);
+        }
+
+        System.out.println("\n=== CONCEPTOS CLAVE ===");
+        System.out.println("• JsonReader: se avanza token a token sin cargar el documento");
+        System.out.println("• Flowable.generate: un elemento parseado por cada unidad de demanda");
+        System.out.println("• El heap depende del tamaño del elemento, no de la respuesta");
+        System.out.println("• cancel()/take(n): se cierra el stream y se aborta la descarga");
+        System.out.println("• La lectura bloquea: subscribeOn(io()), nunca computation()");
+    }
+
+    /** Cuerpo de un GET decodificado como array JSON en streaming */
+    static <T> Flowable<T> getJsonArray(Ejemplo02_ClienteOkHttp.ReactiveHttpClient cliente, String url, Class<T> tipo) {
+        return cliente.execute(new Request.Builder().url(url).get().build())
+            .flatMapPublisher(response -> JsonArrays.decode(response.body(), GSON, tipo));
+    }
+
+    /** Pico de heap muestreado mientras dura la carga */
+    private static void medir(String nombre, Callable<Long> carga, long elementos) throws Exception {
+        MemoryMXBean memoria = ManagementFactory.getMemoryMXBean();
+        System.gc();
+        long base = memoria.getHeapMemoryUsage().getUsed();
+        AtomicLong pico = new AtomicLong(base);
+        AtomicBoolean midiendo = new AtomicBoolean(true);
+        Thread muestreo = new Thread(() -> {
+            while (midiendo.get()) {
+                pico.accumulateAndGet(memoria.getHeapMemoryUsage().getUsed(), Math::max);
+                try {
+                    Thread.sleep(5);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }, "muestreo-heap");
+        muestreo.setDaemon(true);
+        muestreo.start();
+
+        long inicio = System.nanoTime();
+        long resultado = carga.call();
+        double segundos = (System.nanoTime() - inicio) / 1e9;
+        midiendo.set(false);
+        muestreo.join();
+
+        System.out.printf("  %-19s %,.0f elementos/s, pico de heap +%,d MB (importe > 500: %,d)%n",
+            nombre, elementos / segundos, (pico.get() - base) / (1024 * 1024), resultado);
+    }
+
+    /** Escribe un array JSON de pedidos hasta alcanzar el tamaño pedido */
+    private static long generarFixture(Path fichero, long bytes) throws IOException {
+        long n = 0;
+        try (ContadorOutputStream contador = new ContadorOutputStream(Files.newOutputStream(fichero));
+             JsonWriter writer = new JsonWriter(new OutputStreamWriter(contador, StandardCharsets.UTF_8))) {
+            writer.beginArray();
+            while (contador.escritos < bytes) {
+                writer.beginObject()
+                    .name("id").value(n)
+                    .name("cliente").value("cliente-" + (n % 10_000))
+                    .name("importe").value((n * 7919) % 1000 + 0.99)
+                    .name("lineas").beginArray().value("libro").value("disco").endArray()
+                    .endObject();
+                n++;
+                if (n % 1024 == 0) {
+                    writer.flush();
+                }
+            }
+            writer.endArray();
+        }
+        return n;
+    }
+
+    static class Pedido {
+        long id;
+        String cliente;
+        double importe;
+        List<String> lineas;
+
+        @Override
+        public String toString() {
+            return "Pedido{id=" + id + ", cliente=" + cliente + ", importe=" + importe + ", lineas=" + lineas + "}";
+        }
+    }
+
+    // Decodificador de arrays JSON como Flowable
+
+    static final class JsonArrays {
+
+        private JsonArrays() {
+        }
+
+        /**
+         * Cada petición de n elementos parsea exactamente n objetos del array;
+         * el stream se abre al suscribirse y se cierra al completar o cancelar
+         */
+        static <T> Flowable<T> decode(Callable<? extends InputStream> entrada, Gson gson, Type tipo) {
+            return Flowable.<T, JsonReader>generate(
+                    () -> {
+                        JsonReader reader = new JsonReader(new InputStreamReader(
+                            new BufferedInputStream(entrada.call()), StandardCharsets.UTF_8));
+                        try {
+                            reader.beginArray();
+                        } catch (IOException | RuntimeException e) {
+                            // generate() sólo llama al disposer si el estado llegó a crearse
+                            reader.close();
+                            throw e;
+                        }
+                        return reader;
+                    },
+                    (reader, emitter) -> {
+                        if (reader.hasNext()) {
+                            T elemento = gson.fromJson(reader, tipo);
+                            emitter.onNext(elemento);
+                        } else {
+                            reader.endArray();
+                            if (reader.peek() != JsonToken.END_DOCUMENT) {
+                                throw new IOException("Contenido tras el array JSON");
+                            }
+                            emitter.onComplete();
+                        }
+                    },
+                    JsonReader::close)
+                // la lectura es bloqueante: nunca en computation()
+                .subscribeOn(Schedulers.io());
+        }
+
+        /** Cuerpo de una respuesta OkHttp; se cierra (y libera la conexión) al terminar */
+        static <T> Flowable<T> decode(ResponseBody cuerpo, Gson gson, Type tipo) {
+            return decode(cuerpo::byteStream, gson, tipo);
+        }
+    }
+
+    // Contadores de bytes para comprobar cuánto se ha leído o escrito
+
+    static class ContadorInputStream extends FilterInputStream {
+        private final AtomicLong leidos;
+
+        ContadorInputStream(InputStream in, AtomicLong leidos) {
+            super(in);
+            this.leidos = leidos;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                leidos.incrementAndGet();
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                leidos.addAndGet(n);
+            }
+            return n;
+        }
+    }
+
+    static class ContadorOutputStream extends FilterOutputStream {
+        long escritos;
+
+        ContadorOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            escritos++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            escritos += len;
+        }
+    }
+}
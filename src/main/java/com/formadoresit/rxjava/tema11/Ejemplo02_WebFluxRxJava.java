@@ -0,0 +1,292 @@
+package com.formadoresit.rxjava.tema11;
+
+import ch.qos.logback.classic.Level;
+import io.reactivex.Flowable;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.http.server.reactive.ReactorHttpHandlerAdapter;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.server.RouterFunction;
+import org.springframework.web.reactive.function.server.RouterFunctions;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+
+import static org.springframework.web.reactive.function.server.RequestPredicates.GET;
+
+/**
+ * TEMA 11: Spring WebFlux
+ * Ejemplo 02: Endpoints WebFlux sobre pipelines RxJava
+ *
+ * Router funcional de WebFlux sobre Reactor Netty, sin autoconfiguración
+ * de Spring Boot, que sirve por HTTP los pipelines de recomendaciones,
+ * dashboard y logs del Tema 5. Los Flowable de RxJava 2 se entregan a
+ * Reactor como Publisher (Flux.from): sin cambios de hilo y respetando
+ * la demanda de la conexión. Respuestas en NDJSON y SSE
+ */
+public class Ejemplo02_WebFluxRxJava {
+
+    public static void main(String[] args) throws InterruptedException {
+        System.out.println("=== Ejemplo 02: WebFlux + RxJava ===\n");
+        ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger(org.slf4j.Logger.ROOT_LOGGER_NAME))
+            .setLevel(Level.WARN);
+
+        Pipelines pipelines = new Pipelines();
+        DisposableServer servidor = HttpServer.create()
+            .host("127.0.0.1")
+            .port(0)
+            .handle(new ReactorHttpHandlerAdapter(RouterFunctions.toHttpHandler(rutas(pipelines))))
+            .bindNow();
+        String base = "http://127.0.0.1:" + servidor.port();
+        WebClient cliente = WebClient.create(base);
+        System.out.println("Servidor en " + base + "\n");
+
+        try {
+            // 1. Recomendaciones en NDJSON
+            System.out.println("--- GET /recomendaciones/ana (NDJSON) ---");
+            cliente.get().uri("/recomendaciones/ana")
+                .accept(MediaType.APPLICATION_NDJSON)
+                .retrieve()
+                .bodyToFlux(Recomendacion.class)
+                .doOnNext(recomendacion -> System.out.println("  " + recomendacion))
+                .blockLast(Duration.ofSeconds(5));
+
+            // 2. Dashboard por SSE
+            System.out.println("\n--- GET /dashboard (SSE) ---");
+            cliente.get().uri("/dashboard")
+                .accept(MediaType.TEXT_EVENT_STREAM)
+                .retrieve()
+                .bodyToFlux(new org.springframework.core.ParameterizedTypeReference<ServerSentEvent<EstadoSistema>>() { })
+                .take(5)
+                .doOnNext(evento -> System.out.println("  id=" + evento.id() + " " + evento.data()))
+                .blockLast(Duration.ofSeconds(5));
+
+            // 3. Backpressure de extremo a extremo
+            System.out.println("\n--- GET /logs?n=10000000 con take(20) ---");
+            long antes = pipelines.logsGenerados.get();
+            Long resumenes = cliente.get().uri("/logs?n=10000000")
+                .accept(MediaType.APPLICATION_NDJSON)
+                .retrieve()
+                .bodyToFlux(ResumenLogs.class)
+                .take(20)
+                .count()
+                .block(Duration.ofSeconds(10));
+            Thread.sleep(200);
+            System.out.printf("  Resúmenes recibidos: %d, logs generados en el servidor: %,d de 10.000.000%n",
+                resumenes, pipelines.logsGenerados.get() - antes);
+
+            // Parámetros fuera de rango: 400 antes de montar el pipeline
+            for (String uri : List.of("/logs?n=-1", "/logs?n=abc", "/dashboard?ms=0")) {
+                cliente.get().uri(uri)
+                    .exchangeToMono(respuesta -> respuesta.bodyToMono(String.class)
+                        .map(cuerpo -> respuesta.statusCode().value() + " " + cuerpo))
+                    .doOnNext(resultado -> System.out.println("  GET " + uri + " -> " + resultado))
+                    .block(Duration.ofSeconds(5));
+            }
+
+            // 4. Coste del puente RxJava -> Reactor
+            System.out.println("\n--- Benchmark: puente Flowable -> Flux ---");
+            int elementos = args.length > 0 ? Integer.parseInt(args[0]) : 10_000_000;
+            benchmarkPuente(elementos);
+
+            // 5. Prueba de carga local
+            System.out.println("\n--- Prueba de carga: GET /logs?n=2000 ---");
+            int peticiones = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+            pruebaCarga(cliente, peticiones / 4, 64, false); // calentamiento
+            pruebaCarga(cliente, peticiones, 64, true);
+        } finally {
+            servidor.disposeNow();
+        }
+
+        System.out.println("\n=== CONCEPTOS CLAVE ===");
+        System.out.println("• Flowable es un Publisher: Flux.from(flowable) sin saltos de hilo");
+        System.out.println("• RouterFunctions + Reactor Netty: WebFlux sin autoconfiguración");
+        System.out.println("• NDJSON y SSE: el cuerpo se escribe a medida que se emite");
+        System.out.println("• La demanda de la conexión TCP llega hasta el generate de RxJava");
+        System.out.println("• onBackpressureLatest: el dashboard no acumula si el cliente es lento");
+        System.out.println("• El puente rompe la fusión de operadores: cruzarlo una vez, en el borde");
+    }
+
+    // Rutas: cada handler adapta un Flowable a Flux
+
+    static RouterFunction<ServerResponse> rutas(Pipelines pipelines) {
+        return RouterFunctions.route()
+            .route(GET("/recomendaciones/{usuario}"), peticion -> ndjson(
+                pipelines.recomendaciones(peticion.pathVariable("usuario")), Recomendacion.class))
+            .route(GET("/dashboard"), peticion -> conParametro(peticion, "ms", 100, 10, 60_000,
+                ms -> ServerResponse.ok()
+                    .contentType(MediaType.TEXT_EVENT_STREAM)
+                    .body(toFlux(pipelines.dashboard(ms))
+                        .index((i, estado) -> ServerSentEvent.builder(estado).id(Long.toString(i)).build()),
+                        ServerSentEvent.class)))
+            .route(GET("/logs"), peticion -> conParametro(peticion, "n", 1000, 0, 100_000_000,
+                n -> ndjson(pipelines.logs(n), ResumenLogs.class)))
+            .build();
+    }
+
+    /** Puente sin saltos de hilo: Reactor se suscribe directamente al Flowable */
+    static <T> Flux<T> toFlux(Flowable<T> flowable) {
+        return Flux.from(flowable);
+    }
+
+    private static <T> Mono<ServerResponse> ndjson(Flowable<T> flowable, Class<T> tipo) {
+        return ServerResponse.ok()
+            .contentType(MediaType.APPLICATION_NDJSON)
+            .body(toFlux(flowable), tipo);
+    }
+
+    /** Parámetro numérico acotado; si no es un número o se sale del rango, 400 */
+    private static Mono<ServerResponse> conParametro(ServerRequest peticion, String nombre, long porDefecto,
+                                                     long minimo, long maximo,
+                                                     Function<Long, Mono<ServerResponse>> handler) {
+        long valor;
+        try {
+            valor = peticion.queryParam(nombre).map(Long::parseLong).orElse(porDefecto);
+        } catch (NumberFormatException e) {
+            valor = minimo - 1;
+        }
+        if (valor < minimo || valor > maximo) {
+            return ServerResponse.badRequest()
+                .bodyValue("'" + nombre + "' debe ser un entero entre " + minimo + " y " + maximo);
+        }
+        return handler.apply(valor);
+    }
+
+    // Pipelines RxJava (los del Tema 5, ahora sin fin y con backpressure)
+
+    static class Pipelines {
+        final AtomicLong logsGenerados = new AtomicLong();
+
+        Flowable<Recomendacion> recomendaciones(String usuario) {
+            Flowable<String> historial = Flowable.interval(10, TimeUnit.MILLISECONDS)
+                .take(3).map(i -> usuario + "-compra-" + (i + 1));
+            Flowable<String> populares = Flowable.interval(15, TimeUnit.MILLISECONDS)
+                .take(3).map(i -> "popular-" + (i + 1));
+            Flowable<String> tendencia = Flowable.interval(20, TimeUnit.MILLISECONDS)
+                .take(3).map(i -> "tendencia-" + (i + 1));
+            return Flowable.merge(historial, populares, tendencia)
+                .distinct()
+                .buffer(3)
+                .map(productos -> new Recomendacion(usuario, productos));
+        }
+
+        Flowable<EstadoSistema> dashboard(long periodoMs) {
+            Flowable<Double> cpu = Flowable.interval(periodoMs, TimeUnit.MILLISECONDS)
+                .map(i -> 50.0 + (i * 7) % 45);
+            Flowable<Double> memoria = Flowable.interval(periodoMs + 20, TimeUnit.MILLISECONDS)
+                .map(i -> 60.0 + (i * 3) % 35);
+            Flowable<Double> disco = Flowable.interval(periodoMs + 40, TimeUnit.MILLISECONDS)
+                .map(i -> 30.0 + (i * 2) % 20);
+            return Flowable.combineLatest(cpu, memoria, disco, EstadoSistema::new)
+                .onBackpressureLatest();
+        }
+
+        /** n logs generados bajo demanda y resumidos en bloques de 100 */
+        Flowable<ResumenLogs> logs(long n) {
+            return Flowable.<LogAplicacion, Long>generate(() -> 0L, (i, emitter) -> {
+                    if (i >= n) {
+                        emitter.onComplete();
+                    } else {
+                        logsGenerados.incrementAndGet();
+                        String nivel = i % 50 == 0 ? "ERROR" : i % 10 == 0 ? "WARN" : "INFO";
+                        emitter.onNext(new LogAplicacion("App" + (i % 3 + 1), nivel, "Operación " + i));
+                    }
+                    return i + 1;
+                })
+                .buffer(100)
+                .map(ResumenLogs::de);
+        }
+    }
+
+    record LogAplicacion(String aplicacion, String nivel, String mensaje) {
+    }
+
+    record ResumenLogs(int total, long errores, long avisos) {
+        static ResumenLogs de(List<LogAplicacion> logs) {
+            long errores = logs.stream().filter(log -> "ERROR".equals(log.nivel())).count();
+            long avisos = logs.stream().filter(log -> "WARN".equals(log.nivel())).count();
+            return new ResumenLogs(logs.size(), errores, avisos);
+        }
+    }
+
+    record Recomendacion(String usuario, List<String> productos) {
+    }
+
+    record EstadoSistema(double cpu, double memoria, double disco) {
+        public boolean alerta() {
+            return cpu > 85 || memoria > 90;
+        }
+    }
+
+    // Benchmarks
+
+    private static void benchmarkPuente(int elementos) {
+        for (int ronda = 0; ronda < 4; ronda++) {
+            boolean calentamiento = ronda == 0;
+            long rx = medir(() -> Flowable.range(0, elementos)
+                .map(i -> i * 2)
+                .filter(i -> i % 3 == 0)
+                .count()
+                .blockingGet());
+            long puente = medir(() -> toFlux(Flowable.range(0, elementos)
+                    .map(i -> i * 2))
+                .filter(i -> i % 3 == 0)
+                .count()
+                .block());
+            long reactor = medir(() -> Flux.range(0, elementos)
+                .map(i -> i * 2)
+                .filter(i -> i % 3 == 0)
+                .count()
+                .block());
+            if (!calentamiento) {
+                System.out.printf("  ronda %d: RxJava %.2f ns/elem | Flowable->Flux %.2f ns/elem | Reactor %.2f ns/elem%n",
+                    ronda, (double) rx / elementos, (double) puente / elementos, (double) reactor / elementos);
+            }
+        }
+    }
+
+    private static long medir(Runnable carga) {
+        long inicio = System.nanoTime();
+        carga.run();
+        return System.nanoTime() - inicio;
+    }
+
+    private static void pruebaCarga(WebClient cliente, int peticiones, int concurrencia, boolean informar) {
+        List<Long> latencias = Collections.synchronizedList(new ArrayList<>());
+        long inicio = System.nanoTime();
+        Long resumenes = Flux.range(0, peticiones)
+            .flatMap(i -> Mono.defer(() -> {
+                long t0 = System.nanoTime();
+                return cliente.get().uri("/logs?n=2000")
+                    .accept(MediaType.APPLICATION_NDJSON)
+                    .retrieve()
+                    .bodyToFlux(ResumenLogs.class)
+                    .count()
+                    .doOnNext(n -> latencias.add(System.nanoTime() - t0));
+            }), concurrencia)
+            .reduce(0L, Long::sum)
+            .block(Duration.ofMinutes(2));
+        double segundos = (System.nanoTime() - inicio) / 1e9;
+        if (!informar) {
+            return;
+        }
+
+        List<Long> ordenadas = new ArrayList<>(latencias);
+        Collections.sort(ordenadas);
+        System.out.printf("  %d peticiones (concurrencia %d) en %.2fs -> %.0f req/s, %,d resúmenes%n",
+            peticiones, concurrencia, segundos, peticiones / segundos, resumenes);
+        System.out.printf("  latencia p50=%.1fms p99=%.1fms%n",
+            ordenadas.get(ordenadas.size() / 2) / 1e6, ordenadas.get(ordenadas.size() * 99 / 100) / 1e6);
+    }
+}
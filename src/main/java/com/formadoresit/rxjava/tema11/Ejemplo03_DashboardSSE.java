@@ -0,0 +1,486 @@
+package com.formadoresit.rxjava.tema11;
+
+import ch.qos.logback.classic.Level;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.WriteBufferWaterMark;
+import io.reactivex.BackpressureStrategy;
+import io.reactivex.Flowable;
+import io.reactivex.Observable;
+import io.reactivex.disposables.CompositeDisposable;
+import io.reactivex.schedulers.Schedulers;
+import io.reactivex.subjects.BehaviorSubject;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongConsumer;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.http.server.reactive.ReactorHttpHandlerAdapter;
+import org.springframework.web.reactive.function.server.RouterFunction;
+import org.springframework.web.reactive.function.server.RouterFunctions;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.resources.ConnectionProvider;
+import reactor.netty.resources.LoopResources;
+
+import static org.springframework.web.reactive.function.server.RequestPredicates.GET;
+
+/**
+ * TEMA 11: Spring WebFlux
+ * Ejemplo 03: Dashboard de métricas por Server-Sent Events
+ *
+ * El MetricsDashboard del Tema 6 (tres BehaviorSubject) convertido en un
+ * feed compartido: las métricas se muestrean una sola vez por tick, la
+ * instantánea se serializa una vez y se reparte por SSE a todos los
+ * clientes. Cada cliente tiene su propio onBackpressureLatest, así que
+ * cuando su conexión deja de pedir el servidor guarda sólo la última
+ * instantánea en lugar de acumularlas todas
+ */
+public class Ejemplo03_DashboardSSE {
+
+    public static void main(String[] args) throws InterruptedException {
+        System.out.println("=== Ejemplo 03: Dashboard por SSE ===\n");
+        ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger(org.slf4j.Logger.ROOT_LOGGER_NAME))
+            .setLevel(Level.WARN);
+
+        MetricsDashboard dashboard = new MetricsDashboard();
+        io.reactivex.disposables.Disposable agente = simularAgente(dashboard);
+
+        // 1. Pipeline por suscriptor (Tema 4) vs feed compartido
+        System.out.println("--- Caso 1: Cálculos en origen con 1000 suscriptores durante 1s ---");
+        comparaOrigen(dashboard, 1000);
+
+        LoopResources hilosServidor = LoopResources.create("servidor-sse", 1, true);
+        DisposableServer servidor = HttpServer.create()
+            .host("127.0.0.1")
+            .port(0)
+            .runOn(hilosServidor)
+            // buffers de salida pequeños: un cliente lento deja de pedir enseguida
+            .childOption(ChannelOption.SO_SNDBUF, 4096)
+            .childOption(ChannelOption.WRITE_BUFFER_WATER_MARK, new WriteBufferWaterMark(1024, 2048))
+            .handle(new ReactorHttpHandlerAdapter(RouterFunctions.toHttpHandler(rutas(dashboard))))
+            .bindNow();
+        String base = "http://127.0.0.1:" + servidor.port();
+
+        try {
+            // 2. Cliente lento: conflación vs buffer
+            System.out.println("\n--- Caso 2: Clientes lentos (1 evento cada 500ms, feed cada 50ms) ---");
+            for (boolean conflar : new boolean[] {false, true}) {
+                long antes = dashboard.sinEntregar();
+                PruebaCarga prueba = new PruebaCarga(base, 50, conflar, 20, 1.0, 500);
+                prueba.ejecutar(Duration.ofSeconds(15));
+                System.out.printf("  %-24s retraso p50=%,dms p99=%,dms, eventos por cliente=%.0f, sin entregar a WebFlux: %,d %s%n",
+                    conflar ? "onBackpressureLatest:" : "onBackpressureBuffer:",
+                    prueba.lentos.percentil(50), prueba.lentos.percentil(99), prueba.lentos.eventosPorCliente(),
+                    dashboard.sinEntregar() - antes, conflar ? "(descartadas al llegar)" : "(en memoria hasta desconectar)");
+            }
+
+            // 3. Prueba de carga: feed cada 250ms, los lentos leen cada 2,5s
+            int clientes = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+            System.out.println("\n--- Caso 3: " + clientes + " clientes SSE (10% lentos, misma máquina que el servidor) ---");
+            long muestrasAntes = dashboard.muestras();
+            PruebaCarga prueba = new PruebaCarga(base, 250, true, clientes, 0.1, 2500);
+            long cpuAntes = cpuServidor();
+            long inicio = System.nanoTime();
+            prueba.ejecutar(Duration.ofSeconds(10));
+            double cpu = (double) (cpuServidor() - cpuAntes) / (System.nanoTime() - inicio);
+            System.out.printf("  CPU del servidor: %.0f%% de un núcleo; instantáneas calculadas: %d%n",
+                cpu * 100, dashboard.muestras() - muestrasAntes);
+            System.out.printf("  rápidos: retraso p50=%,dms p99=%,dms, eventos por cliente=%.0f%n",
+                prueba.rapidos.percentil(50), prueba.rapidos.percentil(99), prueba.rapidos.eventosPorCliente());
+            System.out.printf("  lentos:  retraso p50=%,dms p99=%,dms, eventos por cliente=%.0f%n",
+                prueba.lentos.percentil(50), prueba.lentos.percentil(99), prueba.lentos.eventosPorCliente());
+        } finally {
+            servidor.disposeNow();
+            hilosServidor.disposeLater().block();
+            agente.dispose();
+        }
+
+        System.out.println("\n=== CONCEPTOS CLAVE ===");
+        System.out.println("• replay(1).refCount(): un único muestreo para todos los clientes");
+        System.out.println("• sample(): las métricas cambian a su ritmo, el feed a ritmo fijo");
+        System.out.println("• La instantánea se serializa una vez, no una por cliente");
+        System.out.println("• onBackpressureLatest por cliente: un lento no acumula instantáneas en el servidor");
+        System.out.println("• Sin conflación el buffer de cada cliente lento crece sin límite");
+        System.out.println("• Reactor Netty pide 128 escrituras por adelantado: ese tramo no se conflaciona");
+    }
+
+    static RouterFunction<ServerResponse> rutas(MetricsDashboard dashboard) {
+        return RouterFunctions.route(GET("/dashboard"), peticion -> {
+            long periodoMs;
+            try {
+                periodoMs = peticion.queryParam("ms").map(Long::parseLong).orElse(1000L);
+            } catch (NumberFormatException e) {
+                periodoMs = -1;
+            }
+            if (periodoMs <= 0) {
+                return ServerResponse.badRequest().bodyValue("'ms' debe ser un entero positivo");
+            }
+            boolean conflar = peticion.queryParam("conflar").map(Boolean::parseBoolean).orElse(true);
+            return ServerResponse.ok()
+                .contentType(MediaType.TEXT_EVENT_STREAM)
+                .body(Flux.from(dashboard.paraCliente(periodoMs, conflar)), ServerSentEvent.class);
+        });
+    }
+
+    /** Agente que actualiza las métricas mucho más rápido de lo que se muestrean */
+    private static io.reactivex.disposables.Disposable simularAgente(MetricsDashboard dashboard) {
+        return Observable.interval(1, TimeUnit.MILLISECONDS, Schedulers.single())
+            .subscribe(tick -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                dashboard.updateCpu(40 + random.nextDouble(50));
+                if (tick % 5 == 0) {
+                    dashboard.updateMemory(60 + random.nextDouble(30));
+                }
+                if (tick % 20 == 0) {
+                    dashboard.updateDisk(30 + random.nextDouble(10));
+                }
+            });
+    }
+
+    /** Cada suscriptor con su propio zip de tres llamadas frente al feed compartido */
+    private static void comparaOrigen(MetricsDashboard dashboard, int suscriptores) throws InterruptedException {
+        LongAdder llamadas = new LongAdder();
+        Observable<String> porSuscriptor = Observable.interval(50, TimeUnit.MILLISECONDS)
+            .flatMap(tick -> Observable.zip(
+                Observable.fromCallable(() -> { llamadas.increment(); return 50.0; }),
+                Observable.fromCallable(() -> { llamadas.increment(); return 60.0; }),
+                Observable.fromCallable(() -> { llamadas.increment(); return 30.0; }),
+                (cpu, memoria, disco) -> cpu + "/" + memoria + "/" + disco));
+
+        CompositeDisposable frios = new CompositeDisposable();
+        for (int i = 0; i < suscriptores; i++) {
+            frios.add(porSuscriptor.subscribe(valor -> { }));
+        }
+        Thread.sleep(1000);
+        frios.dispose();
+
+        long antes = dashboard.muestras();
+        CompositeDisposable compartidos = new CompositeDisposable();
+        for (int i = 0; i < suscriptores; i++) {
+            compartidos.add(dashboard.getFeed(50).subscribe(valor -> { }));
+        }
+        Thread.sleep(1000);
+        compartidos.dispose();
+
+        System.out.printf("  Pipeline por suscriptor: %,d llamadas a las fuentes%n", llamadas.sum());
+        System.out.printf("  Feed compartido:         %,d instantáneas (3 lecturas cada una)%n",
+            dashboard.muestras() - antes);
+    }
+
+    /** Tiempo de CPU de los hilos del servidor: event loop y schedulers de Rx */
+    private static long cpuServidor() {
+        ThreadMXBean hilos = ManagementFactory.getThreadMXBean();
+        long total = 0;
+        for (Thread hilo : Thread.getAllStackTraces().keySet()) {
+            String nombre = hilo.getName();
+            if (nombre.startsWith("servidor-sse") || nombre.startsWith("Rx")) {
+                total += Math.max(0, hilos.getThreadCpuTime(hilo.threadId()));
+            }
+        }
+        return total;
+    }
+
+    // Dashboard de métricas con feed compartido
+
+    static class MetricsDashboard {
+        static final long[] PERIODOS_MS = {50, 250, 1000, 5000};
+        private final BehaviorSubject<Double> cpuSubject = BehaviorSubject.createDefault(0.0);
+        private final BehaviorSubject<Double> memorySubject = BehaviorSubject.createDefault(0.0);
+        private final BehaviorSubject<Double> diskSubject = BehaviorSubject.createDefault(0.0);
+        private final AtomicLong secuencia = new AtomicLong();
+        private final LongAdder sinEntregar = new LongAdder();
+        private final NavigableMap<Long, Observable<Instantanea>> feeds = new TreeMap<>();
+
+        MetricsDashboard() {
+            for (long periodo : PERIODOS_MS) {
+                feeds.put(periodo, Observable.combineLatest(cpuSubject, memorySubject, diskSubject, Valores::new)
+                    .sample(periodo, TimeUnit.MILLISECONDS, Schedulers.computation())
+                    .map(valores -> Instantanea.de(secuencia.incrementAndGet(), valores))
+                    .replay(1)
+                    .refCount());
+            }
+        }
+
+        /**
+         * Un único feed por periodo, compartido por todos sus suscriptores.
+         * Los periodos son un conjunto fijo: el cliente recibe el primero
+         * que no sea más rápido que el pedido. Por encima del más lento, ese
+         * feed se muestrea al periodo pedido para este suscriptor
+         */
+        public Observable<Instantanea> getFeed(long periodoMs) {
+            Map.Entry<Long, Observable<Instantanea>> feed = feeds.ceilingEntry(periodoMs);
+            if (feed != null) {
+                return feed.getValue();
+            }
+            return feeds.lastEntry().getValue().sample(periodoMs, TimeUnit.MILLISECONDS, Schedulers.computation());
+        }
+
+        /**
+         * Vista de un cliente sobre el feed común: con conflación sólo guarda
+         * la última instantánea mientras la conexión no pide más; sin ella,
+         * un buffer propio que crece mientras el cliente no lee. La demanda
+         * la marca Reactor Netty, que admite hasta 128 escrituras en vuelo
+         * por conexión: el retraso de un lento incluye siempre ese tramo
+         */
+        Flowable<ServerSentEvent<String>> paraCliente(long periodoMs, boolean conflar) {
+            Flowable<Instantanea> feed = getFeed(periodoMs).toFlowable(BackpressureStrategy.MISSING)
+                .doOnNext(instantanea -> sinEntregar.increment());
+            return (conflar ? feed.onBackpressureLatest() : feed.onBackpressureBuffer())
+                .doOnNext(instantanea -> sinEntregar.decrement())
+                .map(Instantanea::evento);
+        }
+
+        /** Instantáneas que no llegaron a pedirse: descartadas o aún en un buffer */
+        long sinEntregar() {
+            return sinEntregar.sum();
+        }
+
+        long muestras() {
+            return secuencia.get();
+        }
+
+        public void updateCpu(double cpu) {
+            cpuSubject.onNext(cpu);
+        }
+
+        public void updateMemory(double memory) {
+            memorySubject.onNext(memory);
+        }
+
+        public void updateDisk(double disk) {
+            diskSubject.onNext(disk);
+        }
+    }
+
+    record Valores(double cpu, double memoria, double disco) {
+    }
+
+    /** Muestra ya serializada: todos los clientes comparten el mismo evento */
+    record Instantanea(long secuencia, long nanos, Valores valores, ServerSentEvent<String> evento) {
+        private static final int HOSTS = 80;
+
+        static Instantanea de(long secuencia, Valores valores) {
+            long nanos = System.nanoTime();
+            StringBuilder json = new StringBuilder(1024).append(String.format(Locale.ROOT,
+                "{\"t\":%d,\"cpu\":%.1f,\"memoria\":%.1f,\"disco\":%.1f,\"hosts\":[",
+                nanos, valores.cpu(), valores.memoria(), valores.disco()));
+            // detalle por host: un evento de ~4 KB, como el de un dashboard real
+            for (int host = 0; host < HOSTS; host++) {
+                json.append(host == 0 ? "" : ",").append(String.format(Locale.ROOT,
+                    "{\"host\":\"srv-%02d\",\"cpu\":%.1f,\"memoria\":%.1f}",
+                    host, valores.cpu() * (0.8 + host % 5 * 0.05), valores.memoria() * (0.9 + host % 3 * 0.05)));
+            }
+            json.append("]}");
+            return new Instantanea(secuencia, nanos, valores,
+                ServerSentEvent.builder(json.toString()).id(Long.toString(secuencia)).build());
+        }
+    }
+
+    // Clientes SSE simulados
+
+    static class PruebaCarga {
+        final Retrasos rapidos = new Retrasos();
+        final Retrasos lentos = new Retrasos();
+        private final String base;
+        private final String ruta;
+        private final int clientes;
+        private final double fraccionLentos;
+        private final long pausaLentoMs;
+
+        PruebaCarga(String base, long periodoMs, boolean conflar, int clientes, double fraccionLentos, long pausaLentoMs) {
+            this.base = base;
+            this.ruta = "/dashboard?ms=" + periodoMs + "&conflar=" + conflar;
+            this.clientes = clientes;
+            this.fraccionLentos = fraccionLentos;
+            this.pausaLentoMs = pausaLentoMs;
+        }
+
+        void ejecutar(Duration duracion) throws InterruptedException {
+            LoopResources hilos = LoopResources.create("clientes-sse", 1, true);
+            ConnectionProvider conexiones = ConnectionProvider.builder("sse")
+                .maxConnections(clientes)
+                .pendingAcquireMaxCount(-1)
+                .build();
+            HttpClient http = HttpClient.create(conexiones)
+                .runOn(hilos)
+                .baseUrl(base)
+                .headers(cabeceras -> cabeceras.add("Accept", MediaType.TEXT_EVENT_STREAM_VALUE));
+
+            int numLentos = (int) Math.round(clientes * fraccionLentos);
+            AtomicInteger conectados = new AtomicInteger();
+            List<Disposable> suscripciones = new ArrayList<>();
+            for (int i = numLentos; i < clientes; i++) {
+                LectorSSE lector = new LectorSSE(marca -> rapidos.registrar(System.nanoTime() - marca), conectados);
+                suscripciones.add(http.get().uri(ruta)
+                    .responseContent()
+                    .subscribe(trozo -> trozo.forEachByte(b -> {
+                        lector.leer(b);
+                        return true;
+                    })));
+            }
+            // los lentos leen un socket bloqueante con buffer pequeño: lo que
+            // no leen se queda en el servidor, que es donde se decide qué descartar
+            ExecutorService hilosLentos = Executors.newVirtualThreadPerTaskExecutor();
+            for (int i = 0; i < numLentos; i++) {
+                hilosLentos.execute(() -> clienteLento(conectados));
+            }
+
+            // las métricas se miden cuando todos están conectados
+            long limite = System.nanoTime() + TimeUnit.SECONDS.toNanos(60);
+            while (conectados.get() < clientes && System.nanoTime() < limite) {
+                Thread.sleep(50);
+            }
+            rapidos.reiniciar(clientes - numLentos);
+            lentos.reiniciar(numLentos);
+            Thread.sleep(duracion.toMillis());
+            rapidos.cerrar();
+            lentos.cerrar();
+
+            suscripciones.forEach(Disposable::dispose);
+            hilosLentos.shutdownNow();
+            conexiones.disposeLater().block();
+            hilos.disposeLater().block();
+        }
+
+        /** Procesa un evento y se detiene antes de leer el siguiente */
+        private void clienteLento(AtomicInteger conectados) {
+            URI uri = URI.create(base);
+            try (Socket socket = new Socket()) {
+                socket.setReceiveBufferSize(4096);
+                socket.connect(new InetSocketAddress(uri.getHost(), uri.getPort()));
+                socket.getOutputStream().write(("GET " + ruta + " HTTP/1.1\r\n"
+                    + "Host: " + uri.getHost() + "\r\nAccept: text/event-stream\r\n\r\n")
+                    .getBytes(StandardCharsets.US_ASCII));
+                InputStream entrada = new BufferedInputStream(socket.getInputStream(), 1024);
+                LectorSSE lector = new LectorSSE(marca -> lentos.registrar(System.nanoTime() - marca), conectados);
+                int b;
+                while ((b = entrada.read()) >= 0) {
+                    if (lector.leer(b)) {
+                        Thread.sleep(pausaLentoMs);
+                    }
+                }
+            } catch (IOException | InterruptedException e) {
+                // fin de la prueba
+            }
+        }
+    }
+
+    /** Extrae byte a byte la marca de tiempo de las líneas "data:" sin crear Strings */
+    static class LectorSSE {
+        private static final byte[] PREFIJO = "data:{\"t\":".getBytes(StandardCharsets.US_ASCII);
+        private final LongConsumer alEvento;
+        private final AtomicInteger conectados;
+        private int posicion;
+        private boolean descartar;
+        private long marca;
+        private long eventos;
+
+        LectorSSE(LongConsumer alEvento, AtomicInteger conectados) {
+            this.alEvento = alEvento;
+            this.conectados = conectados;
+        }
+
+        /** true si el byte completa la marca de un evento */
+        boolean leer(int b) {
+            if (b == '\n') {
+                posicion = 0;
+                descartar = false;
+                return false;
+            }
+            if (descartar) {
+                return false;
+            }
+            if (posicion < PREFIJO.length) {
+                descartar = b != PREFIJO[posicion++];
+                marca = 0;
+                return false;
+            }
+            if (b >= '0' && b <= '9') {
+                marca = marca * 10 + (b - '0');
+                return false;
+            }
+            descartar = true;
+            if (eventos++ == 0) {
+                conectados.incrementAndGet();
+            }
+            alEvento.accept(marca);
+            return true;
+        }
+    }
+
+    /** Histograma de retrasos en ms (1ms por bucket, hasta 60s) */
+    static class Retrasos {
+        private final AtomicLongArray buckets = new AtomicLongArray(60_001);
+        private volatile boolean activo;
+        private int clientes;
+
+        void reiniciar(int clientes) {
+            for (int i = 0; i < buckets.length(); i++) {
+                buckets.set(i, 0);
+            }
+            this.clientes = clientes;
+            this.activo = true;
+        }
+
+        void cerrar() {
+            activo = false;
+        }
+
+        void registrar(long retrasoNanos) {
+            if (activo) {
+                buckets.incrementAndGet((int) Math.min(buckets.length() - 1, TimeUnit.NANOSECONDS.toMillis(retrasoNanos)));
+            }
+        }
+
+        long total() {
+            long total = 0;
+            for (int i = 0; i < buckets.length(); i++) {
+                total += buckets.get(i);
+            }
+            return total;
+        }
+
+        long percentil(double p) {
+            long objetivo = (long) Math.ceil(total() * p / 100);
+            long acumulado = 0;
+            for (int i = 0; i < buckets.length(); i++) {
+                acumulado += buckets.get(i);
+                if (acumulado >= objetivo && acumulado > 0) {
+                    return i;
+                }
+            }
+            return 0;
+        }
+
+        double eventosPorCliente() {
+            return clientes == 0 ? 0 : (double) total() / clientes;
+        }
+    }
+}
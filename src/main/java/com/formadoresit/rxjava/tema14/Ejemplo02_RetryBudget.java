@@ -0,0 +1,309 @@
+package com.formadoresit.rxjava.tema14;
+
+import io.reactivex.Flowable;
+import io.reactivex.FlowableTransformer;
+import io.reactivex.Observable;
+import io.reactivex.ObservableTransformer;
+import io.reactivex.Scheduler;
+import io.reactivex.Single;
+import io.reactivex.SingleTransformer;
+import io.reactivex.functions.Predicate;
+import io.reactivex.observers.TestObserver;
+import io.reactivex.schedulers.Schedulers;
+import io.reactivex.schedulers.TestScheduler;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * TEMA 14: Aplicaciones Prácticas
+ * Ejemplo 02: Retry con backoff y presupuesto de reintentos
+ *
+ * Sustituye los retry(n) ciegos y el retryWhen hecho a mano del
+ * Ejemplo 01: backoff exponencial con full jitter, predicado de
+ * excepciones reintentables y un presupuesto global (token bucket)
+ * que limita los reintentos a un porcentaje del tráfico, para que
+ * una caída no multiplique la carga por 3 o 4
+ */
+public class Ejemplo02_RetryBudget {
+
+    public static void main(String[] args) throws InterruptedException {
+        System.out.println("=== Ejemplo 02: Retry con Presupuesto ===\n");
+
+        // 1. Backoff exponencial con full jitter
+        System.out.println("--- Caso 1: Backoff exponencial con jitter ---");
+        RetryBudget presupuesto = new RetryBudget(20, 10);
+        RetryPolicy politica = new RetryPolicy(4, 100, 1000, TimeUnit.MILLISECONDS, presupuesto)
+            .reintentarSi(error -> error instanceof IOException);
+        AtomicInteger intentos = new AtomicInteger();
+
+        Observable.fromCallable(() -> {
+                int n = intentos.incrementAndGet();
+                System.out.println("  Intento " + n);
+                if (n < 3) {
+                    throw new IOException("Error de red");
+                }
+                return "Datos obtenidos";
+            })
+            .compose(politica.forObservable())
+            .blockingSubscribe(
+                dato -> System.out.println("Éxito: " + dato),
+                error -> System.err.println("Error final: " + error.getMessage()));
+
+        // 2. Errores no reintentables
+        System.out.println("\n--- Caso 2: Error no reintentable ---");
+        Single.<String>error(new IllegalArgumentException("Petición inválida"))
+            .compose(politica.forSingle())
+            .subscribe(
+                dato -> System.out.println("Éxito: " + dato),
+                error -> System.out.println("Error sin reintentar: " + error.getMessage()));
+        System.out.println("  " + politica.metrics());
+
+        // 3. Caída total: amplificación de carga
+        System.out.println("\n--- Caso 3: Caída total, retry(3) vs presupuesto ---");
+        int peticiones = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        long ciegas = caida(peticiones, null, new TestScheduler());
+        // El presupuesto mide el tiempo con el mismo reloj virtual que los backoffs
+        TestScheduler reloj = new TestScheduler();
+        RetryPolicy conPresupuesto = new RetryPolicy(3, 100, 2000, TimeUnit.MILLISECONDS, new RetryBudget(10, 5, reloj));
+        long acotadas = caida(peticiones, conPresupuesto, reloj);
+        System.out.printf("  retry(3):          %,d llamadas -> amplificación %.2fx%n", ciegas, (double) ciegas / peticiones);
+        System.out.printf("  presupuesto 10%%:   %,d llamadas -> amplificación %.2fx%n", acotadas, (double) acotadas / peticiones);
+        System.out.println("  " + conPresupuesto.metrics());
+        double amplificacion = (double) acotadas / peticiones;
+        System.out.println(amplificacion <= 1.15
+            ? "✓ Amplificación acotada al presupuesto"
+            : "✗ Amplificación por encima del presupuesto: " + amplificacion);
+
+        // 4. Fallos esporádicos: el presupuesto no molesta
+        System.out.println("\n--- Caso 4: Fallos esporádicos (5%) ---");
+        RetryPolicy esporadica = new RetryPolicy(3, 1, 10, TimeUnit.MILLISECONDS, new RetryBudget(10, 5));
+        TestObserver<Long> exitos = Flowable.range(0, 2000)
+            .flatMapSingle(i -> Single.fromCallable(() -> {
+                    if (ThreadLocalRandom.current().nextDouble() < 0.05) {
+                        throw new IOException("Fallo transitorio");
+                    }
+                    return 1L;
+                })
+                .compose(esporadica.forSingle())
+                .onErrorReturnItem(0L))
+            .reduce(0L, Long::sum)
+            .toObservable()
+            .test();
+        if (exitos.await(10, TimeUnit.SECONDS) && exitos.valueCount() == 1) {
+            System.out.println("  Peticiones con éxito: " + exitos.values().get(0) + "/2000");
+        } else {
+            exitos.dispose();
+            System.out.println("  Sin resultado tras 10 s");
+        }
+        System.out.println("  " + esporadica.metrics());
+
+        System.out.println("\n=== CONCEPTOS CLAVE ===");
+        System.out.println("• retry(n) ciego: en una caída multiplica la carga por n+1");
+        System.out.println("• Full jitter: espera aleatoria en [0, base·2^n] para no sincronizar clientes");
+        System.out.println("• Predicado: sólo se reintentan los errores transitorios");
+        System.out.println("• Presupuesto: los reintentos no superan un % de las peticiones");
+        System.out.println("• Métricas: intentos, reintentos y denegados por presupuesto");
+    }
+
+    /** Todas las llamadas fallan; se cuenta cuántas llegan al servicio caído */
+    private static long caida(int peticiones, RetryPolicy politica, TestScheduler scheduler) {
+        LongAdder llamadas = new LongAdder();
+        Observable<String> servicioCaido = Observable.defer(() -> {
+            llamadas.increment();
+            return Observable.error(new IOException("Servicio caído"));
+        });
+
+        List<TestObserver<String>> observers = new ArrayList<>();
+        for (int i = 0; i < peticiones; i++) {
+            Observable<String> peticion = politica == null
+                ? servicioCaido.retry(3)
+                : servicioCaido.compose(politica.forObservable(scheduler));
+            observers.add(peticion.test());
+            scheduler.advanceTimeBy(1, TimeUnit.MILLISECONDS); // 1000 peticiones por segundo
+        }
+        scheduler.advanceTimeBy(1, TimeUnit.MINUTES);
+        observers.forEach(TestObserver::assertNotComplete);
+        return llamadas.sum();
+    }
+
+    // Política de reintentos
+
+    static class RetryPolicy {
+        private final int maxIntentos;
+        private final long baseNanos;
+        private final long maxNanos;
+        private final RetryBudget presupuesto;
+        private Predicate<Throwable> reintentable = error -> true;
+        private final LongAdder intentos = new LongAdder();
+        private final LongAdder reintentos = new LongAdder();
+        private final LongAdder denegados = new LongAdder();
+        private final LongAdder noReintentables = new LongAdder();
+        private final LongAdder agotados = new LongAdder();
+
+        RetryPolicy(int maxIntentos, long base, long max, TimeUnit unidad, RetryBudget presupuesto) {
+            this.maxIntentos = maxIntentos;
+            this.baseNanos = unidad.toNanos(base);
+            this.maxNanos = unidad.toNanos(max);
+            this.presupuesto = presupuesto;
+        }
+
+        RetryPolicy reintentarSi(Predicate<Throwable> predicado) {
+            this.reintentable = predicado;
+            return this;
+        }
+
+        public <T> ObservableTransformer<T, T> forObservable() {
+            return forObservable(Schedulers.computation());
+        }
+
+        public <T> ObservableTransformer<T, T> forObservable(Scheduler scheduler) {
+            return upstream -> Observable.defer(() -> {
+                Intentos estado = nuevaPeticion();
+                return upstream.retryWhen(errores -> errores.concatMap(error -> {
+                    long espera = siguienteEspera(estado, error);
+                    return espera < 0
+                        ? Observable.error(error)
+                        : Observable.timer(espera, TimeUnit.NANOSECONDS, scheduler);
+                }));
+            });
+        }
+
+        public <T> FlowableTransformer<T, T> forFlowable() {
+            return forFlowable(Schedulers.computation());
+        }
+
+        public <T> FlowableTransformer<T, T> forFlowable(Scheduler scheduler) {
+            return upstream -> Flowable.defer(() -> {
+                Intentos estado = nuevaPeticion();
+                return upstream.retryWhen(errores -> errores.concatMap(error -> {
+                    long espera = siguienteEspera(estado, error);
+                    return espera < 0
+                        ? Flowable.error(error)
+                        : Flowable.timer(espera, TimeUnit.NANOSECONDS, scheduler);
+                }));
+            });
+        }
+
+        public <T> SingleTransformer<T, T> forSingle() {
+            return forSingle(Schedulers.computation());
+        }
+
+        public <T> SingleTransformer<T, T> forSingle(Scheduler scheduler) {
+            return upstream -> Single.defer(() -> {
+                Intentos estado = nuevaPeticion();
+                return upstream.retryWhen(errores -> errores.concatMap(error -> {
+                    long espera = siguienteEspera(estado, error);
+                    return espera < 0
+                        ? Flowable.error(error)
+                        : Flowable.timer(espera, TimeUnit.NANOSECONDS, scheduler);
+                }));
+            });
+        }
+
+        private Intentos nuevaPeticion() {
+            intentos.increment();
+            presupuesto.depositar();
+            return new Intentos();
+        }
+
+        /** Espera antes del siguiente intento, o -1 si el error debe propagarse */
+        private long siguienteEspera(Intentos estado, Throwable error) throws Exception {
+            if (!reintentable.test(error)) {
+                noReintentables.increment();
+                return -1;
+            }
+            int n = ++estado.reintentos;
+            if (n >= maxIntentos) {
+                agotados.increment();
+                return -1;
+            }
+            if (!presupuesto.retirar()) {
+                denegados.increment();
+                return -1;
+            }
+            reintentos.increment();
+            // base << n se desborda a negativo en cuanto el bit alto llega al signo: se satura a max
+            long techo = n < Long.numberOfLeadingZeros(baseNanos) - 1 ? Math.min(maxNanos, baseNanos << n) : maxNanos;
+            return ThreadLocalRandom.current().nextLong(techo == Long.MAX_VALUE ? techo : techo + 1); // full jitter
+        }
+
+        public String metrics() {
+            return String.format("intentos=%d reintentos=%d denegados=%d no reintentables=%d agotados=%d (%s)",
+                intentos.sum(), reintentos.sum(), denegados.sum(), noReintentables.sum(), agotados.sum(), presupuesto);
+        }
+
+        static class Intentos {
+            int reintentos; // sólo se toca desde concatMap, que es secuencial
+        }
+    }
+
+    /**
+     * Token bucket compartido: cada petición original aporta un porcentaje
+     * de token y cada reintento gasta uno entero. Un mínimo por segundo
+     * permite reintentar con poco tráfico; el tiempo lo da el scheduler,
+     * así un TestScheduler lo controla igual que a los backoffs
+     */
+    static class RetryBudget {
+        private static final long TOKEN = 1000;
+        private final long aportePorPeticion;
+        private final long minimoPorSegundo;
+        private final long maximo;
+        private final AtomicLong saldo;
+        private final Scheduler scheduler;
+        private final AtomicLong ultimaRecarga;
+
+        RetryBudget(double porcentajeReintentos, int minimoReintentosPorSegundo) {
+            this(porcentajeReintentos, minimoReintentosPorSegundo, Schedulers.computation());
+        }
+
+        RetryBudget(double porcentajeReintentos, int minimoReintentosPorSegundo, Scheduler scheduler) {
+            this.scheduler = scheduler;
+            this.ultimaRecarga = new AtomicLong(scheduler.now(TimeUnit.NANOSECONDS));
+            this.aportePorPeticion = (long) (porcentajeReintentos / 100 * TOKEN);
+            this.minimoPorSegundo = minimoReintentosPorSegundo * TOKEN;
+            this.maximo = Math.max(10 * TOKEN, minimoPorSegundo * 10);
+            this.saldo = new AtomicLong(minimoPorSegundo);
+        }
+
+        void depositar() {
+            sumar(aportePorPeticion);
+        }
+
+        boolean retirar() {
+            recargarMinimo();
+            while (true) {
+                long actual = saldo.get();
+                if (actual < TOKEN) {
+                    return false;
+                }
+                if (saldo.compareAndSet(actual, actual - TOKEN)) {
+                    return true;
+                }
+            }
+        }
+
+        private void recargarMinimo() {
+            long ahora = scheduler.now(TimeUnit.NANOSECONDS);
+            long anterior = ultimaRecarga.get();
+            long aporte = (ahora - anterior) * minimoPorSegundo / TimeUnit.SECONDS.toNanos(1);
+            if (aporte > 0 && ultimaRecarga.compareAndSet(anterior, ahora)) {
+                sumar(aporte);
+            }
+        }
+
+        private void sumar(long milesimas) {
+            saldo.accumulateAndGet(milesimas, (actual, aporte) -> Math.min(maximo, actual + aporte));
+        }
+
+        @Override
+        public String toString() {
+            return String.format("saldo=%.1f reintentos", (double) saldo.get() / TOKEN);
+        }
+    }
+}
@@ -0,0 +1,529 @@
+package com.formadoresit.rxjava.tema14;
+
+import io.reactivex.Observable;
+import io.reactivex.Scheduler;
+import io.reactivex.Single;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.functions.Function;
+import io.reactivex.schedulers.TestScheduler;
+import io.reactivex.subjects.BehaviorSubject;
+import io.reactivex.subjects.PublishSubject;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * TEMA 14: Aplicaciones Prácticas
+ * Ejemplo 03: Almacén de series temporales en memoria
+ *
+ * Historia para los dashboards de operaciones: cada métrica guarda sus
+ * muestras en anillos de long/double (sin un Double por muestra) y mantiene
+ * al vuelo agregados min/max/media a 1s, 10s y 1m. Las consultas de "los
+ * últimos N minutos" eligen la resolución según los puntos pedidos y se
+ * exponen como Single/Observable. Alimentado con las métricas del
+ * MetricsDashboard y las líneas de rendimiento del ApplicationMonitor
+ */
+public class Ejemplo03_SeriesTemporales {
+
+    private static final Pattern MILISEGUNDOS = Pattern.compile("(\\d+)ms");
+
+    public static void main(String[] args) throws InterruptedException {
+        System.out.println("=== Ejemplo 03: Series Temporales ===\n");
+
+        // 1. Ingesta desde los subjects del dashboard y del monitor
+        System.out.println("--- Caso 1: Ingesta desde subjects con reloj simulado ---");
+        TestScheduler reloj = new TestScheduler();
+        TimeSeriesStore store = new TimeSeriesStore(1 << 16, reloj);
+
+        BehaviorSubject<Double> cpu = BehaviorSubject.create();
+        PublishSubject<String> rendimiento = PublishSubject.create();
+        Disposable ingestaCpu = store.ingestar("cpu", cpu, valor -> valor);
+        Disposable ingestaLatencia = store.ingestar("latencia", rendimiento
+            .map(MILISEGUNDOS::matcher)
+            .filter(Matcher::find), coincidencia -> Double.parseDouble(coincidencia.group(1)));
+
+        // dos horas de datos: cpu cada 100ms, una línea de rendimiento por segundo
+        for (int ms = 0; ms < 2 * 3600 * 1000; ms += 100) {
+            reloj.advanceTimeTo(ms, TimeUnit.MILLISECONDS);
+            double minuto = ms / 60_000.0;
+            cpu.onNext(50 + 30 * Math.sin(minuto / 10) + (ms % 700) / 100.0);
+            if (ms % 1000 == 0) {
+                rendimiento.onNext("Tiempo de respuesta: " + (120 + (ms / 1000) % 60) + "ms");
+            }
+        }
+        System.out.println("  " + store);
+        try {
+            store.ingestar("cpu", Observable.just(1.0), valor -> valor);
+        } catch (IllegalStateException e) {
+            System.out.println("  Segunda ingesta rechazada: " + e.getMessage());
+        }
+
+        // 2. Consultas con resolución automática
+        System.out.println("\n--- Caso 2: Consultas de los últimos N minutos ---");
+        store.ultimos("cpu", 10, TimeUnit.SECONDS, 200)
+            .subscribe(ventana -> System.out.println("  cpu, últimos 10s:  " + ventana));
+        store.ultimos("cpu", 5, TimeUnit.MINUTES, 100)
+            .subscribe(ventana -> System.out.println("  cpu, últimos 5m:   " + ventana));
+        store.ultimos("cpu", 2, TimeUnit.HOURS, 150)
+            .subscribe(ventana -> System.out.println("  cpu, últimas 2h:   " + ventana));
+        store.ultimos("latencia", 1, TimeUnit.HOURS, 60)
+            .subscribe(ventana -> System.out.println("  latencia, 1h:      " + ventana + " último min="
+                + ventana.min[ventana.tamano() - 1] + " max=" + ventana.max[ventana.tamano() - 1]));
+        store.ultimos("no-existe", 1, TimeUnit.MINUTES, 10)
+            .subscribe(
+                ventana -> System.out.println("  Inesperado: " + ventana),
+                error -> System.out.println("  Métrica desconocida: " + error.getMessage()));
+
+        // 3. Panel en vivo: la misma consulta refrescada con interval
+        System.out.println("\n--- Caso 3: Panel en vivo cada 5s ---");
+        Disposable panel = store.observar("cpu", 1, TimeUnit.MINUTES, 6, 5, TimeUnit.SECONDS)
+            .subscribe(ventana -> System.out.printf("  [t=%.1fs] media por 10s: %s%n",
+                reloj.now(TimeUnit.MILLISECONDS) / 1000.0,
+                Arrays.toString(Arrays.stream(ventana.media).map(v -> Math.round(v * 10) / 10.0).toArray())));
+        for (int ms = 2 * 3600 * 1000; ms <= 2 * 3600 * 1000 + 10_000; ms += 100) {
+            reloj.advanceTimeTo(ms, TimeUnit.MILLISECONDS);
+            cpu.onNext(95.0);
+        }
+        panel.dispose();
+        ingestaCpu.dispose();
+        ingestaLatencia.dispose();
+
+        // 4. Benchmarks
+        System.out.println("\n--- Caso 4: Velocidad de ingesta ---");
+        int puntos = args.length > 0 ? Integer.parseInt(args[0]) : 20_000_000;
+        benchmarkIngesta(puntos);
+
+        System.out.println("\n--- Caso 5: Memoria por millón de puntos ---");
+        memoriaPorMillon();
+
+        System.out.println("\n=== CONCEPTOS CLAVE ===");
+        System.out.println("• Anillos de long[]/double[]: 16 bytes por muestra, sin boxing ni GC");
+        System.out.println("• Agregados 1s/10s/1m calculados al insertar, no al consultar");
+        System.out.println("• Un escritor por métrica: publicación con lazySet, lectores sin bloqueo");
+        System.out.println("• La consulta elige la resolución que cabe en los puntos pedidos");
+        System.out.println("• Single para consultas puntuales, interval + map para paneles en vivo");
+    }
+
+    private static void benchmarkIngesta(int puntos) {
+        int metricas = 10;
+        for (int ronda = 0; ronda < 3; ronda++) {
+            TimeSeriesStore store = new TimeSeriesStore(1 << 20, new TestScheduler());
+            TimeSeriesStore.Serie[] series = new TimeSeriesStore.Serie[metricas];
+            for (int m = 0; m < metricas; m++) {
+                series[m] = store.serie("metrica-" + m);
+            }
+            long inicio = System.nanoTime();
+            for (int i = 0; i < puntos; i++) {
+                series[i % metricas].registrar(i / metricas * 10L, i % 1000);
+            }
+            double directo = puntos / ((System.nanoTime() - inicio) / 1e9);
+
+            PublishSubject<Double> fuente = PublishSubject.create();
+            store.ingestar("rx", fuente, valor -> valor);
+            int puntosRx = puntos / 4;
+            inicio = System.nanoTime();
+            for (int i = 0; i < puntosRx; i++) {
+                fuente.onNext((double) (i % 1000));
+            }
+            double rx = puntosRx / ((System.nanoTime() - inicio) / 1e9);
+            if (ronda > 0) {
+                System.out.printf("  ronda %d: registrar() %,.0f puntos/s | desde Observable<Double> %,.0f puntos/s%n",
+                    ronda, directo, rx);
+            }
+        }
+    }
+
+    private static void memoriaPorMillon() {
+        int millon = 1_000_000;
+        long base = heapUsado();
+        TimeSeriesStore.Serie serie = new TimeSeriesStore.Serie("memoria", millon);
+        for (int i = 0; i < millon; i++) {
+            serie.registrar(i * 100L, i % 100);
+        }
+        long primitivo = heapUsado() - base;
+
+        base = heapUsado();
+        ArrayDeque<Muestra> cola = new ArrayDeque<>(millon);
+        for (int i = 0; i < millon; i++) {
+            cola.add(new Muestra(i * 100L, (double) (i % 100) + 0.5));
+        }
+        long boxing = heapUsado() - base;
+
+        System.out.printf("  Anillo primitivo + agregados: %,.1f MB (%d bytes/punto)%n",
+            primitivo / 1e6, primitivo / millon);
+        System.out.printf("  ArrayDeque<Muestra(long, Double)>: %,.1f MB (%d bytes/punto)%n",
+            boxing / 1e6, boxing / millon);
+        if (serie.capacidad() + cola.size() == 0) {
+            System.out.println(); // mantiene ambas estructuras vivas hasta aquí
+        }
+    }
+
+    private static long heapUsado() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    record Muestra(long tiempo, Double valor) {
+    }
+
+    // Almacén de series temporales
+
+    static class TimeSeriesStore {
+        private final Map<String, Serie> series = new ConcurrentHashMap<>();
+        private final int capacidadCruda;
+        private final Scheduler reloj;
+
+        TimeSeriesStore(int capacidadCruda, Scheduler reloj) {
+            this.capacidadCruda = capacidadCruda;
+            this.reloj = reloj;
+        }
+
+        Serie serie(String metrica) {
+            return series.computeIfAbsent(metrica, nombre -> new Serie(nombre, capacidadCruda));
+        }
+
+        /**
+         * Cada emisión se guarda con la hora del scheduler; la suscripción es
+         * el único escritor, así que una segunda ingesta de la misma métrica
+         * se rechaza hasta que la primera termine o se cancele
+         */
+        <T> Disposable ingestar(String metrica, Observable<T> fuente, Function<T, Double> valor) {
+            Serie serie = serie(metrica);
+            if (!serie.escritor.compareAndSet(false, true)) {
+                throw new IllegalStateException("La métrica '" + metrica + "' ya tiene una ingesta activa");
+            }
+            return fuente
+                .doFinally(() -> serie.escritor.set(false))
+                .subscribe(elemento ->
+                    serie.registrar(reloj.now(TimeUnit.MILLISECONDS), valor.apply(elemento)));
+        }
+
+        /** Consulta puntual sobre [desde, hasta) con como mucho maxPuntos puntos */
+        Single<Ventana> consultar(String metrica, long desde, long hasta, int maxPuntos) {
+            return Single.fromCallable(() -> {
+                Serie serie = series.get(metrica);
+                if (serie == null) {
+                    throw new IllegalArgumentException(metrica);
+                }
+                return serie.consultar(desde, hasta, maxPuntos);
+            });
+        }
+
+        Single<Ventana> ultimos(String metrica, long duracion, TimeUnit unidad, int maxPuntos) {
+            return Single.defer(() -> {
+                long ahora = reloj.now(TimeUnit.MILLISECONDS) + 1;
+                return consultar(metrica, ahora - unidad.toMillis(duracion), ahora, maxPuntos);
+            });
+        }
+
+        /** La misma consulta repetida cada refresco, para paneles en vivo */
+        Observable<Ventana> observar(String metrica, long duracion, TimeUnit unidad, int maxPuntos,
+                                     long refresco, TimeUnit unidadRefresco) {
+            return Observable.interval(0, refresco, unidadRefresco, reloj)
+                .concatMapSingle(tick -> ultimos(metrica, duracion, unidad, maxPuntos));
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder texto = new StringBuilder("TimeSeriesStore{");
+            series.forEach((nombre, serie) -> texto.append(' ').append(nombre).append('=').append(serie.total()));
+            return texto.append(" }").toString();
+        }
+
+        /**
+         * Una métrica: anillo de muestras crudas más un anillo de agregados por
+         * resolución. Admite un único escritor (las marcas de tiempo no pueden
+         * retroceder) y cualquier número de lectores sin bloqueo
+         */
+        static final class Serie {
+            private static final long[] RESOLUCIONES = {1_000, 10_000, 60_000};
+            private static final int[] RETENCIONES = {3_600, 8_640, 10_080}; // 1h, 24h y 7 días
+
+            private final String nombre;
+            private final long[] tiempos;
+            private final double[] valores;
+            private final int mascara;
+            private final AtomicLong escritos = new AtomicLong();
+            private final AtomicBoolean escritor = new AtomicBoolean();
+            private final Nivel[] niveles = new Nivel[RESOLUCIONES.length];
+            private long ultimo = Long.MIN_VALUE;
+
+            Serie(String nombre, int capacidad) {
+                int potencia = Integer.highestOneBit(Math.max(2, capacidad - 1)) << 1;
+                this.nombre = nombre;
+                this.tiempos = new long[potencia];
+                this.valores = new double[potencia];
+                this.mascara = potencia - 1;
+                for (int i = 0; i < niveles.length; i++) {
+                    niveles[i] = new Nivel(RESOLUCIONES[i], RETENCIONES[i]);
+                }
+            }
+
+            void registrar(long tiempo, double valor) {
+                tiempo = Math.max(tiempo, ultimo);
+                ultimo = tiempo;
+                long n = escritos.get();
+                int i = (int) (n & mascara);
+                tiempos[i] = tiempo;
+                valores[i] = valor;
+                escritos.lazySet(n + 1); // publica la muestra a los lectores
+                for (Nivel nivel : niveles) {
+                    nivel.registrar(tiempo, valor);
+                }
+            }
+
+            int capacidad() {
+                return tiempos.length;
+            }
+
+            long total() {
+                return escritos.get();
+            }
+
+            /** Datos crudos si caben; si no, el nivel más fino que cabe y aún conserva el rango */
+            Ventana consultar(long desde, long hasta, int maxPuntos) {
+                Ventana cruda = crudos(desde, hasta, maxPuntos);
+                if (cruda != null) {
+                    return cruda;
+                }
+                Nivel elegido = niveles[niveles.length - 1];
+                for (Nivel nivel : niveles) {
+                    long cubos = (hasta - desde + nivel.resolucion - 1) / nivel.resolucion;
+                    if (cubos <= maxPuntos && nivel.conserva(desde)) {
+                        elegido = nivel;
+                        break;
+                    }
+                }
+                return elegido.consultar(desde, hasta, this);
+            }
+
+            /** null si el rango no está entero en el anillo o tiene más de maxPuntos muestras */
+            private Ventana crudos(long desde, long hasta, int maxPuntos) {
+                long fin = escritos.get();
+                long inicio = Math.max(0, fin - tiempos.length + 1);
+                if (fin == inicio || (inicio > 0 && tiempos[(int) (inicio & mascara)] > desde)) {
+                    return null;
+                }
+                long primero = buscar(inicio, fin, desde);
+                long ultimoIndice = buscar(primero, fin, hasta);
+                int n = (int) (ultimoIndice - primero);
+                if (n > maxPuntos) {
+                    return null;
+                }
+                long[] t = new long[n];
+                double[] v = new double[n];
+                for (int k = 0; k < n; k++) {
+                    int i = (int) ((primero + k) & mascara);
+                    t[k] = tiempos[i];
+                    v[k] = valores[i];
+                }
+                // si el escritor dio la vuelta mientras copiábamos, descartamos lo pisado
+                int pisadas = (int) Math.max(0, Math.min(n, escritos.get() - tiempos.length + 1 - primero));
+                t = Arrays.copyOfRange(t, pisadas, n);
+                v = Arrays.copyOfRange(v, pisadas, n);
+                return new Ventana(0, t, v, v, v, null);
+            }
+
+            /** Primer índice lógico en [desde, hasta) con tiempo >= objetivo */
+            private long buscar(long desde, long hasta, long objetivo) {
+                long bajo = desde;
+                long alto = hasta;
+                while (bajo < alto) {
+                    long medio = (bajo + alto) >>> 1;
+                    if (tiempos[(int) (medio & mascara)] < objetivo) {
+                        bajo = medio + 1;
+                    } else {
+                        alto = medio;
+                    }
+                }
+                return bajo;
+            }
+
+            /** Agregado de las muestras crudas de [desde, hasta): el cubo aún abierto de un nivel */
+            private boolean agregarCrudos(long desde, long hasta, double[] resultado) {
+                long fin = escritos.get();
+                long inicio = Math.max(0, fin - tiempos.length + 1);
+                long i = buscar(inicio, fin, desde);
+                double min = Double.POSITIVE_INFINITY;
+                double max = Double.NEGATIVE_INFINITY;
+                double suma = 0;
+                long cuenta = 0;
+                for (; i < fin && tiempos[(int) (i & mascara)] < hasta; i++) {
+                    double v = valores[(int) (i & mascara)];
+                    min = Math.min(min, v);
+                    max = Math.max(max, v);
+                    suma += v;
+                    cuenta++;
+                }
+                resultado[0] = min;
+                resultado[1] = max;
+                resultado[2] = cuenta == 0 ? 0 : suma / cuenta;
+                resultado[3] = cuenta;
+                return cuenta > 0;
+            }
+
+            @Override
+            public String toString() {
+                return nombre + "[" + total() + " muestras]";
+            }
+        }
+
+        /**
+         * Agregados a una resolución: el escritor acumula el cubo abierto en
+         * campos propios y al cerrarlo lo copia al anillo y lo publica
+         */
+        static final class Nivel {
+            final long resolucion;
+            private final long[] inicios;
+            private final double[] minimos;
+            private final double[] maximos;
+            private final double[] sumas;
+            private final long[] cuentas;
+            private final int mascara;
+            private final AtomicLong cerrados = new AtomicLong();
+            private long abierto = Long.MIN_VALUE;
+            private double min;
+            private double max;
+            private double suma;
+            private long cuenta;
+
+            Nivel(long resolucion, int retencion) {
+                int potencia = Integer.highestOneBit(Math.max(2, retencion - 1)) << 1;
+                this.resolucion = resolucion;
+                this.inicios = new long[potencia];
+                this.minimos = new double[potencia];
+                this.maximos = new double[potencia];
+                this.sumas = new double[potencia];
+                this.cuentas = new long[potencia];
+                this.mascara = potencia - 1;
+            }
+
+            void registrar(long tiempo, double valor) {
+                long cubo = tiempo - Math.floorMod(tiempo, resolucion);
+                if (cubo != abierto) {
+                    if (cuenta > 0) {
+                        cerrar();
+                    }
+                    abierto = cubo;
+                    min = Double.POSITIVE_INFINITY;
+                    max = Double.NEGATIVE_INFINITY;
+                    suma = 0;
+                    cuenta = 0;
+                }
+                min = Math.min(min, valor);
+                max = Math.max(max, valor);
+                suma += valor;
+                cuenta++;
+            }
+
+            private void cerrar() {
+                long n = cerrados.get();
+                int i = (int) (n & mascara);
+                inicios[i] = abierto;
+                minimos[i] = min;
+                maximos[i] = max;
+                sumas[i] = suma;
+                cuentas[i] = cuenta;
+                cerrados.lazySet(n + 1);
+            }
+
+            boolean conserva(long desde) {
+                long fin = cerrados.get();
+                long inicio = Math.max(0, fin - inicios.length + 1);
+                return fin > inicio && (inicio == 0 || inicios[(int) (inicio & mascara)] <= desde);
+            }
+
+            /** Cubos cerrados del rango más el cubo abierto, calculado desde los datos crudos */
+            Ventana consultar(long desde, long hasta, Serie serie) {
+                long fin = cerrados.get();
+                long inicio = Math.max(0, fin - inicios.length + 1);
+                long primero = inicio;
+                while (primero < fin && inicios[(int) (primero & mascara)] < desde - Math.floorMod(desde, resolucion)) {
+                    primero++;
+                }
+                int maximo = (int) (fin - primero) + 1;
+                long[] t = new long[maximo];
+                double[] mins = new double[maximo];
+                double[] maxs = new double[maximo];
+                double[] medias = new double[maximo];
+                long[] n = new long[maximo];
+                int k = 0;
+                long siguiente = Long.MIN_VALUE;
+                for (long c = primero; c < fin; c++) {
+                    int i = (int) (c & mascara);
+                    if (inicios[i] >= hasta) {
+                        break;
+                    }
+                    t[k] = inicios[i];
+                    mins[k] = minimos[i];
+                    maxs[k] = maximos[i];
+                    medias[k] = sumas[i] / cuentas[i];
+                    n[k] = cuentas[i];
+                    siguiente = inicios[i] + resolucion;
+                    k++;
+                }
+                // como en los crudos: si el escritor dio la vuelta mientras copiábamos, descartamos lo pisado
+                int pisados = (int) Math.max(0, Math.min(k, cerrados.get() - inicios.length + 1 - primero));
+                if (pisados > 0) {
+                    k -= pisados;
+                    System.arraycopy(t, pisados, t, 0, k);
+                    System.arraycopy(mins, pisados, mins, 0, k);
+                    System.arraycopy(maxs, pisados, maxs, 0, k);
+                    System.arraycopy(medias, pisados, medias, 0, k);
+                    System.arraycopy(n, pisados, n, 0, k);
+                }
+                double[] abiertoActual = new double[4];
+                long desdeAbierto = Math.max(siguiente, desde);
+                if (desdeAbierto < hasta && serie.agregarCrudos(desdeAbierto, hasta, abiertoActual)) {
+                    t[k] = desdeAbierto - Math.floorMod(desdeAbierto, resolucion);
+                    mins[k] = abiertoActual[0];
+                    maxs[k] = abiertoActual[1];
+                    medias[k] = abiertoActual[2];
+                    n[k] = (long) abiertoActual[3];
+                    k++;
+                }
+                return new Ventana(resolucion, Arrays.copyOf(t, k), Arrays.copyOf(mins, k),
+                    Arrays.copyOf(maxs, k), Arrays.copyOf(medias, k), Arrays.copyOf(n, k));
+            }
+        }
+    }
+
+    /** Resultado en arrays paralelos; resolución 0 = muestras crudas */
+    static final class Ventana {
+        final long resolucion;
+        final long[] tiempos;
+        final double[] min;
+        final double[] max;
+        final double[] media;
+        final long[] cuentas;
+
+        Ventana(long resolucion, long[] tiempos, double[] min, double[] max, double[] media, long[] cuentas) {
+            this.resolucion = resolucion;
+            this.tiempos = tiempos;
+            this.min = min;
+            this.max = max;
+            this.media = media;
+            this.cuentas = cuentas;
+        }
+
+        int tamano() {
+            return tiempos.length;
+        }
+
+        @Override
+        public String toString() {
+            String res = resolucion == 0 ? "crudo" : resolucion >= 60_000 ? resolucion / 60_000 + "m" : resolucion / 1000 + "s";
+            double mediaTotal = Arrays.stream(media).average().orElse(Double.NaN);
+            return String.format("Ventana{resolución=%s, puntos=%d, media=%.1f}", res, tamano(), mediaTotal);
+        }
+    }
+}
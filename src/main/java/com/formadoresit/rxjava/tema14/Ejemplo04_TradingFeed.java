@@ -0,0 +1,449 @@
+package com.formadoresit.rxjava.tema14;
+
+import io.reactivex.Flowable;
+import io.reactivex.Observable;
+import io.reactivex.Scheduler;
+import io.reactivex.disposables.CompositeDisposable;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.processors.BehaviorProcessor;
+import io.reactivex.processors.FlowableProcessor;
+import io.reactivex.schedulers.Schedulers;
+import io.reactivex.subjects.PublishSubject;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * TEMA 14: Aplicaciones Prácticas
+ * Ejemplo 04: Feed de mercado con libro de órdenes y conflación
+ *
+ * El TradingSystem del Tema 6 (un PublishSubject<Double> sin símbolo)
+ * convertido en un motor de feed: un libro de precios por símbolo sobre
+ * arrays primitivos, mejor compra/venta y VWAP calculados al vuelo, y un
+ * reparto multicast en el que cada suscriptor recibe el último estado del
+ * libro en lugar de una cola de ticks atrasados
+ */
+public class Ejemplo04_TradingFeed {
+
+    public static void main(String[] args) throws InterruptedException {
+        System.out.println("=== Ejemplo 04: Feed de Mercado ===\n");
+
+        // 1. Libro de precios y VWAP
+        System.out.println("--- Caso 1: Libro de precios por símbolo ---");
+        try (FeedEngine motor = new FeedEngine(new String[] {"ACME", "GLOBEX"}, 10_000, 1_000)) {
+            Disposable suscripcion = motor.libro("ACME")
+                .subscribe(libro -> System.out.println("  " + libro));
+            Tick[] ticks = {
+                Tick.compra(0, 10_050, 300),
+                Tick.venta(0, 10_075, 200),
+                Tick.compra(0, 10_060, 100),
+                Tick.operacion(0, 10_070, 50),
+                Tick.operacion(0, 10_072, 150),
+                Tick.compra(0, 10_060, 0), // se retira el mejor nivel de compra
+                Tick.compra(1, 5_000, 10)  // otro símbolo: no llega a este suscriptor
+            };
+            for (Tick tick : ticks) {
+                motor.aplicar(tick);
+                Thread.sleep(50); // con pausas se ve cada libro; sin ellas se fundirían
+            }
+            Thread.sleep(100);
+            suscripcion.dispose();
+        }
+
+        // 2. Consumidor lento: cola sin límite vs conflación
+        System.out.println("\n--- Caso 2: Consumidor lento a 200k ticks/s durante 2s ---");
+        consumidorLento(false);
+        consumidorLento(true);
+
+        // 3. Carga: 1M ticks/s repartidos a miles de suscriptores
+        int suscriptores = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int ticksPorSegundo = args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000;
+        System.out.printf("%n--- Caso 3: %,d ticks/s, 100 símbolos, %,d suscriptores ---%n", ticksPorSegundo, suscriptores);
+        carga(100, suscriptores, ticksPorSegundo, 5);
+
+        System.out.println("\n=== CONCEPTOS CLAVE ===");
+        System.out.println("• Libro sobre long[] indexado por precio: sin mapas ni boxing");
+        System.out.println("• Mejor compra/venta y VWAP se actualizan con cada tick, no se recalculan");
+        System.out.println("• Un único hilo escritor: el libro no necesita locks");
+        System.out.println("• El reparto publica el último estado de cada símbolo, no cada tick");
+        System.out.println("• onBackpressureLatest por suscriptor: los lentos no acumulan cola");
+    }
+
+    /** El mismo consumidor lento con una cola por tick o con el último libro */
+    private static void consumidorLento(boolean conflar) throws InterruptedException {
+        Latencias latencias = new Latencias();
+        LongAdder recibidos = new LongAdder();
+        try (FeedEngine motor = new FeedEngine(new String[] {"ACME"}, 10_000, 1_000)) {
+            Disposable consumidor;
+            Disposable ticks;
+            if (conflar) {
+                consumidor = motor.libro("ACME")
+                    .observeOn(Schedulers.computation(), false, 1)
+                    .subscribe(libro -> consumir(libro.nanos, latencias, recibidos));
+                ticks = generar(motor, 1, 200_000);
+            } else {
+                // como el TradingSystem original: un subject al que llega cada tick
+                PublishSubject<Tick> precios = PublishSubject.create();
+                consumidor = precios
+                    .observeOn(Schedulers.computation())
+                    .subscribe(tick -> consumir(tick.nanos, latencias, recibidos));
+                ticks = generar(precios::onNext, 1, 200_000);
+            }
+            Thread.sleep(2000);
+            ticks.dispose();
+            consumidor.dispose();
+        }
+        System.out.printf("  %-28s %,6d recibidos, latencia p50=%,dµs p99=%,dµs%n",
+            conflar ? "conflación (último libro):" : "cola por tick (Tema 6):",
+            recibidos.sum(), latencias.percentil(50), latencias.percentil(99));
+    }
+
+    private static void consumir(long nanos, Latencias latencias, LongAdder recibidos) {
+        latencias.registrar(System.nanoTime() - nanos);
+        recibidos.increment();
+        LockSupport.parkNanos(1_000_000); // 1ms por actualización: un cliente lento
+    }
+
+    private static void carga(int simbolos, int suscriptores, int ticksPorSegundo, int segundos) throws InterruptedException {
+        String[] nombres = new String[simbolos];
+        for (int i = 0; i < simbolos; i++) {
+            nombres[i] = "SIM" + i;
+        }
+        Latencias latencias = new Latencias();
+        LongAdder entregas = new LongAdder();
+        try (FeedEngine motor = new FeedEngine(nombres, 10_000, 1_000)) {
+            CompositeDisposable clientes = new CompositeDisposable();
+            for (int i = 0; i < suscriptores; i++) {
+                clientes.add(motor.libro(nombres[i % simbolos])
+                    .observeOn(Schedulers.computation(), false, 1)
+                    .subscribe(libro -> {
+                        latencias.registrar(System.nanoTime() - libro.nanos);
+                        entregas.increment();
+                    }));
+            }
+            long aplicadosAntes = motor.aplicados();
+            long publicadosAntes = motor.publicados();
+            long inicio = System.nanoTime();
+            Disposable ticks = generar(motor, simbolos, ticksPorSegundo);
+            Thread.sleep(segundos * 1000L);
+            ticks.dispose();
+            double duracion = (System.nanoTime() - inicio) / 1e9;
+            clientes.dispose();
+
+            System.out.printf("  ingesta: %,.0f ticks/s; publicados %,.0f libros/s; entregas %,.0f/s%n",
+                (motor.aplicados() - aplicadosAntes) / duracion,
+                (motor.publicados() - publicadosAntes) / duracion,
+                entregas.sum() / duracion);
+            System.out.printf("  latencia tick -> suscriptor: p50=%,dµs p99=%,dµs p99.9=%,dµs%n",
+                latencias.percentil(50), latencias.percentil(99), latencias.percentil(99.9));
+        }
+    }
+
+    /** Genera ticks aleatorios a ritmo fijo, en lotes de 1ms, en el hilo escritor */
+    private static Disposable generar(TickSink destino, int simbolos, int ticksPorSegundo) {
+        int porLote = Math.max(1, ticksPorSegundo / 1000);
+        ExecutorService hilo = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "generador-ticks");
+            t.setDaemon(true);
+            return t;
+        });
+        Scheduler generador = Schedulers.from(hilo);
+        return Observable.interval(1, TimeUnit.MILLISECONDS, generador)
+            .doFinally(hilo::shutdown)
+            .subscribe(lote -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < porLote; i++) {
+                    int simbolo = random.nextInt(simbolos);
+                    long precio = 10_000 + random.nextInt(-200, 200);
+                    int tipo = random.nextInt(10);
+                    destino.aplicar(tipo < 2
+                        ? Tick.operacion(simbolo, precio, 1 + random.nextInt(100))
+                        : precio < 10_000 + (tipo - 6) * 20
+                            ? Tick.compra(simbolo, precio, random.nextInt(1000))
+                            : Tick.venta(simbolo, precio, random.nextInt(1000)));
+                }
+            });
+    }
+
+    // Modelo
+
+    interface TickSink {
+        void aplicar(Tick tick);
+    }
+
+    /** Precios en ticks de 0,01; el instante de ingesta viaja con el tick */
+    static final class Tick {
+        static final byte COMPRA = 0;
+        static final byte VENTA = 1;
+        static final byte OPERACION = 2;
+
+        final int simbolo;
+        final byte tipo;
+        final long precio;
+        final long cantidad;
+        final long nanos;
+
+        private Tick(int simbolo, byte tipo, long precio, long cantidad) {
+            this.simbolo = simbolo;
+            this.tipo = tipo;
+            this.precio = precio;
+            this.cantidad = cantidad;
+            this.nanos = System.nanoTime();
+        }
+
+        /** Cantidad total en ese nivel de compra (0 lo retira) */
+        static Tick compra(int simbolo, long precio, long cantidad) {
+            return new Tick(simbolo, COMPRA, precio, cantidad);
+        }
+
+        static Tick venta(int simbolo, long precio, long cantidad) {
+            return new Tick(simbolo, VENTA, precio, cantidad);
+        }
+
+        static Tick operacion(int simbolo, long precio, long cantidad) {
+            return new Tick(simbolo, OPERACION, precio, cantidad);
+        }
+    }
+
+    /** Estado inmutable del libro tras un tick: lo que ven los suscriptores */
+    static final class BookSnapshot {
+        final String simbolo;
+        final long secuencia;
+        final long mejorCompra;
+        final long cantidadCompra;
+        final long mejorVenta;
+        final long cantidadVenta;
+        final long ultimo;
+        final double vwap;
+        final long nanos;
+
+        BookSnapshot(String simbolo, long secuencia, long mejorCompra, long cantidadCompra, long mejorVenta,
+                     long cantidadVenta, long ultimo, double vwap, long nanos) {
+            this.simbolo = simbolo;
+            this.secuencia = secuencia;
+            this.mejorCompra = mejorCompra;
+            this.cantidadCompra = cantidadCompra;
+            this.mejorVenta = mejorVenta;
+            this.cantidadVenta = cantidadVenta;
+            this.ultimo = ultimo;
+            this.vwap = vwap;
+            this.nanos = nanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s #%d compra %s x %d | venta %s x %d | último %s | vwap %.4f",
+                simbolo, secuencia, precio(mejorCompra), cantidadCompra, precio(mejorVenta), cantidadVenta,
+                precio(ultimo), vwap / 100);
+        }
+
+        private static String precio(long ticks) {
+            return ticks < 0 ? "-" : String.format("%d.%02d", ticks / 100, ticks % 100);
+        }
+    }
+
+    /**
+     * Niveles de precio en arrays indexados por (precio - base): actualizar un
+     * nivel es O(1) y la mejor compra/venta sólo se recorre cuando se vacía
+     */
+    static final class PriceLadder {
+        private final long base;
+        private final long[] compras;
+        private final long[] ventas;
+        private int mejorCompra = -1;
+        private int mejorVenta;
+        private long ultimo = -1;
+        private long sumaImporte;
+        private long sumaCantidad;
+
+        PriceLadder(long centro, int niveles) {
+            this.base = centro - niveles / 2;
+            this.compras = new long[niveles];
+            this.ventas = new long[niveles];
+            this.mejorVenta = niveles;
+        }
+
+        void aplicar(Tick tick) {
+            if (tick.tipo == Tick.OPERACION) {
+                // una operación cuenta para último y VWAP aunque caiga fuera de la banda
+                ultimo = tick.precio;
+                sumaImporte += tick.precio * tick.cantidad;
+                sumaCantidad += tick.cantidad;
+                return;
+            }
+            int i = (int) (tick.precio - base);
+            if (i < 0 || i >= compras.length) {
+                return; // fuera de la banda de precios del libro
+            }
+            switch (tick.tipo) {
+                case Tick.COMPRA -> {
+                    compras[i] = tick.cantidad;
+                    if (tick.cantidad > 0 && i > mejorCompra) {
+                        mejorCompra = i;
+                    } else if (tick.cantidad == 0 && i == mejorCompra) {
+                        while (mejorCompra >= 0 && compras[mejorCompra] == 0) {
+                            mejorCompra--;
+                        }
+                    }
+                }
+                case Tick.VENTA -> {
+                    ventas[i] = tick.cantidad;
+                    if (tick.cantidad > 0 && i < mejorVenta) {
+                        mejorVenta = i;
+                    } else if (tick.cantidad == 0 && i == mejorVenta) {
+                        while (mejorVenta < ventas.length && ventas[mejorVenta] == 0) {
+                            mejorVenta++;
+                        }
+                    }
+                }
+            }
+        }
+
+        BookSnapshot snapshot(String simbolo, long secuencia, long nanos) {
+            boolean hayCompra = mejorCompra >= 0;
+            boolean hayVenta = mejorVenta < ventas.length;
+            return new BookSnapshot(simbolo, secuencia,
+                hayCompra ? base + mejorCompra : -1, hayCompra ? compras[mejorCompra] : 0,
+                hayVenta ? base + mejorVenta : -1, hayVenta ? ventas[mejorVenta] : 0,
+                ultimo, sumaCantidad == 0 ? Double.NaN : (double) sumaImporte / sumaCantidad, nanos);
+        }
+    }
+
+    // Motor del feed
+
+    /**
+     * Un hilo escritor aplica los ticks a los libros y deja el último estado
+     * de cada símbolo en un slot; un hilo de reparto publica los símbolos
+     * que han cambiado. Si el reparto tarda, los ticks intermedios se
+     * funden en el último libro en lugar de encolarse
+     */
+    static final class FeedEngine implements TickSink, AutoCloseable {
+        private final String[] simbolos;
+        private final PriceLadder[] libros;
+        private final long[] secuencias;
+        private final AtomicReferenceArray<BookSnapshot> ultimos;
+        private final BookSnapshot[] publicadosPorSimbolo;
+        private final List<FlowableProcessor<BookSnapshot>> procesadores;
+        private final AtomicBoolean pendiente = new AtomicBoolean();
+        private final AtomicLongArray contadores = new AtomicLongArray(2);
+        private final Thread reparto;
+        private volatile boolean activo = true;
+
+        FeedEngine(String[] simbolos, long precioCentral, int niveles) {
+            this.simbolos = simbolos;
+            this.libros = new PriceLadder[simbolos.length];
+            this.secuencias = new long[simbolos.length];
+            this.ultimos = new AtomicReferenceArray<>(simbolos.length);
+            this.publicadosPorSimbolo = new BookSnapshot[simbolos.length];
+            this.procesadores = new ArrayList<>(simbolos.length);
+            for (int i = 0; i < simbolos.length; i++) {
+                libros[i] = new PriceLadder(precioCentral, niveles);
+                procesadores.add(BehaviorProcessor.<BookSnapshot>create().toSerialized());
+            }
+            this.reparto = new Thread(this::repartir, "reparto-feed");
+            reparto.setDaemon(true);
+            reparto.start();
+        }
+
+        /**
+         * Último libro publicado del símbolo y sus cambios: el BehaviorProcessor
+         * entrega el actual al suscribirse sin huecos con los siguientes, y
+         * cada suscriptor conflaciona por su cuenta
+         */
+        Flowable<BookSnapshot> libro(String simbolo) {
+            return procesadores.get(indice(simbolo)).onBackpressureLatest();
+        }
+
+        /** Sólo desde el hilo escritor */
+        @Override
+        public void aplicar(Tick tick) {
+            int s = tick.simbolo;
+            libros[s].aplicar(tick);
+            ultimos.lazySet(s, libros[s].snapshot(simbolos[s], ++secuencias[s], tick.nanos));
+            contadores.lazySet(0, contadores.get(0) + 1);
+            if (!pendiente.getAndSet(true)) {
+                LockSupport.unpark(reparto);
+            }
+        }
+
+        private void repartir() {
+            while (activo) {
+                if (!pendiente.getAndSet(false)) {
+                    LockSupport.park(this);
+                    continue;
+                }
+                for (int s = 0; s < simbolos.length; s++) {
+                    BookSnapshot actual = ultimos.get(s);
+                    if (actual != null && actual != publicadosPorSimbolo[s]) {
+                        publicadosPorSimbolo[s] = actual;
+                        procesadores.get(s).onNext(actual);
+                        contadores.lazySet(1, contadores.get(1) + 1);
+                    }
+                }
+            }
+        }
+
+        long aplicados() {
+            return contadores.get(0);
+        }
+
+        long publicados() {
+            return contadores.get(1);
+        }
+
+        private int indice(String simbolo) {
+            for (int i = 0; i < simbolos.length; i++) {
+                if (simbolos[i].equals(simbolo)) {
+                    return i;
+                }
+            }
+            throw new IllegalArgumentException("Símbolo desconocido: " + simbolo);
+        }
+
+        @Override
+        public void close() {
+            activo = false;
+            LockSupport.unpark(reparto);
+            for (FlowableProcessor<BookSnapshot> procesador : procesadores) {
+                procesador.onComplete();
+            }
+        }
+    }
+
+    /** Histograma de latencias en µs con cubos log2 de 16 subdivisiones */
+    static final class Latencias {
+        private final AtomicLongArray cubos = new AtomicLongArray(64 * 16);
+
+        void registrar(long nanos) {
+            long micros = Math.max(1, nanos / 1000);
+            int exponente = 63 - Long.numberOfLeadingZeros(micros);
+            int sub = exponente < 4 ? 0 : (int) ((micros >>> (exponente - 4)) & 15);
+            cubos.incrementAndGet(exponente * 16 + sub);
+        }
+
+        long percentil(double p) {
+            long total = 0;
+            for (int i = 0; i < cubos.length(); i++) {
+                total += cubos.get(i);
+            }
+            long objetivo = (long) Math.ceil(total * p / 100);
+            long acumulado = 0;
+            for (int i = 0; i < cubos.length(); i++) {
+                acumulado += cubos.get(i);
+                if (acumulado >= objetivo && acumulado > 0) {
+                    int exponente = i / 16;
+                    return exponente < 4 ? 1L << exponente : (16L + i % 16) << (exponente - 4);
+                }
+            }
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,530 @@
+package com.formadoresit.rxjava.tema14;
+
+import io.reactivex.BackpressureStrategy;
+import io.reactivex.Flowable;
+import io.reactivex.FlowableEmitter;
+import io.reactivex.Observable;
+import io.reactivex.Single;
+import io.reactivex.disposables.CompositeDisposable;
+import io.reactivex.disposables.Disposable;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * TEMA 14: Aplicaciones Prácticas
+ * Ejemplo 05: Índice espacial con geocercas reactivas
+ *
+ * El LocationSystem del Tema 6 guarda una única ubicación en un
+ * BehaviorSubject. Aquí se siguen cientos de miles de entidades en una
+ * rejilla de celdas: mover una entidad sólo toca su celda de origen y de
+ * destino, y las geocercas ("entra en el polígono X", "a menos de R metros
+ * de P") sólo se evalúan para las entidades de las celdas que cubren
+ */
+public class Ejemplo05_IndiceEspacial {
+
+    private static final double METROS_POR_GRADO = 111_320;
+
+    public static void main(String[] args) {
+        System.out.println("=== Ejemplo 05: Índice Espacial ===\n");
+
+        // 1. Geocercas sobre repartidores en Madrid
+        System.out.println("--- Caso 1: Geocercas y vecinos más cercanos ---");
+        SpatialIndex indice = new SpatialIndex(1000, 0.005);
+        Forma sol = Forma.poligono(
+            40.4180, -3.7050,
+            40.4180, -3.7020,
+            40.4155, -3.7020,
+            40.4155, -3.7050);
+        Disposable enSol = indice.geocerca(sol)
+            .subscribe(evento -> System.out.println("  [PUERTA DEL SOL] " + evento));
+        Disposable cercaAtocha = indice.enRadio(40.4066, -3.6892, 500)
+            .subscribe(evento -> System.out.println("  [ATOCHA 500m]    " + evento));
+
+        indice.ingestar(Observable.just(
+            new Posicion(1, 40.4200, -3.7100),
+            new Posicion(2, 40.4100, -3.6950),
+            new Posicion(3, 40.4500, -3.6900),
+            new Posicion(1, 40.4168, -3.7038),   // entra en Sol
+            new Posicion(2, 40.4080, -3.6900),   // entra en el radio de Atocha
+            new Posicion(1, 40.4120, -3.6960),   // sale de Sol
+            new Posicion(1, 40.4070, -3.6895))); // entra en el radio de Atocha
+        indice.dentro(Forma.circulo(40.4066, -3.6892, 500))
+            .subscribe(ids -> System.out.println("  Ahora a menos de 500m de Atocha: " + Arrays.toString(ids)));
+        indice.masCercanos(40.4168, -3.7038, 2)
+            .subscribe(ids -> System.out.println("  Los 2 más cercanos a Sol: " + Arrays.toString(ids)));
+        enSol.dispose();
+        cercaAtocha.dispose();
+
+        // 2. Benchmark según el número de entidades
+        int maximo = args.length > 0 ? Integer.parseInt(args[0]) : 500_000;
+        System.out.println("\n--- Caso 2: Actualizaciones y consultas según el número de entidades ---");
+        System.out.println("  (área de 0,5° x 0,5°, celdas de 0,005°, 200 geocercas de 300m, pasos de ~20m)");
+        System.out.printf("  %10s %14s %10s %18s %18s %18s%n",
+            "entidades", "updates/s", "eventos", "radio 1km p50/p99", "10 vecinos p50/p99", "recorrido completo");
+        for (int entidades : new int[] {10_000, 100_000, 500_000}) {
+            if (entidades <= maximo) {
+                benchmark(entidades);
+            }
+        }
+
+        System.out.println("\n=== CONCEPTOS CLAVE ===");
+        System.out.println("• Rejilla de celdas: mover una entidad sólo toca su celda de origen y destino");
+        System.out.println("• Posiciones empaquetadas en un long por entidad: sin un objeto por update");
+        System.out.println("• Cada celda conoce sus geocercas: sólo se evalúan las afectadas");
+        System.out.println("• Las consultas recorren las celdas que cubren la forma, no todas las entidades");
+        System.out.println("• Flowable.create con setCancellable: al cancelar se quita la geocerca");
+    }
+
+    private static void benchmark(int entidades) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        double latBase = 40.2;
+        double lonBase = -3.95;
+        SpatialIndex indice = new SpatialIndex(entidades, 0.005);
+        for (int i = 0; i < entidades; i++) {
+            indice.actualizar(i, latBase + random.nextDouble(0.5), lonBase + random.nextDouble(0.5));
+        }
+        LongAdder eventos = new LongAdder();
+        CompositeDisposable geocercas = new CompositeDisposable();
+        for (int i = 0; i < 200; i++) {
+            geocercas.add(indice.enRadio(latBase + random.nextDouble(0.5), lonBase + random.nextDouble(0.5), 300)
+                .subscribe(evento -> eventos.increment()));
+        }
+
+        // updates: paseo aleatorio de ~20m durante un segundo
+        long updates = 0;
+        long inicio = System.nanoTime();
+        long fin = inicio + 1_000_000_000L;
+        while (System.nanoTime() < fin) {
+            for (int i = 0; i < 1000; i++) {
+                int id = random.nextInt(entidades);
+                long posicion = indice.posicion(id);
+                indice.actualizar(id,
+                    SpatialIndex.lat(posicion) + random.nextDouble(-0.0002, 0.0002),
+                    SpatialIndex.lon(posicion) + random.nextDouble(-0.0002, 0.0002));
+            }
+            updates += 1000;
+        }
+        double porSegundo = updates / ((System.nanoTime() - inicio) / 1e9);
+
+        // consultas: radio de 1km y 10 vecinos más cercanos
+        long[] radio = new long[2000];
+        long[] vecinos = new long[2000];
+        for (int i = 0; i < radio.length; i++) {
+            double lat = latBase + 0.05 + random.nextDouble(0.4);
+            double lon = lonBase + 0.05 + random.nextDouble(0.4);
+            long t0 = System.nanoTime();
+            indice.dentroAhora(Forma.circulo(lat, lon, 1000));
+            long t1 = System.nanoTime();
+            indice.masCercanosAhora(lat, lon, 10);
+            radio[i] = t1 - t0;
+            vecinos[i] = System.nanoTime() - t1;
+        }
+
+        // referencia: la misma consulta de radio recorriendo todas las entidades
+        Forma circulo = Forma.circulo(latBase + 0.25, lonBase + 0.25, 1000);
+        long t0 = System.nanoTime();
+        int repeticiones = 20;
+        for (int r = 0; r < repeticiones; r++) {
+            int encontradas = 0;
+            for (int id = 0; id < entidades; id++) {
+                long posicion = indice.posicion(id);
+                if (circulo.contiene(SpatialIndex.lat(posicion), SpatialIndex.lon(posicion))) {
+                    encontradas++;
+                }
+            }
+            if (encontradas < 0) {
+                System.out.println(encontradas);
+            }
+        }
+        long recorrido = (System.nanoTime() - t0) / repeticiones;
+        geocercas.dispose();
+
+        System.out.printf("  %,10d %,14.0f %,10d %,8dµs/%,6dµs %,8dµs/%,6dµs %,15dµs%n",
+            entidades, porSegundo, eventos.sum(),
+            percentil(radio, 50) / 1000, percentil(radio, 99) / 1000,
+            percentil(vecinos, 50) / 1000, percentil(vecinos, 99) / 1000,
+            recorrido / 1000);
+    }
+
+    private static long percentil(long[] muestras, double p) {
+        long[] ordenadas = muestras.clone();
+        Arrays.sort(ordenadas);
+        return ordenadas[(int) Math.min(ordenadas.length - 1, Math.ceil(ordenadas.length * p / 100) - 1)];
+    }
+
+    /** Distancia en metros (aproximación equirectangular, suficiente a escala de ciudad) */
+    static double distancia(double lat1, double lon1, double lat2, double lon2) {
+        double x = (lon2 - lon1) * Math.cos(Math.toRadians((lat1 + lat2) / 2));
+        double y = lat2 - lat1;
+        return Math.sqrt(x * x + y * y) * METROS_POR_GRADO;
+    }
+
+    // Modelo
+
+    record Posicion(int entidad, double lat, double lon) {
+    }
+
+    record EventoGeocerca(int entidad, boolean entra, double lat, double lon) {
+        @Override
+        public String toString() {
+            return String.format("entidad %d %s (%.4f, %.4f)", entidad, entra ? "ENTRA" : "SALE", lat, lon);
+        }
+    }
+
+    /** Zona con su caja envolvente {minLat, minLon, maxLat, maxLon} */
+    interface Forma {
+        boolean contiene(double lat, double lon);
+
+        double[] caja();
+
+        static Forma circulo(double lat, double lon, double metros) {
+            double dLat = metros / METROS_POR_GRADO;
+            double dLon = dLat / Math.cos(Math.toRadians(lat));
+            double[] caja = {lat - dLat, lon - dLon, lat + dLat, lon + dLon};
+            return new Forma() {
+                @Override
+                public boolean contiene(double otraLat, double otraLon) {
+                    return distancia(lat, lon, otraLat, otraLon) <= metros;
+                }
+
+                @Override
+                public double[] caja() {
+                    return caja;
+                }
+            };
+        }
+
+        /** Vértices como pares lat, lon */
+        static Forma poligono(double... vertices) {
+            if (vertices.length < 6 || vertices.length % 2 != 0) {
+                throw new IllegalArgumentException("Un polígono necesita al menos 3 pares lat, lon");
+            }
+            double[] caja = {Double.MAX_VALUE, Double.MAX_VALUE, -Double.MAX_VALUE, -Double.MAX_VALUE};
+            for (int i = 0; i < vertices.length; i += 2) {
+                caja[0] = Math.min(caja[0], vertices[i]);
+                caja[1] = Math.min(caja[1], vertices[i + 1]);
+                caja[2] = Math.max(caja[2], vertices[i]);
+                caja[3] = Math.max(caja[3], vertices[i + 1]);
+            }
+            return new Forma() {
+                @Override
+                public boolean contiene(double lat, double lon) {
+                    if (lat < caja[0] || lat > caja[2] || lon < caja[1] || lon > caja[3]) {
+                        return false;
+                    }
+                    // ray casting: número impar de cruces = dentro
+                    boolean dentro = false;
+                    for (int i = 0, j = vertices.length - 2; i < vertices.length; j = i, i += 2) {
+                        double latI = vertices[i], lonI = vertices[i + 1];
+                        double latJ = vertices[j], lonJ = vertices[j + 1];
+                        if ((latI > lat) != (latJ > lat)
+                            && lon < (lonJ - lonI) * (lat - latI) / (latJ - latI) + lonI) {
+                            dentro = !dentro;
+                        }
+                    }
+                    return dentro;
+                }
+
+                @Override
+                public double[] caja() {
+                    return caja;
+                }
+            };
+        }
+    }
+
+    // Índice
+
+    /**
+     * Rejilla de celdas de tamaño fijo en grados. Cada entidad (id de 0 a
+     * capacidad - 1) guarda su posición empaquetada en un long y el índice
+     * de su celda; cada celda guarda sus miembros en un int[] y las
+     * geocercas que la cubren. Las actualizaciones de una misma entidad se
+     * serializan con un lock por franja de ids; las de entidades distintas
+     * sólo coinciden en el lock de la celda que comparten
+     */
+    static final class SpatialIndex {
+        private static final long SIN_POSICION = Long.MIN_VALUE;
+        private static final long SIN_CELDA = -1;
+        private static final Vigilante[] SIN_VIGILANTES = new Vigilante[0];
+
+        private final double tamCelda;
+        private final int columnas;
+        private final AtomicLongArray posiciones;
+        private final long[] celdas;
+        private final int[] indicesEnCelda;
+        private final Object[] franjas = new Object[256];
+        private final ConcurrentHashMap<Long, Celda> mapa = new ConcurrentHashMap<>();
+        private final AtomicInteger registradas = new AtomicInteger();
+
+        SpatialIndex(int capacidad, double tamCelda) {
+            this.tamCelda = tamCelda;
+            this.columnas = (int) Math.ceil(360 / tamCelda);
+            this.posiciones = new AtomicLongArray(capacidad);
+            this.celdas = new long[capacidad];
+            this.indicesEnCelda = new int[capacidad];
+            Arrays.fill(celdas, SIN_CELDA);
+            for (int i = 0; i < capacidad; i++) {
+                posiciones.lazySet(i, SIN_POSICION);
+            }
+            for (int i = 0; i < franjas.length; i++) {
+                franjas[i] = new Object();
+            }
+        }
+
+        /** Aplica un stream de posiciones (p. ej. el de cada LocationSystem) */
+        Disposable ingestar(Observable<Posicion> fuente) {
+            return fuente.subscribe(posicion -> actualizar(posicion.entidad(), posicion.lat(), posicion.lon()));
+        }
+
+        void actualizar(int id, double lat, double lon) {
+            long nueva = empaquetar(lat, lon);
+            long celdaNueva = clave(fila(lat), columna(lon));
+            synchronized (franjas[id & (franjas.length - 1)]) {
+                long anterior = posiciones.get(id);
+                long celdaAnterior = celdas[id];
+                posiciones.set(id, nueva);
+                Celda destino = mapa.computeIfAbsent(celdaNueva, clave -> new Celda());
+                if (celdaAnterior == celdaNueva) {
+                    avisar(id, anterior, nueva, destino.vigilantes, SIN_VIGILANTES);
+                    return;
+                }
+                Celda origen = celdaAnterior == SIN_CELDA ? null : mapa.get(celdaAnterior);
+                if (origen != null) {
+                    origen.quitar(id, indicesEnCelda);
+                } else {
+                    registradas.incrementAndGet();
+                }
+                destino.anadir(id, indicesEnCelda);
+                celdas[id] = celdaNueva;
+                avisar(id, anterior, nueva, origen == null ? SIN_VIGILANTES : origen.vigilantes, destino.vigilantes);
+            }
+        }
+
+        /** Eventos de entrada/salida de la forma; sólo la evalúan las celdas que cubre */
+        Flowable<EventoGeocerca> geocerca(Forma forma) {
+            return Flowable.create(emisor -> {
+                Vigilante vigilante = new Vigilante(forma, emisor.serialize());
+                long[] cubiertas = celdasCubiertas(forma.caja());
+                for (long clave : cubiertas) {
+                    mapa.computeIfAbsent(clave, k -> new Celda()).anadir(vigilante);
+                }
+                emisor.setCancellable(() -> {
+                    for (long clave : cubiertas) {
+                        mapa.get(clave).quitar(vigilante);
+                    }
+                });
+            }, BackpressureStrategy.BUFFER);
+        }
+
+        Flowable<EventoGeocerca> enRadio(double lat, double lon, double metros) {
+            return geocerca(Forma.circulo(lat, lon, metros));
+        }
+
+        Single<int[]> dentro(Forma forma) {
+            return Single.fromCallable(() -> dentroAhora(forma));
+        }
+
+        Single<int[]> masCercanos(double lat, double lon, int k) {
+            return Single.fromCallable(() -> masCercanosAhora(lat, lon, k));
+        }
+
+        int[] dentroAhora(Forma forma) {
+            int[] resultado = new int[16];
+            int n = 0;
+            for (long clave : celdasCubiertas(forma.caja())) {
+                Celda celda = mapa.get(clave);
+                if (celda == null) {
+                    continue;
+                }
+                for (int id : celda.miembros()) {
+                    long posicion = posiciones.get(id);
+                    if (forma.contiene(lat(posicion), lon(posicion))) {
+                        if (n == resultado.length) {
+                            resultado = Arrays.copyOf(resultado, n * 2);
+                        }
+                        resultado[n++] = id;
+                    }
+                }
+            }
+            return Arrays.copyOf(resultado, n);
+        }
+
+        /**
+         * Recorre anillos de celdas alrededor del punto; tras el anillo r
+         * cualquier entidad sin visitar está al menos a r celdas, así que
+         * se para en cuanto los k candidatos están más cerca que eso
+         */
+        int[] masCercanosAhora(double lat, double lon, int k) {
+            double[] distancias = new double[k];
+            int[] ids = new int[k];
+            int n = 0;
+            int visitadas = 0;
+            int total = registradas.get();
+            double metrosCelda = tamCelda * METROS_POR_GRADO * Math.cos(Math.toRadians(lat));
+            int fila0 = fila(lat);
+            int columna0 = columna(lon);
+            for (int r = 0; visitadas < total && r < 10_000; r++) {
+                for (int f = fila0 - r; f <= fila0 + r; f++) {
+                    boolean borde = f == fila0 - r || f == fila0 + r;
+                    for (int c = columna0 - r; c <= columna0 + r; c += borde ? 1 : 2 * r) {
+                        Celda celda = mapa.get(clave(f, c));
+                        if (celda == null) {
+                            continue;
+                        }
+                        for (int id : celda.miembros()) {
+                            visitadas++;
+                            long posicion = posiciones.get(id);
+                            double d = distancia(lat, lon, lat(posicion), lon(posicion));
+                            if (n < k || d < distancias[n - 1]) {
+                                int i = n < k ? n++ : n - 1;
+                                while (i > 0 && distancias[i - 1] > d) {
+                                    distancias[i] = distancias[i - 1];
+                                    ids[i] = ids[i - 1];
+                                    i--;
+                                }
+                                distancias[i] = d;
+                                ids[i] = id;
+                            }
+                        }
+                    }
+                }
+                if (n == k && distancias[k - 1] <= r * metrosCelda) {
+                    break;
+                }
+            }
+            return Arrays.copyOf(ids, n);
+        }
+
+        long posicion(int id) {
+            return posiciones.get(id);
+        }
+
+        private void avisar(int id, long anterior, long nueva, Vigilante[] origen, Vigilante[] destino) {
+            double lat = lat(nueva);
+            double lon = lon(nueva);
+            for (Vigilante vigilante : origen) {
+                vigilante.evaluar(id, anterior, lat, lon);
+            }
+            for (Vigilante vigilante : destino) {
+                if (!contiene(origen, vigilante)) {
+                    vigilante.evaluar(id, anterior, lat, lon);
+                }
+            }
+        }
+
+        private static boolean contiene(Vigilante[] vigilantes, Vigilante buscado) {
+            for (Vigilante vigilante : vigilantes) {
+                if (vigilante == buscado) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private long[] celdasCubiertas(double[] caja) {
+            int filaMin = fila(caja[0]);
+            int filaMax = fila(caja[2]);
+            int columnaMin = columna(caja[1]);
+            int columnaMax = columna(caja[3]);
+            long[] claves = new long[(filaMax - filaMin + 1) * (columnaMax - columnaMin + 1)];
+            int n = 0;
+            for (int f = filaMin; f <= filaMax; f++) {
+                for (int c = columnaMin; c <= columnaMax; c++) {
+                    claves[n++] = clave(f, c);
+                }
+            }
+            return claves;
+        }
+
+        private int fila(double lat) {
+            return (int) Math.floor((lat + 90) / tamCelda);
+        }
+
+        private int columna(double lon) {
+            return (int) Math.floor((lon + 180) / tamCelda);
+        }
+
+        private long clave(int fila, int columna) {
+            return (long) fila * columnas + columna;
+        }
+
+        /** Lat/lon en microgrados en las dos mitades de un long (~11cm de precisión) */
+        static long empaquetar(double lat, double lon) {
+            return ((long) (int) Math.round(lat * 1e6) << 32) | ((int) Math.round(lon * 1e6) & 0xffffffffL);
+        }
+
+        static double lat(long posicion) {
+            return (int) (posicion >> 32) / 1e6;
+        }
+
+        static double lon(long posicion) {
+            return (int) posicion / 1e6;
+        }
+
+        @Override
+        public String toString() {
+            return "SpatialIndex{entidades=" + registradas.get() + ", celdas=" + mapa.size() + "}";
+        }
+
+        private static final class Celda {
+            private int[] miembros = new int[8];
+            private int tamano;
+            volatile Vigilante[] vigilantes = SIN_VIGILANTES;
+
+            synchronized void anadir(int id, int[] indices) {
+                if (tamano == miembros.length) {
+                    miembros = Arrays.copyOf(miembros, tamano * 2);
+                }
+                indices[id] = tamano;
+                miembros[tamano++] = id;
+            }
+
+            /** Intercambia con el último: O(1) sin huecos */
+            synchronized void quitar(int id, int[] indices) {
+                int i = indices[id];
+                int ultimo = miembros[--tamano];
+                miembros[i] = ultimo;
+                indices[ultimo] = i;
+            }
+
+            synchronized int[] miembros() {
+                return Arrays.copyOf(miembros, tamano);
+            }
+
+            synchronized void anadir(Vigilante vigilante) {
+                Vigilante[] copia = Arrays.copyOf(vigilantes, vigilantes.length + 1);
+                copia[vigilantes.length] = vigilante;
+                vigilantes = copia;
+            }
+
+            synchronized void quitar(Vigilante vigilante) {
+                vigilantes = Arrays.stream(vigilantes)
+                    .filter(otro -> otro != vigilante)
+                    .toArray(Vigilante[]::new);
+            }
+        }
+
+        private static final class Vigilante {
+            private final Forma forma;
+            private final FlowableEmitter<EventoGeocerca> emisor;
+
+            Vigilante(Forma forma, FlowableEmitter<EventoGeocerca> emisor) {
+                this.forma = forma;
+                this.emisor = emisor;
+            }
+
+            void evaluar(int id, long anterior, double lat, double lon) {
+                boolean antes = anterior != SIN_POSICION && forma.contiene(SpatialIndex.lat(anterior), SpatialIndex.lon(anterior));
+                boolean ahora = forma.contiene(lat, lon);
+                if (antes != ahora) {
+                    emisor.onNext(new EventoGeocerca(id, ahora, lat, lon));
+                }
+            }
+        }
+    }
+}
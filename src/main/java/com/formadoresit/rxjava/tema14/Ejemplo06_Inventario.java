@@ -0,0 +1,366 @@
+package com.formadoresit.rxjava.tema14;
+
+import io.reactivex.Flowable;
+import io.reactivex.Observable;
+import io.reactivex.Scheduler;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.processors.BehaviorProcessor;
+import io.reactivex.processors.FlowableProcessor;
+import io.reactivex.processors.PublishProcessor;
+import io.reactivex.schedulers.Schedulers;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * TEMA 14: Aplicaciones Prácticas
+ * Ejemplo 06: Inventario concurrente por SKU
+ *
+ * El InventorySystem del Tema 6 publica un único InventoryItem en un
+ * BehaviorSubject global. Aquí cada SKU tiene su contador de stock con
+ * reservas atómicas por CAS (nunca se vende lo que no hay), y los cambios
+ * se marcan en un bitset y se publican por lotes: un stream de lotes para
+ * los consumidores masivos, un stream por SKU y alertas de stock bajo
+ */
+public class Ejemplo06_Inventario {
+
+    public static void main(String[] args) throws InterruptedException {
+        System.out.println("=== Ejemplo 06: Inventario Concurrente ===\n");
+
+        // 1. Streams por SKU y alertas de stock bajo
+        System.out.println("--- Caso 1: Reservas, stream por SKU y alertas ---");
+        try (InventoryStore inventario = new InventoryStore(100, 20, TimeUnit.MILLISECONDS, Schedulers.single())) {
+            inventario.alta("Producto A", 100, 30);
+            inventario.alta("Producto B", 5, 2);
+            Disposable ventas = inventario.cambios("Producto A")
+                .subscribe(cambio -> System.out.println("  [SALES] " + cambio));
+            Disposable almacen = inventario.alertas()
+                .subscribe(alerta -> System.out.println("  [WAREHOUSE] " + alerta));
+
+            System.out.println("  reservar 20 A: " + inventario.reservar("Producto A", 20));
+            System.out.println("  reservar 50 A: " + inventario.reservar("Producto A", 50));
+            Thread.sleep(50);
+            System.out.println("  reservar 40 A: " + inventario.reservar("Producto A", 40) + " (sólo quedan 30)");
+            inventario.confirmar("Producto A", 20);
+            inventario.liberar("Producto A", 50); // el cliente abandona el carrito
+            System.out.println("  liberar 50 A otra vez: " + inventario.liberar("Producto A", 50) + " (ya no hay nada reservado)");
+            Thread.sleep(50);
+            inventario.reservar("Producto A", 75);
+            inventario.reservar("Producto B", 4);
+            Thread.sleep(50);
+            inventario.reponer("Producto A", 100);
+            Thread.sleep(50);
+            ventas.dispose();
+            almacen.dispose();
+        }
+
+        // 2. Carga: reservas concurrentes sin sobreventa
+        int skus = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int hilos = args.length > 1 ? Integer.parseInt(args[1]) : 32;
+        System.out.printf("%n--- Caso 2: %,d SKUs, %d hilos, 80%% de las reservas en 1.000 SKUs ---%n", skus, hilos);
+        carga(skus, hilos, 3);
+
+        System.out.println("\n=== CONCEPTOS CLAVE ===");
+        System.out.println("• Stock en un AtomicIntegerArray: reservar es un compareAndSet, sin locks");
+        System.out.println("• El CAS sólo resta si hay stock suficiente: cero sobreventa");
+        System.out.println("• Los cambios marcan un bit; un flush periódico publica un lote por SKU cambiado");
+        System.out.println("• Diez reservas sobre el mismo SKU entre flushes son un único cambio");
+        System.out.println("• Streams por SKU y alertas sólo para quien se suscribe");
+    }
+
+    private static void carga(int skus, int hilos, int segundos) throws InterruptedException {
+        String[] nombres = new String[skus];
+        try (InventoryStore inventario = new InventoryStore(skus, 50, TimeUnit.MILLISECONDS, Schedulers.single())) {
+            for (int i = 0; i < skus; i++) {
+                nombres[i] = "SKU-" + i;
+                inventario.alta(nombres[i], 50, 10);
+            }
+            LongAdder lotes = new LongAdder();
+            LongAdder cambios = new LongAdder();
+            LongAdder alertas = new LongAdder();
+            Disposable consumidor = inventario.lotes().subscribe(lote -> {
+                lotes.increment();
+                cambios.add(lote.size());
+            });
+            Disposable avisos = inventario.alertas().subscribe(alerta -> alertas.increment());
+
+            LongAdder intentos = new LongAdder();
+            LongAdder reservadas = new LongAdder();
+            CountDownLatch fin = new CountDownLatch(hilos);
+            long limite = System.nanoTime() + TimeUnit.SECONDS.toNanos(segundos);
+            long inicio = System.nanoTime();
+            for (int h = 0; h < hilos; h++) {
+                Thread hilo = new Thread(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    long locales = 0;
+                    long exitos = 0;
+                    while (System.nanoTime() < limite) {
+                        for (int i = 0; i < 256; i++) {
+                            int sku = random.nextInt(10) < 8 ? random.nextInt(Math.min(1000, skus)) : random.nextInt(skus);
+                            int cantidad = 1 + random.nextInt(3);
+                            if (inventario.reservar(nombres[sku], cantidad)) {
+                                exitos += cantidad;
+                            }
+                        }
+                        locales += 256;
+                    }
+                    intentos.add(locales);
+                    reservadas.add(exitos);
+                    fin.countDown();
+                }, "reservas-" + h);
+                hilo.start();
+            }
+            fin.await();
+            double duracion = (System.nanoTime() - inicio) / 1e9;
+            Thread.sleep(200); // último flush
+
+            long vendidas = 0;
+            int negativos = 0;
+            for (String nombre : nombres) {
+                int disponible = inventario.disponible(nombre);
+                vendidas += 50 - disponible;
+                if (disponible < 0) {
+                    negativos++;
+                }
+            }
+            consumidor.dispose();
+            avisos.dispose();
+
+            System.out.printf("  %,.0f reservas/s (%,d intentos, %,d unidades reservadas)%n",
+                intentos.sum() / duracion, intentos.sum(), reservadas.sum());
+            System.out.printf("  sobreventa: %s (stock negativo en %d SKUs, descontado %,d vs reservado %,d)%n",
+                negativos == 0 && vendidas == reservadas.sum() ? "ninguna" : "SÍ", negativos, vendidas, reservadas.sum());
+            System.out.printf("  fan-out: %,d lotes, %,d cambios publicados, %,d alertas de stock bajo%n",
+                lotes.sum(), cambios.sum(), alertas.sum());
+        }
+    }
+
+    // Modelo
+
+    record CambioStock(String sku, int disponible, int reservado) {
+        @Override
+        public String toString() {
+            return sku + ": disponible=" + disponible + ", reservado=" + reservado;
+        }
+    }
+
+    record AlertaStockBajo(String sku, int disponible, int umbral) {
+        @Override
+        public String toString() {
+            return "Stock bajo en " + sku + ": " + disponible + " < " + umbral;
+        }
+    }
+
+    // Almacén
+
+    /**
+     * Cada SKU es un hueco en arrays primitivos. Las operaciones de stock
+     * son CAS sobre su hueco y marcan un bit de "cambiado"; un flush
+     * periódico en un único hilo recorre el bitset, publica el lote de
+     * cambios y detecta los cruces del umbral de stock bajo
+     */
+    static final class InventoryStore implements AutoCloseable {
+        private final ConcurrentHashMap<String, Integer> huecos = new ConcurrentHashMap<>();
+        private final String[] nombres;
+        private final AtomicIntegerArray disponibles;
+        private final AtomicIntegerArray reservados;
+        private final int[] umbrales;
+        private final AtomicLongArray cambiados;
+        private final int[] publicados;
+        private final ConcurrentHashMap<Integer, Suscritos> porSku = new ConcurrentHashMap<>();
+        private final FlowableProcessor<List<CambioStock>> lotes = PublishProcessor.create();
+        private final FlowableProcessor<AlertaStockBajo> alertas = PublishProcessor.create();
+        private final Disposable flush;
+        private int siguiente;
+
+        InventoryStore(int capacidad, long periodo, TimeUnit unidad, Scheduler scheduler) {
+            this.nombres = new String[capacidad];
+            this.disponibles = new AtomicIntegerArray(capacidad);
+            this.reservados = new AtomicIntegerArray(capacidad);
+            this.umbrales = new int[capacidad];
+            this.cambiados = new AtomicLongArray((capacidad + 63) / 64);
+            this.publicados = new int[capacidad];
+            this.flush = Observable.interval(periodo, unidad, scheduler).subscribe(tick -> vaciar());
+        }
+
+        synchronized void alta(String sku, int stock, int umbralBajo) {
+            if (huecos.containsKey(sku)) {
+                throw new IllegalArgumentException("SKU duplicado: " + sku);
+            }
+            if (siguiente == nombres.length) {
+                throw new IllegalStateException("Inventario lleno: " + nombres.length + " SKUs");
+            }
+            int hueco = siguiente++;
+            nombres[hueco] = sku;
+            umbrales[hueco] = umbralBajo;
+            publicados[hueco] = stock;
+            disponibles.set(hueco, stock);
+            huecos.put(sku, hueco);
+        }
+
+        /** Resta del disponible sólo si alcanza: false si no hay stock suficiente */
+        boolean reservar(String sku, int cantidad) {
+            int hueco = hueco(sku);
+            int actual;
+            do {
+                actual = disponibles.get(hueco);
+                if (actual < cantidad) {
+                    return false;
+                }
+            } while (!disponibles.compareAndSet(hueco, actual, actual - cantidad));
+            reservados.addAndGet(hueco, cantidad);
+            marcar(hueco);
+            return true;
+        }
+
+        /** Devuelve al disponible una reserva no confirmada: false si no hay tanto reservado */
+        boolean liberar(String sku, int cantidad) {
+            int hueco = hueco(sku);
+            if (!descontarReserva(hueco, cantidad)) {
+                return false;
+            }
+            disponibles.addAndGet(hueco, cantidad);
+            marcar(hueco);
+            return true;
+        }
+
+        /** La reserva se convierte en venta: false si no hay tanto reservado */
+        boolean confirmar(String sku, int cantidad) {
+            int hueco = hueco(sku);
+            if (!descontarReserva(hueco, cantidad)) {
+                return false;
+            }
+            marcar(hueco);
+            return true;
+        }
+
+        /** Como reservar(): el CAS sólo resta si alcanza, nunca deja reservados en negativo */
+        private boolean descontarReserva(int hueco, int cantidad) {
+            int actual;
+            do {
+                actual = reservados.get(hueco);
+                if (actual < cantidad) {
+                    return false;
+                }
+            } while (!reservados.compareAndSet(hueco, actual, actual - cantidad));
+            return true;
+        }
+
+        void reponer(String sku, int cantidad) {
+            int hueco = hueco(sku);
+            disponibles.addAndGet(hueco, cantidad);
+            marcar(hueco);
+        }
+
+        int disponible(String sku) {
+            return disponibles.get(hueco(sku));
+        }
+
+        /**
+         * Estado actual del SKU y sus cambios, a lo sumo uno por flush. El
+         * BehaviorProcessor guarda el último estado, así que suscribirse no
+         * deja hueco entre la foto inicial y el siguiente flush; el procesador
+         * del SKU se retira cuando se va su último suscriptor
+         */
+        Flowable<CambioStock> cambios(String sku) {
+            int hueco = hueco(sku);
+            return Flowable.defer(() -> {
+                Suscritos suscritos = porSku.compute(hueco, (h, actual) -> {
+                    if (actual == null) {
+                        actual = new Suscritos(cambio(h));
+                        // un flush en curso pudo no ver el procesador: el siguiente publica el estado
+                        marcar(h);
+                    }
+                    actual.suscriptores++;
+                    return actual;
+                });
+                return suscritos.procesador
+                    .onBackpressureLatest()
+                    .distinctUntilChanged()
+                    .doFinally(() -> porSku.computeIfPresent(hueco,
+                        (h, actual) -> --actual.suscriptores == 0 ? null : actual));
+            });
+        }
+
+        /** Todos los SKUs cambiados en cada flush, para consumidores masivos */
+        Flowable<List<CambioStock>> lotes() {
+            return lotes.onBackpressureBuffer();
+        }
+
+        Flowable<AlertaStockBajo> alertas() {
+            return alertas.onBackpressureBuffer();
+        }
+
+        private void marcar(int hueco) {
+            int palabra = hueco >>> 6;
+            long bit = 1L << hueco;
+            // leer antes del CAS: con un SKU caliente el bit casi siempre ya está puesto
+            if ((cambiados.get(palabra) & bit) == 0) {
+                cambiados.getAndUpdate(palabra, valor -> valor | bit);
+            }
+        }
+
+        private void vaciar() {
+            boolean hayLote = lotes.hasSubscribers();
+            List<CambioStock> lote = new ArrayList<>();
+            for (int palabra = 0; palabra < cambiados.length(); palabra++) {
+                if (cambiados.get(palabra) == 0) {
+                    continue;
+                }
+                long bits = cambiados.getAndSet(palabra, 0);
+                while (bits != 0) {
+                    int hueco = (palabra << 6) + Long.numberOfTrailingZeros(bits);
+                    bits &= bits - 1;
+                    CambioStock cambio = cambio(hueco);
+                    if (hayLote) {
+                        lote.add(cambio);
+                    }
+                    Suscritos suscritos = porSku.get(hueco);
+                    if (suscritos != null) {
+                        suscritos.procesador.onNext(cambio);
+                    }
+                    if (publicados[hueco] >= umbrales[hueco] && cambio.disponible() < umbrales[hueco]) {
+                        alertas.onNext(new AlertaStockBajo(cambio.sku(), cambio.disponible(), umbrales[hueco]));
+                    }
+                    publicados[hueco] = cambio.disponible();
+                }
+            }
+            if (!lote.isEmpty()) {
+                lotes.onNext(lote);
+            }
+        }
+
+        private CambioStock cambio(int hueco) {
+            return new CambioStock(nombres[hueco], disponibles.get(hueco), reservados.get(hueco));
+        }
+
+        private int hueco(String sku) {
+            Integer hueco = huecos.get(sku);
+            if (hueco == null) {
+                throw new IllegalArgumentException("SKU desconocido: " + sku);
+            }
+            return hueco;
+        }
+
+        @Override
+        public void close() {
+            flush.dispose();
+        }
+
+        /** Procesador de un SKU y cuántos lo escuchan; sólo se modifica dentro de compute() */
+        private static final class Suscritos {
+            final FlowableProcessor<CambioStock> procesador;
+            int suscriptores;
+
+            Suscritos(CambioStock inicial) {
+                this.procesador = BehaviorProcessor.createDefault(inicial).toSerialized();
+            }
+        }
+    }
+}
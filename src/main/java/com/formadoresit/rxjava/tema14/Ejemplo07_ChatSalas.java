@@ -0,0 +1,290 @@
+package com.formadoresit.rxjava.tema14;
+
+import io.reactivex.BackpressureStrategy;
+import io.reactivex.Flowable;
+import io.reactivex.FlowableEmitter;
+import io.reactivex.Observable;
+import io.reactivex.Scheduler;
+import io.reactivex.disposables.CompositeDisposable;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.exceptions.MissingBackpressureException;
+import io.reactivex.schedulers.Schedulers;
+import io.reactivex.subscribers.TestSubscriber;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * TEMA 14: Aplicaciones Prácticas
+ * Ejemplo 07: Chat por salas con bucles de eventos
+ *
+ * El ChatSystem del Tema 6 envía cada mensaje por un único PublishSubject
+ * a todos los suscriptores. Aquí cada sala se asigna por hash a uno de N
+ * bucles de un solo hilo: todo lo que toca una sala ocurre en su bucle,
+ * así que los mensajes de una sala salen en orden sin locks. Cada miembro
+ * tiene una cola de salida acotada y, si la llena, se le expulsa en lugar
+ * de frenar a los demás. Al entrar se recibe el historial de la sala
+ */
+public class Ejemplo07_ChatSalas {
+
+    public static void main(String[] args) throws InterruptedException {
+        System.out.println("=== Ejemplo 07: Chat por Salas ===\n");
+
+        // 1. Salas, historial y expulsión de un miembro lento
+        System.out.println("--- Caso 1: Salas, historial y miembro lento ---");
+        try (ChatServer chat = new ChatServer(2, 4, 3)) {
+            Disposable ana = chat.unirse("rxjava", "ana")
+                .subscribe(m -> System.out.println("  [ana]   " + m));
+            Disposable luis = chat.unirse("general", "luis")
+                .subscribe(m -> System.out.println("  [luis]  " + m));
+            Disposable lento = chat.unirse("rxjava", "lento")
+                .observeOn(Schedulers.computation(), false, 1)
+                .subscribe(
+                    m -> Thread.sleep(200),
+                    error -> System.out.println("  [lento] " + error.getMessage()));
+            Thread.sleep(50);
+
+            chat.enviar("rxjava", "ana", "¿Alguien usa Flowable?");
+            chat.enviar("general", "luis", "Hola a todos");
+            for (int i = 1; i <= 6; i++) {
+                chat.enviar("rxjava", "bot", "aviso " + i);
+            }
+            Thread.sleep(100);
+
+            System.out.println("  -- eva entra en rxjava y recibe los 3 últimos --");
+            Disposable eva = chat.unirse("rxjava", "eva")
+                .subscribe(m -> System.out.println("  [eva]   " + m));
+            Thread.sleep(50);
+            chat.enviar("rxjava", "eva", "Hola, acabo de llegar");
+            Thread.sleep(100);
+            System.out.println("  " + chat);
+            new CompositeDisposable(ana, luis, lento, eva).dispose();
+        }
+
+        // 2. Carga: miles de salas y cientos de miles de miembros
+        int miembros = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int salas = args.length > 1 ? Integer.parseInt(args[1]) : 10_000;
+        int mensajesPorSegundo = args.length > 2 ? Integer.parseInt(args[2]) : 20_000;
+        System.out.printf("%n--- Caso 2: %,d miembros en %,d salas, %,d mensajes/s ---%n",
+            miembros, salas, mensajesPorSegundo);
+        carga(miembros, salas, mensajesPorSegundo, 5);
+
+        System.out.println("\n=== CONCEPTOS CLAVE ===");
+        System.out.println("• Sala -> bucle por hash: una sala siempre se procesa en el mismo hilo");
+        System.out.println("• Orden por sala sin locks: el estado de la sala sólo lo toca su bucle");
+        System.out.println("• onBackpressureBuffer(n): cola de salida acotada por miembro");
+        System.out.println("• Un miembro lento se expulsa; los demás no esperan por él");
+        System.out.println("• Historial en anillo: quien entra recibe los últimos N sin huecos");
+    }
+
+    private static void carga(int miembros, int salas, int mensajesPorSegundo, int segundos) throws InterruptedException {
+        Ejemplo04_TradingFeed.Latencias latencias = new Ejemplo04_TradingFeed.Latencias();
+        LongAdder entregas = new LongAdder();
+        LongAdder desordenados = new LongAdder();
+        int bucles = Math.max(2, Runtime.getRuntime().availableProcessors());
+        try (ChatServer chat = new ChatServer(bucles, 8, 20)) {
+            CompositeDisposable suscripciones = new CompositeDisposable();
+            for (int i = 0; i < miembros; i++) {
+                long[] ultima = {0};
+                suscripciones.add(chat.unirse("sala-" + (i % salas), "miembro-" + i)
+                    .subscribe(m -> {
+                        latencias.registrar(System.nanoTime() - m.nanos());
+                        entregas.increment();
+                        if (m.secuencia() <= ultima[0]) {
+                            desordenados.increment();
+                        }
+                        ultima[0] = m.secuencia();
+                    }, error -> { }));
+            }
+            // un miembro de cada mil no pide nada: se expulsa al llenar su cola
+            List<TestSubscriber<MensajeChat>> dormidos = new ArrayList<>();
+            for (int i = 0; i < miembros / 1000; i++) {
+                dormidos.add(chat.unirse("sala-" + i, "dormido-" + i).test(0));
+            }
+            Thread.sleep(500);
+
+            LongAdder enviados = new LongAdder();
+            int porMilisegundo = Math.max(1, mensajesPorSegundo / 1000);
+            ExecutorService generador = Executors.newSingleThreadExecutor(r -> new Thread(r, "generador-chat"));
+            long inicio = System.nanoTime();
+            Disposable envio = Observable.interval(1, TimeUnit.MILLISECONDS, Schedulers.from(generador))
+                .subscribe(tick -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int i = 0; i < porMilisegundo; i++) {
+                        chat.enviar("sala-" + random.nextInt(salas), "miembro-0", "mensaje");
+                    }
+                    enviados.add(porMilisegundo);
+                });
+            Thread.sleep(segundos * 1000L);
+            envio.dispose();
+            generador.shutdown();
+            double duracion = (System.nanoTime() - inicio) / 1e9;
+            Thread.sleep(200);
+            suscripciones.dispose();
+            dormidos.forEach(TestSubscriber::cancel);
+
+            System.out.printf("  %d bucles; %,.0f mensajes/s -> %,.0f entregas/s%n",
+                bucles, enviados.sum() / duracion, entregas.sum() / duracion);
+            System.out.printf("  entrega p50=%,dµs p99=%,dµs p99.9=%,dµs; fuera de orden: %d; expulsados: %d%n",
+                latencias.percentil(50), latencias.percentil(99), latencias.percentil(99.9),
+                desordenados.sum(), chat.expulsados());
+        }
+    }
+
+    // Modelo
+
+    record MensajeChat(String sala, long secuencia, String usuario, String texto, long nanos) {
+        @Override
+        public String toString() {
+            return sala + " #" + secuencia + " " + usuario + ": " + texto;
+        }
+    }
+
+    static class MiembroLentoException extends RuntimeException {
+        MiembroLentoException(String usuario, String sala) {
+            super(usuario + " expulsado de " + sala + ": cola de salida llena");
+        }
+    }
+
+    // Servidor
+
+    /**
+     * Las salas viven en el bucle que les toca por hash y sólo ese hilo
+     * las lee o modifica: entrar, salir y publicar se encolan en el bucle
+     * y se ejecutan en orden de llegada
+     */
+    static final class ChatServer implements AutoCloseable {
+        private final ExecutorService[] hilos;
+        private final Scheduler.Worker[] bucles;
+        private final List<Map<String, Sala>> salasPorBucle = new ArrayList<>();
+        private final int capacidadCola;
+        private final int tamHistorial;
+        private final LongAdder expulsados = new LongAdder();
+
+        ChatServer(int numBucles, int capacidadCola, int tamHistorial) {
+            this.capacidadCola = capacidadCola;
+            this.tamHistorial = tamHistorial;
+            this.hilos = new ExecutorService[numBucles];
+            this.bucles = new Scheduler.Worker[numBucles];
+            for (int i = 0; i < numBucles; i++) {
+                String nombre = "bucle-chat-" + i;
+                hilos[i] = Executors.newSingleThreadExecutor(r -> {
+                    Thread t = new Thread(r, nombre);
+                    t.setDaemon(true);
+                    return t;
+                });
+                bucles[i] = Schedulers.from(hilos[i]).createWorker();
+                salasPorBucle.add(new HashMap<>());
+            }
+        }
+
+        /**
+         * Historial de la sala seguido de los mensajes nuevos. Si el
+         * suscriptor deja que se acumulen más de capacidadCola mensajes
+         * recibe MiembroLentoException y sale de la sala
+         */
+        Flowable<MensajeChat> unirse(String sala, String usuario) {
+            int bucle = bucle(sala);
+            return Flowable.<MensajeChat>create(emisor -> {
+                    Miembro miembro = new Miembro(usuario, emisor);
+                    bucles[bucle].schedule(() -> sala(bucle, sala).entrar(miembro));
+                    emisor.setCancellable(() -> bucles[bucle].schedule(() -> sala(bucle, sala).salir(miembro)));
+                }, BackpressureStrategy.MISSING)
+                .onBackpressureBuffer(capacidadCola)
+                .onErrorResumeNext((Throwable error) -> {
+                    if (error instanceof MissingBackpressureException) {
+                        expulsados.increment();
+                        return Flowable.error(new MiembroLentoException(usuario, sala));
+                    }
+                    return Flowable.error(error);
+                });
+        }
+
+        void enviar(String sala, String usuario, String texto) {
+            long nanos = System.nanoTime();
+            int bucle = bucle(sala);
+            bucles[bucle].schedule(() -> sala(bucle, sala).publicar(usuario, texto, nanos));
+        }
+
+        long expulsados() {
+            return expulsados.sum();
+        }
+
+        private int bucle(String sala) {
+            return Math.floorMod(sala.hashCode(), bucles.length);
+        }
+
+        /** Sólo desde el bucle de la sala */
+        private Sala sala(int bucle, String nombre) {
+            return salasPorBucle.get(bucle).computeIfAbsent(nombre, n -> new Sala(n, tamHistorial));
+        }
+
+        @Override
+        public String toString() {
+            return "ChatServer{bucles=" + bucles.length + ", expulsados=" + expulsados.sum() + "}";
+        }
+
+        @Override
+        public void close() {
+            for (int i = 0; i < bucles.length; i++) {
+                bucles[i].dispose();
+                hilos[i].shutdownNow();
+            }
+        }
+    }
+
+    private static final class Miembro {
+        final String usuario;
+        final FlowableEmitter<MensajeChat> emisor;
+
+        Miembro(String usuario, FlowableEmitter<MensajeChat> emisor) {
+            this.usuario = usuario;
+            this.emisor = emisor;
+        }
+    }
+
+    /** Estado de una sala: sin sincronización, sólo la toca su bucle */
+    private static final class Sala {
+        private final String nombre;
+        private final List<Miembro> miembros = new ArrayList<>();
+        private final MensajeChat[] historial;
+        private long secuencia;
+
+        Sala(String nombre, int tamHistorial) {
+            this.nombre = nombre;
+            this.historial = new MensajeChat[tamHistorial];
+        }
+
+        void entrar(Miembro miembro) {
+            if (miembro.emisor.isCancelled()) {
+                return;
+            }
+            for (long s = Math.max(1, secuencia - historial.length + 1); s <= secuencia; s++) {
+                miembro.emisor.onNext(historial[(int) (s % historial.length)]);
+            }
+            miembros.add(miembro);
+        }
+
+        void salir(Miembro miembro) {
+            miembros.remove(miembro);
+        }
+
+        void publicar(String usuario, String texto, long nanos) {
+            MensajeChat mensaje = new MensajeChat(nombre, ++secuencia, usuario, texto, nanos);
+            historial[(int) (secuencia % historial.length)] = mensaje;
+            // la expulsión cancela el emisor y encola el salir(): no se modifica la lista aquí
+            for (int i = 0; i < miembros.size(); i++) {
+                Miembro miembro = miembros.get(i);
+                if (!miembro.emisor.isCancelled()) {
+                    miembro.emisor.onNext(mensaje);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,293 @@
+package com.formadoresit.rxjava.tema14;
+
+import io.reactivex.Flowable;
+import io.reactivex.Scheduler;
+import io.reactivex.Single;
+import io.reactivex.disposables.CompositeDisposable;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.processors.FlowableProcessor;
+import io.reactivex.processors.PublishProcessor;
+import io.reactivex.schedulers.Schedulers;
+import io.reactivex.subjects.PublishSubject;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * TEMA 14: Aplicaciones Prácticas
+ * Ejemplo 08: Notificaciones multicanal por lotes
+ *
+ * El sistema de notificaciones del Tema 5 aplica tres filter + debounce a
+ * cada evento, y el debounce es global: dos usuarios distintos se pisan.
+ * Aquí cada notificación va directa a su canal con una tabla indexada por
+ * canal, se descartan las repetidas de un mismo usuario y plantilla dentro
+ * de una ventana, y se entregan por lotes al proveedor (p. ej. 500 tokens
+ * push por llamada) con un número acotado de llamadas en vuelo
+ */
+public class Ejemplo08_Notificaciones {
+
+    public static void main(String[] args) throws InterruptedException {
+        System.out.println("=== Ejemplo 08: Notificaciones Multicanal ===\n");
+
+        // 1. El debounce global del Tema 5 frente a la deduplicación por usuario
+        System.out.println("--- Caso 1: Debounce global vs deduplicación por usuario y plantilla ---");
+        PublishSubject<Notificacion> eventos = PublishSubject.create();
+        Disposable global = eventos
+            .filter(n -> n.canal() == Canal.PUSH)
+            .debounce(100, TimeUnit.MILLISECONDS)
+            .subscribe(n -> System.out.println("  [Tema 5] debounce global entrega: " + n));
+        eventos.onNext(new Notificacion(Canal.PUSH, "ana", "pedido-enviado", "token-ana"));
+        eventos.onNext(new Notificacion(Canal.PUSH, "luis", "pedido-enviado", "token-luis"));
+        Thread.sleep(200);
+        global.dispose();
+
+        try (NotificationRouter router = new NotificationRouter(Schedulers.computation())) {
+            router.canal(Canal.PUSH, new ConfigCanal(1000, 500, 50, 4), new ProveedorSimulado("fcm", 5));
+            router.canal(Canal.EMAIL, new ConfigCanal(1000, 100, 50, 2), new ProveedorSimulado("ses", 10));
+            Disposable resultados = router.resultados()
+                .subscribe(lote -> System.out.println("  " + lote));
+            for (int i = 0; i < 5; i++) {
+                router.publicar(new Notificacion(Canal.PUSH, "ana", "pedido-enviado", "token-ana"));
+            }
+            router.publicar(new Notificacion(Canal.PUSH, "luis", "pedido-enviado", "token-luis"));
+            router.publicar(new Notificacion(Canal.PUSH, "ana", "oferta", "token-ana"));
+            router.publicar(new Notificacion(Canal.EMAIL, "ana", "pedido-enviado", "ana@example.com"));
+            router.publicar(new Notificacion(Canal.SMS, "ana", "codigo", "+34600000000")); // canal no configurado
+            Thread.sleep(200);
+            System.out.println("  " + router);
+            resultados.dispose();
+        }
+
+        // 2. Rendimiento: 1M notificaciones contra proveedores simulados
+        int total = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        System.out.printf("%n--- Caso 2: %,d notificaciones (70%% push, 20%% email, 10%% SMS) ---%n", total);
+        carga(total);
+
+        System.out.println("\n=== CONCEPTOS CLAVE ===");
+        System.out.println("• Tabla indexada por canal: una consulta por notificación, no un filter por canal");
+        System.out.println("• Deduplicación por usuario + plantilla en una ventana, no un debounce global");
+        System.out.println("• buffer(tiempo, tamaño): lotes llenos con carga, parciales sin ella");
+        System.out.println("• flatMapSingle(..., maxConcurrency): llamadas en vuelo acotadas por proveedor");
+        System.out.println("• Lotes pendientes acotados: si el proveedor no da abasto se descarta y se cuenta");
+    }
+
+    private static void carga(int total) throws InterruptedException {
+        try (NotificationRouter router = new NotificationRouter(Schedulers.computation())) {
+            ProveedorSimulado push = new ProveedorSimulado("fcm", 20);
+            ProveedorSimulado email = new ProveedorSimulado("ses", 20);
+            ProveedorSimulado sms = new ProveedorSimulado("twilio", 20);
+            router.canal(Canal.PUSH, new ConfigCanal(1000, 500, 20, 8), push);
+            router.canal(Canal.EMAIL, new ConfigCanal(1000, 100, 50, 16), email);
+            router.canal(Canal.SMS, new ConfigCanal(1000, 100, 100, 16), sms);
+            Disposable resultados = router.resultados().subscribe();
+
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            String[] plantillas = new String[20];
+            for (int i = 0; i < plantillas.length; i++) {
+                plantillas[i] = "plantilla-" + i;
+            }
+            long inicio = System.nanoTime();
+            for (int i = 0; i < total; i++) {
+                int r = random.nextInt(10);
+                Canal canal = r < 7 ? Canal.PUSH : r < 9 ? Canal.EMAIL : Canal.SMS;
+                String usuario = "usuario-" + random.nextInt(200_000);
+                router.publicar(new Notificacion(canal, usuario, plantillas[random.nextInt(plantillas.length)], usuario));
+                // la ingesta se frena si hay demasiadas notificaciones sin resolver
+                while (router.pendientes() > 50_000) {
+                    Thread.sleep(1);
+                }
+            }
+            while (router.pendientes() > 0) {
+                Thread.sleep(1);
+            }
+            double segundos = (System.nanoTime() - inicio) / 1e9;
+            resultados.dispose();
+
+            System.out.printf("  %,.0f notificaciones/s de extremo a extremo (%.2fs)%n", total / segundos, segundos);
+            System.out.println("  " + router);
+            for (ProveedorSimulado proveedor : new ProveedorSimulado[] {push, email, sms}) {
+                System.out.println("  " + proveedor);
+            }
+        }
+    }
+
+    // Modelo
+
+    enum Canal { EMAIL, PUSH, SMS }
+
+    record Notificacion(Canal canal, String usuario, String plantilla, String destino) {
+    }
+
+    /** Ventana de deduplicación, tamaño y espera máxima del lote, llamadas en vuelo */
+    record ConfigCanal(long ventanaMs, int tamLote, long esperaMs, int concurrencia) {
+    }
+
+    record ResultadoLote(Canal canal, String proveedor, int tamano, int aceptadas) {
+        @Override
+        public String toString() {
+            return "[" + canal + "/" + proveedor + "] lote de " + tamano + ", aceptadas " + aceptadas;
+        }
+    }
+
+    /** Una llamada al proveedor con un lote completo */
+    interface Proveedor {
+        String nombre();
+
+        Single<Integer> enviarLote(List<Notificacion> lote);
+    }
+
+    /** Responde tras una latencia fija sin ocupar un hilo y registra la concurrencia máxima */
+    static final class ProveedorSimulado implements Proveedor {
+        private final String nombre;
+        private final long latenciaMs;
+        private final LongAdder llamadas = new LongAdder();
+        private final LongAdder recibidas = new LongAdder();
+        private final AtomicInteger enVuelo = new AtomicInteger();
+        private final AtomicInteger maxEnVuelo = new AtomicInteger();
+
+        ProveedorSimulado(String nombre, long latenciaMs) {
+            this.nombre = nombre;
+            this.latenciaMs = latenciaMs;
+        }
+
+        @Override
+        public String nombre() {
+            return nombre;
+        }
+
+        @Override
+        public Single<Integer> enviarLote(List<Notificacion> lote) {
+            return Single.defer(() -> {
+                    maxEnVuelo.accumulateAndGet(enVuelo.incrementAndGet(), Math::max);
+                    llamadas.increment();
+                    recibidas.add(lote.size());
+                    return Single.timer(latenciaMs, TimeUnit.MILLISECONDS);
+                })
+                .map(tick -> lote.size())
+                .doFinally(enVuelo::decrementAndGet);
+        }
+
+        @Override
+        public String toString() {
+            long n = llamadas.sum();
+            return String.format("%-7s %,6d llamadas, %,9d notificaciones, lote medio %,5.0f, máx. en vuelo %d",
+                nombre, n, recibidas.sum(), n == 0 ? 0.0 : (double) recibidas.sum() / n, maxEnVuelo.get());
+        }
+    }
+
+    // Router
+
+    /**
+     * Un pipeline por canal: entrada -> deduplicación -> lotes por tamaño o
+     * tiempo -> cola acotada de lotes (los que no caben se descartan) ->
+     * proveedor con concurrencia acotada.
+     * publicar() sólo indexa la tabla de canales; los canales sin
+     * configurar cuentan como descartados
+     */
+    static final class NotificationRouter implements AutoCloseable {
+        private static final int MAX_LOTES_PENDIENTES = 1024;
+
+        private final Scheduler scheduler;
+        private final FlowableProcessor<Notificacion>[] rutas;
+        private final FlowableProcessor<ResultadoLote> resultados = PublishProcessor.<ResultadoLote>create().toSerialized();
+        private final CompositeDisposable pipelines = new CompositeDisposable();
+        private final LongAdder publicadas = new LongAdder();
+        private final LongAdder duplicadas = new LongAdder();
+        private final LongAdder descartadas = new LongAdder();
+        private final LongAdder entregadas = new LongAdder();
+        private final LongAdder fallidas = new LongAdder();
+
+        @SuppressWarnings("unchecked")
+        NotificationRouter(Scheduler scheduler) {
+            this.scheduler = scheduler;
+            this.rutas = new FlowableProcessor[Canal.values().length];
+        }
+
+        void canal(Canal canal, ConfigCanal config, Proveedor proveedor) {
+            FlowableProcessor<Notificacion> entrada = PublishProcessor.<Notificacion>create().toSerialized();
+            Deduplicador deduplicador = new Deduplicador(config.ventanaMs());
+            pipelines.add(entrada
+                .filter(n -> {
+                    if (deduplicador.primera(n.usuario() + '\u0000' + n.plantilla(), scheduler.now(TimeUnit.MILLISECONDS))) {
+                        return true;
+                    }
+                    duplicadas.increment();
+                    return false;
+                })
+                .buffer(config.esperaMs(), TimeUnit.MILLISECONDS, scheduler, config.tamLote())
+                .filter(lote -> !lote.isEmpty())
+                .onBackpressureDrop(lote -> descartadas.add(lote.size()))
+                .observeOn(scheduler, false, MAX_LOTES_PENDIENTES)
+                .flatMapSingle(lote -> proveedor.enviarLote(lote)
+                    .map(aceptadas -> new ResultadoLote(canal, proveedor.nombre(), lote.size(), aceptadas))
+                    .onErrorReturn(error -> new ResultadoLote(canal, proveedor.nombre(), lote.size(), 0)),
+                    false, config.concurrencia())
+                .subscribe(resultado -> {
+                    entregadas.add(resultado.aceptadas());
+                    fallidas.add(resultado.tamano() - resultado.aceptadas());
+                    resultados.onNext(resultado);
+                }));
+            rutas[canal.ordinal()] = entrada;
+        }
+
+        void publicar(Notificacion notificacion) {
+            publicadas.increment();
+            FlowableProcessor<Notificacion> ruta = rutas[notificacion.canal().ordinal()];
+            if (ruta == null) {
+                descartadas.increment();
+                return;
+            }
+            ruta.onNext(notificacion);
+        }
+
+        Flowable<ResultadoLote> resultados() {
+            return resultados.onBackpressureDrop();
+        }
+
+        /** Publicadas que aún no se han entregado, deduplicado ni descartado */
+        long pendientes() {
+            return publicadas.sum() - duplicadas.sum() - descartadas.sum() - entregadas.sum() - fallidas.sum();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("NotificationRouter{publicadas=%,d, duplicadas=%,d, entregadas=%,d, fallidas=%,d, descartadas=%,d}",
+                publicadas.sum(), duplicadas.sum(), entregadas.sum(), fallidas.sum(), descartadas.sum());
+        }
+
+        @Override
+        public void close() {
+            pipelines.dispose();
+        }
+    }
+
+    /**
+     * Claves vistas en la ventana, en orden de llegada: las caducadas se
+     * purgan por la cabeza, así que cada llamada es O(1) amortizado. Sólo
+     * se usa desde la entrada serializada de un canal
+     */
+    static final class Deduplicador {
+        private final long ventanaMs;
+        private final LinkedHashMap<String, Long> vistas = new LinkedHashMap<>();
+
+        Deduplicador(long ventanaMs) {
+            this.ventanaMs = ventanaMs;
+        }
+
+        boolean primera(String clave, long ahora) {
+            Iterator<Map.Entry<String, Long>> it = vistas.entrySet().iterator();
+            while (it.hasNext()) {
+                if (it.next().getValue() > ahora - ventanaMs) {
+                    break;
+                }
+                it.remove();
+            }
+            return vistas.putIfAbsent(clave, ahora) == null;
+        }
+    }
+}
@@ -0,0 +1,435 @@
+package com.formadoresit.rxjava.tema14;
+
+import io.reactivex.Observable;
+import io.reactivex.Scheduler;
+import io.reactivex.Single;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.schedulers.TestScheduler;
+import io.reactivex.subjects.PublishSubject;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * TEMA 14: Aplicaciones Prácticas
+ * Ejemplo 09: Analítica de eventos de usuario en columnas
+ *
+ * El UserEventSystem del Tema 6 crea un UserEvent por llamada y nadie lo
+ * agrega. Aquí los eventos se añaden a columnas primitivas (tipo
+ * codificado con diccionario, timestamp, id de usuario) y, en la misma
+ * pasada, se actualizan los conteos deslizantes, los usuarios únicos
+ * (HyperLogLog) y los embudos de conversión. Los agregados se publican
+ * como streams y las columnas permiten consultas por rango sin objetos
+ */
+public class Ejemplo09_AnaliticaEventos {
+
+    private static final String[] TIPOS = {"visita", "busqueda", "producto", "carrito", "compra", "logout"};
+
+    public static void main(String[] args) {
+        System.out.println("=== Ejemplo 09: Analítica de Eventos ===\n");
+
+        // 1. Ingesta desde un subject como el del UserEventSystem, con reloj simulado
+        System.out.println("--- Caso 1: Conteos, únicos y embudo en vivo ---");
+        TestScheduler reloj = new TestScheduler();
+        EventAnalytics analitica = new EventAnalytics(reloj);
+        analitica.embudo("conversion", "visita", "carrito", "compra");
+        PublishSubject<EventoUsuario> eventos = PublishSubject.create();
+        Disposable ingesta = analitica.ingestar(eventos);
+        Disposable panel = analitica.resumenes(1, TimeUnit.MINUTES)
+            .subscribe(resumen -> System.out.println("  " + resumen));
+        Disposable embudo = analitica.embudo("conversion", 1, TimeUnit.MINUTES)
+            .subscribe(pasos -> System.out.println("  embudo conversion: " + Arrays.toString(pasos)));
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int ms = 0; ms < 3 * 60_000; ms += 10) {
+            reloj.advanceTimeTo(ms, TimeUnit.MILLISECONDS);
+            eventos.onNext(new EventoUsuario(tipoAleatorio(random), random.nextInt(5_000)));
+        }
+        eventos.onNext(new EventoUsuario("visita", -1));
+        eventos.onNext(new EventoUsuario("visita", Integer.MAX_VALUE));
+        reloj.advanceTimeTo(3, TimeUnit.MINUTES);
+        System.out.println("  eventos con id de usuario fuera de rango descartados: " + analitica.rechazados());
+        analitica.contar("compra", 60_000, 120_000)
+            .subscribe(n -> System.out.println("  compras en el minuto 2 (recorrido de columnas): " + n));
+        panel.dispose();
+        embudo.dispose();
+        ingesta.dispose();
+
+        // 2. Benchmark: columnas + agregados vs un objeto por evento
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 10_000_000;
+        System.out.printf("%n--- Caso 2: %,d eventos, 1M usuarios ---%n", n);
+        benchmark(n);
+
+        System.out.println("\n=== CONCEPTOS CLAVE ===");
+        System.out.println("• Columnas short/long/int: 14 bytes por evento, sin cabeceras de objeto");
+        System.out.println("• Diccionario de tipos: el String se guarda una vez, cada evento lleva un short");
+        System.out.println("• Agregados incrementales: conteos, HyperLogLog y embudos al insertar");
+        System.out.println("• HyperLogLog: 16 KB por tipo para contar millones de usuarios con ~1% de error");
+        System.out.println("• interval + map: los agregados se consultan como streams");
+    }
+
+    private static String tipoAleatorio(ThreadLocalRandom random) {
+        int r = random.nextInt(100);
+        return r < 40 ? "visita" : r < 60 ? "busqueda" : r < 80 ? "producto" : r < 92 ? "carrito" : r < 97 ? "compra" : "logout";
+    }
+
+    private static void benchmark(int n) {
+        // eventos pregenerados para que ambos caminos midan sólo la ingesta
+        short[] tipos = new short[n];
+        int[] usuarios = new int[n];
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < n; i++) {
+            tipos[i] = (short) Arrays.asList(TIPOS).indexOf(tipoAleatorio(random));
+            usuarios[i] = random.nextInt(1_000_000);
+        }
+
+        long base = heapUsado();
+        long inicio = System.nanoTime();
+        EventAnalytics analitica = new EventAnalytics(new TestScheduler());
+        analitica.embudo("conversion", "visita", "carrito", "compra");
+        short[] codigos = new short[TIPOS.length];
+        for (int t = 0; t < TIPOS.length; t++) {
+            codigos[t] = analitica.codigo(TIPOS[t]);
+        }
+        for (int i = 0; i < n; i++) {
+            analitica.registrar(codigos[tipos[i]], usuarios[i], i / 10);
+        }
+        double columnas = n / ((System.nanoTime() - inicio) / 1e9);
+        long memoriaColumnas = heapUsado() - base;
+        long unicosEstimados = analitica.resumen().unicosTotales();
+
+        base = heapUsado();
+        inicio = System.nanoTime();
+        List<UserEvent> lista = new ArrayList<>();
+        Map<String, Long> conteos = new HashMap<>();
+        Set<Integer> unicos = new HashSet<>();
+        for (int i = 0; i < n; i++) {
+            UserEvent evento = new UserEvent(TIPOS[tipos[i]], usuarios[i], i / 10);
+            lista.add(evento);
+            conteos.merge(evento.tipo(), 1L, Long::sum);
+            unicos.add(evento.usuario());
+        }
+        double objetos = n / ((System.nanoTime() - inicio) / 1e9);
+        long memoriaObjetos = heapUsado() - base;
+
+        System.out.printf("  Columnas + agregados:        %,12.0f eventos/s, %,6.1f MB (%4.1f bytes/evento)%n",
+            columnas, memoriaColumnas / 1e6, (double) memoriaColumnas / n);
+        System.out.printf("  UserEvent + HashMap/HashSet: %,12.0f eventos/s, %,6.1f MB (%4.1f bytes/evento)%n",
+            objetos, memoriaObjetos / 1e6, (double) memoriaObjetos / n);
+        System.out.printf("  Usuarios únicos: HyperLogLog %,d vs exacto %,d (error %.2f%%)%n",
+            unicosEstimados, unicos.size(), 100.0 * Math.abs(unicosEstimados - unicos.size()) / unicos.size());
+        if (analitica.tamano() + lista.size() + conteos.size() == 0) {
+            System.out.println(); // mantiene ambas estructuras vivas hasta aquí
+        }
+    }
+
+    private static long heapUsado() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    // Modelo
+
+    record EventoUsuario(String tipo, int usuario) {
+    }
+
+    /** Un objeto por evento, como el UserEvent del Tema 6 con usuario y timestamp */
+    record UserEvent(String tipo, Integer usuario, long tiempo) {
+    }
+
+    record Resumen(long eventos, Map<String, Long> ultimoMinuto, Map<String, Long> unicosPorTipo, long unicosTotales) {
+        @Override
+        public String toString() {
+            return String.format("eventos=%,d, último minuto=%s, únicos=%,d %s", eventos, ultimoMinuto, unicosTotales, unicosPorTipo);
+        }
+    }
+
+    // Analítica
+
+    /**
+     * Columnas en bloques de 64K eventos que no se mueven al crecer; un
+     * único escritor (registrar es synchronized) publica el tamaño con
+     * lazySet y las consultas por rango leen las columnas sin bloquear
+     */
+    static final class EventAnalytics {
+        private static final int BLOQUE = 1 << 16;
+
+        private final Scheduler reloj;
+        private final Map<String, Short> diccionario = new HashMap<>();
+        private final List<EstadisticasTipo> estadisticas = new ArrayList<>();
+        private final HyperLogLog unicos = new HyperLogLog();
+        private final Map<String, Embudo> embudos = new LinkedHashMap<>();
+        private volatile Bloque[] bloques = new Bloque[0];
+        private final AtomicLong tamano = new AtomicLong();
+        private final LongAdder rechazados = new LongAdder();
+
+        EventAnalytics(Scheduler reloj) {
+            this.reloj = reloj;
+        }
+
+        /** Código del tipo en el diccionario; se da de alta si es nuevo */
+        synchronized short codigo(String tipo) {
+            Short codigo = diccionario.get(tipo);
+            if (codigo == null) {
+                if (diccionario.size() == Short.MAX_VALUE) {
+                    throw new IllegalStateException("Demasiados tipos de evento");
+                }
+                codigo = (short) diccionario.size();
+                diccionario.put(tipo, codigo);
+                estadisticas.add(new EstadisticasTipo(tipo));
+            }
+            return codigo;
+        }
+
+        synchronized void embudo(String nombre, String... pasos) {
+            short[] codigos = new short[pasos.length];
+            for (int i = 0; i < pasos.length; i++) {
+                codigos[i] = codigo(pasos[i]);
+            }
+            embudos.put(nombre, new Embudo(codigos));
+        }
+
+        /** Un id fuera de rango se cuenta y se descarta sin cortar la ingesta */
+        Disposable ingestar(Observable<EventoUsuario> fuente) {
+            return fuente
+                .filter(evento -> {
+                    boolean valido = usuarioValido(evento.usuario());
+                    if (!valido) {
+                        rechazados.increment();
+                    }
+                    return valido;
+                })
+                .subscribe(evento -> trackEvent(evento.tipo(), evento.usuario()));
+        }
+
+        static boolean usuarioValido(int usuario) {
+            return usuario >= 0 && usuario <= Embudo.MAX_USUARIO;
+        }
+
+        long rechazados() {
+            return rechazados.sum();
+        }
+
+        void trackEvent(String tipo, int usuario) {
+            registrar(codigo(tipo), usuario, reloj.now(TimeUnit.MILLISECONDS));
+        }
+
+        /** Los embudos indexan su estado por id: sólo ids densos en [0, MAX_USUARIO] */
+        synchronized void registrar(short tipo, int usuario, long ms) {
+            if (!usuarioValido(usuario)) {
+                throw new IllegalArgumentException("Id de usuario fuera de rango [0, "
+                    + Embudo.MAX_USUARIO + "]: " + usuario);
+            }
+            long n = tamano.get();
+            int bloque = (int) (n / BLOQUE);
+            int i = (int) (n % BLOQUE);
+            Bloque[] actuales = bloques;
+            if (bloque == actuales.length) {
+                actuales = Arrays.copyOf(actuales, bloque + 1);
+                actuales[bloque] = new Bloque();
+                bloques = actuales;
+            }
+            Bloque destino = actuales[bloque];
+            destino.tipos[i] = tipo;
+            destino.usuarios[i] = usuario;
+            destino.tiempos[i] = ms;
+            tamano.lazySet(n + 1);
+
+            long hash = HyperLogLog.hash(usuario);
+            unicos.anadir(hash);
+            EstadisticasTipo porTipo = estadisticas.get(tipo);
+            porTipo.ultimoMinuto.anadir(ms / 1000);
+            porTipo.unicos.anadir(hash);
+            for (Embudo embudo : embudos.values()) {
+                embudo.avanzar(tipo, usuario);
+            }
+        }
+
+        long tamano() {
+            return tamano.get();
+        }
+
+        synchronized Resumen resumen() {
+            long segundo = reloj.now(TimeUnit.SECONDS);
+            Map<String, Long> ultimoMinuto = new LinkedHashMap<>();
+            Map<String, Long> unicosPorTipo = new LinkedHashMap<>();
+            for (EstadisticasTipo porTipo : estadisticas) {
+                ultimoMinuto.put(porTipo.nombre, porTipo.ultimoMinuto.total(segundo));
+                unicosPorTipo.put(porTipo.nombre, porTipo.unicos.estimar());
+            }
+            return new Resumen(tamano.get(), ultimoMinuto, unicosPorTipo, unicos.estimar());
+        }
+
+        synchronized long[] pasos(String embudo) {
+            Embudo encontrado = embudos.get(embudo);
+            if (encontrado == null) {
+                throw new IllegalArgumentException("Embudo desconocido: " + embudo);
+            }
+            return encontrado.alcanzados.clone();
+        }
+
+        Observable<Resumen> resumenes(long periodo, TimeUnit unidad) {
+            return Observable.interval(periodo, unidad, reloj).map(tick -> resumen());
+        }
+
+        /** Usuarios que han llegado a cada paso, sólo cuando cambia */
+        Observable<long[]> embudo(String nombre, long periodo, TimeUnit unidad) {
+            return Observable.interval(periodo, unidad, reloj)
+                .map(tick -> pasos(nombre))
+                .distinctUntilChanged(Arrays::equals);
+        }
+
+        /** Eventos del tipo con timestamp en [desde, hasta), recorriendo las columnas */
+        Single<Long> contar(String tipo, long desde, long hasta) {
+            return Single.fromCallable(() -> {
+                Short codigo;
+                synchronized (this) {
+                    codigo = diccionario.get(tipo);
+                }
+                if (codigo == null) {
+                    return 0L;
+                }
+                long n = tamano.get();
+                Bloque[] actuales = bloques;
+                long cuenta = 0;
+                for (int b = 0; (long) b * BLOQUE < n; b++) {
+                    Bloque bloque = actuales[b];
+                    int limite = (int) Math.min(BLOQUE, n - (long) b * BLOQUE);
+                    for (int i = 0; i < limite; i++) {
+                        if (bloque.tipos[i] == codigo && bloque.tiempos[i] >= desde && bloque.tiempos[i] < hasta) {
+                            cuenta++;
+                        }
+                    }
+                }
+                return cuenta;
+            });
+        }
+
+        private static final class Bloque {
+            final short[] tipos = new short[BLOQUE];
+            final int[] usuarios = new int[BLOQUE];
+            final long[] tiempos = new long[BLOQUE];
+        }
+
+        private static final class EstadisticasTipo {
+            final String nombre;
+            final ContadorDeslizante ultimoMinuto = new ContadorDeslizante(60);
+            final HyperLogLog unicos = new HyperLogLog();
+
+            EstadisticasTipo(String nombre) {
+                this.nombre = nombre;
+            }
+        }
+    }
+
+    /** Conteo de los últimos N segundos en un anillo de cubos de un segundo */
+    static final class ContadorDeslizante {
+        private final long[] cuentas;
+        private final long[] segundos;
+
+        ContadorDeslizante(int ventanaSegundos) {
+            this.cuentas = new long[ventanaSegundos];
+            this.segundos = new long[ventanaSegundos];
+            Arrays.fill(segundos, -1);
+        }
+
+        void anadir(long segundo) {
+            int i = (int) (segundo % cuentas.length);
+            if (segundos[i] != segundo) {
+                segundos[i] = segundo;
+                cuentas[i] = 0;
+            }
+            cuentas[i]++;
+        }
+
+        long total(long ahora) {
+            long total = 0;
+            for (int i = 0; i < cuentas.length; i++) {
+                if (segundos[i] > ahora - cuentas.length && segundos[i] <= ahora) {
+                    total += cuentas[i];
+                }
+            }
+            return total;
+        }
+    }
+
+    /**
+     * Embudo estricto: un usuario avanza al paso k + 1 cuando genera el
+     * evento del paso k + 1 estando en el paso k. El estado de cada
+     * usuario es un byte indexado por su id, así que los ids deben ser
+     * densos y acotados: como mucho 16 MB por embudo
+     */
+    static final class Embudo {
+        static final int MAX_USUARIO = (1 << 24) - 1;
+        private final short[] pasos;
+        private final long[] alcanzados;
+        private byte[] estados = new byte[1024];
+
+        Embudo(short[] pasos) {
+            this.pasos = pasos;
+            this.alcanzados = new long[pasos.length];
+        }
+
+        void avanzar(short tipo, int usuario) {
+            if (usuario >= estados.length) {
+                estados = Arrays.copyOf(estados, Math.min(MAX_USUARIO + 1, Math.max(usuario + 1, estados.length * 2)));
+            }
+            int paso = estados[usuario];
+            if (paso < pasos.length && pasos[paso] == tipo) {
+                alcanzados[paso]++;
+                estados[usuario] = (byte) (paso + 1);
+            }
+        }
+    }
+
+    /** HyperLogLog con 2^14 registros de un byte (~0,8% de error típico) */
+    static final class HyperLogLog {
+        private static final int P = 14;
+        private static final int M = 1 << P;
+        private final byte[] registros = new byte[M];
+
+        static long hash(long valor) {
+            // finalizador de splitmix64: reparte bien ids consecutivos
+            long z = valor + 0x9E3779B97F4A7C15L;
+            z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+            z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+            return z ^ (z >>> 31);
+        }
+
+        void anadir(long hash) {
+            int indice = (int) (hash >>> (64 - P));
+            byte rango = (byte) (Long.numberOfLeadingZeros((hash << P) | (1L << (P - 1))) + 1);
+            if (rango > registros[indice]) {
+                registros[indice] = rango;
+            }
+        }
+
+        long estimar() {
+            double suma = 0;
+            int ceros = 0;
+            for (byte registro : registros) {
+                suma += 1.0 / (1L << registro);
+                if (registro == 0) {
+                    ceros++;
+                }
+            }
+            double estimacion = 0.7213 / (1 + 1.079 / M) * M * M / suma;
+            if (estimacion <= 2.5 * M && ceros > 0) {
+                estimacion = M * Math.log((double) M / ceros); // corrección para rangos pequeños
+            }
+            return Math.round(estimacion);
+        }
+    }
+}
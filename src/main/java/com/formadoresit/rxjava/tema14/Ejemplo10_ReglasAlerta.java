@@ -0,0 +1,360 @@
+package com.formadoresit.rxjava.tema14;
+
+import io.reactivex.Flowable;
+import io.reactivex.Observable;
+import io.reactivex.Scheduler;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.processors.FlowableProcessor;
+import io.reactivex.processors.PublishProcessor;
+import io.reactivex.schedulers.TestScheduler;
+import io.reactivex.subjects.PublishSubject;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * TEMA 14: Aplicaciones Prácticas
+ * Ejemplo 10: Motor de reglas de alerta
+ *
+ * Los umbrales del Tema 5 (EstadoSistema.tieneAlerta) y de la práctica 3
+ * (temp > 30) son lambdas fijas, y el AlertSystem del Tema 6 sólo reenvía
+ * textos. Aquí las reglas son datos: umbral, tasa en una ventana y
+ * ausencia de muestras. Se indexan por métrica, así que cada muestra sólo
+ * evalúa sus reglas, y su estado vive en arrays primitivos indexados por
+ * regla. Una alerta sólo se emite al cambiar de estado, y el cambio debe
+ * mantenerse un tiempo mínimo para no alertar por oscilaciones
+ */
+public class Ejemplo10_ReglasAlerta {
+
+    public static void main(String[] args) {
+        System.out.println("=== Ejemplo 10: Motor de Reglas de Alerta ===\n");
+
+        // 1. Las reglas del Tema 5 y de la práctica 3, como datos
+        System.out.println("--- Caso 1: Umbral, tasa y ausencia ---");
+        TestScheduler reloj = new TestScheduler();
+        try (RuleEngine motor = new RuleEngine(reloj)) {
+            motor.agregar(Regla.umbral("cpu-alta", "cpu", true, 80));
+            motor.agregar(Regla.umbral("memoria-alta", "memoria", true, 90));
+            motor.agregar(Regla.umbral("disco-lleno", "disco", true, 95));
+            motor.agregar(Regla.tasa("errores", "errores", 10_000, 5));
+            motor.agregar(Regla.ausencia("latido-perdido", "latido", 3_000));
+            Disposable alertas = motor.alertas()
+                .subscribe(alerta -> System.out.printf("  [t=%4.1fs] %s%n", alerta.ms() / 1000.0, alerta));
+            PublishSubject<Muestra> muestras = PublishSubject.create();
+            Disposable ingesta = motor.ingestar(muestras);
+
+            for (int ms = 0; ms <= 10_000; ms += 500) {
+                reloj.advanceTimeTo(ms, TimeUnit.MILLISECONDS);
+                muestras.onNext(new Muestra("cpu", ms < 3000 || ms > 6000 ? 50 : 92));
+                muestras.onNext(new Muestra("memoria", 70));
+                muestras.onNext(new Muestra("errores", ms >= 4000 && ms < 6000 ? 2 : 0));
+                if (ms < 5000) {
+                    muestras.onNext(new Muestra("latido", 1));
+                }
+            }
+            ingesta.dispose();
+            alertas.dispose();
+        }
+
+        // 2. Oscilaciones: la misma regla con y sin tiempo mínimo en el nuevo estado
+        System.out.println("\n--- Caso 2: Temperatura oscilando 29/31 cada 200ms durante 5s ---");
+        reloj = new TestScheduler();
+        try (RuleEngine motor = new RuleEngine(reloj)) {
+            motor.agregar(Regla.umbral("temp>30", "temperatura", true, 30));
+            motor.agregar(Regla.umbral("temp>30 estable", "temperatura", true, 30).conEspera(1000, 1000));
+            LongAdder sinEspera = new LongAdder();
+            Disposable alertas = motor.alertas()
+                .subscribe(alerta -> {
+                    if (alerta.regla().equals("temp>30")) {
+                        sinEspera.increment();
+                    } else {
+                        System.out.printf("  [t=%4.1fs] %s%n", alerta.ms() / 1000.0, alerta);
+                    }
+                });
+            for (int ms = 0; ms <= 8000; ms += 200) {
+                reloj.advanceTimeTo(ms, TimeUnit.MILLISECONDS);
+                double temperatura = ms < 5000 ? (ms / 200 % 2 == 0 ? 29 : 31) : 33;
+                motor.muestra("temperatura", temperatura);
+            }
+            System.out.println("  sin espera: " + sinEspera.sum() + " alertas; con espera de 1s: sólo cuando se estabiliza");
+            alertas.dispose();
+        }
+
+        // 3. Benchmark: 10k reglas, muestras a 100k/s de tiempo simulado
+        int reglas = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        int muestras = args.length > 1 ? Integer.parseInt(args[1]) : 5_000_000;
+        System.out.printf("%n--- Caso 3: %,d reglas sobre %,d métricas, %,d muestras ---%n", reglas, reglas / 2, muestras);
+        benchmark(reglas, muestras);
+
+        System.out.println("\n=== CONCEPTOS CLAVE ===");
+        System.out.println("• Reglas como datos: umbral, tasa en ventana y ausencia");
+        System.out.println("• Índice métrica -> reglas: cada muestra evalúa sólo las suyas");
+        System.out.println("• Estado por regla en arrays primitivos: sin objetos por muestra");
+        System.out.println("• Sólo se emite al cambiar de estado: sin alertas repetidas");
+        System.out.println("• Tiempo mínimo en el nuevo estado: las oscilaciones no generan alertas");
+    }
+
+    private static void benchmark(int numReglas, int numMuestras) {
+        int metricas = Math.max(1, numReglas / 2);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        RuleEngine motor = new RuleEngine(new TestScheduler());
+        Regla[] reglas = new Regla[numReglas];
+        for (int r = 0; r < numReglas; r++) {
+            String metrica = "metrica-" + random.nextInt(metricas);
+            int tipo = random.nextInt(10);
+            reglas[r] = tipo < 6 ? Regla.umbral("r" + r, metrica, true, 90 + random.nextInt(10)).conEspera(500, 500)
+                : tipo < 9 ? Regla.tasa("r" + r, metrica, 10_000, 50_000)
+                : Regla.ausencia("r" + r, metrica, 5_000);
+            motor.agregar(reglas[r]);
+        }
+        LongAdder alertas = new LongAdder();
+        Disposable suscripcion = motor.alertas().subscribe(alerta -> alertas.increment());
+
+        // muestras pregeneradas: 100k/s de tiempo simulado, 10us entre muestras
+        int[] ids = new int[numMuestras];
+        double[] valores = new double[numMuestras];
+        for (int i = 0; i < numMuestras; i++) {
+            ids[i] = motor.metrica("metrica-" + random.nextInt(metricas));
+            valores[i] = random.nextDouble(100);
+        }
+
+        long inicio = System.nanoTime();
+        for (int i = 0; i < numMuestras; i++) {
+            long ms = i / 100;
+            motor.muestra(ids[i], valores[i], ms);
+            if (i % 100_000 == 0) {
+                motor.revisarAusencias(ms);
+            }
+        }
+        double indexado = numMuestras / ((System.nanoTime() - inicio) / 1e9);
+        suscripcion.dispose();
+
+        // referencia: evaluar todas las reglas con cada muestra, como un filter por regla
+        String[] nombres = new String[metricas];
+        for (int m = 0; m < metricas; m++) {
+            nombres[m] = motor.nombreMetrica(m);
+        }
+        int referencia = Math.min(numMuestras, 20_000);
+        long coincidencias = 0;
+        inicio = System.nanoTime();
+        for (int i = 0; i < referencia; i++) {
+            String metrica = nombres[ids[i]];
+            for (Regla regla : reglas) {
+                if (regla.metrica().equals(metrica) && regla.tipo() == Tipo.UMBRAL && valores[i] > regla.umbral()) {
+                    coincidencias++;
+                }
+            }
+        }
+        double todas = referencia / ((System.nanoTime() - inicio) / 1e9);
+
+        System.out.printf("  Índice por métrica:      %,12.0f muestras/s (%,d alertas emitidas)%n", indexado, alertas.sum());
+        System.out.printf("  Todas las reglas/muestra: %,11.0f muestras/s (%d coincidencias)%n", todas, coincidencias);
+        System.out.printf("  Objetivo de 100k muestras/s: %s%n", indexado >= 100_000 ? "cubierto" : "NO cubierto");
+    }
+
+    // Modelo
+
+    enum Tipo { UMBRAL, TASA, AUSENCIA }
+
+    record Muestra(String metrica, double valor) {
+    }
+
+    /**
+     * UMBRAL: valor por encima (o debajo) del umbral. TASA: suma de los
+     * valores en los últimos ventanaMs por encima del umbral. AUSENCIA:
+     * ninguna muestra en ventanaMs. La condición debe mantenerse
+     * pendienteMs para disparar y desaparecer recuperacionMs para resolver
+     */
+    record Regla(String nombre, Tipo tipo, String metrica, boolean mayorQue, double umbral, long ventanaMs,
+                 long pendienteMs, long recuperacionMs) {
+
+        static Regla umbral(String nombre, String metrica, boolean mayorQue, double umbral) {
+            return new Regla(nombre, Tipo.UMBRAL, metrica, mayorQue, umbral, 0, 0, 0);
+        }
+
+        static Regla tasa(String nombre, String metrica, long ventanaMs, double limite) {
+            return new Regla(nombre, Tipo.TASA, metrica, true, limite, ventanaMs, 0, 0);
+        }
+
+        static Regla ausencia(String nombre, String metrica, long ventanaMs) {
+            return new Regla(nombre, Tipo.AUSENCIA, metrica, true, 0, ventanaMs, 0, 0);
+        }
+
+        Regla conEspera(long pendienteMs, long recuperacionMs) {
+            return new Regla(nombre, tipo, metrica, mayorQue, umbral, ventanaMs, pendienteMs, recuperacionMs);
+        }
+    }
+
+    record Alerta(String regla, boolean disparada, String metrica, double valor, long ms) {
+        @Override
+        public String toString() {
+            return (disparada ? "DISPARADA " : "RESUELTA  ") + regla + " (" + metrica + "=" + valor + ")";
+        }
+    }
+
+    // Motor
+
+    /**
+     * Cada regla es un índice en los arrays de estado; cada métrica, un
+     * índice en la tabla métrica -> reglas. Las muestras y la revisión de
+     * ausencias se serializan en el motor
+     */
+    static final class RuleEngine implements AutoCloseable {
+        private static final int CUBOS = 60;
+        private static final long NUNCA = Long.MIN_VALUE;
+
+        private final Scheduler reloj;
+        private final Map<String, Integer> metricas = new HashMap<>();
+        private String[] nombresMetrica = new String[16];
+        private int[][] reglasPorMetrica = new int[16][];
+        private final FlowableProcessor<Alerta> alertas = PublishProcessor.<Alerta>create().toSerialized();
+        private final Disposable revision;
+
+        // estado por regla
+        private Regla[] reglas = new Regla[16];
+        private int numReglas;
+        private boolean[] activas = new boolean[16];
+        private long[] cambioDesde = new long[16];
+        private long[] ultimaMuestra = new long[16];
+        private double[] ultimoValor = new double[16];
+        private double[] sumaCubos = new double[16 * CUBOS];
+        private long[] idCubos = new long[16 * CUBOS];
+        private int[] ausencias = new int[0];
+
+        RuleEngine(Scheduler reloj) {
+            this.reloj = reloj;
+            this.revision = Observable.interval(1, TimeUnit.SECONDS, reloj)
+                .subscribe(tick -> revisarAusencias(reloj.now(TimeUnit.MILLISECONDS)));
+        }
+
+        synchronized int agregar(Regla regla) {
+            int id = numReglas++;
+            if (id == reglas.length) {
+                int capacidad = id * 2;
+                reglas = Arrays.copyOf(reglas, capacidad);
+                activas = Arrays.copyOf(activas, capacidad);
+                cambioDesde = Arrays.copyOf(cambioDesde, capacidad);
+                ultimaMuestra = Arrays.copyOf(ultimaMuestra, capacidad);
+                ultimoValor = Arrays.copyOf(ultimoValor, capacidad);
+                sumaCubos = Arrays.copyOf(sumaCubos, capacidad * CUBOS);
+                idCubos = Arrays.copyOf(idCubos, capacidad * CUBOS);
+            }
+            reglas[id] = regla;
+            cambioDesde[id] = NUNCA;
+            // una regla de ausencia cuenta desde su alta, no desde el origen de los tiempos
+            ultimaMuestra[id] = reloj.now(TimeUnit.MILLISECONDS);
+            Arrays.fill(idCubos, id * CUBOS, (id + 1) * CUBOS, NUNCA);
+            int metrica = metrica(regla.metrica());
+            int[] actuales = reglasPorMetrica[metrica];
+            int[] nuevas = actuales == null ? new int[1] : Arrays.copyOf(actuales, actuales.length + 1);
+            nuevas[nuevas.length - 1] = id;
+            reglasPorMetrica[metrica] = nuevas;
+            if (regla.tipo() == Tipo.AUSENCIA) {
+                ausencias = Arrays.copyOf(ausencias, ausencias.length + 1);
+                ausencias[ausencias.length - 1] = id;
+            }
+            return id;
+        }
+
+        /** Id de la métrica para el camino rápido muestra(int, double, long) */
+        synchronized int metrica(String nombre) {
+            Integer id = metricas.get(nombre);
+            if (id == null) {
+                id = metricas.size();
+                if (id == nombresMetrica.length) {
+                    nombresMetrica = Arrays.copyOf(nombresMetrica, id * 2);
+                    reglasPorMetrica = Arrays.copyOf(reglasPorMetrica, id * 2);
+                }
+                nombresMetrica[id] = nombre;
+                metricas.put(nombre, id);
+            }
+            return id;
+        }
+
+        synchronized String nombreMetrica(int id) {
+            return nombresMetrica[id];
+        }
+
+        Disposable ingestar(Observable<Muestra> fuente) {
+            return fuente.subscribe(muestra -> muestra(muestra.metrica(), muestra.valor()));
+        }
+
+        void muestra(String metrica, double valor) {
+            muestra(metrica(metrica), valor, reloj.now(TimeUnit.MILLISECONDS));
+        }
+
+        synchronized void muestra(int metrica, double valor, long ms) {
+            int[] ids = reglasPorMetrica[metrica];
+            if (ids == null) {
+                return;
+            }
+            for (int id : ids) {
+                Regla regla = reglas[id];
+                ultimaMuestra[id] = ms;
+                ultimoValor[id] = valor;
+                boolean condicion = switch (regla.tipo()) {
+                    case UMBRAL -> regla.mayorQue() ? valor > regla.umbral() : valor < regla.umbral();
+                    case TASA -> sumarVentana(id, regla.ventanaMs(), valor, ms) > regla.umbral();
+                    case AUSENCIA -> false;
+                };
+                evaluar(id, condicion, valor, ms);
+            }
+        }
+
+        synchronized void revisarAusencias(long ms) {
+            for (int id : ausencias) {
+                evaluar(id, ms - ultimaMuestra[id] > reglas[id].ventanaMs(), ultimoValor[id], ms);
+            }
+        }
+
+        Flowable<Alerta> alertas() {
+            return alertas.onBackpressureBuffer();
+        }
+
+        /** Añade el valor a su cubo y suma los cubos que siguen dentro de la ventana */
+        private double sumarVentana(int id, long ventanaMs, double valor, long ms) {
+            long ancho = Math.max(1, ventanaMs / CUBOS);
+            long cubo = ms / ancho;
+            int base = id * CUBOS;
+            int i = base + (int) (cubo % CUBOS);
+            if (idCubos[i] != cubo) {
+                idCubos[i] = cubo;
+                sumaCubos[i] = 0;
+            }
+            sumaCubos[i] += valor;
+            double suma = 0;
+            for (int c = base; c < base + CUBOS; c++) {
+                if (idCubos[c] > cubo - CUBOS) {
+                    suma += sumaCubos[c];
+                }
+            }
+            return suma;
+        }
+
+        /** Cambia de estado sólo si la nueva condición se mantiene el tiempo exigido */
+        private void evaluar(int id, boolean condicion, double valor, long ms) {
+            if (condicion == activas[id]) {
+                cambioDesde[id] = NUNCA;
+                return;
+            }
+            if (cambioDesde[id] == NUNCA) {
+                cambioDesde[id] = ms;
+            }
+            Regla regla = reglas[id];
+            long espera = condicion ? regla.pendienteMs() : regla.recuperacionMs();
+            if (ms - cambioDesde[id] >= espera) {
+                activas[id] = condicion;
+                cambioDesde[id] = NUNCA;
+                alertas.onNext(new Alerta(regla.nombre(), condicion, regla.metrica(), valor, ms));
+            }
+        }
+
+        @Override
+        public void close() {
+            revision.dispose();
+        }
+    }
+}
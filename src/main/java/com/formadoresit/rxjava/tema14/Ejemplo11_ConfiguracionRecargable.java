@@ -0,0 +1,386 @@
+package com.formadoresit.rxjava.tema14;
+
+import io.reactivex.Flowable;
+import io.reactivex.Observable;
+import io.reactivex.Single;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.processors.FlowableProcessor;
+import io.reactivex.processors.PublishProcessor;
+import io.reactivex.schedulers.Schedulers;
+import io.reactivex.subjects.BehaviorSubject;
+import io.reactivex.subjects.Subject;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * TEMA 14: Aplicaciones Prácticas
+ * Ejemplo 11: Configuración recargable en caliente
+ *
+ * El ConfigurationSystem del Tema 6 sustituye el objeto de configuración
+ * entero en cada cambio y todos los suscriptores recalculan. Aquí un
+ * WatchService vigila el fichero, cada recarga se parsea una vez en una
+ * instantánea inmutable y versionada, y se calcula la diferencia por
+ * clave: sólo se avisa a quien observa una clave que ha cambiado. Las
+ * lecturas son una lectura volatile de la instantánea, sin locks
+ */
+public class Ejemplo11_ConfiguracionRecargable {
+
+    public static void main(String[] args) throws Exception {
+        System.out.println("=== Ejemplo 11: Configuración Recargable ===\n");
+        Path directorio = Files.createTempDirectory("config");
+        Path fichero = directorio.resolve("app.properties");
+
+        try {
+            // 1. Suscripciones por clave
+            System.out.println("--- Caso 1: Sólo se avisa a quien observa la clave cambiada ---");
+            escribir(fichero, Map.of("tema", "claro", "idioma", "es", "notificaciones", "true"));
+            try (ConfigService config = new ConfigService(fichero, 20)) {
+                Disposable ui = config.observar("tema", "claro")
+                    .subscribe(tema -> System.out.println("  [UI_MODULE] tema = " + tema));
+                Disposable i18n = config.observar("idioma", "es")
+                    .subscribe(idioma -> System.out.println("  [I18N_MODULE] idioma = " + idioma));
+                Disposable avisos = config.observar("notificaciones", "false")
+                    .subscribe(valor -> System.out.println("  [NOTIF_MODULE] notificaciones = " + valor));
+                Disposable diferencias = config.cambios()
+                    .subscribe(diff -> System.out.println("  [AUDIT] " + diff));
+
+                escribir(fichero, Map.of("tema", "claro", "idioma", "en", "notificaciones", "true"));
+                Thread.sleep(300);
+                escribir(fichero, Map.of("tema", "oscuro", "idioma", "en"));
+                Thread.sleep(300);
+                System.out.println("  lectura directa: tema=" + config.get("tema", "?")
+                    + ", versión " + config.instantanea().version());
+
+                Files.write(fichero, new byte[] {'t', 'e', 'm', 'a', '=', (byte) 0xff}); // UTF-8 inválido
+                Thread.sleep(300);
+                System.out.println("  tras un fichero corrupto: tema=" + config.get("tema", "?")
+                    + ", versión " + config.instantanea().version());
+                escribir(fichero, Map.of("tema", "claro", "idioma", "en"));
+                Thread.sleep(300);
+                ui.dispose();
+                i18n.dispose();
+                avisos.dispose();
+                diferencias.dispose();
+            }
+
+            // 2. Benchmark con 100k claves
+            int claves = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+            System.out.printf("%n--- Caso 2: %,d claves ---%n", claves);
+            benchmark(fichero, claves);
+        } finally {
+            try (var ficheros = Files.list(directorio)) {
+                for (Path p : (Iterable<Path>) ficheros::iterator) {
+                    Files.deleteIfExists(p);
+                }
+            }
+            Files.deleteIfExists(directorio);
+        }
+
+        System.out.println("\n=== CONCEPTOS CLAVE ===");
+        System.out.println("• WatchService + debounce: una recarga por escritura, no una por evento");
+        System.out.println("• Instantánea inmutable y versionada: se parsea una vez por recarga");
+        System.out.println("• Diferencia por clave: sólo se avisa a los observadores de lo que cambió");
+        System.out.println("• Lecturas sin locks: una lectura volatile y un get en un mapa inmutable");
+        System.out.println("• BehaviorSubject por clave observada: valor actual al suscribirse, sin carreras");
+    }
+
+    private static void benchmark(Path fichero, int numClaves) throws Exception {
+        Map<String, String> valores = new HashMap<>();
+        String[] claves = new String[numClaves];
+        for (int i = 0; i < numClaves; i++) {
+            claves[i] = "modulo" + (i % 100) + ".clave" + i;
+            valores.put(claves[i], "valor-" + i);
+        }
+        escribir(fichero, valores);
+
+        try (ConfigService config = new ConfigService(fichero, 20)) {
+            // lectura de 1.000 claves calientes: instantánea volatile vs mapa con ReentrantReadWriteLock
+            ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+            // mismas instancias de clave que la instantánea, para comparar sólo el acceso
+            Map<String, String> conLock = new HashMap<>(config.instantanea().valores());
+            int lecturas = 20_000_000;
+            int[] indices = new int[1 << 16];
+            for (int i = 0; i < indices.length; i++) {
+                indices[i] = ThreadLocalRandom.current().nextInt(Math.min(1000, numClaves));
+            }
+            for (int ronda = 0; ronda < 2; ronda++) {
+                long encontrados = 0;
+                long inicio = System.nanoTime();
+                for (int i = 0; i < lecturas; i++) {
+                    if (config.get(claves[indices[i & 0xffff]]) != null) {
+                        encontrados++;
+                    }
+                }
+                double instantanea = (System.nanoTime() - inicio) / (double) lecturas;
+                inicio = System.nanoTime();
+                for (int i = 0; i < lecturas; i++) {
+                    lock.readLock().lock();
+                    try {
+                        if (conLock.get(claves[indices[i & 0xffff]]) != null) {
+                            encontrados++;
+                        }
+                    } finally {
+                        lock.readLock().unlock();
+                    }
+                }
+                double leido = (System.nanoTime() - inicio) / (double) lecturas;
+                if (ronda > 0) {
+                    System.out.printf("  lectura: instantánea volatile %.1f ns, HashMap + ReadWriteLock %.1f ns%n",
+                        instantanea, leido);
+                }
+                if (encontrados != 2L * lecturas) {
+                    System.out.println("  claves perdidas: " + (2L * lecturas - encontrados));
+                }
+            }
+
+            // recarga: 1.000 claves observadas, se cambian 10 de ellas por recarga
+            int observadas = Math.min(1000, numClaves);
+            AtomicLong notificaciones = new AtomicLong();
+            long[] recibido = new long[1];
+            CountDownLatch[] pendientes = {new CountDownLatch(0)};
+            List<Disposable> suscripciones = new ArrayList<>();
+            for (int i = 0; i < observadas; i++) {
+                suscripciones.add(config.observar(claves[i], "").skip(1).subscribe(valor -> {
+                    notificaciones.incrementAndGet();
+                    recibido[0] = System.nanoTime();
+                    pendientes[0].countDown();
+                }));
+            }
+            long[] latencias = new long[5];
+            for (int r = 0; r < latencias.length; r++) {
+                for (int k = 0; k < 10; k++) {
+                    valores.put(claves[r * 10 + k], "recarga-" + r);
+                }
+                pendientes[0] = new CountDownLatch(10);
+                long escrito = escribir(fichero, valores);
+                if (!pendientes[0].await(5, TimeUnit.SECONDS)) {
+                    System.out.println("  recarga " + r + ": sin aviso en 5s");
+                }
+                latencias[r] = recibido[0] - escrito;
+            }
+            suscripciones.forEach(Disposable::dispose);
+            Arrays.sort(latencias);
+            System.out.printf("  recarga -> aviso: mediana %,d ms, máx. %,d ms (debounce de 20 ms incluido)%n",
+                latencias[latencias.length / 2] / 1_000_000, latencias[latencias.length - 1] / 1_000_000);
+            System.out.printf("  parseo + diferencia de %,d claves: %,d ms; %,d avisos para %,d claves observadas%n",
+                numClaves, config.ultimaRecargaNanos() / 1_000_000, notificaciones.get(), observadas);
+        }
+    }
+
+    /** Escribe en un temporal y lo mueve encima: el lector nunca ve un fichero a medias */
+    private static long escribir(Path fichero, Map<String, String> valores) throws IOException {
+        Path temporal = fichero.resolveSibling(fichero.getFileName() + ".tmp");
+        try (Writer writer = Files.newBufferedWriter(temporal, StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, String> entrada : valores.entrySet()) {
+                writer.write(entrada.getKey());
+                writer.write('=');
+                writer.write(entrada.getValue());
+                writer.write('\n');
+            }
+        }
+        long antes = System.nanoTime();
+        Files.move(temporal, fichero, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return antes;
+    }
+
+    // Modelo
+
+    record Instantanea(long version, Map<String, String> valores) {
+    }
+
+    /** anterior o nuevo son null si la clave se añadió o se eliminó */
+    record Cambio(String clave, String anterior, String nuevo) {
+    }
+
+    record Diferencias(long version, List<Cambio> cambios) {
+        @Override
+        public String toString() {
+            StringBuilder texto = new StringBuilder("v" + version + ":");
+            for (Cambio cambio : cambios) {
+                texto.append(' ').append(cambio.clave()).append(' ')
+                    .append(cambio.anterior()).append(" -> ").append(cambio.nuevo()).append(';');
+            }
+            return texto.toString();
+        }
+    }
+
+    /** Valor de una clave en una versión; null si no existe */
+    private record Valor(long version, String valor) {
+    }
+
+    // Servicio
+
+    /**
+     * La instantánea actual está en un campo volatile: leer es una lectura
+     * volatile más un get. Las recargas se serializan; cada una publica la
+     * nueva instantánea antes de avisar, así que quien reciba un aviso y
+     * lea ya ve la versión nueva
+     */
+    static final class ConfigService implements AutoCloseable {
+        private final Path fichero;
+        private final Map<String, Subject<Valor>> porClave = new ConcurrentHashMap<>();
+        private final FlowableProcessor<Diferencias> cambios = PublishProcessor.<Diferencias>create().toSerialized();
+        private final Disposable vigilancia;
+        private volatile Instantanea actual;
+        private volatile long ultimaRecargaNanos;
+
+        ConfigService(Path fichero, long debounceMs) throws IOException {
+            this.fichero = fichero;
+            this.actual = new Instantanea(1, parsear(fichero));
+            this.vigilancia = vigilar(fichero.toAbsolutePath().getParent())
+                .filter(evento -> fichero.getFileName().equals(evento.context()))
+                .debounce(debounceMs, TimeUnit.MILLISECONDS, Schedulers.io())
+                .subscribe(
+                    evento -> {
+                        // un fichero ilegible no corta la vigilancia: sigue la última versión buena
+                        try {
+                            aplicar();
+                        } catch (IOException e) {
+                            System.err.println("Recarga de " + fichero + " fallida, se mantiene la versión "
+                                + actual.version() + ": " + e);
+                        }
+                    },
+                    error -> System.err.println("Vigilancia de " + fichero + " detenida: " + error));
+        }
+
+        String get(String clave) {
+            return actual.valores().get(clave);
+        }
+
+        String get(String clave, String porDefecto) {
+            return actual.valores().getOrDefault(clave, porDefecto);
+        }
+
+        Instantanea instantanea() {
+            return actual;
+        }
+
+        /** Valor actual y cada cambio de esa clave; porDefecto si no existe */
+        Observable<String> observar(String clave, String porDefecto) {
+            return sujeto(clave)
+                .map(valor -> valor.valor() == null ? porDefecto : valor.valor())
+                .distinctUntilChanged();
+        }
+
+        Flowable<Diferencias> cambios() {
+            return cambios.onBackpressureBuffer();
+        }
+
+        /** Recarga a demanda, además de las del WatchService */
+        Single<Diferencias> recargar() {
+            return Single.fromCallable(this::aplicar).subscribeOn(Schedulers.io());
+        }
+
+        long ultimaRecargaNanos() {
+            return ultimaRecargaNanos;
+        }
+
+        /** Creado bajo el mismo lock que las recargas: no se pierde un cambio entre leer y suscribirse */
+        private Subject<Valor> sujeto(String clave) {
+            Subject<Valor> sujeto = porClave.get(clave);
+            if (sujeto != null) {
+                return sujeto;
+            }
+            synchronized (this) {
+                return porClave.computeIfAbsent(clave, c -> BehaviorSubject.<Valor>createDefault(
+                    new Valor(actual.version(), actual.valores().get(c))).toSerialized());
+            }
+        }
+
+        private synchronized Diferencias aplicar() throws IOException {
+            long inicio = System.nanoTime();
+            Instantanea anterior = actual;
+            Map<String, String> nuevos = parsear(fichero);
+            long version = anterior.version() + 1;
+            List<Cambio> lista = new ArrayList<>();
+            for (Map.Entry<String, String> entrada : nuevos.entrySet()) {
+                String previo = anterior.valores().get(entrada.getKey());
+                if (!entrada.getValue().equals(previo)) {
+                    lista.add(new Cambio(entrada.getKey(), previo, entrada.getValue()));
+                }
+            }
+            for (String clave : anterior.valores().keySet()) {
+                if (!nuevos.containsKey(clave)) {
+                    lista.add(new Cambio(clave, anterior.valores().get(clave), null));
+                }
+            }
+            Diferencias diferencias = new Diferencias(version, Collections.unmodifiableList(lista));
+            if (lista.isEmpty()) {
+                return diferencias;
+            }
+            actual = new Instantanea(version, nuevos);
+            ultimaRecargaNanos = System.nanoTime() - inicio;
+            for (Cambio cambio : lista) {
+                Subject<Valor> sujeto = porClave.get(cambio.clave());
+                if (sujeto != null) {
+                    sujeto.onNext(new Valor(version, cambio.nuevo()));
+                }
+            }
+            cambios.onNext(diferencias);
+            return diferencias;
+        }
+
+        /** Líneas clave=valor; se ignoran las vacías y los comentarios con # */
+        private static Map<String, String> parsear(Path fichero) throws IOException {
+            Map<String, String> valores = new HashMap<>();
+            try (BufferedReader reader = Files.newBufferedReader(fichero, StandardCharsets.UTF_8)) {
+                String linea;
+                while ((linea = reader.readLine()) != null) {
+                    int igual = linea.indexOf('=');
+                    if (igual > 0 && !linea.startsWith("#")) {
+                        valores.put(linea.substring(0, igual).trim(), linea.substring(igual + 1).trim());
+                    }
+                }
+            }
+            return Collections.unmodifiableMap(valores);
+        }
+
+        /** Eventos del directorio; al cancelar se cierra el WatchService y el bucle termina */
+        private static Observable<WatchEvent<?>> vigilar(Path directorio) {
+            return Observable.<WatchEvent<?>>create(emisor -> {
+                WatchService servicio = directorio.getFileSystem().newWatchService();
+                emisor.setCancellable(servicio::close);
+                directorio.register(servicio, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+                while (!emisor.isDisposed()) {
+                    WatchKey clave;
+                    try {
+                        clave = servicio.take();
+                    } catch (ClosedWatchServiceException | InterruptedException e) {
+                        return;
+                    }
+                    for (WatchEvent<?> evento : clave.pollEvents()) {
+                        emisor.onNext(evento);
+                    }
+                    clave.reset();
+                }
+            }).subscribeOn(Schedulers.io());
+        }
+
+        @Override
+        public void close() {
+            vigilancia.dispose();
+        }
+    }
+}
@@ -0,0 +1,612 @@
+package com.formadoresit.rxjava.tema14;
+
+import io.reactivex.Completable;
+import io.reactivex.Flowable;
+import io.reactivex.Observable;
+import io.reactivex.Scheduler;
+import io.reactivex.Single;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.processors.FlowableProcessor;
+import io.reactivex.processors.PublishProcessor;
+import io.reactivex.schedulers.Schedulers;
+import io.reactivex.schedulers.TestScheduler;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * TEMA 14: Aplicaciones Prácticas
+ * Ejemplo 12: Almacén de sesiones con rueda de expiración
+ *
+ * El SessionDataManager del Tema 6 guarda una única Sesion sin caducidad.
+ * Aquí millones de sesiones viven en arrays primitivos repartidos en
+ * segmentos, con TTL deslizante: tocar una sesión sólo apunta la hora del
+ * último acceso. La caducidad la lleva una rueda de tiempos jerárquica;
+ * cuando llega su cubeta, la sesión se revisa y, si se ha tocado, se
+ * vuelve a encolar para su nuevo vencimiento. No hay una tarea programada
+ * por sesión. Las caducadas salen por un stream y el almacén se puede
+ * volcar a un fichero para arrancar rápido
+ */
+public class Ejemplo12_Sesiones {
+
+    public static void main(String[] args) throws Exception {
+        System.out.println("=== Ejemplo 12: Almacén de Sesiones ===\n");
+
+        // 1. TTL deslizante con reloj simulado
+        System.out.println("--- Caso 1: TTL de 30 minutos, una sesión activa, dos abandonadas y un logout ---");
+        TestScheduler reloj = new TestScheduler();
+        Path fichero = Files.createTempFile("sesiones", ".bin");
+        try {
+            try (SessionStore sesiones = new SessionStore(1024, 30, TimeUnit.MINUTES, 1000, reloj)) {
+                Disposable limpieza = sesiones.expiraciones()
+                    .subscribe(e -> System.out.printf("  [t=%3d min] caduca la sesión %d del usuario %d%n",
+                        reloj.now(TimeUnit.MINUTES), e.sesion(), e.usuario()));
+                sesiones.crear(101, 1);
+                sesiones.crear(102, 2);
+                sesiones.crear(103, 3);
+                reloj.advanceTimeTo(10, TimeUnit.MINUTES);
+                sesiones.crear(104, 4);
+                sesiones.invalidar(103); // logout: no es una caducidad
+                for (int minuto = 10; minuto <= 50; minuto += 10) {
+                    reloj.advanceTimeTo(minuto, TimeUnit.MINUTES);
+                    sesiones.acceder(101); // el usuario 1 sigue navegando
+                }
+                reloj.advanceTimeTo(55, TimeUnit.MINUTES);
+
+                sesiones.guardar(fichero).blockingAwait();
+                System.out.printf("  volcado: %d sesiones, %d bytes%n", sesiones.tamano(), Files.size(fichero));
+                reloj.advanceTimeTo(90, TimeUnit.MINUTES);
+                limpieza.dispose();
+            }
+
+            TestScheduler otroReloj = new TestScheduler();
+            try (SessionStore restaurado = new SessionStore(1024, 30, TimeUnit.MINUTES, 1000, otroReloj)) {
+                int cargadas = restaurado.restaurar(fichero).blockingGet();
+                Disposable limpieza = restaurado.expiraciones()
+                    .subscribe(e -> System.out.printf("  [restaurado, t=%d min] caduca la sesión %d%n",
+                        otroReloj.now(TimeUnit.MINUTES), e.sesion()));
+                System.out.println("  restauradas " + cargadas + ", usuario de la 101: " + restaurado.acceder(101));
+                otroReloj.advanceTimeTo(40, TimeUnit.MINUTES);
+                limpieza.dispose();
+            }
+
+            // 2. Benchmark con millones de sesiones
+            int n = args.length > 0 ? Integer.parseInt(args[0]) : 5_000_000;
+            System.out.printf("%n--- Caso 2: %,d sesiones ---%n", n);
+            benchmark(n, fichero);
+
+            System.out.println("\n--- Caso 3: Referencia con un mapa y una tarea programada por sesión ---");
+            referencia(Math.min(n, 500_000));
+        } finally {
+            Files.deleteIfExists(fichero);
+        }
+
+        System.out.println("\n=== CONCEPTOS CLAVE ===");
+        System.out.println("• Tocar una sesión es O(1): se apunta el último acceso, no se reprograma nada");
+        System.out.println("• Rueda jerárquica: cada tick revisa una cubeta, no todas las sesiones");
+        System.out.println("• Reencolado perezoso: la sesión tocada vuelve a la rueda al vencer su cubeta");
+        System.out.println("• Arrays primitivos por segmento: decenas de bytes por sesión, sin objetos");
+        System.out.println("• Volcado con el TTL restante: al arrancar, cada sesión conserva su vencimiento");
+    }
+
+    private static void benchmark(int n, Path fichero) throws IOException {
+        TestScheduler reloj = new TestScheduler();
+        long base = heapUsado();
+        long inicio = System.nanoTime();
+        SessionStore sesiones = new SessionStore(n, 30, TimeUnit.MINUTES, 1000, reloj);
+        for (int i = 1; i <= n; i++) {
+            sesiones.crear(i, i % 1_000_000);
+        }
+        double altas = n / ((System.nanoTime() - inicio) / 1e9);
+        long memoria = heapUsado() - base;
+        System.out.printf("  altas: %,.0f/s; memoria %,.0f MB (%.1f bytes/sesión)%n", altas, memoria / 1e6, (double) memoria / n);
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int toques = 20_000_000;
+        for (int ronda = 0; ronda < 2; ronda++) {
+            inicio = System.nanoTime();
+            for (int i = 0; i < toques; i++) {
+                sesiones.tocar(1 + random.nextInt(n));
+            }
+            if (ronda > 0) {
+                System.out.printf("  toques: %,.0f/s%n", toques / ((System.nanoTime() - inicio) / 1e9));
+            }
+        }
+
+        inicio = System.nanoTime();
+        sesiones.guardar(fichero).blockingAwait();
+        long guardar = System.nanoTime() - inicio;
+        SessionStore restaurado = new SessionStore(n, 30, TimeUnit.MINUTES, 1000, new TestScheduler());
+        inicio = System.nanoTime();
+        restaurado.restaurar(fichero).blockingGet();
+        long restaurar = System.nanoTime() - inicio;
+        System.out.printf("  volcado: %,d MB en %,d ms; restauración en %,d ms%n",
+            Files.size(fichero) / 1_000_000, guardar / 1_000_000, restaurar / 1_000_000);
+        restaurado.close();
+
+        // la mitad se toca a los 20 minutos; el resto caduca a los 30
+        reloj.advanceTimeTo(20, TimeUnit.MINUTES);
+        for (int i = 1; i <= n; i += 2) {
+            sesiones.tocar(i);
+        }
+        LongAdder caducadas = new LongAdder();
+        Disposable limpieza = sesiones.expiraciones().subscribe(e -> caducadas.increment());
+        inicio = System.nanoTime();
+        reloj.advanceTimeTo(31, TimeUnit.MINUTES);
+        long barrido = System.nanoTime() - inicio;
+        System.out.printf("  caducidad: %,d sesiones caducadas en %,d ms de ticks; quedan %,d%n",
+            caducadas.sum(), barrido / 1_000_000, sesiones.tamano());
+        limpieza.dispose();
+        sesiones.close();
+    }
+
+    /** Un ConcurrentHashMap de Sesion y un ScheduledFuture por sesión que se reprograma al tocarla */
+    private static void referencia(int n) {
+        ScheduledThreadPoolExecutor programador = new ScheduledThreadPoolExecutor(1);
+        programador.setRemoveOnCancelPolicy(true);
+        Map<Long, Sesion> mapa = new ConcurrentHashMap<>();
+        Map<Long, ScheduledFuture<?>> tareas = new ConcurrentHashMap<>();
+        long base = heapUsado();
+        for (long i = 1; i <= n; i++) {
+            long id = i;
+            mapa.put(id, new Sesion("activa", "usuario-" + (i % 1_000_000)));
+            tareas.put(id, programador.schedule(() -> mapa.remove(id), 30, TimeUnit.MINUTES));
+        }
+        long memoria = heapUsado() - base;
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int toques = 1_000_000;
+        long inicio = System.nanoTime();
+        for (int i = 0; i < toques; i++) {
+            long id = 1 + random.nextInt(n);
+            tareas.get(id).cancel(false);
+            tareas.put(id, programador.schedule(() -> mapa.remove(id), 30, TimeUnit.MINUTES));
+        }
+        double porSegundo = toques / ((System.nanoTime() - inicio) / 1e9);
+        System.out.printf("  %,d sesiones: %.1f bytes/sesión; toques (cancelar + reprogramar): %,.0f/s%n",
+            n, (double) memoria / n, porSegundo);
+        programador.shutdownNow();
+    }
+
+    private static long heapUsado() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    // Modelo
+
+    /** La Sesion del Tema 6 */
+    record Sesion(String estado, String usuarioId) {
+    }
+
+    record Expiracion(long sesion, int usuario) {
+    }
+
+    // Almacén
+
+    /**
+     * Las sesiones se reparten en 64 segmentos por hash del id; cada
+     * segmento tiene su lock, su tabla id -> hueco, sus arrays por hueco y
+     * su propia rueda. Un interval del scheduler avanza las ruedas
+     */
+    static final class SessionStore implements AutoCloseable {
+        private static final int SEGMENTOS = 64;
+
+        private final Segmento[] segmentos = new Segmento[SEGMENTOS];
+        private final Scheduler reloj;
+        private final long tickMs;
+        private final int ttlTicks;
+        private final long origen;
+        private final FlowableProcessor<Expiracion> expiraciones = PublishProcessor.<Expiracion>create().toSerialized();
+        private final Disposable rueda;
+
+        SessionStore(int capacidad, long ttl, TimeUnit unidad, long tickMs, Scheduler reloj) {
+            this.reloj = reloj;
+            this.tickMs = tickMs;
+            this.ttlTicks = (int) Math.max(1, unidad.toMillis(ttl) / tickMs);
+            this.origen = reloj.now(TimeUnit.MILLISECONDS);
+            for (int i = 0; i < SEGMENTOS; i++) {
+                segmentos[i] = new Segmento(Math.max(16, capacidad / SEGMENTOS));
+            }
+            this.rueda = Observable.interval(tickMs, TimeUnit.MILLISECONDS, reloj)
+                .subscribe(t -> avanzar());
+        }
+
+        /** Alta o renovación de la sesión */
+        void crear(long sesion, int usuario) {
+            Segmento segmento = segmento(sesion);
+            synchronized (segmento) {
+                segmento.crear(sesion, usuario, tickActual(), ttlTicks);
+            }
+        }
+
+        /** Renueva el TTL; false si la sesión no existe o ya caducó */
+        boolean tocar(long sesion) {
+            Segmento segmento = segmento(sesion);
+            synchronized (segmento) {
+                int hueco = segmento.buscar(sesion);
+                if (hueco < 0) {
+                    return false;
+                }
+                segmento.accesos[hueco] = tickActual();
+                return true;
+            }
+        }
+
+        /** Usuario de la sesión, renovando su TTL; -1 si no existe */
+        int acceder(long sesion) {
+            Segmento segmento = segmento(sesion);
+            synchronized (segmento) {
+                int hueco = segmento.buscar(sesion);
+                if (hueco < 0) {
+                    return -1;
+                }
+                segmento.accesos[hueco] = tickActual();
+                return segmento.usuarios[hueco];
+            }
+        }
+
+        /** Cierre explícito: no se emite como caducidad */
+        boolean invalidar(long sesion) {
+            Segmento segmento = segmento(sesion);
+            synchronized (segmento) {
+                return segmento.eliminar(sesion);
+            }
+        }
+
+        long tamano() {
+            long total = 0;
+            for (Segmento segmento : segmentos) {
+                synchronized (segmento) {
+                    total += segmento.tamano;
+                }
+            }
+            return total;
+        }
+
+        Flowable<Expiracion> expiraciones() {
+            return expiraciones.onBackpressureBuffer();
+        }
+
+        /**
+         * Vuelca id, usuario y ticks restantes de cada sesión. Cada segmento
+         * se copia bajo su lock: el volcado es consistente por segmento
+         */
+        Completable guardar(Path fichero) {
+            return Completable.fromAction(() -> {
+                Path temporal = fichero.resolveSibling(fichero.getFileName() + ".tmp");
+                try (DataOutputStream salida = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(temporal), 1 << 16))) {
+                    salida.writeInt(ttlTicks);
+                    for (Segmento segmento : segmentos) {
+                        synchronized (segmento) {
+                            int ahora = tickActual();
+                            for (int hueco = 0; hueco < segmento.usados; hueco++) {
+                                if (segmento.ids[hueco] != 0) {
+                                    salida.writeLong(segmento.ids[hueco]);
+                                    salida.writeInt(segmento.usuarios[hueco]);
+                                    salida.writeInt(segmento.accesos[hueco] + ttlTicks - ahora);
+                                }
+                            }
+                        }
+                    }
+                    salida.writeLong(0);
+                }
+                Files.move(temporal, fichero, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }).subscribeOn(Schedulers.io());
+        }
+
+        /** Carga un volcado conservando el TTL restante de cada sesión */
+        Single<Integer> restaurar(Path fichero) {
+            return Single.fromCallable(() -> {
+                int cargadas = 0;
+                try (DataInputStream entrada = new DataInputStream(
+                    new BufferedInputStream(Files.newInputStream(fichero), 1 << 16))) {
+                    int ttlVolcado = entrada.readInt();
+                    long sesion;
+                    while ((sesion = entrada.readLong()) != 0) {
+                        int usuario = entrada.readInt();
+                        int restantes = Math.min(entrada.readInt(), ttlTicks);
+                        if (restantes > 0) {
+                            Segmento segmento = segmento(sesion);
+                            synchronized (segmento) {
+                                segmento.crear(sesion, usuario, tickActual() - (ttlTicks - restantes), ttlTicks);
+                            }
+                            cargadas++;
+                        }
+                    }
+                    if (ttlVolcado != ttlTicks) {
+                        System.out.println("  Aviso: volcado con otro TTL (" + ttlVolcado + " ticks)");
+                    }
+                }
+                return cargadas;
+            }).subscribeOn(Schedulers.io());
+        }
+
+        private void avanzar() {
+            int ahora = tickActual();
+            List<Expiracion> caducadas = new ArrayList<>();
+            for (Segmento segmento : segmentos) {
+                synchronized (segmento) {
+                    segmento.avanzar(ahora, ttlTicks, caducadas);
+                }
+                // se emite fuera del lock: la limpieza puede volver a llamar al almacén
+                for (Expiracion expiracion : caducadas) {
+                    expiraciones.onNext(expiracion);
+                }
+                caducadas.clear();
+            }
+        }
+
+        private int tickActual() {
+            return (int) ((reloj.now(TimeUnit.MILLISECONDS) - origen) / tickMs);
+        }
+
+        private Segmento segmento(long sesion) {
+            if (sesion == 0) {
+                throw new IllegalArgumentException("El id de sesión 0 está reservado");
+            }
+            return segmentos[(int) (mezclar(sesion) >>> 58)];
+        }
+
+        static long mezclar(long valor) {
+            long z = valor * 0x9E3779B97F4A7C15L;
+            z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+            return z ^ (z >>> 31);
+        }
+
+        @Override
+        public void close() {
+            rueda.dispose();
+        }
+    }
+
+    /**
+     * Tabla de direccionamiento abierto id -> hueco, arrays por hueco y una
+     * rueda de 4 niveles de 64 cubetas (64^4 ticks). Las cubetas son listas
+     * doblemente enlazadas de huecos sobre siguientes/anteriores; la cabeza
+     * guarda en anteriores -(cubeta + 1) para poder desenlazarla en O(1)
+     */
+    private static final class Segmento {
+        private static final int BITS = 6;
+        private static final int RANURAS = 1 << BITS;
+        private static final int NIVELES = 4;
+        private static final int NADA = -1;
+
+        long[] ids;
+        int[] usuarios;
+        int[] accesos;
+        private int[] siguientes;
+        private int[] anteriores;
+        int usados;
+        int tamano;
+        private int libre = NADA;
+        private long[] claves;
+        private int[] valores;
+        private final int[] cabezas = new int[NIVELES * RANURAS];
+        private int tick;
+
+        Segmento(int capacidad) {
+            ids = new long[capacidad];
+            usuarios = new int[capacidad];
+            accesos = new int[capacidad];
+            siguientes = new int[capacidad];
+            anteriores = new int[capacidad];
+            int tabla = Integer.highestOneBit(capacidad * 2 - 1) << 1;
+            claves = new long[tabla];
+            valores = new int[tabla];
+            Arrays.fill(cabezas, NADA);
+        }
+
+        void crear(long sesion, int usuario, int acceso, int ttl) {
+            int hueco = buscar(sesion);
+            if (hueco >= 0) {
+                usuarios[hueco] = usuario;
+                accesos[hueco] = Math.max(accesos[hueco], acceso);
+                return;
+            }
+            if (libre != NADA) {
+                hueco = libre;
+                libre = siguientes[hueco];
+            } else {
+                if (usados == ids.length) {
+                    crecer();
+                }
+                hueco = usados++;
+            }
+            ids[hueco] = sesion;
+            usuarios[hueco] = usuario;
+            accesos[hueco] = acceso;
+            tamano++;
+            poner(sesion, hueco);
+            encolar(hueco, acceso + ttl);
+        }
+
+        boolean eliminar(long sesion) {
+            int hueco = buscar(sesion);
+            if (hueco < 0) {
+                return false;
+            }
+            desenlazar(hueco);
+            liberar(hueco);
+            return true;
+        }
+
+        /** Procesa los ticks pendientes hasta ahora: primero cascadas, luego la cubeta del nivel 0 */
+        void avanzar(int ahora, int ttl, List<Expiracion> caducadas) {
+            while (tick < ahora) {
+                tick++;
+                for (int nivel = NIVELES - 1; nivel >= 1; nivel--) {
+                    if ((tick & ((1 << (BITS * nivel)) - 1)) == 0) {
+                        int hueco = extraer(nivel * RANURAS + ((tick >>> (BITS * nivel)) & (RANURAS - 1)));
+                        while (hueco != NADA) {
+                            int siguiente = siguientes[hueco];
+                            encolar(hueco, accesos[hueco] + ttl);
+                            hueco = siguiente;
+                        }
+                    }
+                }
+                int hueco = extraer(tick & (RANURAS - 1));
+                while (hueco != NADA) {
+                    int siguiente = siguientes[hueco];
+                    int vence = accesos[hueco] + ttl;
+                    if (vence <= tick) {
+                        caducadas.add(new Expiracion(ids[hueco], usuarios[hueco]));
+                        liberar(hueco);
+                    } else {
+                        encolar(hueco, vence); // se tocó después de encolarla
+                    }
+                    hueco = siguiente;
+                }
+            }
+        }
+
+        private void encolar(int hueco, int vence) {
+            int delta = vence - tick;
+            int cubeta;
+            if (delta <= 0) {
+                cubeta = tick & (RANURAS - 1);
+            } else if (delta < RANURAS) {
+                cubeta = vence & (RANURAS - 1);
+            } else {
+                int nivel = 1;
+                while (nivel < NIVELES - 1 && delta >= 1 << (BITS * (nivel + 1))) {
+                    nivel++;
+                }
+                int limitado = Math.min(vence, tick + (1 << (BITS * NIVELES)) - 1);
+                cubeta = nivel * RANURAS + ((limitado >>> (BITS * nivel)) & (RANURAS - 1));
+            }
+            int cabeza = cabezas[cubeta];
+            siguientes[hueco] = cabeza;
+            anteriores[hueco] = -(cubeta + 1);
+            if (cabeza != NADA) {
+                anteriores[cabeza] = hueco;
+            }
+            cabezas[cubeta] = hueco;
+        }
+
+        private void desenlazar(int hueco) {
+            int anterior = anteriores[hueco];
+            int siguiente = siguientes[hueco];
+            if (anterior < 0) {
+                cabezas[-anterior - 1] = siguiente;
+                if (siguiente != NADA) {
+                    anteriores[siguiente] = anterior;
+                }
+            } else {
+                siguientes[anterior] = siguiente;
+                if (siguiente != NADA) {
+                    anteriores[siguiente] = anterior;
+                }
+            }
+        }
+
+        /** Vacía la cubeta y devuelve su primera sesión; se recorre con siguientes */
+        private int extraer(int cubeta) {
+            int cabeza = cabezas[cubeta];
+            cabezas[cubeta] = NADA;
+            return cabeza;
+        }
+
+        private void liberar(int hueco) {
+            quitar(ids[hueco]);
+            ids[hueco] = 0;
+            siguientes[hueco] = libre;
+            libre = hueco;
+            tamano--;
+        }
+
+        private void crecer() {
+            int capacidad = ids.length * 2;
+            ids = Arrays.copyOf(ids, capacidad);
+            usuarios = Arrays.copyOf(usuarios, capacidad);
+            accesos = Arrays.copyOf(accesos, capacidad);
+            siguientes = Arrays.copyOf(siguientes, capacidad);
+            anteriores = Arrays.copyOf(anteriores, capacidad);
+        }
+
+        // Tabla id -> hueco con sondeo lineal (0 = vacío)
+
+        int buscar(long sesion) {
+            int mascara = claves.length - 1;
+            for (int i = (int) SessionStore.mezclar(sesion) & mascara; claves[i] != 0; i = (i + 1) & mascara) {
+                if (claves[i] == sesion) {
+                    return valores[i];
+                }
+            }
+            return NADA;
+        }
+
+        private void poner(long sesion, int hueco) {
+            if ((tamano + 1) * 2 > claves.length) {
+                redimensionar();
+            }
+            int mascara = claves.length - 1;
+            int i = (int) SessionStore.mezclar(sesion) & mascara;
+            while (claves[i] != 0) {
+                i = (i + 1) & mascara;
+            }
+            claves[i] = sesion;
+            valores[i] = hueco;
+        }
+
+        /** Borrado con desplazamiento hacia atrás: sin lápidas */
+        private void quitar(long sesion) {
+            int mascara = claves.length - 1;
+            int i = (int) SessionStore.mezclar(sesion) & mascara;
+            while (claves[i] != sesion) {
+                if (claves[i] == 0) {
+                    return;
+                }
+                i = (i + 1) & mascara;
+            }
+            claves[i] = 0;
+            for (int j = (i + 1) & mascara; claves[j] != 0; j = (j + 1) & mascara) {
+                int ideal = (int) SessionStore.mezclar(claves[j]) & mascara;
+                boolean fuera = i <= j ? (ideal <= i || ideal > j) : (ideal <= i && ideal > j);
+                if (fuera) {
+                    claves[i] = claves[j];
+                    valores[i] = valores[j];
+                    claves[j] = 0;
+                    i = j;
+                }
+            }
+        }
+
+        private void redimensionar() {
+            long[] viejasClaves = claves;
+            int[] viejosValores = valores;
+            claves = new long[viejasClaves.length * 2];
+            valores = new int[viejasClaves.length * 2];
+            int mascara = claves.length - 1;
+            for (int k = 0; k < viejasClaves.length; k++) {
+                if (viejasClaves[k] != 0) {
+                    int i = (int) SessionStore.mezclar(viejasClaves[k]) & mascara;
+                    while (claves[i] != 0) {
+                        i = (i + 1) & mascara;
+                    }
+                    claves[i] = viejasClaves[k];
+                    valores[i] = viejosValores[k];
+                }
+            }
+        }
+    }
+}
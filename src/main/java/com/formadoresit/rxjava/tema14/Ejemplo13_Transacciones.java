@@ -0,0 +1,512 @@
+package com.formadoresit.rxjava.tema14;
+
+import io.reactivex.Flowable;
+import io.reactivex.Scheduler;
+import io.reactivex.Single;
+import io.reactivex.processors.FlowableProcessor;
+import io.reactivex.processors.PublishProcessor;
+import io.reactivex.schedulers.Schedulers;
+import io.reactivex.subjects.SingleSubject;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
+
+/**
+ * TEMA 14: Aplicaciones Prácticas
+ * Ejemplo 13: Transacciones idempotentes con carriles y WAL
+ *
+ * El procesamiento de transacciones del Tema 5 encadena validar, pagar y
+ * registrar con retry(2): si el fallo llega después de cobrar, el reintento
+ * cobra otra vez. Aquí cada transacción lleva una clave de idempotencia; un
+ * almacén acotado y con caducidad devuelve el mismo resultado a cualquier
+ * reintento con esa clave. Las cuentas se reparten en carriles de un solo
+ * hilo (orden dentro de la cuenta, paralelismo entre cuentas) y cada
+ * resultado se confirma sólo tras escribirse en un log local (WAL) que
+ * agrupa muchas transacciones en cada fsync. Al arrancar, el WAL se
+ * reproduce para recuperar saldos y claves
+ */
+public class Ejemplo13_Transacciones {
+
+    public static void main(String[] args) throws Exception {
+        System.out.println("=== Ejemplo 13: Transacciones Idempotentes ===\n");
+        Path directorio = Files.createTempDirectory("transacciones");
+        Path wal = directorio.resolve("transacciones.wal");
+        try {
+            // 1. Reintentos con respuestas perdidas
+            System.out.println("--- Caso 1: Red que pierde el 40% de las respuestas, retry(5) ---");
+            try (TransactionEngine motor = new TransactionEngine(wal, 100, 4, 10_000, 10, TimeUnit.MINUTES, 4096)) {
+                motor.procesar(new Transaccion("ingreso-1", 7, 100_00)).blockingGet();
+                AtomicInteger intentos = new AtomicInteger();
+                List<Resultado> resultados = Flowable.range(1, 5)
+                    .concatMapSingle(i -> motor.procesar(new Transaccion("pago-" + i, 7, -15_00))
+                        .doOnSubscribe(d -> intentos.incrementAndGet())
+                        .flatMap(r -> ThreadLocalRandom.current().nextInt(10) < 4
+                            ? Single.<Resultado>error(new IOException("respuesta perdida"))
+                            : Single.just(r))
+                        .retry(5))
+                    .toList()
+                    .blockingGet();
+                resultados.forEach(r -> System.out.println("  " + r));
+                System.out.printf("  %d intentos para 5 pagos; saldo de la cuenta 7: %d céntimos (100€ - 5 x 15€ = 25€)%n",
+                    intentos.get(), motor.saldo(7).blockingGet());
+            }
+
+            // 2. Recuperación desde el WAL
+            System.out.println("\n--- Caso 2: Reinicio, el WAL reconstruye saldos y claves ---");
+            try (TransactionEngine motor = new TransactionEngine(wal, 100, 4, 10_000, 10, TimeUnit.MINUTES, 4096)) {
+                System.out.println("  saldo recuperado de la cuenta 7: " + motor.saldo(7).blockingGet());
+                System.out.println("  reintento tardío de pago-3: " + motor.procesar(new Transaccion("pago-3", 7, -15_00)).blockingGet());
+                System.out.println("  pago-6 (sin fondos): " + motor.procesar(new Transaccion("pago-6", 7, -30_00)).blockingGet());
+                System.out.println("  saldo final: " + motor.saldo(7).blockingGet() + "; duplicadas atendidas: " + motor.duplicadas());
+            }
+
+            // 3. Carga: 1M transacciones sobre 10k cuentas
+            int total = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+            int carriles = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+            System.out.printf("%n--- Caso 3: %,d transacciones, 10k cuentas, %d carriles, 5%% reenvíos ---%n", total, carriles);
+            Files.deleteIfExists(wal);
+            carga(wal, total, carriles, 4096);
+
+            System.out.println("\n--- Caso 4: Referencia con un fsync por transacción ---");
+            Files.deleteIfExists(wal);
+            carga(wal, Math.min(total, 20_000), carriles, 1);
+        } finally {
+            try (var ficheros = Files.list(directorio)) {
+                for (Path fichero : (Iterable<Path>) ficheros::iterator) {
+                    Files.delete(fichero);
+                }
+            }
+            Files.delete(directorio);
+        }
+
+        System.out.println("\n=== CONCEPTOS CLAVE ===");
+        System.out.println("• Clave de idempotencia: el reintento recibe el resultado original, no cobra dos veces");
+        System.out.println("• Almacén de claves acotado por tamaño y edad, sin expulsar las que están en curso");
+        System.out.println("• Carriles por cuenta: orden dentro de la cuenta, paralelismo entre cuentas");
+        System.out.println("• Commit en grupo: un fsync confirma decenas o cientos de transacciones");
+        System.out.println("• El WAL es la fuente de verdad: al arrancar se recuperan saldos y claves");
+    }
+
+    private static void carga(Path wal, int total, int carriles, int grupoMaximo) throws Exception {
+        Ejemplo04_TradingFeed.Latencias latencias = new Ejemplo04_TradingFeed.Latencias();
+        Semaphore enVuelo = new Semaphore(20_000);
+        LongAdder aplicadas = new LongAdder();
+        LongAdder rechazadas = new LongAdder();
+        try (TransactionEngine motor = new TransactionEngine(wal, 10_000, carriles, 2 * total, 10, TimeUnit.MINUTES, grupoMaximo)) {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            long inicio = System.nanoTime();
+            for (int i = 0; i < total; i++) {
+                // un 5% son reenvíos de una transacción reciente
+                int numero = i > 100 && random.nextInt(100) < 5 ? i - 1 - random.nextInt(100) : i;
+                int cuenta = (int) (Integer.toUnsignedLong(numero * 0x9E3779B9) % 10_000);
+                long centimos = numero % 3 == 0 ? 50_00 : -(1 + numero % 20_00);
+                enVuelo.acquire();
+                long enviada = System.nanoTime();
+                motor.procesar(new Transaccion("txn-" + numero, cuenta, centimos))
+                    .subscribe(r -> {
+                        latencias.registrar(System.nanoTime() - enviada);
+                        (r.estado() == Estado.APLICADA ? aplicadas : rechazadas).increment();
+                        enVuelo.release();
+                    }, e -> enVuelo.release());
+            }
+            enVuelo.acquire(20_000);
+            double segundos = (System.nanoTime() - inicio) / 1e9;
+            System.out.printf("  %,.0f transacciones/s; p50 %,d µs, p99 %,d µs%n",
+                total / segundos, latencias.percentil(50), latencias.percentil(99));
+            System.out.printf("  aplicadas %,d, rechazadas %,d (respuestas, incluidos reenvíos); duplicadas %,d%n",
+                aplicadas.sum(), rechazadas.sum(), motor.duplicadas());
+            System.out.printf("  WAL: %,d registros en %,d fsync (%.1f por grupo), %,d MB%n",
+                motor.registros(), motor.grupos(), (double) motor.registros() / motor.grupos(), Files.size(wal) / 1_000_000);
+        }
+    }
+
+    // Modelo
+
+    enum Estado { APLICADA, RECHAZADA }
+
+    /** Importe en céntimos: positivo ingresa, negativo cobra */
+    record Transaccion(String clave, int cuenta, long centimos) {
+    }
+
+    record Resultado(String clave, int cuenta, long centimos, long saldo, Estado estado) {
+    }
+
+    private record Solicitud(Transaccion transaccion, SingleSubject<Resultado> resultado) {
+    }
+
+    private record Pendiente(Resultado resultado, SingleSubject<Resultado> destino) {
+    }
+
+    // Motor
+
+    /**
+     * Cada cuenta pertenece a un carril (cuenta % carriles) y sólo ese hilo
+     * toca su saldo, así que los saldos son un long[] sin locks. El resultado
+     * se publica desde el hilo del WAL cuando su grupo ya está en disco; si
+     * el suscriptor hace trabajo pesado debe pasar a otro scheduler
+     */
+    static final class TransactionEngine implements AutoCloseable {
+        private final long[] saldos;
+        private final FlowableProcessor<Solicitud>[] carriles;
+        private final ExecutorService[] hilos;
+        private final Scheduler[] schedulers;
+        private final Idempotencia idempotencia;
+        private final Wal wal;
+        private final LongAdder duplicadas = new LongAdder();
+
+        @SuppressWarnings("unchecked")
+        TransactionEngine(Path fichero, int cuentas, int numCarriles, int capacidadClaves,
+                          long ttlClaves, TimeUnit unidad, int grupoMaximo) throws IOException {
+            this.saldos = new long[cuentas];
+            this.idempotencia = new Idempotencia(capacidadClaves, unidad.toMillis(ttlClaves));
+            this.wal = new Wal(fichero, grupoMaximo, saldos, idempotencia);
+            this.carriles = new FlowableProcessor[numCarriles];
+            this.hilos = new ExecutorService[numCarriles];
+            this.schedulers = new Scheduler[numCarriles];
+            for (int i = 0; i < numCarriles; i++) {
+                int numero = i;
+                hilos[i] = Executors.newSingleThreadExecutor(r -> new Thread(r, "carril-" + numero));
+                schedulers[i] = Schedulers.from(hilos[i]);
+                carriles[i] = PublishProcessor.<Solicitud>create().toSerialized();
+                carriles[i]
+                    .onBackpressureBuffer()
+                    .observeOn(schedulers[i], false, 1024)
+                    .subscribe(this::aplicar);
+            }
+        }
+
+        /**
+         * Procesa la transacción una sola vez por clave. Un reintento con la
+         * misma clave, en curso o ya terminada, recibe el mismo resultado
+         */
+        Single<Resultado> procesar(Transaccion transaccion) {
+            return Single.defer(() -> {
+                if (transaccion.cuenta() < 0 || transaccion.cuenta() >= saldos.length) {
+                    return Single.error(new IllegalArgumentException("Cuenta inexistente: " + transaccion.cuenta()));
+                }
+                if (transaccion.clave().getBytes(StandardCharsets.UTF_8).length > Short.MAX_VALUE) {
+                    // el WAL guarda la longitud de la clave en un short
+                    return Single.error(new IllegalArgumentException("Clave de más de " + Short.MAX_VALUE + " bytes"));
+                }
+                SingleSubject<Resultado> nuevo = SingleSubject.create();
+                SingleSubject<Resultado> existente = idempotencia.reservar(transaccion.clave(), nuevo);
+                if (existente != null) {
+                    duplicadas.increment();
+                    return existente;
+                }
+                carriles[transaccion.cuenta() % carriles.length].onNext(new Solicitud(transaccion, nuevo));
+                return nuevo;
+            });
+        }
+
+        /** Lee el saldo en el carril de la cuenta, detrás de lo ya encolado */
+        Single<Long> saldo(int cuenta) {
+            return Single.fromCallable(() -> {
+                    if (wal.fallo != null) {
+                        throw wal.fallo; // el saldo en memoria puede no estar en disco
+                    }
+                    return saldos[cuenta];
+                })
+                .subscribeOn(schedulers[cuenta % schedulers.length]);
+        }
+
+        long duplicadas() {
+            return duplicadas.sum();
+        }
+
+        long registros() {
+            return wal.registros.get();
+        }
+
+        long grupos() {
+            return wal.grupos.get();
+        }
+
+        /**
+         * Corre en el hilo del carril: valida, aplica y manda al WAL. Tras un
+         * fallo del WAL el carril ya no toca saldos: lo aplicado sin llegar a
+         * disco deja la memoria por delante del log, y seguir encima de ese
+         * saldo confirmaría transacciones que el reinicio no reproduce
+         */
+        private void aplicar(Solicitud solicitud) {
+            IOException fallo = wal.fallo;
+            if (fallo != null) {
+                solicitud.resultado().onError(fallo);
+                return;
+            }
+            Transaccion transaccion = solicitud.transaccion();
+            int cuenta = transaccion.cuenta();
+            long saldo = saldos[cuenta] + transaccion.centimos();
+            Estado estado = saldo < 0 ? Estado.RECHAZADA : Estado.APLICADA;
+            if (estado == Estado.APLICADA) {
+                saldos[cuenta] = saldo;
+            }
+            Resultado resultado = new Resultado(transaccion.clave(), cuenta, transaccion.centimos(), saldos[cuenta], estado);
+            wal.anexar(new Pendiente(resultado, solicitud.resultado()));
+        }
+
+        @Override
+        public void close() throws IOException {
+            for (int i = 0; i < carriles.length; i++) {
+                carriles[i].onComplete();
+                hilos[i].shutdown();
+            }
+            try {
+                for (ExecutorService hilo : hilos) {
+                    hilo.awaitTermination(10, TimeUnit.SECONDS);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            wal.close();
+        }
+    }
+
+    /**
+     * Claves de idempotencia en 64 franjas de LinkedHashMap por orden de
+     * inserción. Al insertar se purgan desde la cabeza las que superan el
+     * tamaño o la edad, pero nunca una que siga en curso
+     */
+    static final class Idempotencia {
+        private static final int FRANJAS = 64;
+
+        private final Franja[] franjas = new Franja[FRANJAS];
+        private final int capacidadFranja;
+        private final long ttlMs;
+
+        Idempotencia(int capacidad, long ttlMs) {
+            this.capacidadFranja = Math.max(1, capacidad / FRANJAS);
+            this.ttlMs = ttlMs;
+            for (int i = 0; i < FRANJAS; i++) {
+                franjas[i] = new Franja();
+            }
+        }
+
+        /** Devuelve el resultado ya registrado para la clave, o null si se ha reservado para el nuevo */
+        SingleSubject<Resultado> reservar(String clave, SingleSubject<Resultado> nuevo) {
+            Franja franja = franjas[(clave.hashCode() * 0x9E3779B9) >>> 26];
+            long ahora = System.currentTimeMillis();
+            synchronized (franja) {
+                Entrada existente = franja.entradas.get(clave);
+                if (existente != null) {
+                    return existente.resultado;
+                }
+                franja.entradas.put(clave, new Entrada(nuevo, ahora));
+                Iterator<Entrada> it = franja.entradas.values().iterator();
+                while (it.hasNext()) {
+                    Entrada cabeza = it.next();
+                    boolean sobra = franja.entradas.size() > capacidadFranja || ahora - cabeza.creada > ttlMs;
+                    if (!sobra || !(cabeza.resultado.hasValue() || cabeza.resultado.hasThrowable())) {
+                        break;
+                    }
+                    it.remove();
+                }
+                return null;
+            }
+        }
+
+        private static final class Franja {
+            final Map<String, Entrada> entradas = new LinkedHashMap<>();
+        }
+
+        private record Entrada(SingleSubject<Resultado> resultado, long creada) {
+        }
+    }
+
+    /**
+     * Log de escritura anticipada con un hilo escritor. Los carriles dejan
+     * los resultados en una cola acotada; el escritor vacía lo que haya (hasta
+     * grupoMaximo), lo escribe, hace un único force() y entonces confirma
+     * todo el grupo. Registro: estado, cuenta, importe, saldo, clave y CRC32
+     */
+    private static final class Wal implements AutoCloseable {
+        private final FileChannel canal;
+        private final int grupoMaximo;
+        private final ArrayBlockingQueue<Pendiente> cola = new ArrayBlockingQueue<>(65_536);
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20);
+        private final Thread escritor;
+        private final CRC32 crc = new CRC32();
+        private volatile boolean activo = true;
+        volatile IOException fallo;
+        final AtomicLong registros = new AtomicLong();
+        final AtomicLong grupos = new AtomicLong();
+
+        Wal(Path fichero, int grupoMaximo, long[] saldos, Idempotencia idempotencia) throws IOException {
+            this.grupoMaximo = grupoMaximo;
+            this.canal = FileChannel.open(fichero, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            recuperar(saldos, idempotencia);
+            this.escritor = new Thread(this::escribir, "wal");
+            escritor.start();
+        }
+
+        void anexar(Pendiente pendiente) {
+            if (fallo != null) {
+                pendiente.destino().onError(fallo);
+                return;
+            }
+            try {
+                cola.put(pendiente); // cola llena: el carril espera al disco
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                pendiente.destino().onError(e);
+            }
+        }
+
+        private void escribir() {
+            List<Pendiente> grupo = new ArrayList<>(grupoMaximo);
+            while (activo || !cola.isEmpty()) {
+                try {
+                    Pendiente primero = cola.poll(50, TimeUnit.MILLISECONDS);
+                    if (primero == null) {
+                        continue;
+                    }
+                    grupo.add(primero);
+                    cola.drainTo(grupo, grupoMaximo - 1);
+                    if (fallo != null) {
+                        // aplicados sobre un saldo que no llegó a disco: no se escriben aunque el disco vuelva
+                        grupo.forEach(p -> p.destino().onError(fallo));
+                        grupo.clear();
+                        continue;
+                    }
+                    for (Pendiente pendiente : grupo) {
+                        serializar(pendiente.resultado());
+                    }
+                    volcar();
+                    canal.force(false);
+                    registros.addAndGet(grupo.size());
+                    grupos.incrementAndGet();
+                    for (Pendiente pendiente : grupo) {
+                        pendiente.destino().onSuccess(pendiente.resultado());
+                    }
+                } catch (IOException e) {
+                    // sin durabilidad no hay confirmación: se falla el grupo y lo que venga detrás
+                    fallo = e;
+                    grupo.forEach(p -> p.destino().onError(e));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                grupo.clear();
+            }
+        }
+
+        private void serializar(Resultado resultado) throws IOException {
+            byte[] clave = resultado.clave().getBytes(StandardCharsets.UTF_8);
+            if (buffer.remaining() < 4 + 1 + 4 + 8 + 8 + 2 + clave.length + 4) {
+                volcar();
+            }
+            int inicio = buffer.position();
+            buffer.putInt(1 + 4 + 8 + 8 + 2 + clave.length);
+            buffer.put((byte) resultado.estado().ordinal());
+            buffer.putInt(resultado.cuenta());
+            buffer.putLong(resultado.centimos());
+            buffer.putLong(resultado.saldo());
+            buffer.putShort((short) clave.length);
+            buffer.put(clave);
+            crc.reset();
+            crc.update(buffer.duplicate().position(inicio).limit(buffer.position()));
+            buffer.putInt((int) crc.getValue());
+        }
+
+        private void volcar() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                canal.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        /**
+         * Reproduce el log por bloques, sin cargarlo entero en memoria. Un
+         * registro incompleto o con CRC erróneo marca el final: sólo desde
+         * ahí se trunca, el resto del fichero ya se ha reproducido
+         */
+        private void recuperar(long[] saldos, Idempotencia idempotencia) throws IOException {
+            // cabe de sobra el registro más largo: clave de Short.MAX_VALUE bytes
+            ByteBuffer lectura = ByteBuffer.allocate(1 << 20);
+            long base = 0; // posición en el fichero del primer byte de lectura
+            long valido = 0;
+            boolean fin = false;
+            canal.position(0);
+            bloques:
+            while (true) {
+                while (lectura.hasRemaining() && !fin) {
+                    fin = canal.read(lectura) < 0;
+                }
+                lectura.flip();
+                while (lectura.remaining() >= 4) {
+                    int inicio = lectura.position();
+                    int longitud = lectura.getInt(inicio);
+                    if (longitud < 23 || longitud > 23 + Short.MAX_VALUE) {
+                        break bloques;
+                    }
+                    if (lectura.remaining() < 4 + longitud + 4) {
+                        break; // sigue en el bloque siguiente, o es la cola rota si no hay más
+                    }
+                    // el CRC se comprueba antes de decodificar: un registro roto no llega a interpretarse
+                    crc.reset();
+                    crc.update(lectura.duplicate().position(inicio).limit(inicio + 4 + longitud));
+                    if (lectura.getInt(inicio + 4 + longitud) != (int) crc.getValue()) {
+                        break bloques;
+                    }
+                    lectura.position(inicio + 4);
+                    int ordinal = lectura.get();
+                    int cuenta = lectura.getInt();
+                    long centimos = lectura.getLong();
+                    long saldo = lectura.getLong();
+                    int longitudClave = lectura.getShort();
+                    if (ordinal < 0 || ordinal >= Estado.values().length || cuenta < 0 || cuenta >= saldos.length
+                        || longitudClave != longitud - 23) {
+                        break bloques;
+                    }
+                    Estado estado = Estado.values()[ordinal];
+                    byte[] clave = new byte[longitudClave];
+                    lectura.get(clave);
+                    lectura.getInt();
+                    saldos[cuenta] = saldo;
+                    SingleSubject<Resultado> resultado = SingleSubject.create();
+                    resultado.onSuccess(new Resultado(new String(clave, StandardCharsets.UTF_8), cuenta, centimos, saldo, estado));
+                    idempotencia.reservar(resultado.getValue().clave(), resultado);
+                    valido = base + lectura.position();
+                }
+                if (fin) {
+                    break;
+                }
+                base += lectura.position();
+                lectura.compact();
+            }
+            canal.truncate(valido);
+            canal.position(valido);
+        }
+
+        @Override
+        public void close() throws IOException {
+            activo = false;
+            try {
+                escritor.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            canal.close();
+        }
+    }
+}
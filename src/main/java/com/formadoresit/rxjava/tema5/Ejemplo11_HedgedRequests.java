@@ -0,0 +1,347 @@
+package com.formadoresit.rxjava.tema5;
+
+import io.reactivex.Flowable;
+import io.reactivex.Maybe;
+import io.reactivex.Observable;
+import io.reactivex.ObservableTransformer;
+import io.reactivex.Single;
+import io.reactivex.SingleTransformer;
+import io.reactivex.exceptions.CompositeException;
+import io.reactivex.subjects.CompletableSubject;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * TEMA 5: Combinando Observables
+ * Ejemplo 11: Hedged Requests
+ *
+ * amb() sin multiplicar la carga: en lugar de lanzar todas las fuentes
+ * a la vez (ambArray en Ejemplo05 y Ejemplo10), se lanza la petición
+ * principal y sólo si supera un percentil de latencia, aprendido de un
+ * histograma deslizante, se lanza una copia de respaldo. Gana la primera
+ * respuesta correcta, la otra se cancela, y un presupuesto limita el
+ * porcentaje de carga extra. Un error sólo se propaga si fallan todos los
+ * intentos lanzados
+ */
+public class Ejemplo11_HedgedRequests {
+
+    public static void main(String[] args) throws InterruptedException {
+        System.out.println("=== Ejemplo 11: Hedged Requests ===\n");
+
+        // 1. Hedging básico sobre una petición lenta
+        System.out.println("--- Hedging básico ---");
+        HedgePolicy politica = new HedgePolicy(95, 10, 20, TimeUnit.MILLISECONDS);
+        AtomicLong llamada = new AtomicLong();
+        Single<String> usuario = Single.defer(() -> {
+            long n = llamada.incrementAndGet();
+            long latencia = n == 1 ? 300 : 30; // la primera llamada cae en la cola lenta
+            System.out.println("  Llamada " + n + " (latencia " + latencia + "ms)");
+            return Single.timer(latencia, TimeUnit.MILLISECONDS).map(t -> "Usuario_1 desde llamada " + n);
+        });
+        String resultado = usuario.compose(politica.<String>forSingle()).blockingGet();
+        System.out.println("  Resultado: " + resultado);
+        System.out.println("  " + politica.metrics());
+
+        // Una copia que falla rápido (conexión rechazada) no tumba a la principal
+        AtomicLong intento = new AtomicLong();
+        Single<String> inestable = Single.defer(() -> intento.incrementAndGet() == 1
+            ? Single.timer(100, TimeUnit.MILLISECONDS).map(t -> "Usuario_1 desde la principal")
+            : Single.<String>error(new IOException("Conexión rechazada")));
+        System.out.println("  Con copia rechazada: "
+            + inestable.compose(new HedgePolicy(95, 10, 20, TimeUnit.MILLISECONDS).<String>forSingle()).blockingGet());
+
+        // 2. Sobre un Observable de un solo valor, como obtenerUsuario() del tema 10
+        System.out.println("\n--- Hedging en Observable ---");
+        Observable.just("Usuario_2")
+            .delay(15, TimeUnit.MILLISECONDS)
+            .compose(politica.<String>forObservable())
+            .blockingSubscribe(u -> System.out.println("  Resultado: " + u));
+
+        // 3. Simulación con latencias de cola pesada
+        System.out.println("\n--- Simulación: p99 vs carga añadida ---");
+        int peticiones = args.length > 0 ? Integer.parseInt(args[0]) : 3000;
+        Resultado base = simular("Sin hedging", peticiones, null, false);
+        Resultado todas = simular("ambArray x2", peticiones, null, true);
+        Resultado hedged = simular("Hedged p95 (cap 10%)", peticiones, new HedgePolicy(95, 10, 5, TimeUnit.MILLISECONDS), false);
+        for (Resultado r : List.of(base, todas, hedged)) {
+            System.out.println("  " + r);
+        }
+        System.out.printf("  Mejora p99 con hedging: %.1fx con +%.1f%% de carga%n",
+            (double) base.p99 / hedged.p99, hedged.cargaExtra());
+
+        System.out.println("\n=== CONCEPTOS CLAVE ===");
+        System.out.println("• ambArray: corre todas las fuentes y multiplica la carga por N");
+        System.out.println("• Hedging: la copia sólo sale si la principal supera el percentil");
+        System.out.println("• Histograma deslizante: el retraso se aprende de latencias recientes");
+        System.out.println("• Cancelación: la petición perdedora se cancela al llegar la ganadora");
+        System.out.println("• Gana el primer éxito: el error de un intento sólo cuenta si fallan todos");
+        System.out.println("• Presupuesto: las copias no superan un % del tráfico principal");
+    }
+
+    /** Servicio con cola pesada: 10ms típicos, un 3% entre 100ms y 1s (Pareto) */
+    private static Single<Long> servicio(LongAdder llamadas) {
+        return Single.defer(() -> {
+            llamadas.increment();
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            long latencia = 10 + random.nextInt(5);
+            if (random.nextDouble() < 0.03) {
+                latencia = (long) Math.min(1000, 100 / Math.pow(1 - random.nextDouble(), 1 / 1.5));
+            }
+            return Single.timer(latencia, TimeUnit.MILLISECONDS);
+        });
+    }
+
+    private static Resultado simular(String nombre, int peticiones, HedgePolicy politica, boolean todas)
+            throws InterruptedException {
+        LongAdder llamadas = new LongAdder();
+        List<Long> latencias = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch fin = new CountDownLatch(peticiones);
+        Single<Long> fuente = servicio(llamadas);
+
+        for (int i = 0; i < peticiones; i++) {
+            Single<Long> peticion = fuente;
+            if (politica != null) {
+                peticion = fuente.compose(politica.forSingle());
+            } else if (todas) {
+                peticion = Single.ambArray(fuente, fuente);
+            }
+            long inicio = System.nanoTime();
+            peticion.doFinally(fin::countDown)
+                .subscribe(r -> latencias.add(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - inicio)));
+            Thread.sleep(0, 500_000);
+        }
+        fin.await(30, TimeUnit.SECONDS);
+        Collections.sort(latencias);
+        return new Resultado(nombre, peticiones, llamadas.sum(),
+            latencias.get(latencias.size() / 2), latencias.get((int) (latencias.size() * 0.99) - 1));
+    }
+
+    static class Resultado {
+        final String nombre;
+        final int peticiones;
+        final long llamadas;
+        final long p50;
+        final long p99;
+
+        Resultado(String nombre, int peticiones, long llamadas, long p50, long p99) {
+            this.nombre = nombre;
+            this.peticiones = peticiones;
+            this.llamadas = llamadas;
+            this.p50 = p50;
+            this.p99 = p99;
+        }
+
+        double cargaExtra() {
+            return (llamadas - peticiones) * 100.0 / peticiones;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-22s p50=%4dms p99=%4dms llamadas=%d (+%.1f%% carga)",
+                nombre, p50, p99, llamadas, cargaExtra());
+        }
+    }
+
+    // Hedging
+
+    static class HedgePolicy {
+        private final double percentil;
+        private final long retrasoMinimoNanos;
+        private final LatencyHistogram histograma = new LatencyHistogram(10, 1000);
+        private final HedgeBudget presupuesto;
+        private final LongAdder principales = new LongAdder();
+        private final LongAdder copias = new LongAdder();
+        private final LongAdder copiasGanadoras = new LongAdder();
+        private final LongAdder denegadas = new LongAdder();
+
+        HedgePolicy(double percentil, double cargaExtraMaxima, long retrasoMinimo, TimeUnit unidad) {
+            this.percentil = percentil;
+            this.presupuesto = new HedgeBudget(cargaExtraMaxima);
+            this.retrasoMinimoNanos = unidad.toNanos(retrasoMinimo);
+        }
+
+        public <T> SingleTransformer<T, T> forSingle() {
+            return upstream -> Single.defer(() -> {
+                principales.increment();
+                presupuesto.depositar();
+                long retraso = Math.max(retrasoMinimoNanos, histograma.percentileNanos(percentil));
+
+                // amb reenviaría también un error: una copia rechazada al instante
+                // cancelaría una principal que iba a responder bien
+                CompletableSubject principalFallida = CompletableSubject.create();
+                Queue<Throwable> errores = new ConcurrentLinkedQueue<>();
+                Maybe<T> principal = medir(upstream)
+                    .doOnError(e -> principalFallida.onComplete())
+                    .toMaybe()
+                    .onErrorResumeNext(e -> {
+                        errores.add(e);
+                        return Maybe.empty();
+                    });
+                Maybe<T> copia = Maybe.timer(retraso, TimeUnit.NANOSECONDS)
+                    .takeUntil(principalFallida.<Long>toMaybe()) // sin principal viva no se lanza la copia
+                    .flatMap(t -> {
+                        if (!presupuesto.retirar()) {
+                            denegadas.increment();
+                            return Maybe.<T>empty(); // sin presupuesto: sólo cuenta la principal
+                        }
+                        copias.increment();
+                        return medir(upstream).doOnSuccess(v -> copiasGanadoras.increment()).toMaybe()
+                            .onErrorResumeNext(e -> {
+                                errores.add(e);
+                                return Maybe.empty();
+                            });
+                    });
+                // El primer valor gana y cancela el resto, también el timer si la principal
+                // llega antes; sin ningún valor, fallaron todos los intentos lanzados
+                return Flowable.merge(principal.toFlowable(), copia.toFlowable())
+                    .firstElement()
+                    .switchIfEmpty(Single.defer(() -> Single.<T>error(errores.size() == 1
+                        ? errores.peek() : new CompositeException(errores))));
+            });
+        }
+
+        /** Para Observables de un solo valor, como las llamadas HTTP del tema 10 */
+        public <T> ObservableTransformer<T, T> forObservable() {
+            return upstream -> upstream.singleOrError().compose(this.<T>forSingle()).toObservable();
+        }
+
+        /**
+         * Registra la latencia de cada intento; si se cancela se registra
+         * lo transcurrido como cota inferior para no sesgar el histograma
+         */
+        private <T> Single<T> medir(Single<T> intento) {
+            return Single.defer(() -> {
+                long inicio = System.nanoTime();
+                return intento
+                    .doOnSuccess(v -> histograma.record(System.nanoTime() - inicio))
+                    .doOnDispose(() -> histograma.record(System.nanoTime() - inicio));
+            });
+        }
+
+        public String metrics() {
+            return String.format("principales=%d copias=%d ganadoras=%d denegadas=%d p%.0f=%dms",
+                principales.sum(), copias.sum(), copiasGanadoras.sum(), denegadas.sum(),
+                percentil, TimeUnit.NANOSECONDS.toMillis(histograma.percentileNanos(percentil)));
+        }
+    }
+
+    /** Presupuesto en milésimas de token: cada principal aporta el % permitido */
+    static class HedgeBudget {
+        private static final long TOKEN = 1000;
+        private final long aportePorPeticion;
+        private final long maximo;
+        private final AtomicLong saldo;
+
+        HedgeBudget(double cargaExtraMaxima) {
+            this.aportePorPeticion = (long) (cargaExtraMaxima / 100 * TOKEN);
+            this.maximo = 10 * TOKEN; // ráfaga máxima de 10 copias
+            this.saldo = new AtomicLong(maximo);
+        }
+
+        void depositar() {
+            saldo.accumulateAndGet(aportePorPeticion, (actual, aporte) -> Math.min(maximo, actual + aporte));
+        }
+
+        boolean retirar() {
+            while (true) {
+                long actual = saldo.get();
+                if (actual < TOKEN) {
+                    return false;
+                }
+                if (saldo.compareAndSet(actual, actual - TOKEN)) {
+                    return true;
+                }
+            }
+        }
+    }
+
+    /**
+     * Histograma log-lineal en microsegundos (8 sub-buckets por potencia
+     * de dos, ~12% de error) repartido en sub-ventanas temporales que se
+     * reinician al rotar
+     */
+    static class LatencyHistogram {
+        private static final int BUCKETS = 16 + 40 * 8;
+        private final AtomicLongArray[] ventanas;
+        private final AtomicLongArray epocas;
+        private final long duracionVentanaMs;
+
+        LatencyHistogram(int subVentanas, long duracionVentanaMs) {
+            this.ventanas = new AtomicLongArray[subVentanas];
+            for (int i = 0; i < subVentanas; i++) {
+                ventanas[i] = new AtomicLongArray(BUCKETS);
+            }
+            this.epocas = new AtomicLongArray(subVentanas);
+            this.duracionVentanaMs = duracionVentanaMs;
+        }
+
+        void record(long nanos) {
+            long epoca = System.currentTimeMillis() / duracionVentanaMs;
+            int slot = (int) (epoca % ventanas.length);
+            long anterior = epocas.get(slot);
+            if (anterior != epoca && epocas.compareAndSet(slot, anterior, epoca)) {
+                for (int i = 0; i < BUCKETS; i++) {
+                    ventanas[slot].set(i, 0); // reinicio perezoso de una sub-ventana caducada
+                }
+            }
+            ventanas[slot].incrementAndGet(indice(Math.max(0, nanos / 1000)));
+        }
+
+        /** Percentil de las sub-ventanas vigentes, o 0 si aún no hay muestras */
+        long percentileNanos(double percentil) {
+            long epoca = System.currentTimeMillis() / duracionVentanaMs;
+            long[] cuentas = new long[BUCKETS];
+            long total = 0;
+            for (int v = 0; v < ventanas.length; v++) {
+                if (epoca - epocas.get(v) >= ventanas.length) {
+                    continue;
+                }
+                for (int i = 0; i < BUCKETS; i++) {
+                    long c = ventanas[v].get(i);
+                    cuentas[i] += c;
+                    total += c;
+                }
+            }
+            if (total == 0) {
+                return 0;
+            }
+            long objetivo = (long) Math.ceil(total * percentil / 100);
+            long acumulado = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                acumulado += cuentas[i];
+                if (acumulado >= objetivo) {
+                    return limiteSuperior(i) * 1000;
+                }
+            }
+            return limiteSuperior(BUCKETS - 1) * 1000;
+        }
+
+        static int indice(long micros) {
+            if (micros < 16) {
+                return (int) micros;
+            }
+            int exponente = 63 - Long.numberOfLeadingZeros(micros);
+            int sub = (int) (micros >> (exponente - 3)) & 7;
+            return Math.min(BUCKETS - 1, 16 + (exponente - 4) * 8 + sub);
+        }
+
+        static long limiteSuperior(int indice) {
+            if (indice < 16) {
+                return indice;
+            }
+            int exponente = (indice - 16) / 8 + 4;
+            int sub = (indice - 16) % 8;
+            return ((8L + sub + 1) << (exponente - 3)) - 1;
+        }
+    }
+}
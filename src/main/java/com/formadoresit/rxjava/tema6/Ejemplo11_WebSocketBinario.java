@@ -0,0 +1,434 @@
+package com.formadoresit.rxjava.tema6;
+
+import com.google.gson.Gson;
+import io.reactivex.Observable;
+import io.reactivex.ObservableTransformer;
+import io.reactivex.subjects.PublishSubject;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * TEMA 6: Multicast
+ * Ejemplo 11: WebSocket Binario
+ *
+ * Camino binario para los WebSocket managers del Ejemplo 07:
+ * frames con cabecera compacta (tipo + longitud) sobre ByteBuffers
+ * directos reutilizados desde un pool, vistas sin copia (slice)
+ * para los consumidores, liberación por conteo de referencias y
+ * codecs intercambiables (JSON con Gson vs binario)
+ */
+public class Ejemplo11_WebSocketBinario {
+
+    public static void main(String[] args) throws InterruptedException {
+        System.out.println("=== Ejemplo 11: WebSocket Binario ===\n");
+
+        // 1. Frames binarios con cabecera compacta
+        System.out.println("--- Frames binarios con cabecera compacta ---");
+        BufferPool pool = new BufferPool(256, 64);
+        BinaryWebSocketManager wsManager = new BinaryWebSocketManager(pool);
+        short chat = MessageTypes.idOf("CHAT");
+        short data = MessageTypes.idOf("DATA");
+
+        wsManager.getMessageStream(chat)
+            .subscribe(frame -> System.out.println("  [CHAT] " + frame + " -> "
+                + StandardCharsets.UTF_8.decode(frame.payload())));
+
+        wsManager.getMessageStream(data)
+            .subscribe(frame -> System.out.println("  [DATA] " + frame + " -> "
+                + StandardCharsets.UTF_8.decode(frame.payload())));
+
+        wsManager.sendMessage(chat, "Usuario conectado");
+        wsManager.sendMessage(data, "Datos actualizados");
+        wsManager.sendMessage(chat, "Mensaje de chat");
+        System.out.println("  Buffers en pool: " + pool.disponibles()
+            + ", directos creados: " + pool.creados());
+
+        // 2. Vista sin copia y conteo de referencias
+        System.out.println("\n--- Vista sin copia y conteo de referencias ---");
+        BinaryFrame[] guardado = new BinaryFrame[1];
+        wsManager.getMessageStream(data)
+            .take(1)
+            .subscribe(frame -> guardado[0] = frame.retain()); // se guarda más allá de onNext
+        wsManager.sendMessage(data, "Snapshot de mercado");
+        System.out.println("  Referencias tras publicar: " + guardado[0].refCnt());
+        ByteBuffer vista = guardado[0].payload();
+        System.out.println("  Vista (sin copia): " + vista.remaining() + " bytes, directa=" + vista.isDirect()
+            + ", solo lectura=" + vista.isReadOnly());
+        guardado[0].release();
+        System.out.println("  Referencias tras release(): " + guardado[0].refCnt()
+            + ", buffers en pool: " + pool.disponibles());
+
+        // 3. Codecs: JSON con Gson vs binario
+        System.out.println("\n--- Codecs: JSON con Gson vs binario ---");
+        short ticks = MessageTypes.idOf("TICK");
+        FrameCodec<Tick> jsonCodec = new GsonCodec<>(Tick.class);
+        FrameCodec<Tick> binCodec = new TickBinaryCodec();
+        Tick tick = new Tick(7, 101.25, 300);
+
+        BinaryFrame jsonFrame = BinaryFrame.encode(pool, ticks, tick, jsonCodec);
+        BinaryFrame binFrame = BinaryFrame.encode(pool, ticks, tick, binCodec);
+        System.out.println("  JSON:    " + jsonFrame.length() + " bytes -> " + jsonCodec.decode(jsonFrame.payload()));
+        System.out.println("  Binario: " + binFrame.length() + " bytes -> " + binCodec.decode(binFrame.payload()));
+        jsonFrame.release();
+        binFrame.release();
+
+        // 4. Codecs como etapas del pipeline
+        System.out.println("\n--- Codecs como etapas del pipeline ---");
+        Observable.just(new Tick(1, 99.5, 10), new Tick(2, 100.0, 20), new Tick(1, 99.75, 5))
+            .compose(Codecs.encode(pool, ticks, binCodec))
+            .compose(Codecs.decode(binCodec))
+            .subscribe(t -> System.out.println("  [PIPELINE] " + t));
+        System.out.println("  Buffers en pool tras el pipeline: " + pool.disponibles());
+
+        // 5. Benchmark: camino String vs camino binario
+        System.out.println("\n--- Benchmark: String vs binario ---");
+        int mensajes = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        for (int ronda = 1; ronda <= 3; ronda++) {
+            Resultado string = benchmarkString(mensajes);
+            Resultado binario = benchmarkBinario(mensajes);
+            System.out.printf("  Ronda %d%n", ronda);
+            System.out.println("    String:  " + string);
+            System.out.println("    Binario: " + binario);
+        }
+
+        System.out.println("\n=== CONCEPTOS CLAVE ===");
+        System.out.println("• Cabecera compacta: tipo (short) + longitud (int) en 6 bytes");
+        System.out.println("• Filtrado por id numérico: sin equals() de Strings por mensaje");
+        System.out.println("• Pool de buffers directos: sin asignaciones en el camino caliente");
+        System.out.println("• slice(): los consumidores leen el payload sin copiarlo");
+        System.out.println("• retain()/release(): el último en soltar devuelve el buffer al pool");
+        System.out.println("• Codecs: JSON para depurar, binario para el feed de mercado");
+    }
+
+    // Benchmark
+
+    private static Resultado benchmarkString(int mensajes) {
+        Gson gson = new Gson();
+        PublishSubject<Ejemplo07_WebSocket.TypedMessage> subject = PublishSubject.create();
+        AtomicLong suma = new AtomicLong();
+        subject.filter(msg -> msg.tipo.equals("TICK"))
+            .map(msg -> gson.fromJson(msg.contenido, Tick.class))
+            .subscribe(t -> suma.addAndGet(t.cantidad));
+
+        long bytesInicio = bytesAsignados();
+        long inicio = System.nanoTime();
+        for (int i = 0; i < mensajes; i++) {
+            Tick tick = new Tick(i & 1023, 100.0 + (i & 63), i & 255);
+            subject.onNext(new Ejemplo07_WebSocket.TypedMessage("TICK", gson.toJson(tick)));
+        }
+        return new Resultado(mensajes, System.nanoTime() - inicio, bytesAsignados() - bytesInicio, suma.get());
+    }
+
+    private static Resultado benchmarkBinario(int mensajes) {
+        BufferPool pool = new BufferPool(64, 16);
+        BinaryWebSocketManager manager = new BinaryWebSocketManager(pool);
+        short tipo = MessageTypes.idOf("TICK");
+        AtomicLong suma = new AtomicLong();
+        // Lectura directa sobre la vista: sin decodificar a objeto
+        manager.getMessageStream(tipo)
+            .subscribe(frame -> suma.addAndGet(frame.payload().getLong(TickBinaryCodec.OFFSET_CANTIDAD)));
+
+        long bytesInicio = bytesAsignados();
+        long inicio = System.nanoTime();
+        for (int i = 0; i < mensajes; i++) {
+            BinaryFrame frame = pool.acquire(tipo);
+            ByteBuffer out = frame.writable();
+            out.putInt(i & 1023).putDouble(100.0 + (i & 63)).putLong(i & 255);
+            manager.publish(frame.commit());
+        }
+        return new Resultado(mensajes, System.nanoTime() - inicio, bytesAsignados() - bytesInicio, suma.get());
+    }
+
+    private static long bytesAsignados() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().threadId());
+        }
+        return -1;
+    }
+
+    static class Resultado {
+        final int mensajes;
+        final long nanos;
+        final long bytes;
+        final long checksum;
+
+        Resultado(int mensajes, long nanos, long bytes, long checksum) {
+            this.mensajes = mensajes;
+            this.nanos = nanos;
+            this.bytes = bytes;
+            this.checksum = checksum;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%,.0f msg/s, %.1f bytes asignados/msg (checksum %d)",
+                mensajes * 1_000_000_000.0 / nanos, (double) bytes / mensajes, checksum);
+        }
+    }
+
+    // Registro de tipos: el String sólo se resuelve una vez, en el borde
+
+    static class MessageTypes {
+        private static final Map<String, Short> ids = new ConcurrentHashMap<>();
+        private static final AtomicInteger siguiente = new AtomicInteger(1);
+
+        static short idOf(String tipo) {
+            return ids.computeIfAbsent(tipo, t -> (short) siguiente.getAndIncrement());
+        }
+    }
+
+    // Pool de ByteBuffers directos
+
+    static class BufferPool {
+        private final ConcurrentLinkedQueue<BinaryFrame> libres = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger enPool = new AtomicInteger();
+        private final AtomicLong creados = new AtomicLong();
+        private final int capacidad;
+        private final int maxEnPool;
+
+        BufferPool(int capacidad, int maxEnPool) {
+            this.capacidad = capacidad;
+            this.maxEnPool = maxEnPool;
+        }
+
+        public BinaryFrame acquire(short tipo) {
+            BinaryFrame frame = libres.poll();
+            if (frame == null) {
+                creados.incrementAndGet();
+                frame = new BinaryFrame(this, ByteBuffer.allocateDirect(BinaryFrame.HEADER + capacidad));
+            } else {
+                enPool.decrementAndGet();
+            }
+            return frame.reset(tipo);
+        }
+
+        void recycle(BinaryFrame frame) {
+            if (enPool.incrementAndGet() <= maxEnPool) {
+                libres.offer(frame);
+            } else {
+                enPool.decrementAndGet(); // pool lleno: el GC se encarga del buffer
+            }
+        }
+
+        public int disponibles() {
+            return enPool.get();
+        }
+
+        public long creados() {
+            return creados.get();
+        }
+    }
+
+    // Frame binario: [tipo:short][longitud:int][payload]
+
+    static class BinaryFrame {
+        static final int HEADER = Short.BYTES + Integer.BYTES;
+
+        private final BufferPool pool;
+        private final ByteBuffer buffer;
+        private final AtomicInteger refCnt = new AtomicInteger();
+        private final ByteBuffer lectura;
+
+        BinaryFrame(BufferPool pool, ByteBuffer buffer) {
+            this.pool = pool;
+            this.buffer = buffer;
+            this.lectura = buffer.duplicate().position(HEADER).slice().asReadOnlyBuffer();
+        }
+
+        static <T> BinaryFrame encode(BufferPool pool, short tipo, T valor, FrameCodec<T> codec) {
+            BinaryFrame frame = pool.acquire(tipo);
+            try {
+                codec.encode(valor, frame.writable());
+            } catch (RuntimeException e) {
+                // p. ej. BufferOverflowException si el valor no cabe: el frame vuelve al pool
+                frame.release();
+                throw e;
+            }
+            return frame.commit();
+        }
+
+        BinaryFrame reset(short tipo) {
+            refCnt.set(1);
+            buffer.clear();
+            buffer.putShort(0, tipo);
+            buffer.putInt(Short.BYTES, 0);
+            return this;
+        }
+
+        /** Zona de payload para escribir; commit() fija la longitud en la cabecera */
+        public ByteBuffer writable() {
+            buffer.limit(buffer.capacity()).position(HEADER);
+            return buffer;
+        }
+
+        public BinaryFrame commit() {
+            buffer.putInt(Short.BYTES, buffer.position() - HEADER);
+            return this;
+        }
+
+        public short typeId() {
+            return buffer.getShort(0);
+        }
+
+        public int length() {
+            return buffer.getInt(Short.BYTES);
+        }
+
+        /**
+         * Vista de solo lectura sobre el payload, sin copiar bytes ni crear
+         * objetos: la vista es única por frame y cada llamada la rebobina.
+         * Quien guarde la posición entre llamadas debe usar duplicate()
+         */
+        public ByteBuffer payload() {
+            lectura.limit(length()).position(0);
+            return lectura;
+        }
+
+        public BinaryFrame retain() {
+            int actual;
+            do {
+                actual = refCnt.get();
+                if (actual <= 0) {
+                    throw new IllegalStateException("Frame ya liberado");
+                }
+            } while (!refCnt.compareAndSet(actual, actual + 1));
+            return this;
+        }
+
+        public void release() {
+            int restantes = refCnt.decrementAndGet();
+            if (restantes == 0) {
+                pool.recycle(this);
+            } else if (restantes < 0) {
+                throw new IllegalStateException("release() sobre un frame ya liberado");
+            }
+        }
+
+        public int refCnt() {
+            return refCnt.get();
+        }
+
+        @Override
+        public String toString() {
+            return "Frame[tipo=" + typeId() + ", len=" + length() + ", refs=" + refCnt() + "]";
+        }
+    }
+
+    static class BinaryWebSocketManager {
+        private final PublishSubject<BinaryFrame> messageSubject = PublishSubject.create();
+        private final BufferPool pool;
+
+        BinaryWebSocketManager(BufferPool pool) {
+            this.pool = pool;
+        }
+
+        /** Los frames solo son válidos durante onNext salvo que el consumidor haga retain() */
+        public Observable<BinaryFrame> getMessageStream(short tipo) {
+            return messageSubject.filter(frame -> frame.typeId() == tipo);
+        }
+
+        public void sendMessage(short tipo, String contenido) {
+            byte[] bytes = contenido.getBytes(StandardCharsets.UTF_8);
+            BinaryFrame frame = pool.acquire(tipo);
+            ByteBuffer destino = frame.writable();
+            if (bytes.length > destino.remaining()) {
+                frame.release();
+                throw new IllegalArgumentException("Mensaje de " + bytes.length
+                    + " bytes, el frame admite " + destino.remaining());
+            }
+            destino.put(bytes);
+            publish(frame.commit());
+        }
+
+        /** Publica el frame y suelta la referencia del emisor */
+        public void publish(BinaryFrame frame) {
+            try {
+                messageSubject.onNext(frame);
+            } finally {
+                frame.release();
+            }
+        }
+    }
+
+    // Codecs
+
+    interface FrameCodec<T> {
+        void encode(T valor, ByteBuffer destino);
+
+        T decode(ByteBuffer origen);
+    }
+
+    static class GsonCodec<T> implements FrameCodec<T> {
+        private final Gson gson = new Gson();
+        private final Class<T> tipo;
+
+        GsonCodec(Class<T> tipo) {
+            this.tipo = tipo;
+        }
+
+        @Override
+        public void encode(T valor, ByteBuffer destino) {
+            destino.put(gson.toJson(valor).getBytes(StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public T decode(ByteBuffer origen) {
+            return gson.fromJson(StandardCharsets.UTF_8.decode(origen).toString(), tipo);
+        }
+    }
+
+    static class TickBinaryCodec implements FrameCodec<Tick> {
+        static final int OFFSET_CANTIDAD = Integer.BYTES + Double.BYTES;
+
+        @Override
+        public void encode(Tick tick, ByteBuffer destino) {
+            destino.putInt(tick.simbolo).putDouble(tick.precio).putLong(tick.cantidad);
+        }
+
+        @Override
+        public Tick decode(ByteBuffer origen) {
+            return new Tick(origen.getInt(0), origen.getDouble(Integer.BYTES), origen.getLong(OFFSET_CANTIDAD));
+        }
+    }
+
+    static class Codecs {
+        static <T> ObservableTransformer<T, BinaryFrame> encode(BufferPool pool, short tipo, FrameCodec<T> codec) {
+            return upstream -> upstream.map(valor -> BinaryFrame.encode(pool, tipo, valor, codec));
+        }
+
+        /** Decodifica y libera el frame: aguas abajo sólo viajan objetos */
+        static <T> ObservableTransformer<BinaryFrame, T> decode(FrameCodec<T> codec) {
+            return upstream -> upstream.map(frame -> {
+                try {
+                    return codec.decode(frame.payload());
+                } finally {
+                    frame.release();
+                }
+            });
+        }
+    }
+
+    static class Tick {
+        int simbolo;
+        double precio;
+        long cantidad;
+
+        Tick(int simbolo, double precio, long cantidad) {
+            this.simbolo = simbolo;
+            this.precio = precio;
+            this.cantidad = cantidad;
+        }
+
+        @Override
+        public String toString() {
+            return "Tick{simbolo=" + simbolo + ", precio=" + precio + ", cantidad=" + cantidad + "}";
+        }
+    }
+}
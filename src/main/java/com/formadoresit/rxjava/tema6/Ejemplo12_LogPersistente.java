@@ -0,0 +1,588 @@
+package com.formadoresit.rxjava.tema6;
+
+import io.reactivex.Flowable;
+import io.reactivex.Observable;
+import io.reactivex.Scheduler;
+import io.reactivex.Single;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.schedulers.Schedulers;
+import io.reactivex.subjects.PublishSubject;
+import io.reactivex.subjects.SingleSubject;
+import io.reactivex.subjects.Subject;
+import io.reactivex.subjects.UnicastSubject;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * TEMA 6: Multicast
+ * Ejemplo 12: Log Persistente
+ *
+ * Persistencia real para el PersistentWebSocketManager del Ejemplo 07:
+ * log segmentado en ficheros mapeados en memoria, group commit por
+ * tamaño de lote o por tiempo, replay por offset para clientes que
+ * se reconectan y retención de segmentos por tamaño o antigüedad
+ */
+public class Ejemplo12_LogPersistente {
+
+    public static void main(String[] args) throws Exception {
+        System.out.println("=== Ejemplo 12: Log Persistente ===\n");
+        Path directorio = Files.createTempDirectory("ws-log");
+
+        try {
+            // 1. WebSocket persistente: se emite después de hacer commit
+            System.out.println("--- WebSocket con log persistente ---");
+            try (SegmentedLog log = new SegmentedLog(directorio.resolve("chat"), 64 * 1024, 32, 5, Long.MAX_VALUE, Long.MAX_VALUE)) {
+                PersistentWebSocketManager wsManager = new PersistentWebSocketManager(log);
+                wsManager.getMessageStream()
+                    .subscribe(entrada -> System.out.println("  [MESSAGE] " + entrada));
+
+                for (int i = 1; i <= 5; i++) {
+                    long offset = wsManager.sendMessage("Mensaje persistente " + i).blockingGet();
+                    System.out.println("  [PERSIST] Commit en offset " + offset);
+                }
+
+                // 2. Replay por offset para un cliente que se reconecta
+                System.out.println("\n--- Reconexión con replay desde offset 2 ---");
+                Disposable cliente = wsManager.getMessageStreamFrom(2)
+                    .subscribe(entrada -> System.out.println("  [RECONNECTED] " + entrada));
+                wsManager.sendMessage("Mensaje en vivo tras reconectar").blockingGet();
+                Thread.sleep(50);
+                cliente.dispose();
+
+                // Un offset por delante del log no recorre cabeceras vacías: pasa al vivo
+                Disposable adelantado = wsManager.getMessageStreamFrom(1000)
+                    .subscribe(entrada -> System.out.println("  [FROM 1000] " + entrada));
+                wsManager.sendMessage("Mensaje en vivo para el offset adelantado").blockingGet();
+                Thread.sleep(50);
+                adelantado.dispose();
+            }
+
+            // 3. Recuperación al reabrir el directorio
+            System.out.println("\n--- Recuperación al reiniciar ---");
+            try (SegmentedLog log = new SegmentedLog(directorio.resolve("chat"), 64 * 1024, 32, 5, Long.MAX_VALUE, Long.MAX_VALUE)) {
+                System.out.println("  Siguiente offset tras reabrir: " + log.nextOffset());
+                log.replay(0).take(2).subscribe(entrada -> System.out.println("  [REPLAY] " + entrada));
+            }
+
+            // Un byte corrupto en el offset 5: el CRC lo descarta al reabrir, con lo que va detrás
+            Path segmento = directorio.resolve("chat").resolve(String.format("%020d.log", 0));
+            try (FileChannel channel = FileChannel.open(segmento, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                ByteBuffer cabecera = ByteBuffer.allocate(Segment.CABECERA);
+                long posicion = 0;
+                for (int i = 0; i < 5; i++) {
+                    channel.read(cabecera.clear(), posicion);
+                    posicion += Segment.CABECERA + cabecera.getInt(0);
+                }
+                channel.write(ByteBuffer.wrap(new byte[] {'#'}), posicion + Segment.CABECERA);
+            }
+            SegmentedLog reabierto = new SegmentedLog(directorio.resolve("chat"), 64 * 1024, 32, 5, Long.MAX_VALUE, Long.MAX_VALUE);
+            System.out.println("  Tras corromper el offset 5, siguiente offset: " + reabierto.nextOffset());
+            reabierto.close();
+            reabierto.append("Tras cerrar").subscribe(
+                offset -> System.out.println("  [ERROR] append aceptado tras close()"),
+                error -> System.out.println("  [CLOSED] " + error.getMessage()));
+
+            // 4. Retención por tamaño
+            System.out.println("\n--- Retención de segmentos por tamaño ---");
+            try (SegmentedLog log = new SegmentedLog(directorio.resolve("retencion"), 16 * 1024, 64, 5, 64 * 1024, Long.MAX_VALUE)) {
+                String payload = "x".repeat(200);
+                Single<Long> ultimo = null;
+                for (int i = 0; i < 1000; i++) {
+                    ultimo = log.append(payload);
+                }
+                ultimo.blockingGet();
+                System.out.println("  Segmentos vivos: " + log.segmentCount()
+                    + ", bytes en disco: " + log.sizeOnDisk()
+                    + ", primer offset disponible: " + log.firstOffset());
+            }
+
+            // 5. Benchmark: appends/s y replay MB/s
+            System.out.println("\n--- Benchmark ---");
+            int mensajes = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+            try (SegmentedLog log = new SegmentedLog(directorio.resolve("bench"), 64 * 1024 * 1024, 4096, 2, Long.MAX_VALUE, Long.MAX_VALUE)) {
+                String payload = "m".repeat(100);
+                long inicio = System.nanoTime();
+                Single<Long> ultimo = null;
+                for (int i = 0; i < mensajes; i++) {
+                    ultimo = log.append(payload);
+                }
+                ultimo.blockingGet();
+                double segundos = (System.nanoTime() - inicio) / 1e9;
+                System.out.printf("  Appends: %,d en %.2fs -> %,.0f appends/s (%d commits)%n",
+                    mensajes, segundos, mensajes / segundos, log.commits());
+
+                AtomicLong bytes = new AtomicLong();
+                inicio = System.nanoTime();
+                long leidos = log.replay(0)
+                    .doOnNext(entrada -> bytes.addAndGet(entrada.mensaje.length()))
+                    .count()
+                    .blockingGet();
+                segundos = (System.nanoTime() - inicio) / 1e9;
+                System.out.printf("  Replay: %,d mensajes, %.1f MB/s%n", leidos, bytes.get() / 1e6 / segundos);
+            }
+        } finally {
+            borrarDirectorio(directorio);
+        }
+
+        System.out.println("\n=== CONCEPTOS CLAVE ===");
+        System.out.println("• Segmentos mapeados: escritura secuencial sin syscalls por mensaje");
+        System.out.println("• Group commit: un force() por lote en lugar de uno por mensaje");
+        System.out.println("• Emitir tras commit: los suscriptores sólo ven mensajes durables");
+        System.out.println("• CRC por registro: al recuperar se trunca en la primera escritura a medias");
+        System.out.println("• Replay por offset: el cliente reanuda donde se quedó");
+        System.out.println("• Retención: se borran los segmentos más antiguos por tamaño o edad");
+    }
+
+    private static void borrarDirectorio(Path directorio) throws IOException {
+        try (Stream<Path> paths = Files.walk(directorio)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    static class PersistentWebSocketManager {
+        private final SegmentedLog log;
+
+        PersistentWebSocketManager(SegmentedLog log) {
+            this.log = log;
+        }
+
+        /** Mensajes en vivo, emitidos por el escritor después del commit */
+        public Observable<LogEntry> getMessageStream() {
+            return log.committed();
+        }
+
+        /**
+         * Replay desde un offset y después en vivo, sin huecos ni duplicados:
+         * los mensajes en vivo se acumulan mientras dura el replay
+         */
+        public Observable<LogEntry> getMessageStreamFrom(long offset) {
+            return Observable.defer(() -> {
+                UnicastSubject<LogEntry> vivos = UnicastSubject.create();
+                Disposable puente = log.committed().subscribe(vivos::onNext, vivos::onError, vivos::onComplete);
+                AtomicLong ultimo = new AtomicLong(Math.min(offset, log.nextOffset()) - 1);
+                return log.replay(offset)
+                    .toObservable()
+                    .doOnNext(entrada -> ultimo.set(entrada.offset))
+                    .concatWith(vivos.filter(entrada -> entrada.offset > ultimo.get()))
+                    .doFinally(puente::dispose);
+            });
+        }
+
+        public Single<Long> sendMessage(String mensaje) {
+            return log.append(mensaje);
+        }
+    }
+
+    /**
+     * Log segmentado: registros [longitud:int][crc32:int][bytes UTF-8] en
+     * ficheros mapeados cuyo nombre es el offset base del segmento. Un
+     * único hilo escritor, propiedad del log, hace los force()
+     */
+    static class SegmentedLog implements AutoCloseable {
+        private final Path directorio;
+        private final int tamanoSegmento;
+        private final long retencionBytes;
+        private final long retencionMs;
+        private final List<Segment> segmentos = new CopyOnWriteArrayList<>();
+        private final Subject<PendingAppend> appends = PublishSubject.<PendingAppend>create().toSerialized();
+        private final PublishSubject<LogEntry> committed = PublishSubject.create();
+        private final Disposable escritor;
+        private final AtomicLong commits = new AtomicLong();
+        private final CountDownLatch escritorTerminado = new CountDownLatch(1);
+        private final ExecutorService hiloEscritor = Executors.newSingleThreadExecutor(r -> {
+            Thread hilo = new Thread(r, "log-writer");
+            hilo.setDaemon(true);
+            return hilo;
+        });
+        private volatile long nextOffset;
+        private boolean cerrado;
+
+        SegmentedLog(Path directorio, int tamanoSegmento, int loteMaximo, long esperaMaximaMs,
+                     long retencionBytes, long retencionMs) throws IOException {
+            this.directorio = Files.createDirectories(directorio);
+            this.tamanoSegmento = tamanoSegmento;
+            this.retencionBytes = retencionBytes;
+            this.retencionMs = retencionMs;
+            recuperar();
+            // Group commit: el lote se cierra al llenarse o al vencer la espera.
+            // El lote lleno se cierra en el hilo del que llama: observeOn lleva
+            // el force() al hilo escritor en ambos casos
+            Scheduler escritura = Schedulers.from(hiloEscritor);
+            this.escritor = appends
+                .buffer(esperaMaximaMs, TimeUnit.MILLISECONDS, escritura, loteMaximo)
+                .filter(lote -> !lote.isEmpty())
+                .observeOn(escritura)
+                .subscribe(this::escribirLote, error -> escritorTerminado.countDown(), escritorTerminado::countDown);
+        }
+
+        public Single<Long> append(String mensaje) {
+            PendingAppend pendiente = new PendingAppend(mensaje.getBytes(StandardCharsets.UTF_8));
+            synchronized (this) {
+                if (cerrado) {
+                    return Single.error(new IllegalStateException("Log cerrado"));
+                }
+                appends.onNext(pendiente);
+            }
+            return pendiente.resultado;
+        }
+
+        public Observable<LogEntry> committed() {
+            return committed;
+        }
+
+        /** Lee bajo demanda desde el offset hasta lo confirmado al suscribirse */
+        public Flowable<LogEntry> replay(long desde) {
+            return Flowable.generate(
+                () -> {
+                    long hasta = nextOffset;
+                    // un offset por delante del log (p. ej. anterior a una recuperación que truncó) va directo al vivo
+                    return new ReplayCursor(new ArrayList<>(segmentos), Math.min(Math.max(desde, firstOffset()), hasta), hasta);
+                },
+                (cursor, emitter) -> {
+                    LogEntry entrada = cursor.siguiente();
+                    if (entrada == null) {
+                        emitter.onComplete();
+                    } else {
+                        emitter.onNext(entrada);
+                    }
+                });
+        }
+
+        public long nextOffset() {
+            return nextOffset;
+        }
+
+        public long firstOffset() {
+            return segmentos.isEmpty() ? nextOffset : segmentos.get(0).baseOffset;
+        }
+
+        public int segmentCount() {
+            return segmentos.size();
+        }
+
+        public long commits() {
+            return commits.get();
+        }
+
+        public long sizeOnDisk() {
+            return segmentos.stream().mapToLong(s -> s.escritos).sum();
+        }
+
+        /**
+         * Sólo se confirman los registros ya forzados a disco. Si algo falla a
+         * mitad de lote, lo escrito desde el último force() se pone a cero y
+         * nextOffset avanza sólo por los confirmados: la recuperación cuenta
+         * registros, así que un hueco huérfano desplazaría los offsets
+         */
+        private void escribirLote(List<PendingAppend> lote) {
+            List<LogEntry> entradas = new ArrayList<>(lote.size());
+            int confirmadas = 0;
+            Exception fallo = null;
+            Segment activo = null;
+            int inicioSucio = 0;
+            try {
+                activo = segmentoActivo();
+                inicioSucio = activo.escritos;
+                long offset = nextOffset;
+                for (PendingAppend pendiente : lote) {
+                    int necesario = Segment.CABECERA + pendiente.bytes.length;
+                    if (necesario > tamanoSegmento) {
+                        pendiente.resultado.onError(new IllegalArgumentException(
+                            "Mensaje de " + pendiente.bytes.length + " bytes mayor que el segmento"));
+                        continue;
+                    }
+                    if (activo.escritos + necesario > tamanoSegmento) {
+                        activo.flush(inicioSucio);
+                        confirmadas = entradas.size();
+                        inicioSucio = activo.escritos;
+                        activo = rotar(offset);
+                        inicioSucio = 0;
+                    }
+                    activo.escribir(pendiente.bytes);
+                    entradas.add(new LogEntry(offset++, pendiente));
+                }
+                activo.flush(inicioSucio);
+                confirmadas = entradas.size();
+            } catch (IOException | RuntimeException e) {
+                fallo = e;
+                if (activo != null) {
+                    activo.descartar(inicioSucio);
+                }
+            }
+            if (confirmadas > 0) {
+                nextOffset += confirmadas; // publicación: los lectores ven los bytes ya escritos
+                commits.incrementAndGet();
+                for (LogEntry entrada : entradas.subList(0, confirmadas)) {
+                    entrada.confirmar();
+                    committed.onNext(entrada);
+                }
+            }
+            if (fallo != null) {
+                for (PendingAppend pendiente : lote) {
+                    if (!pendiente.resultado.hasValue() && !pendiente.resultado.hasThrowable()) {
+                        pendiente.resultado.onError(fallo);
+                    }
+                }
+            }
+        }
+
+        private Segment segmentoActivo() throws IOException {
+            return segmentos.isEmpty() ? rotar(nextOffset) : segmentos.get(segmentos.size() - 1);
+        }
+
+        private Segment rotar(long baseOffset) throws IOException {
+            Segment nuevo = Segment.abrir(directorio.resolve(String.format("%020d.log", baseOffset)), baseOffset, tamanoSegmento);
+            segmentos.add(nuevo);
+            aplicarRetencion();
+            return nuevo;
+        }
+
+        private void aplicarRetencion() throws IOException {
+            long ahora = System.currentTimeMillis();
+            // Nunca se borra el segmento activo
+            while (segmentos.size() > 1) {
+                Segment antiguo = segmentos.get(0);
+                boolean excedeTamano = (long) segmentos.size() * tamanoSegmento > retencionBytes;
+                boolean caducado = ahora - antiguo.creado > retencionMs;
+                if (!excedeTamano && !caducado) {
+                    break;
+                }
+                segmentos.remove(0);
+                antiguo.close();
+                Files.deleteIfExists(antiguo.path);
+            }
+        }
+
+        private void recuperar() throws IOException {
+            List<Path> ficheros;
+            try (Stream<Path> paths = Files.list(directorio)) {
+                ficheros = paths.filter(p -> p.toString().endsWith(".log")).sorted().toList();
+            }
+            long offset = 0;
+            for (Path fichero : ficheros) {
+                long base = Long.parseLong(fichero.getFileName().toString().replace(".log", ""));
+                Segment segmento = Segment.abrir(fichero, base, tamanoSegmento);
+                offset = base + segmento.recuperarRegistros();
+                segmentos.add(segmento);
+            }
+            nextOffset = offset;
+        }
+
+        @Override
+        public void close() throws IOException {
+            synchronized (this) {
+                if (cerrado) {
+                    return;
+                }
+                cerrado = true;
+            }
+            appends.onComplete(); // buffer() vacía el último lote antes de terminar
+            try {
+                escritorTerminado.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            escritor.dispose();
+            hiloEscritor.shutdown();
+            committed.onComplete();
+            for (Segment segmento : segmentos) {
+                segmento.close();
+            }
+        }
+
+        private class ReplayCursor {
+            private final List<Segment> snapshot;
+            private final long hasta;
+            private int indice;
+            private int posicion;
+            private long offset;
+
+            ReplayCursor(List<Segment> snapshot, long desde, long hasta) {
+                this.snapshot = snapshot;
+                this.hasta = hasta;
+                this.offset = desde;
+                // Segmento que contiene el offset y salto secuencial hasta él
+                while (indice + 1 < snapshot.size() && snapshot.get(indice + 1).baseOffset <= desde) {
+                    indice++;
+                }
+                if (!snapshot.isEmpty()) {
+                    for (long o = snapshot.get(indice).baseOffset; o < desde; o++) {
+                        posicion += Segment.CABECERA + snapshot.get(indice).buffer.getInt(posicion);
+                    }
+                }
+            }
+
+            LogEntry siguiente() {
+                if (offset >= hasta || snapshot.isEmpty()) {
+                    return null;
+                }
+                Segment segmento = snapshot.get(indice);
+                if (indice + 1 < snapshot.size() && offset >= snapshot.get(indice + 1).baseOffset) {
+                    segmento = snapshot.get(++indice);
+                    posicion = 0;
+                }
+                int longitud = segmento.buffer.getInt(posicion);
+                byte[] bytes = new byte[longitud];
+                segmento.buffer.get(posicion + Segment.CABECERA, bytes);
+                posicion += Segment.CABECERA + longitud;
+                return new LogEntry(offset++, new String(bytes, StandardCharsets.UTF_8));
+            }
+        }
+    }
+
+    static class Segment implements AutoCloseable {
+        static final int CABECERA = 2 * Integer.BYTES;
+        final Path path;
+        final long baseOffset;
+        final long creado;
+        final FileChannel channel;
+        final MappedByteBuffer buffer;
+        private final CRC32 crc = new CRC32();
+        int escritos;
+
+        private Segment(Path path, long baseOffset, FileChannel channel, MappedByteBuffer buffer) {
+            this.path = path;
+            this.baseOffset = baseOffset;
+            this.channel = channel;
+            this.buffer = buffer;
+            this.creado = path.toFile().lastModified();
+        }
+
+        static Segment abrir(Path path, long baseOffset, int tamano) throws IOException {
+            FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, tamano);
+            return new Segment(path, baseOffset, channel, buffer);
+        }
+
+        void escribir(byte[] bytes) {
+            buffer.putInt(escritos, bytes.length);
+            buffer.putInt(escritos + Integer.BYTES, crc(bytes));
+            buffer.put(escritos + CABECERA, bytes);
+            escritos += CABECERA + bytes.length;
+        }
+
+        private int crc(byte[] bytes) {
+            crc.reset();
+            crc.update(bytes);
+            return (int) crc.getValue();
+        }
+
+        /** Fuerza a disco sólo el rango escrito en este lote */
+        void flush(int desde) {
+            if (escritos > desde) {
+                buffer.force(desde, escritos - desde);
+            }
+        }
+
+        /**
+         * Recorre los registros hasta el primer hueco a cero o el primer CRC
+         * que no cuadra (escritura a medias); devuelve cuántos hay. Tras un
+         * registro corrupto se trunca la cola a ceros, para que lo que quede
+         * detrás no reaparezca entre los registros nuevos
+         */
+        long recuperarRegistros() {
+            long registros = 0;
+            ByteBuffer lectura = buffer.duplicate();
+            while (escritos + CABECERA <= lectura.capacity()) {
+                int longitud = lectura.getInt(escritos);
+                if (longitud == 0) {
+                    return registros;
+                }
+                if (longitud < 0 || escritos + CABECERA + longitud > lectura.capacity()) {
+                    break;
+                }
+                byte[] bytes = new byte[longitud];
+                lectura.get(escritos + CABECERA, bytes);
+                if (lectura.getInt(escritos + Integer.BYTES) != crc(bytes)) {
+                    break;
+                }
+                escritos += CABECERA + longitud;
+                registros++;
+            }
+            truncar();
+            return registros;
+        }
+
+        /** Deshace lo escrito desde la posición dada, también en disco si aún se puede */
+        void descartar(int desde) {
+            if (escritos <= desde) {
+                return;
+            }
+            escritos = desde;
+            try {
+                truncar();
+            } catch (RuntimeException e) {
+                // el force() sigue fallando: los ceros ya están en el mapeo y el SO los escribirá
+            }
+        }
+
+        private void truncar() {
+            byte[] ceros = new byte[4096];
+            for (int i = escritos; i < buffer.capacity(); i += ceros.length) {
+                buffer.put(i, ceros, 0, Math.min(ceros.length, buffer.capacity() - i));
+            }
+            buffer.force(escritos, buffer.capacity() - escritos);
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close(); // el mapeo sigue siendo válido hasta que el GC lo libere
+        }
+    }
+
+    static class PendingAppend {
+        final byte[] bytes;
+        final SingleSubject<Long> resultado = SingleSubject.create();
+
+        PendingAppend(byte[] bytes) {
+            this.bytes = bytes;
+        }
+    }
+
+    static class LogEntry {
+        final long offset;
+        final String mensaje;
+        private final PendingAppend pendiente;
+
+        LogEntry(long offset, String mensaje) {
+            this.offset = offset;
+            this.mensaje = mensaje;
+            this.pendiente = null;
+        }
+
+        LogEntry(long offset, PendingAppend pendiente) {
+            this.offset = offset;
+            this.mensaje = new String(pendiente.bytes, StandardCharsets.UTF_8);
+            this.pendiente = pendiente;
+        }
+
+        void confirmar() {
+            if (pendiente != null) {
+                pendiente.resultado.onSuccess(offset);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "#" + offset + " " + mensaje;
+        }
+    }
+}
@@ -0,0 +1,520 @@
+package com.formadoresit.rxjava.tema6;
+
+import io.reactivex.Flowable;
+import io.reactivex.FlowableTransformer;
+import io.reactivex.Observable;
+import io.reactivex.ObservableSource;
+import io.reactivex.ObservableTransformer;
+import io.reactivex.functions.Predicate;
+import io.reactivex.schedulers.Schedulers;
+import io.reactivex.subjects.PublishSubject;
+import io.reactivex.subjects.Subject;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import org.reactivestreams.Publisher;
+
+/**
+ * TEMA 6: Multicast
+ * Ejemplo 13: Circuit Breaker
+ *
+ * Circuit breaker reutilizable y sin bloqueos, en lugar de los contadores
+ * de un solo sentido del CircuitBreakerManager (Ejemplo 09) y de los
+ * ejemplos de tema7/tema8: ventanas deslizantes por número de llamadas
+ * o por tiempo, umbral de llamadas lentas, estado HALF_OPEN con permisos
+ * limitados y un stream con los cambios de estado
+ */
+public class Ejemplo13_CircuitBreaker {
+
+    public static void main(String[] args) throws InterruptedException {
+        System.out.println("=== Ejemplo 13: Circuit Breaker ===\n");
+
+        // 1. Ventana por número de llamadas: CLOSED -> OPEN -> HALF_OPEN -> CLOSED
+        System.out.println("--- Ventana por número de llamadas ---");
+        CircuitBreaker breaker = new CircuitBreaker("pagos", new CircuitBreakerConfig()
+            .ventanaPorLlamadas(10)
+            .llamadasMinimas(5)
+            .umbralFallos(50)
+            .esperaEnAbierto(200, TimeUnit.MILLISECONDS)
+            .permisosEnSemiAbierto(2));
+        breaker.getStateChanges()
+            .subscribe(cambio -> System.out.println("  [STATE] " + cambio));
+
+        AtomicBoolean servicioCaido = new AtomicBoolean(true);
+        for (int i = 1; i <= 8; i++) {
+            llamar(breaker, servicioCaido, i);
+        }
+        System.out.println("  Esperando a que el circuito pase a HALF_OPEN...");
+        Thread.sleep(250);
+        servicioCaido.set(false);
+        for (int i = 9; i <= 12; i++) {
+            llamar(breaker, servicioCaido, i);
+        }
+
+        // 2. Ventana temporal con umbral de llamadas lentas
+        System.out.println("\n--- Ventana temporal con llamadas lentas ---");
+        CircuitBreaker lento = new CircuitBreaker("inventario", new CircuitBreakerConfig()
+            .ventanaPorTiempo(5)
+            .llamadasMinimas(4)
+            .llamadaLenta(50, TimeUnit.MILLISECONDS)
+            .umbralLentas(75)
+            .esperaEnAbierto(100, TimeUnit.MILLISECONDS));
+        lento.getStateChanges()
+            .subscribe(cambio -> System.out.println("  [STATE] " + cambio));
+
+        for (int i = 1; i <= 6; i++) {
+            int n = i;
+            Observable.timer(80, TimeUnit.MILLISECONDS)
+                .map(t -> "Stock " + n)
+                .compose(lento.forObservable())
+                .blockingSubscribe(
+                    r -> System.out.println("  [INVENTARIO] " + r),
+                    e -> System.out.println("  [INVENTARIO] Rechazado: " + e.getMessage()));
+        }
+
+        // 3. Mismo breaker sobre Flowable
+        System.out.println("\n--- FlowableTransformer ---");
+        Flowable.range(1, 3)
+            .compose(breaker.forFlowable())
+            .blockingSubscribe(n -> System.out.println("  [FLOWABLE] " + n));
+        System.out.println("  Métricas: " + breaker.metrics());
+
+        // 4. Overhead por llamada en el camino caliente
+        System.out.println("\n--- Benchmark: overhead por llamada ---");
+        int llamadas = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+        CircuitBreaker bench = new CircuitBreaker("bench", new CircuitBreakerConfig().ventanaPorLlamadas(100));
+        Observable<Integer> fuente = Observable.just(1);
+        Observable<Integer> protegida = fuente.compose(bench.forObservable());
+        for (int ronda = 1; ronda <= 3; ronda++) {
+            long sin = medir(fuente, llamadas);
+            long con = medir(protegida, llamadas);
+            System.out.printf("  Ronda %d: sin breaker %.1f ns/llamada, con breaker %.1f ns/llamada (+%.1f)%n",
+                ronda, (double) sin / llamadas, (double) con / llamadas, (double) (con - sin) / llamadas);
+        }
+        System.out.printf("  Permiso + registro con 4 hilos: %.1f ns/llamada%n", medirConcurrente(bench, 4, llamadas));
+
+        System.out.println("\n=== CONCEPTOS CLAVE ===");
+        System.out.println("• CLOSED: las llamadas pasan y se registran en la ventana deslizante");
+        System.out.println("• OPEN: se rechaza sin llamar al servicio hasta que vence la espera");
+        System.out.println("• HALF_OPEN: sólo N llamadas de prueba deciden si se cierra o reabre");
+        System.out.println("• Llamadas lentas: una latencia alta también abre el circuito");
+        System.out.println("• Sin bloqueos: estado en AtomicReference y ventana con contadores atómicos");
+        System.out.println("• compose(): el mismo breaker sirve para Observable y Flowable");
+    }
+
+    private static void llamar(CircuitBreaker breaker, AtomicBoolean servicioCaido, int n) {
+        Observable.fromCallable(() -> {
+                if (servicioCaido.get()) {
+                    throw new IllegalStateException("Servicio caído");
+                }
+                return "Pago " + n + " OK";
+            })
+            .compose(breaker.forObservable())
+            .subscribe(
+                r -> System.out.println("  [PAGOS] " + r),
+                e -> System.out.println("  [PAGOS] Llamada " + n + ": " + e.getMessage()));
+    }
+
+    private static long medir(Observable<Integer> fuente, int llamadas) {
+        AtomicLong suma = new AtomicLong();
+        long inicio = System.nanoTime();
+        for (int i = 0; i < llamadas; i++) {
+            fuente.subscribe(suma::addAndGet);
+        }
+        return System.nanoTime() - inicio;
+    }
+
+    private static double medirConcurrente(CircuitBreaker breaker, int hilos, int llamadas) throws InterruptedException {
+        CountDownLatch fin = new CountDownLatch(hilos);
+        long inicio = System.nanoTime();
+        for (int h = 0; h < hilos; h++) {
+            Schedulers.computation().scheduleDirect(() -> {
+                for (int i = 0; i < llamadas / hilos; i++) {
+                    CircuitBreaker.Estado estado = breaker.acquirePermission();
+                    breaker.onResult(estado, 10, null);
+                }
+                fin.countDown();
+            });
+        }
+        fin.await();
+        return (double) (System.nanoTime() - inicio) * hilos / llamadas;
+    }
+
+    // Circuit breaker
+
+    enum CircuitState { CLOSED, OPEN, HALF_OPEN }
+
+    static class CallNotPermittedException extends RuntimeException {
+        CallNotPermittedException(String nombre) {
+            super("Circuito '" + nombre + "' abierto, llamada no permitida");
+        }
+    }
+
+    static class CircuitBreakerConfig {
+        boolean ventanaTemporal = false;
+        int tamanoVentana = 100;
+        int llamadasMinimas = 10;
+        float umbralFallos = 50;
+        float umbralLentas = 100;
+        long llamadaLentaNanos = TimeUnit.SECONDS.toNanos(60);
+        long esperaEnAbiertoNanos = TimeUnit.SECONDS.toNanos(60);
+        int permisosEnSemiAbierto = 10;
+        Predicate<Throwable> cuentaComoFallo = error -> true;
+
+        CircuitBreakerConfig ventanaPorLlamadas(int llamadas) {
+            this.ventanaTemporal = false;
+            this.tamanoVentana = llamadas;
+            return this;
+        }
+
+        CircuitBreakerConfig ventanaPorTiempo(int segundos) {
+            this.ventanaTemporal = true;
+            this.tamanoVentana = segundos;
+            return this;
+        }
+
+        CircuitBreakerConfig llamadasMinimas(int llamadas) {
+            this.llamadasMinimas = llamadas;
+            return this;
+        }
+
+        CircuitBreakerConfig umbralFallos(float porcentaje) {
+            this.umbralFallos = porcentaje;
+            return this;
+        }
+
+        CircuitBreakerConfig umbralLentas(float porcentaje) {
+            this.umbralLentas = porcentaje;
+            return this;
+        }
+
+        CircuitBreakerConfig llamadaLenta(long duracion, TimeUnit unidad) {
+            this.llamadaLentaNanos = unidad.toNanos(duracion);
+            return this;
+        }
+
+        CircuitBreakerConfig esperaEnAbierto(long duracion, TimeUnit unidad) {
+            this.esperaEnAbiertoNanos = unidad.toNanos(duracion);
+            return this;
+        }
+
+        CircuitBreakerConfig permisosEnSemiAbierto(int permisos) {
+            this.permisosEnSemiAbierto = permisos;
+            return this;
+        }
+
+        CircuitBreakerConfig cuentaComoFallo(Predicate<Throwable> predicado) {
+            this.cuentaComoFallo = predicado;
+            return this;
+        }
+    }
+
+    static class CircuitBreaker {
+        private final String nombre;
+        private final CircuitBreakerConfig config;
+        private final AtomicReference<Estado> estado = new AtomicReference<>();
+        private final Subject<StateTransition> cambios = PublishSubject.<StateTransition>create().toSerialized();
+        private final LongAdder rechazadas = new LongAdder();
+
+        CircuitBreaker(String nombre, CircuitBreakerConfig config) {
+            this.nombre = nombre;
+            this.config = config;
+            this.estado.set(cerrado());
+        }
+
+        public Observable<StateTransition> getStateChanges() {
+            return cambios;
+        }
+
+        public CircuitState getState() {
+            return estado.get().tipo;
+        }
+
+        public <T> ObservableTransformer<T, T> forObservable() {
+            return upstream -> Observable.defer(() -> proteger(upstream));
+        }
+
+        public <T> FlowableTransformer<T, T> forFlowable() {
+            return upstream -> Flowable.defer(() -> proteger(upstream));
+        }
+
+        private <T> ObservableSource<T> proteger(Observable<T> upstream) {
+            Estado permiso = acquirePermission();
+            if (permiso == null) {
+                return Observable.error(new CallNotPermittedException(nombre));
+            }
+            long inicio = System.nanoTime();
+            AtomicBoolean registrado = new AtomicBoolean();
+            return upstream
+                .doOnError(e -> registrar(registrado, permiso, inicio, e))
+                .doOnComplete(() -> registrar(registrado, permiso, inicio, null))
+                .doOnDispose(() -> liberar(registrado, permiso));
+        }
+
+        private <T> Publisher<T> proteger(Flowable<T> upstream) {
+            Estado permiso = acquirePermission();
+            if (permiso == null) {
+                return Flowable.error(new CallNotPermittedException(nombre));
+            }
+            long inicio = System.nanoTime();
+            AtomicBoolean registrado = new AtomicBoolean();
+            return upstream
+                .doOnError(e -> registrar(registrado, permiso, inicio, e))
+                .doOnComplete(() -> registrar(registrado, permiso, inicio, null))
+                .doOnCancel(() -> liberar(registrado, permiso));
+        }
+
+        private void registrar(AtomicBoolean registrado, Estado permiso, long inicio, Throwable error) {
+            if (registrado.compareAndSet(false, true)) {
+                onResult(permiso, System.nanoTime() - inicio, error);
+            }
+        }
+
+        /** Una cancelación no es éxito ni fallo: en HALF_OPEN se devuelve el permiso */
+        private void liberar(AtomicBoolean registrado, Estado permiso) {
+            if (registrado.compareAndSet(false, true) && permiso.tipo == CircuitState.HALF_OPEN) {
+                permiso.permisos.incrementAndGet();
+            }
+        }
+
+        /** Devuelve el estado con el que se concedió el permiso, o null si se rechaza */
+        Estado acquirePermission() {
+            while (true) {
+                Estado actual = estado.get();
+                switch (actual.tipo) {
+                    case CLOSED:
+                        return actual;
+                    case OPEN:
+                        if (System.nanoTime() - actual.desde < config.esperaEnAbiertoNanos) {
+                            rechazadas.increment();
+                            return null;
+                        }
+                        transicion(actual, semiAbierto());
+                        break; // reintentar con el estado nuevo
+                    default:
+                        if (actual.permisos.decrementAndGet() >= 0) {
+                            return actual;
+                        }
+                        actual.permisos.incrementAndGet();
+                        rechazadas.increment();
+                        return null;
+                }
+            }
+        }
+
+        void onResult(Estado permiso, long duracionNanos, Throwable error) {
+            boolean fallo = error != null && cuentaComoFallo(error);
+            boolean lenta = duracionNanos >= config.llamadaLentaNanos;
+            if (permiso != estado.get()) {
+                return; // resultado de un estado anterior: ya no cuenta
+            }
+            if (permiso.tipo == CircuitState.CLOSED) {
+                permiso.ventana.record(fallo, lenta);
+                if (superaUmbrales(permiso.ventana.snapshot(), config.llamadasMinimas)) {
+                    transicion(permiso, abierto());
+                }
+            } else if (permiso.tipo == CircuitState.HALF_OPEN) {
+                permiso.ventana.record(fallo, lenta);
+                Snapshot snapshot = permiso.ventana.snapshot();
+                if (snapshot.total >= config.permisosEnSemiAbierto) {
+                    transicion(permiso, superaUmbrales(snapshot, 1) ? abierto() : cerrado());
+                }
+            }
+        }
+
+        private boolean cuentaComoFallo(Throwable error) {
+            try {
+                return config.cuentaComoFallo.test(error);
+            } catch (Exception e) {
+                return true;
+            }
+        }
+
+        private boolean superaUmbrales(Snapshot snapshot, int minimas) {
+            if (snapshot.total < minimas || snapshot.total == 0) {
+                return false;
+            }
+            return snapshot.fallos * 100f / snapshot.total >= config.umbralFallos
+                || snapshot.lentas * 100f / snapshot.total >= config.umbralLentas;
+        }
+
+        private void transicion(Estado desde, Estado hacia) {
+            if (estado.compareAndSet(desde, hacia)) {
+                cambios.onNext(new StateTransition(nombre, desde.tipo, hacia.tipo, desde.ventana.snapshot()));
+            }
+        }
+
+        private Estado cerrado() {
+            SlidingWindow ventana = config.ventanaTemporal
+                ? new TimeSlidingWindow(config.tamanoVentana)
+                : new CountSlidingWindow(config.tamanoVentana);
+            return new Estado(CircuitState.CLOSED, ventana, 0);
+        }
+
+        private Estado abierto() {
+            return new Estado(CircuitState.OPEN, new CountSlidingWindow(1), 0);
+        }
+
+        private Estado semiAbierto() {
+            return new Estado(CircuitState.HALF_OPEN,
+                new CountSlidingWindow(config.permisosEnSemiAbierto), config.permisosEnSemiAbierto);
+        }
+
+        public String metrics() {
+            Snapshot s = estado.get().ventana.snapshot();
+            return String.format("%s estado=%s llamadas=%d fallos=%d lentas=%d rechazadas=%d",
+                nombre, getState(), s.total, s.fallos, s.lentas, rechazadas.sum());
+        }
+
+        /** Estado inmutable salvo sus contadores; cada transición crea uno nuevo */
+        static class Estado {
+            final CircuitState tipo;
+            final SlidingWindow ventana;
+            final AtomicInteger permisos;
+            final long desde = System.nanoTime();
+
+            Estado(CircuitState tipo, SlidingWindow ventana, int permisos) {
+                this.tipo = tipo;
+                this.ventana = ventana;
+                this.permisos = new AtomicInteger(permisos);
+            }
+        }
+    }
+
+    // Ventanas deslizantes
+
+    interface SlidingWindow {
+        void record(boolean fallo, boolean lenta);
+
+        Snapshot snapshot();
+    }
+
+    static class Snapshot {
+        final int total;
+        final int fallos;
+        final int lentas;
+
+        Snapshot(int total, int fallos, int lentas) {
+            this.total = total;
+            this.fallos = fallos;
+            this.lentas = lentas;
+        }
+    }
+
+    /** Anillo de las últimas N llamadas; los agregados se ajustan al sobrescribir */
+    static class CountSlidingWindow implements SlidingWindow {
+        private static final int REGISTRADA = 1;
+        private static final int FALLO = 2;
+        private static final int LENTA = 4;
+
+        private final AtomicIntegerArray anillo;
+        private final AtomicLong cursor = new AtomicLong();
+        private final AtomicInteger total = new AtomicInteger();
+        private final AtomicInteger fallos = new AtomicInteger();
+        private final AtomicInteger lentas = new AtomicInteger();
+
+        CountSlidingWindow(int tamano) {
+            this.anillo = new AtomicIntegerArray(tamano);
+        }
+
+        @Override
+        public void record(boolean fallo, boolean lenta) {
+            int valor = REGISTRADA | (fallo ? FALLO : 0) | (lenta ? LENTA : 0);
+            int indice = (int) (cursor.getAndIncrement() % anillo.length());
+            int anterior = anillo.getAndSet(indice, valor);
+            total.addAndGet(1 - (anterior & REGISTRADA));
+            fallos.addAndGet((fallo ? 1 : 0) - ((anterior & FALLO) != 0 ? 1 : 0));
+            lentas.addAndGet((lenta ? 1 : 0) - ((anterior & LENTA) != 0 ? 1 : 0));
+        }
+
+        @Override
+        public Snapshot snapshot() {
+            return new Snapshot(total.get(), fallos.get(), lentas.get());
+        }
+    }
+
+    /** Un bucket por segundo; un bucket caducado se sustituye por CAS */
+    static class TimeSlidingWindow implements SlidingWindow {
+        private final AtomicReferenceArray<Bucket> buckets;
+
+        TimeSlidingWindow(int segundos) {
+            this.buckets = new AtomicReferenceArray<>(segundos);
+        }
+
+        @Override
+        public void record(boolean fallo, boolean lenta) {
+            long segundo = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime());
+            int indice = (int) (segundo % buckets.length());
+            Bucket bucket = buckets.get(indice);
+            while (bucket == null || bucket.segundo != segundo) {
+                Bucket nuevo = new Bucket(segundo);
+                if (buckets.compareAndSet(indice, bucket, nuevo)) {
+                    bucket = nuevo;
+                } else {
+                    bucket = buckets.get(indice);
+                }
+            }
+            bucket.total.increment();
+            if (fallo) {
+                bucket.fallos.increment();
+            }
+            if (lenta) {
+                bucket.lentas.increment();
+            }
+        }
+
+        @Override
+        public Snapshot snapshot() {
+            long ahora = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime());
+            int total = 0;
+            int fallos = 0;
+            int lentas = 0;
+            for (int i = 0; i < buckets.length(); i++) {
+                Bucket bucket = buckets.get(i);
+                if (bucket != null && ahora - bucket.segundo < buckets.length()) {
+                    total += bucket.total.intValue();
+                    fallos += bucket.fallos.intValue();
+                    lentas += bucket.lentas.intValue();
+                }
+            }
+            return new Snapshot(total, fallos, lentas);
+        }
+
+        static class Bucket {
+            final long segundo;
+            final LongAdder total = new LongAdder();
+            final LongAdder fallos = new LongAdder();
+            final LongAdder lentas = new LongAdder();
+
+            Bucket(long segundo) {
+                this.segundo = segundo;
+            }
+        }
+    }
+
+    static class StateTransition {
+        final String nombre;
+        final CircuitState desde;
+        final CircuitState hacia;
+        final Snapshot ventana;
+
+        StateTransition(String nombre, CircuitState desde, CircuitState hacia, Snapshot ventana) {
+            this.nombre = nombre;
+            this.desde = desde;
+            this.hacia = hacia;
+            this.ventana = ventana;
+        }
+
+        @Override
+        public String toString() {
+            return nombre + ": " + desde + " -> " + hacia
+                + " (llamadas=" + ventana.total + ", fallos=" + ventana.fallos + ", lentas=" + ventana.lentas + ")";
+        }
+    }
+}
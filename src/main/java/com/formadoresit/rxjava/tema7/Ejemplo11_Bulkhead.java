@@ -0,0 +1,582 @@
+package com.formadoresit.rxjava.tema7;
+
+import io.reactivex.Flowable;
+import io.reactivex.FlowableTransformer;
+import io.reactivex.Observable;
+import io.reactivex.ObservableTransformer;
+import io.reactivex.Scheduler;
+import io.reactivex.Single;
+import io.reactivex.SingleEmitter;
+import io.reactivex.SingleTransformer;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.disposables.Disposables;
+import io.reactivex.schedulers.Schedulers;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * TEMA 7: Concurrencia
+ * Ejemplo 11: Bulkhead
+ *
+ * Aislamiento de dependencias lentas: en lugar de mandar todas las
+ * llamadas al mismo Schedulers.io(), cada dependencia con nombre tiene
+ * un límite de suscripciones en vuelo (modo semáforo) o un scheduler
+ * propio y acotado (modo thread pool), una cola de espera con timeout
+ * y métricas de saturación por bulkhead
+ */
+public class Ejemplo11_Bulkhead {
+
+    public static void main(String[] args) throws InterruptedException {
+        System.out.println("=== Ejemplo 11: Bulkhead ===\n");
+
+        // 1. Modo semáforo: limita llamadas asíncronas sin ocupar hilos
+        System.out.println("--- Modo semáforo ---");
+        BulkheadRegistry registry = new BulkheadRegistry();
+        Bulkhead correo = registry.semaforo("correo", 2, 1, 150, TimeUnit.MILLISECONDS);
+
+        CountDownLatch fin = new CountDownLatch(5);
+        for (int i = 1; i <= 5; i++) {
+            int n = i;
+            Observable.timer(100, TimeUnit.MILLISECONDS)
+                .map(t -> "Correo " + n + " enviado")
+                .compose(correo.forObservable())
+                .doFinally(fin::countDown)
+                .subscribe(
+                    r -> log("CORREO", r),
+                    e -> log("CORREO", "Correo " + n + ": " + e.getMessage()));
+        }
+        fin.await();
+        log("CORREO", correo.metrics());
+
+        // 2. Modo thread pool: scheduler dedicado y acotado
+        System.out.println("\n--- Modo thread pool ---");
+        Bulkhead informes = registry.threadPool("informes", 2, 10, 1, TimeUnit.SECONDS);
+        Observable.range(1, 4)
+            .flatMapSingle(n -> Single.fromCallable(() -> {
+                    simularTrabajo(100);
+                    return "Informe " + n;
+                })
+                .compose(informes.forSingle()))
+            .blockingSubscribe(r -> log("INFORMES", r));
+        log("INFORMES", informes.metrics());
+
+        // Timeout del llamante: el permiso sigue ocupado hasta que el hilo del pool queda libre
+        Bulkhead lento = registry.threadPool("lento", 1, 0, 10, TimeUnit.MILLISECONDS);
+        Single.fromCallable(() -> {
+                trabajarSinInterrupcion(300);
+                return "Lenta";
+            })
+            .compose(lento.forSingle())
+            .timeout(50, TimeUnit.MILLISECONDS)
+            .subscribe(r -> log("LENTO", r), e -> log("LENTO", "Primera llamada: timeout"));
+        Thread.sleep(100);
+        Single.just("Segunda").compose(lento.forSingle())
+            .subscribe(r -> log("LENTO", r), e -> log("LENTO", "Segunda llamada: " + e.getMessage()));
+        Thread.sleep(300);
+        log("LENTO", Single.just("Tercera llamada aceptada").compose(lento.forSingle()).blockingGet());
+
+        try {
+            registry.semaforo("informes", 2, 10, 1, TimeUnit.SECONDS);
+        } catch (IllegalArgumentException e) {
+            log("REGISTRY", e.getMessage());
+        }
+
+        // 3. Chaos test: una dependencia colgada
+        System.out.println("\n--- Chaos test: pool compartido vs bulkheads ---");
+        int peticiones = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+
+        ExecutorService compartido = Executors.newFixedThreadPool(16, r -> new Thread(r, "Compartido"));
+        Scheduler schedulerCompartido = Schedulers.from(compartido);
+        Map<String, Latencias> sinBulkhead = chaos(peticiones, dependencia -> upstream -> upstream.subscribeOn(schedulerCompartido));
+        compartido.shutdownNow();
+
+        BulkheadRegistry aislados = new BulkheadRegistry();
+        Map<String, Latencias> conBulkhead = chaos(peticiones, dependencia ->
+            aislados.threadPool(dependencia, 4, 8, 100, TimeUnit.MILLISECONDS).forSingle());
+
+        for (String dependencia : List.of("usuarios", "catalogo", "pagos")) {
+            log("CHAOS", String.format("%-8s sin bulkhead: %s", dependencia, sinBulkhead.get(dependencia)));
+            log("CHAOS", String.format("%-8s con bulkhead: %s", dependencia, conBulkhead.get(dependencia)));
+        }
+
+        // 4. Métricas de saturación exportadas por el registro
+        System.out.println("\n--- Métricas de saturación ---");
+        aislados.snapshot().forEach(m -> log("METRICS", m));
+        aislados.shutdown();
+        registry.shutdown();
+
+        System.out.println("\n=== CONCEPTOS CLAVE ===");
+        System.out.println("• Bulkhead: cada dependencia tiene su propio límite de concurrencia");
+        System.out.println("• Modo semáforo: limita suscripciones en vuelo sin bloquear hilos");
+        System.out.println("• Modo thread pool: un scheduler acotado por dependencia");
+        System.out.println("• Cola con timeout: se espera un permiso un tiempo máximo y luego se rechaza");
+        System.out.println("• Aislamiento: una dependencia colgada no agota los hilos de las demás");
+        System.out.println("• Thread pool: tras un timeout el permiso sigue ocupado hasta que el hilo queda libre");
+        System.out.println("• Métricas: en vuelo, en cola, rechazadas y saturación por bulkhead");
+    }
+
+    interface Aislamiento {
+        SingleTransformer<String, String> para(String dependencia);
+    }
+
+    /** Lanza peticiones a tres dependencias; "pagos" se cuelga 1 segundo */
+    private static Map<String, Latencias> chaos(int peticiones, Aislamiento aislamiento) throws InterruptedException {
+        Map<String, Latencias> latencias = new ConcurrentHashMap<>();
+        Map<String, SingleTransformer<String, String>> transformers = new ConcurrentHashMap<>();
+        List<String> dependencias = List.of("usuarios", "catalogo", "pagos");
+        CountDownLatch fin = new CountDownLatch(peticiones * dependencias.size());
+
+        for (String dependencia : dependencias) {
+            latencias.put(dependencia, new Latencias());
+            transformers.put(dependencia, aislamiento.para(dependencia));
+        }
+        for (int i = 0; i < peticiones; i++) {
+            for (String dependencia : dependencias) {
+                long inicio = System.nanoTime();
+                long espera = "pagos".equals(dependencia) ? 1000 : 20;
+                Single.fromCallable(() -> {
+                        simularTrabajo(espera);
+                        return dependencia;
+                    })
+                    .compose(transformers.get(dependencia))
+                    .doFinally(fin::countDown)
+                    .subscribe(
+                        r -> latencias.get(dependencia).registrar(System.nanoTime() - inicio),
+                        e -> latencias.get(dependencia).rechazada());
+            }
+            Thread.sleep(10);
+        }
+        fin.await(60, TimeUnit.SECONDS);
+        return latencias;
+    }
+
+    private static void log(String operacion, Object valor) {
+        System.out.printf("  [%s] %s: %s\n",
+            Thread.currentThread().getName(),
+            operacion,
+            valor);
+    }
+
+    /** Como una llamada bloqueante que no atiende el interrupt */
+    private static void trabajarSinInterrupcion(long ms) {
+        long fin = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(ms);
+        while (System.nanoTime() < fin) {
+            Thread.onSpinWait();
+        }
+    }
+
+    private static void simularTrabajo(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Bulkhead
+
+    static class BulkheadFullException extends RuntimeException {
+        BulkheadFullException(String mensaje) {
+            super(mensaje);
+        }
+    }
+
+    static class BulkheadRegistry {
+        private final Map<String, Bulkhead> bulkheads = new ConcurrentHashMap<>();
+
+        public Bulkhead semaforo(String nombre, int maxConcurrentes, int maxEnCola, long espera, TimeUnit unidad) {
+            Bulkhead bulkhead = bulkheads.computeIfAbsent(nombre,
+                n -> new Bulkhead(n, maxConcurrentes, maxEnCola, unidad.toNanos(espera), null));
+            return comprobar(bulkhead, false, maxConcurrentes, maxEnCola, unidad.toNanos(espera));
+        }
+
+        /** Añade un scheduler dedicado con tantos hilos como llamadas concurrentes */
+        public Bulkhead threadPool(String nombre, int maxConcurrentes, int maxEnCola, long espera, TimeUnit unidad) {
+            Bulkhead bulkhead = bulkheads.computeIfAbsent(nombre, n -> {
+                AtomicInteger hilos = new AtomicInteger();
+                ExecutorService pool = Executors.newFixedThreadPool(maxConcurrentes,
+                    r -> {
+                        Thread t = new Thread(r, "Bulkhead-" + n + "-" + hilos.incrementAndGet());
+                        t.setDaemon(true);
+                        return t;
+                    });
+                return new Bulkhead(n, maxConcurrentes, maxEnCola, unidad.toNanos(espera), pool);
+            });
+            return comprobar(bulkhead, true, maxConcurrentes, maxEnCola, unidad.toNanos(espera));
+        }
+
+        /** Un nombre ya registrado con otro modo u otros límites es un error de configuración */
+        private static Bulkhead comprobar(Bulkhead bulkhead, boolean threadPool, int maxConcurrentes,
+                                          int maxEnCola, long esperaNanos) {
+            if ((bulkhead.pool != null) != threadPool || bulkhead.maxConcurrentes != maxConcurrentes
+                || bulkhead.maxEnCola != maxEnCola || bulkhead.esperaNanos != esperaNanos) {
+                throw new IllegalArgumentException("Bulkhead '" + bulkhead.nombre + "' ya existe con otra configuración: "
+                    + bulkhead.configuracion());
+            }
+            return bulkhead;
+        }
+
+        public List<String> snapshot() {
+            List<String> metricas = new ArrayList<>();
+            bulkheads.values().forEach(b -> metricas.add(b.metrics()));
+            Collections.sort(metricas);
+            return metricas;
+        }
+
+        /** Emite periódicamente las métricas de todos los bulkheads */
+        public Observable<List<String>> metricsStream(long periodo, TimeUnit unidad) {
+            return Observable.interval(periodo, unidad).map(t -> snapshot());
+        }
+
+        public void shutdown() {
+            bulkheads.values().forEach(Bulkhead::shutdown);
+        }
+    }
+
+    static class Bulkhead {
+        private final String nombre;
+        private final int maxConcurrentes;
+        private final int maxEnCola;
+        private final long esperaNanos;
+        private final ExecutorService pool;
+        private final Scheduler scheduler;
+        private final AtomicInteger disponibles;
+        private final ConcurrentLinkedQueue<Waiter> cola = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger enCola = new AtomicInteger();
+        private final AtomicLong aceptadas = new AtomicLong();
+        private final AtomicLong rechazadas = new AtomicLong();
+        private final AtomicLong timeouts = new AtomicLong();
+        private final AtomicInteger maxEnVuelo = new AtomicInteger();
+
+        Bulkhead(String nombre, int maxConcurrentes, int maxEnCola, long esperaNanos, ExecutorService pool) {
+            this.nombre = nombre;
+            this.maxConcurrentes = maxConcurrentes;
+            this.maxEnCola = maxEnCola;
+            this.esperaNanos = esperaNanos;
+            this.pool = pool;
+            // interrumpible: al cancelar, el hilo bloqueado en la llamada lenta recibe un interrupt
+            this.scheduler = pool == null ? null : Schedulers.from(pool, true);
+            this.disponibles = new AtomicInteger(maxConcurrentes);
+        }
+
+        /*
+         * El permiso no se suelta desde la fuente que crea el flatMap: si se
+         * cancela entre el permiso y la suscripción interna, esa fuente no
+         * llega a suscribirse y su doFinally nunca corre. La Reserva lo
+         * devuelve desde la cadena exterior si nadie llegó a ocuparlo.
+         *
+         * Modo semáforo: la llamada ocupa el permiso hasta que termina o se
+         * cancela. Modo thread pool: lo ocupa mientras el hilo del pool está
+         * dentro de subscribe(); una llamada bloqueante que no atiende el
+         * interrupt sigue reteniéndolo tras un timeout, y los siguientes
+         * esperan en la cola del bulkhead en vez de apilarse en el executor
+         */
+
+        public <T> ObservableTransformer<T, T> forObservable() {
+            return upstream -> Observable.defer(() -> {
+                Reserva reserva = new Reserva();
+                return acquire()
+                    .doOnSuccess(reserva::guardar)
+                    .flatMapObservable(permiso -> scheduler == null
+                        ? Observable.defer(() -> permiso.ocupar() ? upstream.doFinally(permiso::release) : Observable.<T>never())
+                        : Observable.<T>wrap(observer -> {
+                            if (!permiso.ocupar()) {
+                                Observable.<T>never().subscribe(observer);
+                                return;
+                            }
+                            try {
+                                upstream.subscribe(observer);
+                            } finally {
+                                permiso.release();
+                            }
+                        }).subscribeOn(scheduler))
+                    .doFinally(reserva::cerrar);
+            });
+        }
+
+        public <T> FlowableTransformer<T, T> forFlowable() {
+            return upstream -> Flowable.defer(() -> {
+                Reserva reserva = new Reserva();
+                return acquire()
+                    .doOnSuccess(reserva::guardar)
+                    .flatMapPublisher(permiso -> scheduler == null
+                        ? Flowable.defer(() -> permiso.ocupar() ? upstream.doFinally(permiso::release) : Flowable.<T>never())
+                        : Flowable.<T>fromPublisher(subscriber -> {
+                            if (!permiso.ocupar()) {
+                                Flowable.<T>never().subscribe(subscriber);
+                                return;
+                            }
+                            try {
+                                upstream.subscribe(subscriber);
+                            } finally {
+                                permiso.release();
+                            }
+                        }).subscribeOn(scheduler))
+                    .doFinally(reserva::cerrar);
+            });
+        }
+
+        public <T> SingleTransformer<T, T> forSingle() {
+            return upstream -> Single.defer(() -> {
+                Reserva reserva = new Reserva();
+                return acquire()
+                    .doOnSuccess(reserva::guardar)
+                    .flatMap(permiso -> scheduler == null
+                        ? Single.defer(() -> permiso.ocupar() ? upstream.doFinally(permiso::release) : Single.<T>never())
+                        : Single.<T>wrap(observer -> {
+                            if (!permiso.ocupar()) {
+                                Single.<T>never().subscribe(observer);
+                                return;
+                            }
+                            try {
+                                upstream.subscribe(observer);
+                            } finally {
+                                permiso.release();
+                            }
+                        }).subscribeOn(scheduler))
+                    .doFinally(reserva::cerrar);
+            });
+        }
+
+        /** Permiso inmediato si hay hueco; si no, espera en cola sin bloquear hasta el timeout */
+        Single<Permit> acquire() {
+            return Single.<Permit>create(emitter -> {
+                if (tryAcquire()) {
+                    if (entregar(emitter)) {
+                        aceptadas.incrementAndGet();
+                    } else {
+                        release(); // el suscriptor ya no está: el permiso no llegó a usarse
+                    }
+                    return;
+                }
+                if (enCola.incrementAndGet() > maxEnCola) {
+                    enCola.decrementAndGet();
+                    rechazadas.incrementAndGet();
+                    emitter.onError(new BulkheadFullException("Bulkhead '" + nombre + "' lleno"));
+                    return;
+                }
+                Waiter waiter = new Waiter(emitter);
+                cola.offer(waiter);
+                waiter.timeout = Schedulers.computation().scheduleDirect(() -> {
+                    if (waiter.reclamar()) {
+                        enCola.decrementAndGet();
+                        timeouts.incrementAndGet();
+                        emitter.onError(new BulkheadFullException(
+                            "Bulkhead '" + nombre + "' sin permiso tras " + TimeUnit.NANOSECONDS.toMillis(esperaNanos) + "ms"));
+                    }
+                }, esperaNanos, TimeUnit.NANOSECONDS);
+                emitter.setCancellable(() -> {
+                    if (waiter.reclamar()) {
+                        enCola.decrementAndGet();
+                    }
+                    waiter.timeout.dispose();
+                });
+                // Un permiso pudo liberarse entre tryAcquire() y offer()
+                despachar();
+            }).doOnSuccess(Permit::marcarEntregado);
+        }
+
+        /**
+         * SingleEmitter de RxJava 2 no tiene tryOnSuccess: onSuccess() sobre
+         * un emisor cancelado descarta el valor en silencio. El doOnSuccess
+         * de acquire() marca el permiso sólo si llegó al suscriptor
+         */
+        private boolean entregar(SingleEmitter<Permit> emitter) {
+            Permit permiso = new Permit(this);
+            emitter.onSuccess(permiso);
+            return permiso.entregado;
+        }
+
+        private boolean tryAcquire() {
+            while (true) {
+                int actual = disponibles.get();
+                if (actual == 0) {
+                    return false;
+                }
+                if (disponibles.compareAndSet(actual, actual - 1)) {
+                    maxEnVuelo.accumulateAndGet(maxConcurrentes - actual + 1, Math::max);
+                    return true;
+                }
+            }
+        }
+
+        void release() {
+            disponibles.incrementAndGet();
+            despachar();
+        }
+
+        /** Entrega permisos libres a los que esperan, en orden FIFO */
+        private void despachar() {
+            Waiter waiter;
+            while ((waiter = cola.peek()) != null) {
+                if (!waiter.pendiente()) {
+                    cola.remove(waiter);
+                    continue;
+                }
+                if (!tryAcquire()) {
+                    return;
+                }
+                cola.remove(waiter);
+                if (waiter.reclamar()) {
+                    enCola.decrementAndGet();
+                    waiter.timeout.dispose();
+                    if (entregar(waiter.emitter)) {
+                        aceptadas.incrementAndGet();
+                        continue;
+                    }
+                }
+                // Expiró o se canceló a la vez: el permiso vuelve y pasa al siguiente de la cola
+                disponibles.incrementAndGet();
+            }
+        }
+
+        public int enVuelo() {
+            return maxConcurrentes - disponibles.get();
+        }
+
+        public double saturacion() {
+            return (double) enVuelo() / maxConcurrentes;
+        }
+
+        String configuracion() {
+            return String.format("%s, max=%d, cola=%d, espera=%dms", pool == null ? "semáforo" : "thread pool",
+                maxConcurrentes, maxEnCola, TimeUnit.NANOSECONDS.toMillis(esperaNanos));
+        }
+
+        public String metrics() {
+            return String.format("%s[%s] en vuelo=%d/%d (pico %d), en cola=%d, aceptadas=%d, rechazadas=%d, timeouts=%d, saturación=%.0f%%",
+                nombre, pool == null ? "semáforo" : "thread pool", enVuelo(), maxConcurrentes, maxEnVuelo.get(),
+                enCola.get(), aceptadas.get(), rechazadas.get(), timeouts.get(), saturacion() * 100);
+        }
+
+        void shutdown() {
+            if (pool != null) {
+                pool.shutdownNow();
+            }
+        }
+
+        static class Waiter {
+            final SingleEmitter<Permit> emitter;
+            final AtomicBoolean reclamado = new AtomicBoolean();
+            volatile Disposable timeout = Disposables.empty();
+
+            Waiter(SingleEmitter<Permit> emitter) {
+                this.emitter = emitter;
+            }
+
+            boolean reclamar() {
+                return reclamado.compareAndSet(false, true);
+            }
+
+            boolean pendiente() {
+                return !reclamado.get();
+            }
+        }
+    }
+
+    /**
+     * Libre, ocupado por una llamada o liberado. Se libera una sola vez
+     * aunque llegue por varios caminos; soltarSiLibre() no quita el
+     * permiso a una llamada que ya lo ocupa
+     */
+    static class Permit {
+        private static final int LIBRE = 0;
+        private static final int OCUPADO = 1;
+        private static final int LIBERADO = 2;
+
+        private final Bulkhead bulkhead;
+        private final AtomicInteger estado = new AtomicInteger(LIBRE);
+        private volatile boolean entregado;
+
+        Permit(Bulkhead bulkhead) {
+            this.bulkhead = bulkhead;
+        }
+
+        void marcarEntregado() {
+            entregado = true;
+        }
+
+        boolean ocupar() {
+            return estado.compareAndSet(LIBRE, OCUPADO);
+        }
+
+        void soltarSiLibre() {
+            if (estado.compareAndSet(LIBRE, LIBERADO)) {
+                bulkhead.release();
+            }
+        }
+
+        void release() {
+            if (estado.getAndSet(LIBERADO) != LIBERADO) {
+                bulkhead.release();
+            }
+        }
+    }
+
+    /**
+     * Traspaso del permiso a la cadena exterior. guardar() y cerrar() se
+     * cruzan sin lock: cada uno escribe su campo volatile y después lee el
+     * del otro, así que al menos uno de los dos ve ambos y suelta el permiso
+     */
+    static class Reserva {
+        private volatile Permit permiso;
+        private volatile boolean cerrada;
+
+        void guardar(Permit permiso) {
+            this.permiso = permiso;
+            if (cerrada) {
+                permiso.soltarSiLibre();
+            }
+        }
+
+        void cerrar() {
+            cerrada = true;
+            Permit actual = permiso;
+            if (actual != null) {
+                actual.soltarSiLibre();
+            }
+        }
+    }
+
+    static class Latencias {
+        private final List<Long> muestras = Collections.synchronizedList(new ArrayList<>());
+        private final AtomicInteger rechazadas = new AtomicInteger();
+
+        void registrar(long nanos) {
+            muestras.add(TimeUnit.NANOSECONDS.toMillis(nanos));
+        }
+
+        void rechazada() {
+            rechazadas.incrementAndGet();
+        }
+
+        long percentil(double p) {
+            List<Long> copia;
+            synchronized (muestras) {
+                copia = new ArrayList<>(muestras);
+            }
+            if (copia.isEmpty()) {
+                return -1;
+            }
+            Collections.sort(copia);
+            return copia.get((int) Math.min(copia.size() - 1, Math.ceil(p / 100 * copia.size()) - 1));
+        }
+
+        @Override
+        public String toString() {
+            return String.format("ok=%d, rechazadas=%d, p50=%dms, p99=%dms",
+                muestras.size(), rechazadas.get(), percentil(50), percentil(99));
+        }
+    }
+}
@@ -0,0 +1,478 @@
+package com.formadoresit.rxjava.tema8;
+
+import io.reactivex.Flowable;
+import io.reactivex.FlowableSubscriber;
+import io.reactivex.FlowableTransformer;
+import io.reactivex.Scheduler;
+import io.reactivex.Single;
+import io.reactivex.disposables.CompositeDisposable;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.plugins.RxJavaPlugins;
+import io.reactivex.schedulers.Schedulers;
+import io.reactivex.subjects.BehaviorSubject;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToIntFunction;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+/**
+ * TEMA 8: Flujos y Backpressure
+ * Ejemplo 10: Lotes Adaptativos
+ *
+ * Los casos reales del Ejemplo 09 agrupan con buffer(10) o buffer(5)
+ * sea cual sea el estado de la red. Aquí el tamaño del lote se mide en
+ * bytes y lo ajusta un control AIMD con la latencia que devuelve el
+ * destino: sube poco a poco mientras se cumple el objetivo y se parte
+ * por la mitad al pasarse o fallar. El estado de red (el mismo String
+ * que publica el NetworkDataManager del Tema 6) limita los lotes cuando
+ * la red está degradada y los retiene mientras está desconectada
+ */
+public class Ejemplo10_LotesAdaptativos {
+
+    public static void main(String[] args) throws InterruptedException {
+        System.out.println("=== Ejemplo 10: Lotes Adaptativos ===\n");
+
+        // 1. Lotes por bytes con un destino rápido
+        System.out.println("--- Lotes limitados en bytes ---");
+        BehaviorSubject<String> red = BehaviorSubject.createDefault("CONNECTED");
+        Enlace enlace = new Enlace();
+        LotesAdaptativos<Evento> lotes = new LotesAdaptativos<>(e -> e.bytes, 1024, 64 * 1024, 20,
+            red, Schedulers.computation());
+        AtomicInteger numero = new AtomicInteger();
+        Flowable.range(1, 2000)
+            .map(i -> new Evento(i, 200 + (i % 10) * 100))
+            .compose(lotes)
+            .concatMapSingle(lote -> lotes.medir(lote, enlace.enviar(lote)))
+            .map(lote -> "lote " + numero.incrementAndGet() + ": " + lote.size() + " eventos, " + bytes(lote)
+                + " bytes; objetivo tras el envío " + lotes.objetivoBytes() + " bytes")
+            .filter(linea -> numero.get() % 5 == 1) // uno de cada cinco
+            .blockingSubscribe(linea -> log("LOTE", linea));
+        lotes.dispose();
+
+        // 2. Simulación: la red pasa por cuatro fases
+        long fase = args.length > 0 ? Long.parseLong(args[0]) : 1500;
+        System.out.println("\n--- Subida continua, 4 fases de " + fase + " ms: conectada, degradada, desconectada, conectada ---");
+        simular("buffer(10)", fase, null, fuente -> fuente.buffer(10));
+        simular("buffer(200)", fase, null, fuente -> fuente.buffer(200));
+        LotesAdaptativos<Evento> adaptativo = new LotesAdaptativos<>(e -> e.bytes, 1024, 256 * 1024, 200,
+            red, Schedulers.computation());
+        simular("adaptativo", fase, adaptativo, fuente -> fuente.compose(adaptativo));
+        adaptativo.dispose();
+
+        System.out.println("\n=== CONCEPTOS CLAVE ===");
+        System.out.println("• El lote se cierra por bytes o por edad, no por número de elementos");
+        System.out.println("• AIMD: suma mientras la latencia cumple el objetivo, divide a la mitad si no");
+        System.out.println("• El intervalo de vaciado sigue a la latencia observada del destino");
+        System.out.println("• Red degradada: lotes pequeños; desconectada: se retienen y se frena al productor");
+        System.out.println("• Backpressure: sólo se pide al productor cuando hay menos de dos lotes esperando");
+    }
+
+    /**
+     * Conectada, degradada, desconectada y conectada otra vez. El enlace
+     * cambia y se publica el estado de red como haría el NetworkDataManager
+     */
+    private static void simular(String nombre, long fase, LotesAdaptativos<Evento> adaptativo,
+                                FlowableTransformer<Evento, List<Evento>> agrupar) throws InterruptedException {
+        Enlace enlace = new Enlace();
+        BehaviorSubject<String> red = adaptativo != null ? adaptativo.red : BehaviorSubject.createDefault("CONNECTED");
+        red.onNext("CONNECTED");
+        AtomicLong generados = new AtomicLong();
+        Flowable<Evento> fuente = Flowable.<Evento>generate(emisor -> {
+                long n = generados.incrementAndGet();
+                emisor.onNext(new Evento(n, 100 + ThreadLocalRandom.current().nextInt(1900)));
+            })
+            .subscribeOn(Schedulers.io());
+
+        Disposable subida = fuente
+            .compose(agrupar)
+            .concatMapSingle(lote -> {
+                Single<List<Evento>> envio = enlace.enviar(lote);
+                return (adaptativo != null ? adaptativo.medir(lote, envio) : envio)
+                    .retryWhen(errores -> errores.delay(50, TimeUnit.MILLISECONDS));
+            })
+            .subscribe();
+
+        long[] porFase = new long[4];
+        enlace.fijar(2, 20_000, 0.0);
+        Thread.sleep(fase);
+        porFase[0] = enlace.bytes.get();
+        enlace.fijar(40, 300, 0.02);
+        red.onNext("DEGRADED");
+        Thread.sleep(fase);
+        porFase[1] = enlace.bytes.get();
+        enlace.desconectar();
+        red.onNext("DISCONNECTED");
+        Thread.sleep(fase);
+        porFase[2] = enlace.bytes.get();
+        enlace.fijar(2, 20_000, 0.0);
+        red.onNext("CONNECTED");
+        Thread.sleep(fase);
+        porFase[3] = enlace.bytes.get();
+        subida.dispose();
+
+        StringBuilder fases = new StringBuilder();
+        for (int i = 0; i < porFase.length; i++) {
+            long bytes = porFase[i] - (i == 0 ? 0 : porFase[i - 1]);
+            fases.append(String.format("%,7.0f ", bytes * 1000.0 / fase / 1024));
+        }
+        System.out.printf("  %-12s KB/s por fase: %s| total %,6.0f eventos/s, %,5d envíos, %,4d fallidos, lote medio %,7d bytes%n",
+            nombre, fases, enlace.eventos.get() * 1000.0 / (4 * fase),
+            enlace.envios.get(), enlace.fallidos.get(),
+            enlace.envios.get() == 0 ? 0 : enlace.bytes.get() / enlace.envios.get());
+    }
+
+    private static int bytes(List<Evento> lote) {
+        int total = 0;
+        for (Evento evento : lote) {
+            total += evento.bytes;
+        }
+        return total;
+    }
+
+    private static void log(String operacion, Object valor) {
+        System.out.printf("  [%s] %s: %s\n",
+            Thread.currentThread().getName(),
+            operacion,
+            valor);
+    }
+
+    /**
+     * Agrupa en lotes de como mucho objetivoBytes() bytes. Un lote se
+     * cierra cuando el siguiente elemento no cabe o cuando supera el
+     * intervalo de vaciado. Se usa con compose() y el envío de cada lote
+     * se envuelve con medir() para cerrar el lazo de control. dispose()
+     * suelta la suscripción al estado de red
+     */
+    static class LotesAdaptativos<T> implements FlowableTransformer<T, List<T>>, Disposable {
+        private static final int PREFETCH = 32;
+
+        private final ToIntFunction<T> bytesDe;
+        private final int minBytes;
+        private final int maxBytes;
+        private final long latenciaObjetivoMs;
+        private final Scheduler scheduler;
+        final BehaviorSubject<String> red;
+        private final Disposable suscripcionRed;
+
+        private volatile int objetivoBytes;
+        private volatile long intervaloMs;
+        private volatile double latenciaMediaMs;
+        private volatile String estadoRed = "CONNECTED";
+
+        LotesAdaptativos(ToIntFunction<T> bytesDe, int minBytes, int maxBytes, long latenciaObjetivoMs,
+                         BehaviorSubject<String> red, Scheduler scheduler) {
+            this.bytesDe = bytesDe;
+            this.minBytes = minBytes;
+            this.maxBytes = maxBytes;
+            this.latenciaObjetivoMs = latenciaObjetivoMs;
+            this.scheduler = scheduler;
+            this.red = red;
+            this.objetivoBytes = minBytes;
+            this.intervaloMs = latenciaObjetivoMs;
+            this.suscripcionRed = red.subscribe(estado -> estadoRed = estado);
+        }
+
+        /** Cronometra el envío de un lote y ajusta el objetivo con el resultado */
+        <R> Single<R> medir(List<T> lote, Single<R> envio) {
+            return Single.defer(() -> {
+                long inicio = System.nanoTime();
+                return envio
+                    .doOnSuccess(r -> ajustar((System.nanoTime() - inicio) / 1e6, false))
+                    .doOnError(e -> ajustar((System.nanoTime() - inicio) / 1e6, true));
+            });
+        }
+
+        int objetivoBytes() {
+            return objetivoBytes;
+        }
+
+        /** Deja de seguir el estado de red; el BehaviorSubject lo sobrevive */
+        @Override
+        public void dispose() {
+            suscripcionRed.dispose();
+        }
+
+        @Override
+        public boolean isDisposed() {
+            return suscripcionRed.isDisposed();
+        }
+
+        private synchronized void ajustar(double latenciaMs, boolean fallo) {
+            if (fallo || latenciaMs > latenciaObjetivoMs) {
+                objetivoBytes = Math.max(minBytes, objetivoBytes / 2);
+            } else {
+                objetivoBytes = Math.min(maxBytes, objetivoBytes + Math.max(minBytes, maxBytes / 32));
+            }
+            latenciaMediaMs = latenciaMediaMs == 0 ? latenciaMs : latenciaMediaMs * 0.8 + latenciaMs * 0.2;
+            // no tiene sentido vaciar más deprisa de lo que el destino contesta
+            intervaloMs = Math.max(latenciaObjetivoMs / 4, Math.min(latenciaObjetivoMs * 10, (long) (latenciaMediaMs * 2)));
+        }
+
+        /** Con la red degradada el lote se limita a un cuarto del máximo */
+        private int limiteBytes() {
+            return "DEGRADED".equals(estadoRed) || "CONNECTING".equals(estadoRed)
+                ? Math.min(objetivoBytes, Math.max(minBytes, maxBytes / 4))
+                : objetivoBytes;
+        }
+
+        private boolean retener() {
+            return "DISCONNECTED".equals(estadoRed);
+        }
+
+        @Override
+        public Flowable<List<T>> apply(Flowable<T> upstream) {
+            return Flowable.fromPublisher(downstream -> upstream.subscribe(new Acumulador(downstream)));
+        }
+
+        /**
+         * Los lotes cerrados esperan en una cola; un bucle de drenaje los
+         * entrega según lo pedido. Al productor sólo se le piden elementos
+         * mientras haya menos de dos lotes esperando
+         */
+        private final class Acumulador implements FlowableSubscriber<T>, Subscription {
+            private final Subscriber<? super List<T>> downstream;
+            private final ArrayDeque<List<T>> listos = new ArrayDeque<>();
+            private final AtomicLong solicitados = new AtomicLong();
+            private final AtomicInteger wip = new AtomicInteger();
+            private final CompositeDisposable recursos = new CompositeDisposable();
+            private Subscription upstream;
+            private List<T> lote = new ArrayList<>();
+            private int bytesLote;
+            private long inicioLote;
+            private int pendientes;
+            private volatile boolean terminado;
+            private volatile boolean cancelado;
+            private Throwable error;
+
+            Acumulador(Subscriber<? super List<T>> downstream) {
+                this.downstream = downstream;
+            }
+
+            @Override
+            public void onSubscribe(Subscription s) {
+                if (upstream != null) {
+                    s.cancel();
+                    return;
+                }
+                upstream = s;
+                downstream.onSubscribe(this);
+                long tick = Math.max(1, latenciaObjetivoMs / 4);
+                recursos.add(scheduler.schedulePeriodicallyDirect(this::revisarEdad, tick, tick, TimeUnit.MILLISECONDS));
+                synchronized (this) {
+                    pendientes = PREFETCH;
+                }
+                s.request(PREFETCH);
+            }
+
+            @Override
+            public void onNext(T t) {
+                int bytes = bytesDe.applyAsInt(t);
+                synchronized (this) {
+                    pendientes--;
+                    if (!lote.isEmpty() && bytesLote + bytes > limiteBytes()) {
+                        cerrar();
+                    }
+                    if (lote.isEmpty()) {
+                        inicioLote = System.nanoTime();
+                    }
+                    lote.add(t);
+                    bytesLote += bytes;
+                }
+                drenar();
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                synchronized (this) {
+                    error = t;
+                }
+                terminar();
+            }
+
+            @Override
+            public void onComplete() {
+                terminar();
+            }
+
+            private void terminar() {
+                synchronized (this) {
+                    if (!lote.isEmpty()) {
+                        cerrar();
+                    }
+                }
+                recursos.dispose();
+                terminado = true;
+                drenar();
+            }
+
+            private void revisarEdad() {
+                synchronized (this) {
+                    if (!lote.isEmpty() && !retener()
+                        && System.nanoTime() - inicioLote >= TimeUnit.MILLISECONDS.toNanos(intervaloMs)) {
+                        cerrar();
+                    }
+                }
+                drenar();
+            }
+
+            /** Se llama con el lock tomado */
+            private void cerrar() {
+                listos.add(lote);
+                lote = new ArrayList<>();
+                bytesLote = 0;
+            }
+
+            @Override
+            public void request(long n) {
+                if (n <= 0) {
+                    RxJavaPlugins.onError(new IllegalArgumentException("request(n) con n <= 0: " + n));
+                    return;
+                }
+                // suma sin desbordar: Long.MAX_VALUE significa demanda ilimitada
+                solicitados.accumulateAndGet(n, (actual, mas) -> actual + mas < 0 ? Long.MAX_VALUE : actual + mas);
+                drenar();
+            }
+
+            @Override
+            public void cancel() {
+                cancelado = true;
+                upstream.cancel();
+                recursos.dispose();
+            }
+
+            private void drenar() {
+                if (wip.getAndIncrement() != 0) {
+                    return;
+                }
+                int perdidos = 1;
+                do {
+                    long pedidos = solicitados.get();
+                    long emitidos = 0;
+                    while (emitidos != pedidos && !retener()) {
+                        if (cancelado) {
+                            return;
+                        }
+                        List<T> siguiente;
+                        synchronized (this) {
+                            siguiente = listos.poll();
+                        }
+                        if (siguiente == null) {
+                            break;
+                        }
+                        downstream.onNext(siguiente);
+                        emitidos++;
+                    }
+                    if (emitidos != 0) {
+                        solicitados.accumulateAndGet(emitidos, (actual, menos) -> actual == Long.MAX_VALUE ? actual : actual - menos);
+                    }
+                    if (cancelado) {
+                        return;
+                    }
+                    // terminado se lee antes que la cola: si se leyera después, un último
+                    // lote cerrado por terminar() entre ambas lecturas se perdería
+                    boolean hecho = terminado;
+                    int reponer = 0;
+                    boolean vacio;
+                    synchronized (this) {
+                        vacio = listos.isEmpty();
+                        if (!hecho && listos.size() < 2 && pendientes < PREFETCH / 2) {
+                            reponer = PREFETCH - pendientes;
+                            pendientes = PREFETCH;
+                        }
+                    }
+                    if (hecho && vacio) {
+                        Throwable e;
+                        synchronized (this) {
+                            e = error;
+                        }
+                        if (e != null) {
+                            downstream.onError(e);
+                        } else {
+                            downstream.onComplete();
+                        }
+                        return;
+                    }
+                    if (reponer > 0) {
+                        upstream.request(reponer);
+                    }
+                    perdidos = wip.addAndGet(-perdidos);
+                } while (perdidos != 0);
+            }
+        }
+    }
+
+    /**
+     * Destino simulado: cada envío tarda una latencia fija más lo que
+     * cuesta transmitir sus bytes y puede fallar. Un envío que pasaría de
+     * TIMEOUT_MS falla por timeout, igual que desconectado
+     */
+    static class Enlace {
+        private static final long TIMEOUT_MS = 500;
+
+        private volatile long latenciaMs = 2;
+        private volatile long bytesPorMs = 20_000;
+        private volatile double probabilidadFallo;
+        private volatile boolean conectado = true;
+        final AtomicLong eventos = new AtomicLong();
+        final AtomicLong bytes = new AtomicLong();
+        final AtomicLong envios = new AtomicLong();
+        final AtomicLong fallidos = new AtomicLong();
+
+        void fijar(long latenciaMs, long bytesPorMs, double probabilidadFallo) {
+            this.latenciaMs = latenciaMs;
+            this.bytesPorMs = bytesPorMs;
+            this.probabilidadFallo = probabilidadFallo;
+            this.conectado = true;
+        }
+
+        void desconectar() {
+            conectado = false;
+        }
+
+        Single<List<Evento>> enviar(List<Evento> lote) {
+            return Single.defer(() -> {
+                if (!conectado) {
+                    fallidos.incrementAndGet();
+                    return Single.timer(TIMEOUT_MS, TimeUnit.MILLISECONDS)
+                        .flatMap(t -> Single.<List<Evento>>error(new IOException("sin conexión")));
+                }
+                int total = bytes(lote);
+                long duracion = latenciaMs + total / bytesPorMs;
+                if (duracion > TIMEOUT_MS) {
+                    fallidos.incrementAndGet();
+                    return Single.timer(TIMEOUT_MS, TimeUnit.MILLISECONDS)
+                        .flatMap(t -> Single.<List<Evento>>error(new IOException("timeout")));
+                }
+                boolean falla = ThreadLocalRandom.current().nextDouble() < probabilidadFallo;
+                return Single.timer(duracion, TimeUnit.MILLISECONDS)
+                    .flatMap(t -> {
+                        if (falla) {
+                            fallidos.incrementAndGet();
+                            return Single.<List<Evento>>error(new IOException("envío fallido"));
+                        }
+                        envios.incrementAndGet();
+                        eventos.addAndGet(lote.size());
+                        bytes.addAndGet(total);
+                        return Single.just(lote);
+                    });
+            });
+        }
+    }
+
+    static class Evento {
+        long id;
+        int bytes;
+
+        Evento(long id, int bytes) {
+            this.id = id;
+            this.bytes = bytes;
+        }
+    }
+}
@@ -0,0 +1,371 @@
+package com.formadoresit.rxjava.tema8;
+
+import io.reactivex.Flowable;
+import io.reactivex.FlowableSubscriber;
+import io.reactivex.Scheduler;
+import io.reactivex.schedulers.Schedulers;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+/**
+ * TEMA 8: Flujos y Backpressure
+ * Ejemplo 11: Demanda Adaptativa
+ *
+ * El Ejemplo 05 fija la demanda a mano: request(5) cada 5 elementos, o 3
+ * u 8 según un contador. Aquí un suscriptor base mide lo que tarda cada
+ * elemento y la demanda pendiente, y calcula el tamaño de request(n)
+ * para cumplir un objetivo de latencia: un elemento pedido en un lote de
+ * n espera a los n - 1 anteriores, así que n ≈ objetivo / coste. Repone
+ * al bajar de una marca (una cuarta parte del lote), de modo que el
+ * siguiente lote viaja mientras se procesa el actual
+ */
+public class Ejemplo11_DemandaAdaptativa {
+
+    public static void main(String[] args) throws InterruptedException {
+        System.out.println("=== Ejemplo 11: Demanda Adaptativa ===\n");
+
+        // 1. La demanda sigue al coste del consumidor
+        System.out.println("--- Coste variable: 20 µs, 1 ms y 50 µs por elemento ---");
+        Flowable.fromPublisher(new FuentePaginada(6000, 1))
+            .subscribe(new DemandaAdaptativa<Elemento>(20, TimeUnit.MILLISECONDS, 1, 1024) {
+                private int procesados;
+
+                @Override
+                protected void procesar(Elemento elemento) {
+                    trabajar(elemento.costeNanos);
+                    if (++procesados % 500 == 0) {
+                        log("ADAPTIVE", procesados + " procesados, coste medio "
+                            + tiempoMedioNanos() / 1000 + " µs, request(" + lote() + ")");
+                    }
+                }
+
+                @Override
+                protected long latenciaNanos(Elemento elemento) {
+                    return System.nanoTime() - elemento.creado;
+                }
+            });
+        Thread.sleep(4000);
+
+        // 2. Comparativa con tamaños de request fijos
+        int total = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        System.out.printf("%n--- %,d elementos, fuente con 1 ms por petición, objetivo 20 ms ---%n", total);
+        comparar("request(4)", total, registro -> new DemandaFija(4, registro));
+        comparar("request(32)", total, registro -> new DemandaFija(32, registro));
+        comparar("request(256)", total, registro -> new DemandaFija(256, registro));
+        comparar("adaptativa", total, registro -> new Medidor(20, TimeUnit.MILLISECONDS, registro));
+
+        System.out.println("\n=== CONCEPTOS CLAVE ===");
+        System.out.println("• request(n) pequeño: cada lote paga el viaje al productor y el consumidor espera");
+        System.out.println("• request(n) grande: los últimos del lote esperan a todos los anteriores");
+        System.out.println("• Ley de Little: lote ≈ objetivo de latencia / coste medio por elemento");
+        System.out.println("• Marca baja: se repone antes de vaciar, el siguiente lote llega a tiempo");
+        System.out.println("• Si la latencia medida supera el objetivo, el lote se parte por la mitad");
+    }
+
+    private static void comparar(String nombre, int total, Function<Registro, FlowableSubscriber<Elemento>> consumidor)
+        throws InterruptedException {
+        Registro registro = new Registro(total);
+        long inicio = System.nanoTime();
+        Flowable.fromPublisher(new FuentePaginada(total, 1)).subscribe(consumidor.apply(registro));
+        registro.fin.await();
+        double segundos = (System.nanoTime() - inicio) / 1e9;
+        long[] latencias = Arrays.copyOf(registro.latencias, registro.registrados);
+        Arrays.sort(latencias);
+        System.out.printf("  %-13s %,7.0f elementos/s   latencia p50 %,7.2f ms   p99 %,7.2f ms%n",
+            nombre, total / segundos,
+            latencias[latencias.length / 2] / 1e6, latencias[(int) (latencias.length * 0.99)] / 1e6);
+    }
+
+    /** Espera activa: Thread.sleep no da resolución de microsegundos */
+    private static void trabajar(long nanos) {
+        long fin = System.nanoTime() + nanos;
+        while (System.nanoTime() < fin) {
+            Thread.onSpinWait();
+        }
+    }
+
+    private static void log(String operacion, Object valor) {
+        System.out.printf("  [%s] %s: %s\n",
+            Thread.currentThread().getName(),
+            operacion,
+            valor);
+    }
+
+    /**
+     * Suscriptor base con demanda adaptativa. Las subclases implementan
+     * procesar() y, si conocen el instante de creación del elemento,
+     * latenciaNanos() para que el lazo corrija con la latencia real
+     */
+    abstract static class DemandaAdaptativa<T> implements FlowableSubscriber<T> {
+        private final long objetivoNanos;
+        private final int minimo;
+        private final int maximo;
+        private Subscription subscription;
+        private long pendientes;
+        private int lote;
+        private double tiempoMedioNanos;
+
+        DemandaAdaptativa(long objetivo, TimeUnit unidad, int minimo, int maximo) {
+            this.objetivoNanos = unidad.toNanos(objetivo);
+            this.minimo = minimo;
+            this.maximo = maximo;
+            this.lote = minimo;
+        }
+
+        protected abstract void procesar(T elemento);
+
+        /** Latencia de extremo a extremo del elemento, o -1 si no se conoce */
+        protected long latenciaNanos(T elemento) {
+            return -1;
+        }
+
+        @Override
+        public void onSubscribe(Subscription s) {
+            this.subscription = s;
+            pendientes = lote;
+            s.request(lote);
+        }
+
+        @Override
+        public void onNext(T elemento) {
+            long inicio = System.nanoTime();
+            procesar(elemento);
+            long coste = System.nanoTime() - inicio;
+            tiempoMedioNanos = tiempoMedioNanos == 0 ? coste : tiempoMedioNanos * 0.95 + coste * 0.05;
+            pendientes--;
+
+            long latencia = latenciaNanos(elemento);
+            if (latencia > objetivoNanos) {
+                lote = Math.max(minimo, lote / 2);
+            }
+            if (pendientes <= lote / 4) {
+                // la mitad del objetivo es para esperar en el lote, la otra para el viaje y los picos
+                long ideal = (long) (objetivoNanos / 2 / Math.max(1, tiempoMedioNanos));
+                lote = (int) Math.max(minimo, Math.min(Math.min(maximo, ideal), (long) lote * 2));
+                long pedir = lote - pendientes;
+                if (pedir > 0) {
+                    pendientes += pedir;
+                    subscription.request(pedir);
+                }
+            }
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            log("ADAPTIVE", "Error: " + t.getMessage());
+        }
+
+        @Override
+        public void onComplete() {
+            log("ADAPTIVE", "Completado con request(" + lote + ")");
+        }
+
+        protected final int lote() {
+            return lote;
+        }
+
+        protected final long tiempoMedioNanos() {
+            return (long) tiempoMedioNanos;
+        }
+
+        protected final void cancelar() {
+            subscription.cancel();
+        }
+    }
+
+    /** Latencias de extremo a extremo y fin de la secuencia, para la comparativa */
+    static final class Registro {
+        final CountDownLatch fin = new CountDownLatch(1);
+        final long[] latencias;
+        int registrados;
+
+        Registro(int total) {
+            latencias = new long[total];
+        }
+
+        void registrar(Elemento elemento) {
+            if (registrados < latencias.length) {
+                latencias[registrados++] = System.nanoTime() - elemento.creado;
+            }
+        }
+    }
+
+    static final class Medidor extends DemandaAdaptativa<Elemento> {
+        private final Registro registro;
+
+        Medidor(long objetivo, TimeUnit unidad, Registro registro) {
+            super(objetivo, unidad, 1, 1024);
+            this.registro = registro;
+        }
+
+        @Override
+        protected void procesar(Elemento elemento) {
+            trabajar(elemento.costeNanos);
+            registro.registrar(elemento);
+        }
+
+        @Override
+        protected long latenciaNanos(Elemento elemento) {
+            return System.nanoTime() - elemento.creado;
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            super.onError(t);
+            registro.fin.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            registro.fin.countDown();
+        }
+    }
+
+    /** Como el Ejemplo 05: request(n) cada n elementos procesados */
+    static final class DemandaFija implements FlowableSubscriber<Elemento> {
+        private final int n;
+        private final Registro registro;
+        private Subscription subscription;
+        private int contador;
+
+        DemandaFija(int n, Registro registro) {
+            this.n = n;
+            this.registro = registro;
+        }
+
+        @Override
+        public void onSubscribe(Subscription s) {
+            subscription = s;
+            s.request(n);
+        }
+
+        @Override
+        public void onNext(Elemento elemento) {
+            trabajar(elemento.costeNanos);
+            registro.registrar(elemento);
+            if (++contador % n == 0) {
+                subscription.request(n);
+            }
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            registro.fin.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            registro.fin.countDown();
+        }
+    }
+
+    /**
+     * Productor remoto simulado: cada petición tarda latenciaMs en traer
+     * su página y hay como mucho una en vuelo. Los elementos se sellan al
+     * llegar y cuestan 20 µs, 1 ms o 50 µs según el tramo de la secuencia
+     */
+    static final class FuentePaginada implements Publisher<Elemento> {
+        private final long total;
+        private final long latenciaMs;
+        private final Scheduler red = Schedulers.computation();
+
+        FuentePaginada(long total, long latenciaMs) {
+            this.total = total;
+            this.latenciaMs = latenciaMs;
+        }
+
+        @Override
+        public void subscribe(Subscriber<? super Elemento> subscriber) {
+            subscriber.onSubscribe(new Pagina(subscriber));
+        }
+
+        private final class Pagina implements Subscription {
+            private final Subscriber<? super Elemento> subscriber;
+            private final Queue<Elemento> llegados = new ConcurrentLinkedQueue<>();
+            private final AtomicLong porTraer = new AtomicLong();
+            private final AtomicBoolean trayendo = new AtomicBoolean();
+            private final AtomicInteger wip = new AtomicInteger();
+            private long traidos;
+            private volatile boolean completa;
+            private volatile boolean cancelada;
+
+            Pagina(Subscriber<? super Elemento> subscriber) {
+                this.subscriber = subscriber;
+            }
+
+            @Override
+            public void request(long n) {
+                // suma sin desbordar: Long.MAX_VALUE significa demanda ilimitada
+                porTraer.accumulateAndGet(n, (actual, mas) -> actual + mas < 0 ? Long.MAX_VALUE : actual + mas);
+                traer();
+            }
+
+            @Override
+            public void cancel() {
+                cancelada = true;
+            }
+
+            private void traer() {
+                if (cancelada || completa || porTraer.get() == 0 || !trayendo.compareAndSet(false, true)) {
+                    return;
+                }
+                red.scheduleDirect(() -> {
+                    long pedidos = porTraer.get();
+                    long llegan = Math.min(pedidos, total - traidos);
+                    long ahora = System.nanoTime();
+                    for (long i = 0; i < llegan; i++) {
+                        llegados.add(new Elemento(ahora, coste(traidos++)));
+                    }
+                    porTraer.addAndGet(-pedidos);
+                    completa = traidos == total;
+                    trayendo.set(false);
+                    emitir();
+                    traer();
+                }, latenciaMs, TimeUnit.MILLISECONDS);
+            }
+
+            private long coste(long indice) {
+                long tramo = indice * 10 / total;
+                return tramo < 4 ? 20_000 : tramo < 5 ? 1_000_000 : 50_000;
+            }
+
+            private void emitir() {
+                if (wip.getAndIncrement() != 0) {
+                    return;
+                }
+                int perdidos = 1;
+                do {
+                    Elemento elemento;
+                    while (!cancelada && (elemento = llegados.poll()) != null) {
+                        subscriber.onNext(elemento);
+                    }
+                    if (completa && llegados.isEmpty() && !cancelada) {
+                        cancelada = true;
+                        subscriber.onComplete();
+                    }
+                    perdidos = wip.addAndGet(-perdidos);
+                } while (perdidos != 0);
+            }
+        }
+    }
+
+    static class Elemento {
+        long creado;
+        long costeNanos;
+
+        Elemento(long creado, long costeNanos) {
+            this.creado = creado;
+            this.costeNanos = costeNanos;
+        }
+    }
+}
@@ -0,0 +1,531 @@
+package com.formadoresit.rxjava.tema8;
+
+import io.reactivex.BackpressureOverflowStrategy;
+import io.reactivex.Flowable;
+import io.reactivex.FlowableSubscriber;
+import io.reactivex.FlowableTransformer;
+import io.reactivex.plugins.RxJavaPlugins;
+import io.reactivex.schedulers.Schedulers;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+/**
+ * TEMA 8: Flujos y Backpressure
+ * Ejemplo 12: Buffer con Desbordamiento a Disco
+ *
+ * Los Ejemplos 03 y 09 eligen entre onBackpressureBuffer(n), que falla o
+ * descarta al llenarse, DROP y LATEST: en los tres se pierden datos. Esta
+ * variante guarda en memoria hasta n elementos y el resto lo serializa en
+ * segmentos de fichero mapeados en memoria. Cuando vuelve la demanda se
+ * leen en orden FIFO. El heap sólo guarda los n de memoria, la cola de
+ * disco vive en la caché de páginas del sistema
+ */
+public class Ejemplo12_BufferEnDisco {
+
+    public static void main(String[] args) throws Exception {
+        System.out.println("=== Ejemplo 12: Buffer con Desbordamiento a Disco ===\n");
+
+        // 1. Productor a ráfagas contra un consumidor lento
+        int rafagas = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int porRafaga = 500_000;
+        System.out.printf("--- %d ráfagas de %,d líneas de log, consumidor de 400k/s ---%n", rafagas, porRafaga);
+        System.out.println("  onBackpressureBuffer(10_000, DROP_OLDEST):");
+        rafagas(rafagas, porRafaga, fuente -> fuente.onBackpressureBuffer(10_000, null,
+            BackpressureOverflowStrategy.DROP_OLDEST));
+        System.out.println("  onBackpressureBuffer() sin límite:");
+        rafagas(rafagas, porRafaga, Flowable::onBackpressureBuffer);
+        System.out.println("  BufferEnDisco(10_000):");
+        BufferEnDisco<Linea> disco = new BufferEnDisco<>(10_000, Linea.SERIALIZADOR, 64 << 20);
+        rafagas(rafagas, porRafaga, fuente -> fuente.compose(disco));
+        System.out.printf("  derramados a disco: %,d; máximo en disco %,d MB%n",
+            disco.derramados.get(), disco.maximoEnDisco.get() >> 20);
+
+        // 2. Rendimiento frente al buffer en memoria
+        int total = args.length > 1 ? Integer.parseInt(args[1]) : 5_000_000;
+        System.out.printf("%n--- Rendimiento: %,d líneas, productor más rápido que el consumidor ---%n", total);
+        rendimiento(total, "onBackpressureBuffer()", Flowable::onBackpressureBuffer, null);
+        BufferEnDisco<Linea> mixto = new BufferEnDisco<>(10_000, Linea.SERIALIZADOR, 64 << 20);
+        rendimiento(total, "BufferEnDisco(10_000)", fuente -> fuente.compose(mixto), mixto);
+        BufferEnDisco<Linea> soloDisco = new BufferEnDisco<>(0, Linea.SERIALIZADOR, 64 << 20);
+        rendimiento(total, "BufferEnDisco(0)", fuente -> fuente.compose(soloDisco), soloDisco);
+
+        System.out.println("\n=== CONCEPTOS CLAVE ===");
+        System.out.println("• onBackpressureBuffer(n) acotado pierde datos al llenarse; sin límite agota el heap");
+        System.out.println("• Desbordamiento a disco: n elementos en memoria, el resto en segmentos mapeados");
+        System.out.println("• Orden FIFO: mientras haya cola en disco, lo nuevo va detrás, también a disco");
+        System.out.println("• Serializador enchufable: el operador no sabe nada del tipo que guarda");
+        System.out.println("• Los segmentos leídos se borran: el disco usado sigue al retraso del consumidor");
+    }
+
+    private static void rafagas(int rafagas, int porRafaga,
+                                FlowableTransformer<Linea, Linea> buffer) throws InterruptedException {
+        Flowable<Linea> fuente = Flowable.<Linea, long[]>generate(() -> new long[1], (estado, emisor) -> {
+                long secuencia = estado[0]++;
+                if (secuencia == (long) rafagas * porRafaga) {
+                    emisor.onComplete();
+                    return;
+                }
+                if (secuencia > 0 && secuencia % porRafaga == 0) {
+                    Thread.sleep(1000); // pausa entre ráfagas
+                }
+                emisor.onNext(new Linea(secuencia, "2024-05-01T10:00:00Z INFO servicio-pagos petición " + secuencia
+                    + " procesada en 12 ms"));
+            })
+            .subscribeOn(Schedulers.io());
+
+        AtomicLong recibidas = new AtomicLong();
+        AtomicLong huecos = new AtomicLong();
+        AtomicLong maximoHeap = new AtomicLong();
+        CountDownLatch fin = new CountDownLatch(1);
+        long[] esperada = new long[1];
+        fuente.compose(buffer)
+            .observeOn(Schedulers.single(), false, 256)
+            .subscribe(linea -> {
+                if (linea.secuencia != esperada[0]) {
+                    huecos.incrementAndGet();
+                }
+                esperada[0] = linea.secuencia + 1;
+                recibidas.incrementAndGet();
+                trabajar(2_500); // ~400k líneas/s
+            }, error -> {
+                log("ERROR", error);
+                fin.countDown();
+            }, fin::countDown);
+
+        // heap retenido (tras GC) cada medio segundo
+        while (!fin.await(500, TimeUnit.MILLISECONDS)) {
+            maximoHeap.accumulateAndGet(heapUsado(), Math::max);
+        }
+        System.out.printf("    recibidas %,d de %,d, huecos en la secuencia %,d, heap retenido máximo %,d MB%n",
+            recibidas.get(), (long) rafagas * porRafaga, huecos.get(), maximoHeap.get() >> 20);
+    }
+
+    private static void rendimiento(int total, String nombre, FlowableTransformer<Linea, Linea> buffer,
+                                    BufferEnDisco<Linea> disco) {
+        long inicio = System.nanoTime();
+        long recibidas = Flowable.range(0, total)
+            .map(i -> new Linea(i, "petición " + i))
+            .compose(buffer)
+            .observeOn(Schedulers.single(), false, 1024)
+            .count()
+            .blockingGet();
+        double segundos = (System.nanoTime() - inicio) / 1e9;
+        System.out.printf("  %-23s %,11.0f líneas/s  (%,d recibidas, %,d por disco)%n",
+            nombre, recibidas / segundos, recibidas, disco == null ? 0 : disco.derramados.get());
+    }
+
+    private static void trabajar(long nanos) {
+        long fin = System.nanoTime() + nanos;
+        while (System.nanoTime() < fin) {
+            Thread.onSpinWait();
+        }
+    }
+
+    private static long heapUsado() {
+        System.gc();
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    private static void log(String operacion, Object valor) {
+        System.out.printf("  [%s] %s: %s\n",
+            Thread.currentThread().getName(),
+            operacion,
+            valor);
+    }
+
+    /** Convierte elementos a bytes y de vuelta; escribir() puede lanzar BufferOverflowException */
+    interface Serializador<T> {
+        void escribir(T elemento, ByteBuffer destino);
+
+        T leer(ByteBuffer origen);
+    }
+
+    /**
+     * Como onBackpressureBuffer() sin límite, pero con sólo capacidadMemoria
+     * elementos en el heap. Al productor se le pide Long.MAX_VALUE; lo que
+     * no quepa en memoria, o llegue mientras queda cola en disco, se
+     * serializa al final de la cola de disco
+     */
+    static class BufferEnDisco<T> implements FlowableTransformer<T, T> {
+        private final int capacidadMemoria;
+        private final Serializador<T> serializador;
+        private final int tamanoSegmento;
+        final AtomicLong derramados = new AtomicLong();
+        final AtomicLong maximoEnDisco = new AtomicLong();
+
+        BufferEnDisco(int capacidadMemoria, Serializador<T> serializador, int tamanoSegmento) {
+            this.capacidadMemoria = capacidadMemoria;
+            this.serializador = serializador;
+            this.tamanoSegmento = tamanoSegmento;
+        }
+
+        @Override
+        public Flowable<T> apply(Flowable<T> upstream) {
+            return Flowable.fromPublisher(downstream -> upstream.subscribe(new Derrame(downstream)));
+        }
+
+        private final class Derrame implements FlowableSubscriber<T>, Subscription {
+            private final Subscriber<? super T> downstream;
+            private final ArrayDeque<T> memoria = new ArrayDeque<>();
+            private final AtomicLong solicitados = new AtomicLong();
+            private final AtomicInteger wip = new AtomicInteger();
+            private Subscription upstream;
+            private ColaEnDisco disco;
+            private volatile boolean terminado;
+            private volatile boolean cancelado;
+            private Throwable error;
+
+            Derrame(Subscriber<? super T> downstream) {
+                this.downstream = downstream;
+            }
+
+            @Override
+            public void onSubscribe(Subscription s) {
+                if (upstream != null) {
+                    s.cancel();
+                    return;
+                }
+                upstream = s;
+                downstream.onSubscribe(this);
+                s.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(T t) {
+                if (terminado || cancelado) {
+                    return;
+                }
+                try {
+                    synchronized (this) {
+                        // liberar() también toma el lock: tras la cancelación no se abre otra cola
+                        if (cancelado) {
+                            return;
+                        }
+                        if ((disco == null || disco.vacia()) && memoria.size() < capacidadMemoria) {
+                            memoria.add(t);
+                        } else {
+                            if (disco == null) {
+                                disco = new ColaEnDisco();
+                            }
+                            disco.escribir(t);
+                            derramados.incrementAndGet();
+                            maximoEnDisco.accumulateAndGet(disco.bytes(), Math::max);
+                        }
+                    }
+                } catch (IOException | RuntimeException e) {
+                    upstream.cancel();
+                    onError(e);
+                    return;
+                }
+                drenar();
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                synchronized (this) {
+                    error = t;
+                }
+                terminado = true;
+                drenar();
+            }
+
+            @Override
+            public void onComplete() {
+                terminado = true;
+                drenar();
+            }
+
+            @Override
+            public void request(long n) {
+                if (n <= 0) {
+                    RxJavaPlugins.onError(new IllegalArgumentException("request(n) con n <= 0: " + n));
+                    return;
+                }
+                // suma sin desbordar: Long.MAX_VALUE significa demanda ilimitada
+                solicitados.accumulateAndGet(n, (actual, mas) -> actual + mas < 0 ? Long.MAX_VALUE : actual + mas);
+                drenar();
+            }
+
+            @Override
+            public void cancel() {
+                cancelado = true;
+                upstream.cancel();
+                if (wip.getAndIncrement() == 0) {
+                    liberar();
+                }
+            }
+
+            /** Primero memoria (lo más antiguo), luego disco */
+            private T siguiente() throws IOException {
+                synchronized (this) {
+                    T t = memoria.poll();
+                    if (t == null && disco != null && !disco.vacia()) {
+                        t = disco.leer();
+                    }
+                    return t;
+                }
+            }
+
+            private void drenar() {
+                if (wip.getAndIncrement() != 0) {
+                    return;
+                }
+                int perdidos = 1;
+                do {
+                    long pedidos = solicitados.get();
+                    long emitidos = 0;
+                    while (emitidos != pedidos) {
+                        if (cancelado) {
+                            liberar();
+                            return;
+                        }
+                        boolean fin = terminado;
+                        T t;
+                        try {
+                            t = siguiente();
+                        } catch (IOException | RuntimeException e) {
+                            upstream.cancel();
+                            liberar();
+                            downstream.onError(e);
+                            return;
+                        }
+                        if (t == null) {
+                            if (fin) {
+                                terminar();
+                                return;
+                            }
+                            break;
+                        }
+                        downstream.onNext(t);
+                        emitidos++;
+                    }
+                    if (emitidos == pedidos) {
+                        if (cancelado) {
+                            liberar();
+                            return;
+                        }
+                        boolean vacio;
+                        synchronized (this) {
+                            vacio = memoria.isEmpty() && (disco == null || disco.vacia());
+                        }
+                        if (terminado && vacio) {
+                            terminar();
+                            return;
+                        }
+                    }
+                    if (emitidos != 0) {
+                        solicitados.accumulateAndGet(emitidos, (actual, menos) -> actual == Long.MAX_VALUE ? actual : actual - menos);
+                    }
+                    perdidos = wip.addAndGet(-perdidos);
+                } while (perdidos != 0);
+            }
+
+            private void terminar() {
+                Throwable e;
+                synchronized (this) {
+                    e = error;
+                }
+                liberar();
+                if (e != null) {
+                    downstream.onError(e);
+                } else {
+                    downstream.onComplete();
+                }
+            }
+
+            private synchronized void liberar() {
+                memoria.clear();
+                if (disco != null) {
+                    disco.cerrar();
+                    disco = null;
+                }
+            }
+        }
+
+        /**
+         * Cola FIFO en segmentos de fichero mapeados. Registro: longitud
+         * (int) y bytes del serializador; una longitud -1 marca el final
+         * del segmento. Un segmento leído entero se borra
+         */
+        private final class ColaEnDisco {
+            private final Path directorio;
+            private final ArrayDeque<Segmento> segmentos = new ArrayDeque<>();
+            private long pendientes;
+            private int siguienteId;
+
+            ColaEnDisco() throws IOException {
+                this.directorio = Files.createTempDirectory("derrame");
+                segmentos.add(nuevoSegmento());
+            }
+
+            boolean vacia() {
+                return pendientes == 0;
+            }
+
+            long bytes() {
+                return (long) segmentos.size() * tamanoSegmento;
+            }
+
+            void escribir(T elemento) throws IOException {
+                Segmento escritura = segmentos.peekLast();
+                if (!escritura.escribir(elemento)) {
+                    escritura.sellar();
+                    escritura = nuevoSegmento();
+                    segmentos.add(escritura);
+                    if (!escritura.escribir(elemento)) {
+                        throw new IOException("Elemento mayor que un segmento de " + tamanoSegmento + " bytes");
+                    }
+                }
+                pendientes++;
+            }
+
+            T leer() {
+                while (true) {
+                    Segmento lectura = segmentos.peekFirst();
+                    T t = lectura.leer();
+                    if (t != null) {
+                        pendientes--;
+                        return t;
+                    }
+                    if (!lectura.agotado()) {
+                        return null;
+                    }
+                    // detrás de un segmento sellado siempre está el de escritura
+                    segmentos.pollFirst();
+                    lectura.borrar();
+                }
+            }
+
+            private Segmento nuevoSegmento() throws IOException {
+                return new Segmento(directorio.resolve("segmento-" + (siguienteId++) + ".dat"));
+            }
+
+            void cerrar() {
+                for (Segmento segmento : segmentos) {
+                    segmento.borrar();
+                }
+                segmentos.clear();
+                try {
+                    Files.deleteIfExists(directorio);
+                } catch (IOException e) {
+                    // en Windows aún contiene segmentos mapeados: el directorio temporal se queda
+                }
+            }
+        }
+
+        private final class Segmento {
+            private final Path fichero;
+            private final MappedByteBuffer escritura;
+            private final ByteBuffer lectura;
+            private boolean sellado;
+
+            Segmento(Path fichero) throws IOException {
+                this.fichero = fichero;
+                try (FileChannel canal = FileChannel.open(fichero, StandardOpenOption.CREATE_NEW,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                    this.escritura = canal.map(FileChannel.MapMode.READ_WRITE, 0, tamanoSegmento);
+                }
+                this.lectura = escritura.duplicate();
+            }
+
+            boolean escribir(T elemento) {
+                int inicio = escritura.position();
+                if (escritura.remaining() < 8) {
+                    return false;
+                }
+                try {
+                    escritura.position(inicio + 4);
+                    serializador.escribir(elemento, escritura);
+                    escritura.putInt(inicio, escritura.position() - inicio - 4);
+                    return true;
+                } catch (BufferOverflowException e) {
+                    escritura.position(inicio);
+                    return false;
+                }
+            }
+
+            void sellar() {
+                if (escritura.remaining() >= 4) {
+                    escritura.putInt(-1);
+                }
+                sellado = true;
+            }
+
+            /** null si no queda nada escrito por leer */
+            T leer() {
+                if (lectura.position() >= escritura.position()) {
+                    return null;
+                }
+                int longitud = lectura.getInt();
+                if (longitud < 0) {
+                    lectura.position(escritura.position());
+                    return null;
+                }
+                ByteBuffer registro = lectura.slice(lectura.position(), longitud);
+                lectura.position(lectura.position() + longitud);
+                return serializador.leer(registro);
+            }
+
+            /** Sólo se descarta un segmento sellado: el abierto aún recibe escrituras */
+            boolean agotado() {
+                return sellado && lectura.position() >= escritura.position();
+            }
+
+            /**
+             * Java no ofrece unmap: el fichero se borra aún mapeado. En Linux y
+             * macOS el borrado quita el nombre y el espacio vuelve al liberar
+             * el GC el MappedByteBuffer; en Windows un fichero mapeado no se
+             * puede borrar y queda para la salida de la JVM
+             */
+            void borrar() {
+                try {
+                    Files.deleteIfExists(fichero);
+                } catch (IOException e) {
+                    fichero.toFile().deleteOnExit();
+                }
+            }
+        }
+    }
+
+    static class Linea {
+        static final Serializador<Linea> SERIALIZADOR = new Serializador<Linea>() {
+            @Override
+            public void escribir(Linea linea, ByteBuffer destino) {
+                byte[] texto = linea.texto.getBytes(StandardCharsets.UTF_8);
+                destino.putLong(linea.secuencia);
+                destino.put(texto);
+            }
+
+            @Override
+            public Linea leer(ByteBuffer origen) {
+                long secuencia = origen.getLong();
+                byte[] texto = new byte[origen.remaining()];
+                origen.get(texto);
+                return new Linea(secuencia, new String(texto, StandardCharsets.UTF_8));
+            }
+        };
+
+        long secuencia;
+        String texto;
+
+        Linea(long secuencia, String texto) {
+            this.secuencia = secuencia;
+            this.texto = texto;
+        }
+    }
+}
@@ -0,0 +1,332 @@
+package com.formadoresit.rxjava.tema8;
+
+import io.reactivex.Flowable;
+import io.reactivex.parallel.ParallelFlowable;
+import io.reactivex.schedulers.Schedulers;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+/**
+ * TEMA 8: Flujos y Backpressure
+ * Ejemplo 13: Lectura de Archivos con Backpressure
+ *
+ * El caso de "archivos grandes" del Ejemplo 09 usa Flowable.range para
+ * fingir las líneas. Aquí la fuente es un FileChannel: cada petición
+ * mapea el siguiente bloque del fichero, recortado en el último salto de
+ * línea, así que ninguna línea queda partida entre bloques y las líneas
+ * se entregan como vistas (slices) del bloque mapeado, sin copiar bytes.
+ * Sin demanda no se mapea nada más. El fichero también se puede partir
+ * en rangos de bytes alineados a línea para procesarlo en rails paralelos
+ */
+public class Ejemplo13_LecturaArchivos {
+
+    public static void main(String[] args) throws Exception {
+        System.out.println("=== Ejemplo 13: Lectura de Archivos con Backpressure ===\n");
+        long megas = args.length > 0 ? Long.parseLong(args[0]) : 2048;
+        Path fichero = Files.createTempFile("registro", ".log");
+        try {
+            generar(fichero, megas << 20);
+            System.out.printf("Fichero de prueba: %,d MB%n", Files.size(fichero) >> 20);
+
+            // 1. Lectura bajo demanda
+            System.out.println("\n--- Sin demanda no se lee ---");
+            LectorArchivo lector = new LectorArchivo(fichero, 8 << 20);
+            lector.lineas()
+                .map(LectorArchivo::texto)
+                .take(3)
+                .blockingSubscribe(linea -> log("FILE", linea));
+            log("FILE", String.format("take(3): %,d KB mapeados de %,d MB",
+                lector.bytesMapeados.get() >> 10, Files.size(fichero) >> 20));
+
+            lector.lineas().subscribe(new Subscriber<ByteBuffer>() {
+                private Subscription subscription;
+
+                @Override
+                public void onSubscribe(Subscription s) {
+                    subscription = s;
+                    s.request(1); // una línea y nada más
+                }
+
+                @Override
+                public void onNext(ByteBuffer linea) {
+                    log("FILE", "request(1): " + linea.remaining() + " bytes de línea, sin copia");
+                    subscription.cancel(); // cierra el FileChannel
+                }
+
+                @Override
+                public void onError(Throwable t) {
+                    log("FILE", "Error: " + t.getMessage());
+                }
+
+                @Override
+                public void onComplete() {
+                }
+            });
+            log("FILE", String.format("tras request(1): %,d KB mapeados en total", lector.bytesMapeados.get() >> 10));
+
+            // 2. Rendimiento frente a Files.lines
+            System.out.println("\n--- Rendimiento (MB/s) ---");
+            long tamano = Files.size(fichero);
+            medir("Files.lines + length", tamano, () -> {
+                try (Stream<String> lineas = Files.lines(fichero)) {
+                    return lineas.mapToLong(String::length).sum();
+                }
+            });
+            medir("lineas() sin copia", tamano, () -> new LectorArchivo(fichero, 8 << 20).lineas()
+                .reduce(0L, (total, linea) -> total + linea.remaining())
+                .blockingGet());
+            medir("lineas() a String", tamano, () -> new LectorArchivo(fichero, 8 << 20).lineas()
+                .map(LectorArchivo::texto)
+                .reduce(0L, (total, linea) -> total + linea.length())
+                .blockingGet());
+            int rails = Math.max(2, Runtime.getRuntime().availableProcessors());
+            medir("parallel(" + rails + ") sin copia", tamano, () -> new LectorArchivo(fichero, 8 << 20)
+                .lineasEnParalelo(rails)
+                .map(linea -> (long) linea.remaining())
+                .reduce(Long::sum)
+                .blockingSingle());
+            System.out.println("  (" + Runtime.getRuntime().availableProcessors()
+                + " CPU: los rails sólo escalan con más núcleos)");
+        } finally {
+            Files.deleteIfExists(fichero);
+        }
+
+        System.out.println("\n=== CONCEPTOS CLAVE ===");
+        System.out.println("• Flowable.generate: se lee un bloque por petición, el consumidor marca el ritmo");
+        System.out.println("• Bloques recortados en el último salto de línea: ninguna línea queda partida");
+        System.out.println("• Líneas como slices del bloque mapeado: sin copiar hasta que hace falta un String");
+        System.out.println("• Rangos de bytes alineados a línea: cada rail lee su parte del fichero");
+        System.out.println("• Los bloques mapeados son independientes: seguros con observeOn y parallel");
+    }
+
+    private static void medir(String nombre, long bytes, Callable<Long> lectura) throws Exception {
+        lectura.call(); // calentamiento y caché de páginas
+        long inicio = System.nanoTime();
+        long caracteres = lectura.call();
+        double segundos = (System.nanoTime() - inicio) / 1e9;
+        System.out.printf("  %-24s %,8.0f MB/s  (longitud total %,d: bytes sin copia, caracteres en String)%n",
+            nombre, (bytes >> 20) / segundos, caracteres);
+    }
+
+    private static void generar(Path fichero, long bytes) throws IOException {
+        try (BufferedWriter salida = Files.newBufferedWriter(fichero, StandardCharsets.UTF_8)) {
+            long escritos = 0;
+            for (long i = 0; escritos < bytes; i++) {
+                String linea = "2024-05-01T10:00:" + (i % 60 < 10 ? "0" : "") + (i % 60)
+                    + "Z INFO servicio-" + (i % 17) + " petición " + i + " procesada en " + (i % 250) + " ms\n";
+                salida.write(linea);
+                escritos += linea.length();
+            }
+        }
+    }
+
+    private static void log(String operacion, Object valor) {
+        System.out.printf("  [%s] %s: %s\n",
+            Thread.currentThread().getName(),
+            operacion,
+            valor);
+    }
+
+    /**
+     * Fuente de bloques y líneas sobre un fichero. Los bloques son
+     * regiones mapeadas de como mucho tamanoBloque bytes que terminan en
+     * salto de línea (salvo el último del fichero o del rango)
+     */
+    static class LectorArchivo {
+        private final Path fichero;
+        private final int tamanoBloque;
+        final AtomicLong bytesMapeados = new AtomicLong();
+
+        LectorArchivo(Path fichero, int tamanoBloque) {
+            this.fichero = fichero;
+            this.tamanoBloque = tamanoBloque;
+        }
+
+        Flowable<ByteBuffer> bloques() {
+            return Flowable.defer(() -> bloques(0, Files.size(fichero)));
+        }
+
+        /** Bloques del rango [desde, hasta); desde y hasta deben caer en inicio de línea */
+        Flowable<ByteBuffer> bloques(long desde, long hasta) {
+            return Flowable.generate(
+                () -> new Lectura(FileChannel.open(fichero, StandardOpenOption.READ), desde, hasta),
+                (lectura, emisor) -> {
+                    ByteBuffer bloque = lectura.siguiente();
+                    if (bloque == null) {
+                        emisor.onComplete();
+                    } else {
+                        emisor.onNext(bloque);
+                    }
+                },
+                Lectura::cerrar);
+        }
+
+        /** Líneas sin el salto (ni el \r), como vistas de sólo lectura del bloque */
+        Flowable<ByteBuffer> lineas() {
+            return bloques().concatMapIterable(Lineas::new, 1);
+        }
+
+        Flowable<ByteBuffer> lineas(long desde, long hasta) {
+            return bloques(desde, hasta).concatMapIterable(Lineas::new, 1);
+        }
+
+        /** Cada rail lee un rango alineado a línea */
+        ParallelFlowable<ByteBuffer> lineasEnParalelo(int rails) throws IOException {
+            long[] cortes = cortes(rails);
+            List<long[]> rangos = new ArrayList<>();
+            for (int i = 0; i + 1 < cortes.length; i++) {
+                rangos.add(new long[] {cortes[i], cortes[i + 1]});
+            }
+            return Flowable.fromIterable(rangos)
+                .parallel(rails, 1)
+                .runOn(Schedulers.computation(), 1)
+                .flatMap(rango -> lineas(rango[0], rango[1]));
+        }
+
+        /** Desplazamientos de inicio de línea que parten el fichero en n rangos parecidos */
+        long[] cortes(int partes) throws IOException {
+            try (FileChannel canal = FileChannel.open(fichero, StandardOpenOption.READ)) {
+                long tamano = canal.size();
+                long[] cortes = new long[partes + 1];
+                cortes[partes] = tamano;
+                ByteBuffer ventana = ByteBuffer.allocate(64 * 1024);
+                for (int i = 1; i < partes; i++) {
+                    long posicion = Math.max(cortes[i - 1], tamano * i / partes);
+                    cortes[i] = tamano;
+                    // avanza hasta pasar el siguiente salto de línea
+                    busqueda:
+                    while (posicion < tamano) {
+                        ventana.clear();
+                        int leidos = canal.read(ventana, posicion);
+                        for (int j = 0; j < leidos; j++) {
+                            if (ventana.get(j) == '\n') {
+                                cortes[i] = posicion + j + 1;
+                                break busqueda;
+                            }
+                        }
+                        posicion += leidos;
+                    }
+                }
+                return cortes;
+            }
+        }
+
+        static String texto(ByteBuffer linea) {
+            if (linea.hasArray()) {
+                return new String(linea.array(), linea.arrayOffset() + linea.position(), linea.remaining(),
+                    StandardCharsets.UTF_8);
+            }
+            byte[] bytes = new byte[linea.remaining()];
+            linea.duplicate().get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        private final class Lectura {
+            private final FileChannel canal;
+            private long posicion;
+            private final long fin;
+
+            Lectura(FileChannel canal, long desde, long hasta) {
+                this.canal = canal;
+                this.posicion = desde;
+                this.fin = hasta;
+            }
+
+            /** Siguiente bloque terminado en salto de línea, o null al final */
+            ByteBuffer siguiente() throws IOException {
+                if (posicion >= fin) {
+                    return null;
+                }
+                long tamano = Math.min(tamanoBloque, fin - posicion);
+                while (true) {
+                    ByteBuffer mapa = canal.map(FileChannel.MapMode.READ_ONLY, posicion, tamano);
+                    bytesMapeados.addAndGet(tamano);
+                    int limite = (int) tamano;
+                    if (posicion + tamano < fin) {
+                        limite = ultimoSalto(mapa, (int) tamano) + 1;
+                        if (limite == 0) {
+                            // una línea más larga que el bloque: se mapea más
+                            tamano = Math.min(tamano * 2, fin - posicion);
+                            continue;
+                        }
+                    }
+                    posicion += limite;
+                    return mapa.slice(0, limite).asReadOnlyBuffer();
+                }
+            }
+
+            private int ultimoSalto(ByteBuffer mapa, int tamano) {
+                for (int i = tamano - 1; i >= 0; i--) {
+                    if (mapa.get(i) == '\n') {
+                        return i;
+                    }
+                }
+                return -1;
+            }
+
+            void cerrar() {
+                try {
+                    canal.close();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+
+        /** Recorre un bloque línea a línea devolviendo slices, sin copiar */
+        private static final class Lineas implements Iterable<ByteBuffer> {
+            private final ByteBuffer bloque;
+
+            Lineas(ByteBuffer bloque) {
+                this.bloque = bloque;
+            }
+
+            @Override
+            public Iterator<ByteBuffer> iterator() {
+                return new Iterator<ByteBuffer>() {
+                    private int inicio = bloque.position();
+                    private final int limite = bloque.limit();
+
+                    @Override
+                    public boolean hasNext() {
+                        return inicio < limite;
+                    }
+
+                    @Override
+                    public ByteBuffer next() {
+                        if (inicio >= limite) {
+                            throw new NoSuchElementException();
+                        }
+                        int fin = inicio;
+                        while (fin < limite && bloque.get(fin) != '\n') {
+                            fin++;
+                        }
+                        int longitud = fin - inicio;
+                        if (longitud > 0 && bloque.get(fin - 1) == '\r') {
+                            longitud--;
+                        }
+                        ByteBuffer linea = bloque.slice(inicio, longitud);
+                        inicio = fin + 1;
+                        return linea;
+                    }
+                };
+            }
+        }
+    }
+}